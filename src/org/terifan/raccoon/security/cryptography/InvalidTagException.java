@@ -0,0 +1,21 @@
+package org.terifan.raccoon.security.cryptography;
+
+
+/**
+ * Thrown when an authentication tag does not match the data it is supposed to authenticate.
+ */
+public class InvalidTagException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+
+	public InvalidTagException()
+	{
+	}
+
+
+	public InvalidTagException(String aMessage)
+	{
+		super(aMessage);
+	}
+}
@@ -0,0 +1,330 @@
+package org.terifan.raccoon.security.cryptography;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+/**
+ * AES key wrap as defined in RFC 3394 and AES key wrap with padding as defined in RFC 5649. Any 128-bit block cipher can be used as key
+ * encryption cipher.
+ * <p>
+ * The batch unwrap methods process many wrapped keys of the same length in lockstep, decrypting one block of every key per step so the
+ * independent cipher invocations can overlap, and split large batches over multiple threads.
+ * <p>
+ * Instances are thread safe provided the cipher is.
+ *
+ * <pre>
+ * KeyWrap kw = new KeyWrap(new AES(masterKey));
+ * byte[] wrapped = kw.wrap(dataKey);
+ * SecretKey[] keys = kw.unwrap(wrappedKeys);
+ * </pre>
+ */
+public final class KeyWrap
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private final static long DEFAULT_IV = 0xA6A6A6A6A6A6A6A6L;
+	private final static int ALTERNATIVE_IV = 0xA65959A6;
+	private final static int BATCH_SIZE = 64;
+
+	private final BlockCipher mCipher;
+
+
+	/**
+	 * @param aKeyEncryptionCipher an initialized 128-bit block cipher
+	 */
+	public KeyWrap(BlockCipher aKeyEncryptionCipher)
+	{
+		mCipher = aKeyEncryptionCipher;
+	}
+
+
+	/**
+	 * Wraps a key according to RFC 3394. The key length must be a multiple of 8 bytes and at least 16 bytes.
+	 */
+	public byte[] wrap(SecretKey aKey)
+	{
+		byte[] key = aKey.bytes();
+
+		if (key.length < 16 || (key.length & 7) != 0)
+		{
+			throw new IllegalArgumentException("Key length must be a multiple of 8 and at least 16 bytes: " + key.length);
+		}
+
+		return wrap(key, DEFAULT_IV);
+	}
+
+
+	/**
+	 * Wraps a key of any length according to RFC 5649.
+	 */
+	public byte[] wrapWithPadding(SecretKey aKey)
+	{
+		byte[] key = aKey.bytes();
+
+		if (key.length == 0)
+		{
+			throw new IllegalArgumentException("Key is empty.");
+		}
+
+		long iv = ((long)ALTERNATIVE_IV << 32) | key.length;
+
+		if (key.length <= 8)
+		{
+			byte[] output = new byte[16];
+			LONG.set(output, 0, iv);
+			System.arraycopy(key, 0, output, 8, key.length);
+			mCipher.engineEncryptBlock(output, 0, output, 0);
+			return output;
+		}
+
+		byte[] padded = Arrays.copyOf(key, (key.length + 7) & -8);
+		try
+		{
+			return wrap(padded, iv);
+		}
+		finally
+		{
+			Arrays.fill(padded, (byte)0);
+		}
+	}
+
+
+	/**
+	 * Unwraps a key wrapped according to RFC 3394.
+	 *
+	 * @throws InvalidKeyException
+	 *    if the integrity check fails
+	 */
+	public SecretKey unwrap(byte[] aWrappedKey) throws InvalidKeyException
+	{
+		return unwrap(new byte[][]{aWrappedKey}, false)[0];
+	}
+
+
+	/**
+	 * Unwraps a key wrapped according to RFC 5649.
+	 *
+	 * @throws InvalidKeyException
+	 *    if the integrity check fails
+	 */
+	public SecretKey unwrapWithPadding(byte[] aWrappedKey) throws InvalidKeyException
+	{
+		return unwrap(new byte[][]{aWrappedKey}, true)[0];
+	}
+
+
+	/**
+	 * Unwraps many keys wrapped according to RFC 3394.
+	 *
+	 * @throws InvalidKeyException
+	 *    if the integrity check fails for any of the keys
+	 */
+	public SecretKey[] unwrap(byte[][] aWrappedKeys) throws InvalidKeyException
+	{
+		return unwrap(aWrappedKeys, false);
+	}
+
+
+	/**
+	 * Unwraps many keys wrapped according to RFC 5649.
+	 *
+	 * @throws InvalidKeyException
+	 *    if the integrity check fails for any of the keys
+	 */
+	public SecretKey[] unwrapWithPadding(byte[][] aWrappedKeys) throws InvalidKeyException
+	{
+		return unwrap(aWrappedKeys, true);
+	}
+
+
+	private byte[] wrap(byte[] aKey, long aIV)
+	{
+		int n = aKey.length / 8;
+		byte[] output = new byte[8 + aKey.length];
+		byte[] block = new byte[16];
+		long a = aIV;
+
+		System.arraycopy(aKey, 0, output, 8, aKey.length);
+
+		for (int j = 0, t = 1; j < 6; j++)
+		{
+			for (int i = 1; i <= n; i++, t++)
+			{
+				LONG.set(block, 0, a);
+				System.arraycopy(output, 8 * i, block, 8, 8);
+				mCipher.engineEncryptBlock(block, 0, block, 0);
+				a = (long)LONG.get(block, 0) ^ t;
+				System.arraycopy(block, 8, output, 8 * i, 8);
+			}
+		}
+
+		LONG.set(output, 0, a);
+		Arrays.fill(block, (byte)0);
+
+		return output;
+	}
+
+
+	private SecretKey[] unwrap(byte[][] aWrappedKeys, boolean aPadded)
+	{
+		int count = aWrappedKeys.length;
+
+		for (byte[] wrapped : aWrappedKeys)
+		{
+			if (wrapped.length < (aPadded ? 16 : 24) || (wrapped.length & 7) != 0)
+			{
+				throw new InvalidKeyException("Illegal wrapped key length: " + wrapped.length);
+			}
+		}
+
+		// order by length so each batch holds keys of the same length
+		int[] order = IntStream.range(0, count).boxed().sorted((a, b) -> Integer.compare(aWrappedKeys[a].length, aWrappedKeys[b].length)).mapToInt(Integer::intValue).toArray();
+
+		int[] batchStart = new int[count + 1];
+		int batches = 0;
+		for (int i = 0; i < count;)
+		{
+			batchStart[batches++] = i;
+			int length = aWrappedKeys[order[i]].length;
+			for (int j = 0; j < BATCH_SIZE && i < count && aWrappedKeys[order[i]].length == length; j++)
+			{
+				i++;
+			}
+		}
+		batchStart[batches] = count;
+
+		byte[][] unwrapped = new byte[count][];
+		long[] checkValues = new long[count];
+
+		IntStream range = IntStream.range(0, batches);
+		if (batches > 1)
+		{
+			range = range.parallel();
+		}
+		range.forEach(i -> unwrapBatch(aWrappedKeys, order, batchStart[i], batchStart[i + 1], unwrapped, checkValues));
+
+		SecretKey[] keys = new SecretKey[count];
+		int failed = -1;
+
+		for (int i = 0; i < count; i++)
+		{
+			byte[] key = unwrapped[i];
+			long a = checkValues[i];
+
+			if (aPadded)
+			{
+				int length = (int)a;
+				boolean valid = (int)(a >>> 32) == ALTERNATIVE_IV && length > key.length - 8 && length <= key.length;
+				for (int j = Math.max(length, 0); valid && j < key.length; j++)
+				{
+					valid = key[j] == 0;
+				}
+				if (valid)
+				{
+					keys[i] = new SecretKey(Arrays.copyOf(key, length));
+				}
+				else if (failed == -1)
+				{
+					failed = i;
+				}
+			}
+			else if (a == DEFAULT_IV)
+			{
+				keys[i] = new SecretKey(key);
+			}
+			else if (failed == -1)
+			{
+				failed = i;
+			}
+
+			Arrays.fill(key, (byte)0);
+		}
+
+		if (failed != -1)
+		{
+			for (SecretKey key : keys)
+			{
+				if (key != null)
+				{
+					key.reset();
+				}
+			}
+
+			throw new InvalidKeyException("Key unwrap integrity check failed for wrapped key at index " + failed + ".");
+		}
+
+		return keys;
+	}
+
+
+	/**
+	 * Unwraps keys of the same length in lockstep. The unwrapped key bytes and the recovered integrity check values are stored in the
+	 * output arrays at the original index of each key.
+	 */
+	private void unwrapBatch(byte[][] aWrappedKeys, int[] aOrder, int aStart, int aEnd, byte[][] aUnwrapped, long[] aCheckValues)
+	{
+		int count = aEnd - aStart;
+		int n = aWrappedKeys[aOrder[aStart]].length / 8 - 1;
+		byte[] blocks = new byte[16 * count];
+		long[] a = new long[count];
+		byte[][] r = new byte[count][];
+
+		for (int k = 0; k < count; k++)
+		{
+			byte[] wrapped = aWrappedKeys[aOrder[aStart + k]];
+			a[k] = (long)LONG.get(wrapped, 0);
+			r[k] = Arrays.copyOfRange(wrapped, 8, wrapped.length);
+		}
+
+		if (n == 1)
+		{
+			// RFC 5649 single block
+			for (int k = 0; k < count; k++)
+			{
+				LONG.set(blocks, 16 * k, a[k]);
+				System.arraycopy(r[k], 0, blocks, 16 * k + 8, 8);
+				mCipher.engineDecryptBlock(blocks, 16 * k, blocks, 16 * k);
+				a[k] = (long)LONG.get(blocks, 16 * k);
+				System.arraycopy(blocks, 16 * k + 8, r[k], 0, 8);
+			}
+		}
+		else
+		{
+			for (int j = 5; j >= 0; j--)
+			{
+				for (int i = n; i >= 1; i--)
+				{
+					long t = n * j + i;
+
+					for (int k = 0; k < count; k++)
+					{
+						LONG.set(blocks, 16 * k, a[k] ^ t);
+						System.arraycopy(r[k], 8 * (i - 1), blocks, 16 * k + 8, 8);
+					}
+
+					for (int k = 0; k < count; k++)
+					{
+						mCipher.engineDecryptBlock(blocks, 16 * k, blocks, 16 * k);
+					}
+
+					for (int k = 0; k < count; k++)
+					{
+						a[k] = (long)LONG.get(blocks, 16 * k);
+						System.arraycopy(blocks, 16 * k + 8, r[k], 8 * (i - 1), 8);
+					}
+				}
+			}
+		}
+
+		for (int k = 0; k < count; k++)
+		{
+			aUnwrapped[aOrder[aStart + k]] = r[k];
+			aCheckValues[aOrder[aStart + k]] = a[k];
+		}
+
+		Arrays.fill(blocks, (byte)0);
+	}
+}
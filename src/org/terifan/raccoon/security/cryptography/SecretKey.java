@@ -1,7 +1,10 @@
 package org.terifan.raccoon.security.cryptography;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import org.terifan.raccoon.security.messagedigest.HKDF;
 
 
 public final class SecretKey
@@ -43,8 +46,38 @@ public final class SecretKey
 	}
 
 
+	/**
+	 * Returns the length of the key in bytes.
+	 */
+	public int length()
+	{
+		return mKeyBytes.length;
+	}
+
+
+	/**
+	 * Derives key material from this key using HKDF. The key itself is never exposed.
+	 *
+	 * @param aMessageDigest the digest used by HKDF
+	 * @param aSalt optional salt
+	 * @param aInfo context specific information
+	 * @param aLength number of bytes to derive
+	 */
+	public byte[] deriveBytes(MessageDigest aMessageDigest, byte[] aSalt, byte[] aInfo, int aLength)
+	{
+		try
+		{
+			return new HKDF(aMessageDigest).hkdf(aSalt == null ? new byte[0] : aSalt, mKeyBytes, aInfo, aLength);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+
 	public void reset()
 	{
 		Arrays.fill(mKeyBytes, (byte)0);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
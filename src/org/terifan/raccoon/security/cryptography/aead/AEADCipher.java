@@ -0,0 +1,75 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+import java.util.Arrays;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+
+
+/**
+ * Authenticated encryption with associated data. Data is encrypted in place and the authentication tag is written to a separate buffer.
+ */
+public interface AEADCipher
+{
+	/**
+	 * @return the length of the nonce in bytes
+	 */
+	int getNonceLength();
+
+
+	/**
+	 * @return the length of the authentication tag in bytes
+	 */
+	int getTagLength();
+
+
+	/**
+	 * Encrypts a buffer in place and computes the authentication tag.
+	 *
+	 * @param aNonce the nonce, must be getNonceLength() bytes
+	 * @param aAssociatedData data authenticated but not encrypted, may be null
+	 * @param aBuffer the buffer to encrypt
+	 * @param aOffset the start offset in the buffer
+	 * @param aLength number of bytes to encrypt
+	 * @param aTag buffer receiving the authentication tag
+	 * @param aTagOffset the start offset in the tag buffer
+	 */
+	void encrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, byte[] aTag, int aTagOffset);
+
+
+	/**
+	 * Decrypts a buffer in place and verifies the authentication tag. If the tag doesn't match the decrypted data is erased.
+	 *
+	 * @throws InvalidTagException
+	 *    if the tag doesn't match the data
+	 */
+	void decrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, byte[] aTag, int aTagOffset) throws InvalidTagException;
+
+
+	/**
+	 * Encrypts the plaintext provided and returns the ciphertext followed by the authentication tag.
+	 */
+	default byte[] encrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aPlaintext)
+	{
+		byte[] output = Arrays.copyOf(aPlaintext, aPlaintext.length + getTagLength());
+		encrypt(aNonce, aAssociatedData, output, 0, aPlaintext.length, output, aPlaintext.length);
+		return output;
+	}
+
+
+	/**
+	 * Decrypts a ciphertext followed by an authentication tag and returns the plaintext.
+	 *
+	 * @throws InvalidTagException
+	 *    if the tag doesn't match the data
+	 */
+	default byte[] decrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aCiphertext) throws InvalidTagException
+	{
+		int length = aCiphertext.length - getTagLength();
+		if (length < 0)
+		{
+			throw new InvalidTagException("Ciphertext is shorter than the authentication tag.");
+		}
+		byte[] output = Arrays.copyOf(aCiphertext, length);
+		decrypt(aNonce, aAssociatedData, output, 0, length, aCiphertext, length);
+		return output;
+	}
+}
@@ -0,0 +1,284 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+
+
+/**
+ * GCM-SIV nonce misuse-resistant authenticated encryption as defined in RFC 8452. With AES this is AES-GCM-SIV, any other 128-bit
+ * block cipher may be used in its place.
+ * <p>
+ * Encrypting the same plaintext with the same key, nonce and associated data always produces the same ciphertext, which makes the mode
+ * suitable for deduplicating storage. Repeating a nonce only reveals whether two messages are identical.
+ * <p>
+ * Key stream is produced many blocks at a time and both the POLYVAL and the CTR pass are split over multiple threads for large inputs.
+ * Instances are thread safe.
+ *
+ * <pre>
+ * GCMSIV siv = new GCMSIV(AES::new, key);
+ * byte[] sealed = siv.encrypt(nonce, header, plaintext);
+ * </pre>
+ */
+public final class GCMSIV implements AEADCipher
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static int BYTES_PER_BLOCK = 16;
+	private final static int NONCE_LENGTH = 12;
+	private final static int KEY_STREAM_BLOCKS = 64;
+	private final static int PARALLEL_THRESHOLD = 64 * 1024;
+
+	private final Supplier<BlockCipher> mCipherFactory;
+	private final BlockCipher mKeyGeneratingCipher;
+	private final int mKeyLength;
+	private final int mParallelThreshold;
+	private final int mHashParallelThreshold;
+
+
+	/**
+	 * @param aCipherFactory creates uninitialized instances of the block cipher, e.g. <code>AES::new</code>
+	 * @param aKey the key generating key, 16 or 32 bytes
+	 */
+	public GCMSIV(Supplier<BlockCipher> aCipherFactory, SecretKey aKey)
+	{
+		this(aCipherFactory, aKey, Runtime.getRuntime().availableProcessors() > 1 ? PARALLEL_THRESHOLD : Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors() > 1 ? POLYVAL.PARALLEL_THRESHOLD : Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * @param aCipherFactory creates uninitialized instances of the block cipher
+	 * @param aKey the key generating key, 16 or 32 bytes
+	 * @param aParallelThreshold minimum message length in bytes that is encrypted in parallel segments
+	 * @param aHashParallelThreshold minimum number of blocks that POLYVAL hashes in parallel segments
+	 */
+	GCMSIV(Supplier<BlockCipher> aCipherFactory, SecretKey aKey, int aParallelThreshold, int aHashParallelThreshold)
+	{
+		if (aKey.length() != 16 && aKey.length() != 32)
+		{
+			throw new IllegalArgumentException("Key must be 16 or 32 bytes: " + aKey.length());
+		}
+
+		mCipherFactory = aCipherFactory;
+		mKeyLength = aKey.length();
+		mParallelThreshold = aParallelThreshold;
+		mHashParallelThreshold = aHashParallelThreshold;
+		mKeyGeneratingCipher = aCipherFactory.get();
+		mKeyGeneratingCipher.engineInit(aKey);
+	}
+
+
+	@Override
+	public int getNonceLength()
+	{
+		return NONCE_LENGTH;
+	}
+
+
+	@Override
+	public int getTagLength()
+	{
+		return BYTES_PER_BLOCK;
+	}
+
+
+	@Override
+	public void encrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, byte[] aTag, int aTagOffset)
+	{
+		checkNonce(aNonce);
+
+		byte[] authenticationKey = new byte[BYTES_PER_BLOCK];
+		BlockCipher cipher = deriveKeys(aNonce, authenticationKey);
+
+		try
+		{
+			byte[] tag = computeTag(cipher, authenticationKey, aNonce, aAssociatedData, aBuffer, aOffset, aLength);
+
+			transform(cipher, tag, aBuffer, aOffset, aLength);
+
+			System.arraycopy(tag, 0, aTag, aTagOffset, BYTES_PER_BLOCK);
+		}
+		finally
+		{
+			Arrays.fill(authenticationKey, (byte)0);
+			cipher.engineReset();
+		}
+	}
+
+
+	@Override
+	public void decrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, byte[] aTag, int aTagOffset) throws InvalidTagException
+	{
+		checkNonce(aNonce);
+
+		byte[] authenticationKey = new byte[BYTES_PER_BLOCK];
+		BlockCipher cipher = deriveKeys(aNonce, authenticationKey);
+
+		try
+		{
+			byte[] expected = Arrays.copyOfRange(aTag, aTagOffset, aTagOffset + BYTES_PER_BLOCK);
+
+			transform(cipher, expected, aBuffer, aOffset, aLength);
+
+			byte[] tag = computeTag(cipher, authenticationKey, aNonce, aAssociatedData, aBuffer, aOffset, aLength);
+
+			if (!MessageDigest.isEqual(tag, expected))
+			{
+				Arrays.fill(aBuffer, aOffset, aOffset + aLength, (byte)0);
+
+				throw new InvalidTagException("Authentication tag mismatch.");
+			}
+		}
+		finally
+		{
+			Arrays.fill(authenticationKey, (byte)0);
+			cipher.engineReset();
+		}
+	}
+
+
+	/**
+	 * Derives the per-nonce message authentication key and returns a cipher initialized with the per-nonce message encryption key.
+	 */
+	private BlockCipher deriveKeys(byte[] aNonce, byte[] aAuthenticationKey)
+	{
+		byte[] encryptionKey = new byte[mKeyLength];
+		byte[] input = new byte[BYTES_PER_BLOCK];
+		byte[] output = new byte[BYTES_PER_BLOCK];
+
+		System.arraycopy(aNonce, 0, input, 4, NONCE_LENGTH);
+
+		for (int i = 0, n = 2 + mKeyLength / 8; i < n; i++)
+		{
+			INT.set(input, 0, i);
+
+			mKeyGeneratingCipher.engineEncryptBlock(input, 0, output, 0);
+
+			if (i < 2)
+			{
+				System.arraycopy(output, 0, aAuthenticationKey, 8 * i, 8);
+			}
+			else
+			{
+				System.arraycopy(output, 0, encryptionKey, 8 * (i - 2), 8);
+			}
+		}
+
+		BlockCipher cipher = mCipherFactory.get();
+		cipher.engineInit(new SecretKey(encryptionKey));
+
+		Arrays.fill(encryptionKey, (byte)0);
+		Arrays.fill(output, (byte)0);
+
+		return cipher;
+	}
+
+
+	private byte[] computeTag(BlockCipher aCipher, byte[] aAuthenticationKey, byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength)
+	{
+		int aadLength = aAssociatedData == null ? 0 : aAssociatedData.length;
+
+		byte[] lengthBlock = new byte[BYTES_PER_BLOCK];
+		LONG.set(lengthBlock, 0, 8L * aadLength);
+		LONG.set(lengthBlock, 8, 8L * aLength);
+
+		POLYVAL polyval = new POLYVAL(aAuthenticationKey, mHashParallelThreshold);
+		if (aadLength > 0)
+		{
+			polyval.update(aAssociatedData, 0, aadLength);
+		}
+		polyval.update(aBuffer, aOffset, aLength);
+		polyval.update(lengthBlock, 0, BYTES_PER_BLOCK);
+
+		byte[] tag = polyval.digest();
+
+		for (int i = 0; i < NONCE_LENGTH; i++)
+		{
+			tag[i] ^= aNonce[i];
+		}
+		tag[15] &= 0x7f;
+
+		aCipher.engineEncryptBlock(tag, 0, tag, 0);
+
+		return tag;
+	}
+
+
+	/**
+	 * Applies the CTR key stream. The initial counter block is the tag with the most significant bit of the last byte set, the first
+	 * four bytes are a little endian counter.
+	 */
+	private void transform(BlockCipher aCipher, byte[] aTag, byte[] aBuffer, int aOffset, int aLength)
+	{
+		byte[] counter = aTag.clone();
+		counter[15] |= 0x80;
+
+		int initialCounter = (int)INT.get(counter, 0);
+
+		if (aLength >= mParallelThreshold)
+		{
+			int segmentLength = KEY_STREAM_BLOCKS * BYTES_PER_BLOCK * 16;
+			int segments = (aLength + segmentLength - 1) / segmentLength;
+
+			IntStream.range(0, segments).parallel().forEach(i ->
+			{
+				int start = i * segmentLength;
+				transform(aCipher, counter.clone(), initialCounter + start / BYTES_PER_BLOCK, aBuffer, aOffset + start, Math.min(segmentLength, aLength - start));
+			});
+		}
+		else
+		{
+			transform(aCipher, counter, initialCounter, aBuffer, aOffset, aLength);
+		}
+	}
+
+
+	private static void transform(BlockCipher aCipher, byte[] aCounter, int aBlockCounter, byte[] aBuffer, int aOffset, int aLength)
+	{
+		byte[] keyStream = new byte[KEY_STREAM_BLOCKS * BYTES_PER_BLOCK];
+
+		while (aLength > 0)
+		{
+			int blocks = Math.min(KEY_STREAM_BLOCKS, (aLength + BYTES_PER_BLOCK - 1) / BYTES_PER_BLOCK);
+
+			for (int i = 0; i < blocks; i++)
+			{
+				INT.set(aCounter, 0, aBlockCounter++);
+				aCipher.engineEncryptBlock(aCounter, 0, keyStream, i * BYTES_PER_BLOCK);
+			}
+
+			int length = Math.min(aLength, blocks * BYTES_PER_BLOCK);
+			int i = 0;
+
+			for (; i + 8 <= length; i += 8)
+			{
+				LONG.set(aBuffer, aOffset + i, (long)LONG.get(aBuffer, aOffset + i) ^ (long)LONG.get(keyStream, i));
+			}
+			for (; i < length; i++)
+			{
+				aBuffer[aOffset + i] ^= keyStream[i];
+			}
+
+			aOffset += length;
+			aLength -= length;
+		}
+
+		Arrays.fill(keyStream, (byte)0);
+	}
+
+
+	private static void checkNonce(byte[] aNonce)
+	{
+		if (aNonce == null || aNonce.length != NONCE_LENGTH)
+		{
+			throw new IllegalArgumentException("Nonce must be " + NONCE_LENGTH + " bytes.");
+		}
+	}
+}
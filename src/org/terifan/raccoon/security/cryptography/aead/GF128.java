@@ -0,0 +1,229 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+
+/**
+ * Multiplication in GF(2^128) defined by x^128 + x^7 + x^2 + x + 1 using Shoup's table method.
+ * <p>
+ * Field elements are held as two longs (hi, lo). Instances multiply with a fixed multiplier H using 8-bit tables in the reflected bit
+ * order of GCM/GHASH where the most significant bit of hi is the coefficient of x^0 and the least significant bit of lo is the
+ * coefficient of x^127. The static multiplyXorNatural method multiplies two arbitrary elements in the natural bit order used by MGM
+ * where the most significant bit of hi is the coefficient of x^127.
+ * <p>
+ * Instances are immutable after construction and may be shared between threads.
+ */
+final class GF128
+{
+	private final static long R = 0xE100000000000000L;
+	private final static long[] REDUCE = new long[256];
+	private final static long[] REDUCE_NATURAL = new long[16];
+
+	static
+	{
+		for (int i = 0; i < 256; i++)
+		{
+			long[] v = {0, i};
+			for (int j = 0; j < 8; j++)
+			{
+				mulX(v);
+			}
+			REDUCE[i] = v[0];
+		}
+
+		for (int i = 0; i < 16; i++)
+		{
+			long[] v = {(long)i << 60, 0};
+			for (int j = 0; j < 4; j++)
+			{
+				mulXNatural(v);
+			}
+			REDUCE_NATURAL[i] = v[1];
+		}
+	}
+
+	private final long[] mTableHi = new long[256];
+	private final long[] mTableLo = new long[256];
+
+
+	/**
+	 * Create a multiplier for the element provided.
+	 */
+	GF128(long aHi, long aLo)
+	{
+		long[] v = {aHi, aLo};
+
+		for (int i = 0x80; i > 0; i >>>= 1)
+		{
+			mTableHi[i] = v[0];
+			mTableLo[i] = v[1];
+			mulX(v);
+		}
+
+		for (int i = 2; i < 256; i <<= 1)
+		{
+			for (int j = 1; j < i; j++)
+			{
+				mTableHi[i + j] = mTableHi[i] ^ mTableHi[j];
+				mTableLo[i + j] = mTableLo[i] ^ mTableLo[j];
+			}
+		}
+	}
+
+
+	/**
+	 * Multiplies the value with H and xors the product into the accumulator.
+	 *
+	 * @param aHi high word of value
+	 * @param aLo low word of value
+	 * @param aAccumulator two longs receiving the product (hi, lo)
+	 */
+	void multiplyXor(long aHi, long aLo, long[] aAccumulator)
+	{
+		long[] th = mTableHi;
+		long[] tl = mTableLo;
+		long zh = 0;
+		long zl = 0;
+
+		for (int i = 0; i < 64; i += 8)
+		{
+			int d = (int)zl & 0xff;
+			int b = (int)(aLo >>> i) & 0xff;
+			zl = ((zl >>> 8) | (zh << 56)) ^ tl[b];
+			zh = (zh >>> 8) ^ REDUCE[d] ^ th[b];
+		}
+
+		for (int i = 0; i < 64; i += 8)
+		{
+			int d = (int)zl & 0xff;
+			int b = (int)(aHi >>> i) & 0xff;
+			zl = ((zl >>> 8) | (zh << 56)) ^ tl[b];
+			zh = (zh >>> 8) ^ REDUCE[d] ^ th[b];
+		}
+
+		aAccumulator[0] ^= zh;
+		aAccumulator[1] ^= zl;
+	}
+
+
+	/**
+	 * Multiplies the value in place with H.
+	 *
+	 * @param aValue two longs (hi, lo)
+	 */
+	void multiply(long[] aValue)
+	{
+		long hi = aValue[0];
+		long lo = aValue[1];
+		aValue[0] = 0;
+		aValue[1] = 0;
+		multiplyXor(hi, lo, aValue);
+	}
+
+
+	/**
+	 * Returns the multiplier raised to the power provided.
+	 */
+	GF128 pow(long aExponent)
+	{
+		assert aExponent > 0;
+
+		long[] result = {Long.MIN_VALUE, 0}; // one
+		GF128 square = this;
+
+		for (;;)
+		{
+			if ((aExponent & 1) != 0)
+			{
+				square.multiply(result);
+			}
+			aExponent >>>= 1;
+			if (aExponent == 0)
+			{
+				break;
+			}
+			long[] v = {square.mTableHi[0x80], square.mTableLo[0x80]};
+			square.multiply(v);
+			square = new GF128(v[0], v[1]);
+		}
+
+		return new GF128(result[0], result[1]);
+	}
+
+
+	/**
+	 * Multiplies two elements in natural bit order and xors the product into the accumulator. The multiplication uses a 4-bit table
+	 * built for the second operand.
+	 *
+	 * @param aTable scratch space of 32 longs
+	 * @param aAccumulator two longs receiving the product (hi, lo)
+	 */
+	static void multiplyXorNatural(long aHi, long aLo, long aMultiplierHi, long aMultiplierLo, long[] aTable, long[] aAccumulator)
+	{
+		long vh = aMultiplierHi;
+		long vl = aMultiplierLo;
+
+		for (int i = 1; i < 16; i <<= 1)
+		{
+			aTable[2 * i] = vh;
+			aTable[2 * i + 1] = vl;
+			long carry = -(vh >>> 63);
+			vh = (vh << 1) | (vl >>> 63);
+			vl = (vl << 1) ^ (carry & 0x87);
+		}
+
+		aTable[0] = 0;
+		aTable[1] = 0;
+
+		for (int i = 2; i < 16; i <<= 1)
+		{
+			for (int j = 1; j < i; j++)
+			{
+				aTable[2 * (i + j)] = aTable[2 * i] ^ aTable[2 * j];
+				aTable[2 * (i + j) + 1] = aTable[2 * i + 1] ^ aTable[2 * j + 1];
+			}
+		}
+
+		long zh = 0;
+		long zl = 0;
+
+		for (int i = 60; i >= 0; i -= 4)
+		{
+			int t = (int)(zh >>> 60);
+			int b = 2 * ((int)(aHi >>> i) & 15);
+			zh = ((zh << 4) | (zl >>> 60)) ^ aTable[b];
+			zl = (zl << 4) ^ REDUCE_NATURAL[t] ^ aTable[b + 1];
+		}
+
+		for (int i = 60; i >= 0; i -= 4)
+		{
+			int t = (int)(zh >>> 60);
+			int b = 2 * ((int)(aLo >>> i) & 15);
+			zh = ((zh << 4) | (zl >>> 60)) ^ aTable[b];
+			zl = (zl << 4) ^ REDUCE_NATURAL[t] ^ aTable[b + 1];
+		}
+
+		aAccumulator[0] ^= zh;
+		aAccumulator[1] ^= zl;
+	}
+
+
+	/**
+	 * Multiplies the value in place with x.
+	 */
+	static void mulX(long[] aValue)
+	{
+		long carry = -(aValue[1] & 1);
+		aValue[1] = (aValue[1] >>> 1) | (aValue[0] << 63);
+		aValue[0] = (aValue[0] >>> 1) ^ (carry & R);
+	}
+
+
+	/**
+	 * Multiplies the value in place with x using natural bit order.
+	 */
+	static void mulXNatural(long[] aValue)
+	{
+		long carry = -(aValue[0] >>> 63);
+		aValue[0] = (aValue[0] << 1) | (aValue[1] >>> 63);
+		aValue[1] = (aValue[1] << 1) ^ (carry & 0x87);
+	}
+}
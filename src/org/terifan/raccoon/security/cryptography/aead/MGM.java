@@ -0,0 +1,248 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+
+
+/**
+ * Multilinear Galois Mode (MGM) authenticated encryption for 128-bit block ciphers as defined in RFC 9058, typically used with
+ * Kuznechik.
+ * <p>
+ * The encryption counter Y and the authentication counter Z are independent, key stream and authentication multipliers are produced
+ * in batches with both counters interleaved in the same loop. Encryption and authentication are done in a single pass over the data.
+ * Instances are thread safe provided the cipher is.
+ *
+ * <pre>
+ * MGM mgm = new MGM(new Kuznechik(key));
+ * byte[] sealed = mgm.encrypt(nonce, header, plaintext);
+ * </pre>
+ */
+public final class MGM implements AEADCipher
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private final static int BYTES_PER_BLOCK = 16;
+	private final static int BATCH_BLOCKS = 32;
+
+	private final BlockCipher mCipher;
+	private final int mTagLength;
+
+
+	/**
+	 * Create an MGM instance producing 16 byte tags.
+	 *
+	 * @param aCipher an initialized 128-bit block cipher
+	 */
+	public MGM(BlockCipher aCipher)
+	{
+		this(aCipher, BYTES_PER_BLOCK);
+	}
+
+
+	/**
+	 * @param aCipher an initialized 128-bit block cipher
+	 * @param aTagLength length of the authentication tag, 4 to 16 bytes
+	 */
+	public MGM(BlockCipher aCipher, int aTagLength)
+	{
+		if (aTagLength < 4 || aTagLength > BYTES_PER_BLOCK)
+		{
+			throw new IllegalArgumentException("Tag length must be 4 to 16 bytes: " + aTagLength);
+		}
+
+		mCipher = aCipher;
+		mTagLength = aTagLength;
+	}
+
+
+	/**
+	 * The nonce is 16 bytes where the most significant bit of the first byte must be zero.
+	 */
+	@Override
+	public int getNonceLength()
+	{
+		return BYTES_PER_BLOCK;
+	}
+
+
+	@Override
+	public int getTagLength()
+	{
+		return mTagLength;
+	}
+
+
+	@Override
+	public void encrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, byte[] aTag, int aTagOffset)
+	{
+		byte[] tag = process(aNonce, aAssociatedData, aBuffer, aOffset, aLength, true);
+
+		System.arraycopy(tag, 0, aTag, aTagOffset, mTagLength);
+	}
+
+
+	@Override
+	public void decrypt(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, byte[] aTag, int aTagOffset) throws InvalidTagException
+	{
+		byte[] expected = Arrays.copyOfRange(aTag, aTagOffset, aTagOffset + mTagLength);
+
+		byte[] tag = process(aNonce, aAssociatedData, aBuffer, aOffset, aLength, false);
+
+		if (!MessageDigest.isEqual(Arrays.copyOf(tag, mTagLength), expected))
+		{
+			Arrays.fill(aBuffer, aOffset, aOffset + aLength, (byte)0);
+
+			throw new InvalidTagException("Authentication tag mismatch.");
+		}
+	}
+
+
+	private byte[] process(byte[] aNonce, byte[] aAssociatedData, byte[] aBuffer, int aOffset, int aLength, boolean aEncrypt)
+	{
+		if (aNonce == null || aNonce.length != BYTES_PER_BLOCK || (aNonce[0] & 0x80) != 0)
+		{
+			throw new IllegalArgumentException("Nonce must be 16 bytes with the most significant bit cleared.");
+		}
+
+		byte[] counter = aNonce.clone();
+		byte[] y = new byte[BYTES_PER_BLOCK];
+		byte[] z = new byte[BYTES_PER_BLOCK];
+
+		mCipher.engineEncryptBlock(counter, 0, y, 0);
+		counter[0] |= 0x80;
+		mCipher.engineEncryptBlock(counter, 0, z, 0);
+
+		long yLo = (long)LONG.get(y, 8);
+		long zHi = (long)LONG.get(z, 0);
+
+		byte[] keyStream = new byte[BATCH_BLOCKS * BYTES_PER_BLOCK];
+		byte[] multipliers = new byte[BATCH_BLOCKS * BYTES_PER_BLOCK];
+		byte[] lastBlock = new byte[BYTES_PER_BLOCK];
+		long[] table = new long[32];
+		long[] sum = new long[2];
+
+		// associated data, only the Z counter is used
+		int aadLength = aAssociatedData == null ? 0 : aAssociatedData.length;
+
+		for (int offset = 0; offset < aadLength;)
+		{
+			int blocks = Math.min(BATCH_BLOCKS, (aadLength - offset + BYTES_PER_BLOCK - 1) / BYTES_PER_BLOCK);
+
+			for (int i = 0; i < blocks; i++, zHi++)
+			{
+				LONG.set(z, 0, zHi);
+				mCipher.engineEncryptBlock(z, 0, multipliers, i * BYTES_PER_BLOCK);
+			}
+
+			for (int i = 0; i < blocks; i++, offset += BYTES_PER_BLOCK)
+			{
+				byte[] in = aAssociatedData;
+				int inOffset = offset;
+				if (aadLength - offset < BYTES_PER_BLOCK)
+				{
+					in = padLastBlock(aAssociatedData, offset, aadLength - offset, lastBlock);
+					inOffset = 0;
+				}
+				multiply(in, inOffset, multipliers, i * BYTES_PER_BLOCK, table, sum);
+			}
+		}
+
+		// data, both counters are advanced in the same loop
+		for (int offset = 0; offset < aLength;)
+		{
+			int blocks = Math.min(BATCH_BLOCKS, (aLength - offset + BYTES_PER_BLOCK - 1) / BYTES_PER_BLOCK);
+
+			for (int i = 0; i < blocks; i++, yLo++, zHi++)
+			{
+				LONG.set(y, 8, yLo);
+				LONG.set(z, 0, zHi);
+				mCipher.engineEncryptBlock(y, 0, keyStream, i * BYTES_PER_BLOCK);
+				mCipher.engineEncryptBlock(z, 0, multipliers, i * BYTES_PER_BLOCK);
+			}
+
+			for (int i = 0; i < blocks; i++, offset += BYTES_PER_BLOCK)
+			{
+				int position = aOffset + offset;
+				int length = Math.min(BYTES_PER_BLOCK, aLength - offset);
+
+				if (!aEncrypt)
+				{
+					multiply(aBuffer, position, length, multipliers, i * BYTES_PER_BLOCK, lastBlock, table, sum);
+				}
+
+				if (length == BYTES_PER_BLOCK)
+				{
+					LONG.set(aBuffer, position, (long)LONG.get(aBuffer, position) ^ (long)LONG.get(keyStream, i * BYTES_PER_BLOCK));
+					LONG.set(aBuffer, position + 8, (long)LONG.get(aBuffer, position + 8) ^ (long)LONG.get(keyStream, i * BYTES_PER_BLOCK + 8));
+				}
+				else
+				{
+					for (int j = 0; j < length; j++)
+					{
+						aBuffer[position + j] ^= keyStream[i * BYTES_PER_BLOCK + j];
+					}
+				}
+
+				if (aEncrypt)
+				{
+					multiply(aBuffer, position, length, multipliers, i * BYTES_PER_BLOCK, lastBlock, table, sum);
+				}
+			}
+		}
+
+		// lengths block
+		LONG.set(z, 0, zHi);
+		mCipher.engineEncryptBlock(z, 0, multipliers, 0);
+		LONG.set(lastBlock, 0, 8L * aadLength);
+		LONG.set(lastBlock, 8, 8L * aLength);
+		multiply(lastBlock, 0, multipliers, 0, table, sum);
+
+		byte[] tag = new byte[BYTES_PER_BLOCK];
+		LONG.set(tag, 0, sum[0]);
+		LONG.set(tag, 8, sum[1]);
+		mCipher.engineEncryptBlock(tag, 0, tag, 0);
+
+		Arrays.fill(keyStream, (byte)0);
+		Arrays.fill(multipliers, (byte)0);
+		Arrays.fill(lastBlock, (byte)0);
+
+		return tag;
+	}
+
+
+	private static void multiply(byte[] aBuffer, int aOffset, int aLength, byte[] aMultipliers, int aMultiplierOffset, byte[] aLastBlock, long[] aTable, long[] aSum)
+	{
+		if (aLength < BYTES_PER_BLOCK)
+		{
+			multiply(padLastBlock(aBuffer, aOffset, aLength, aLastBlock), 0, aMultipliers, aMultiplierOffset, aTable, aSum);
+		}
+		else
+		{
+			multiply(aBuffer, aOffset, aMultipliers, aMultiplierOffset, aTable, aSum);
+		}
+	}
+
+
+	private static void multiply(byte[] aBuffer, int aOffset, byte[] aMultipliers, int aMultiplierOffset, long[] aTable, long[] aSum)
+	{
+		GF128.multiplyXorNatural(
+			(long)LONG.get(aBuffer, aOffset),
+			(long)LONG.get(aBuffer, aOffset + 8),
+			(long)LONG.get(aMultipliers, aMultiplierOffset),
+			(long)LONG.get(aMultipliers, aMultiplierOffset + 8),
+			aTable,
+			aSum);
+	}
+
+
+	private static byte[] padLastBlock(byte[] aBuffer, int aOffset, int aLength, byte[] aLastBlock)
+	{
+		Arrays.fill(aLastBlock, (byte)0);
+		System.arraycopy(aBuffer, aOffset, aLastBlock, 0, aLength);
+		return aLastBlock;
+	}
+}
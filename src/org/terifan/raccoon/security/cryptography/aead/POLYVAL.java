@@ -0,0 +1,187 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+/**
+ * POLYVAL universal hash as defined in RFC 8452.
+ * <p>
+ * POLYVAL is computed as GHASH on byte reversed blocks (RFC 8452 Appendix A) using a table driven multiplication. Blocks are processed
+ * four at a time with precomputed powers of H so the four multiplications are independent of each other. Large inputs are split into
+ * segments hashed in parallel and combined using H raised to the segment length.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class POLYVAL
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static int BYTES_PER_BLOCK = 16;
+	private final static int SEGMENT_BLOCKS = 4096;
+	final static int PARALLEL_THRESHOLD = 4 * SEGMENT_BLOCKS;
+
+	private final long[] mAccumulator;
+	private final GF128 mH1;
+	private final int mParallelThreshold;
+	private GF128[] mPowers;
+
+
+	/**
+	 * @param aKey a 16 byte key
+	 */
+	public POLYVAL(byte[] aKey)
+	{
+		this(aKey, Runtime.getRuntime().availableProcessors() > 1 ? PARALLEL_THRESHOLD : Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * @param aKey a 16 byte key
+	 * @param aParallelThreshold minimum number of blocks in an update that are hashed in parallel segments
+	 */
+	POLYVAL(byte[] aKey, int aParallelThreshold)
+	{
+		if (aKey.length != BYTES_PER_BLOCK)
+		{
+			throw new IllegalArgumentException("Key must be 16 bytes: " + aKey.length);
+		}
+
+		long[] h = {(long)LONG.get(aKey, 8), (long)LONG.get(aKey, 0)};
+		GF128.mulX(h);
+
+		mH1 = new GF128(h[0], h[1]);
+		mAccumulator = new long[2];
+		mParallelThreshold = aParallelThreshold;
+	}
+
+
+	/**
+	 * Hash the data provided. A partial final block is padded with zeros, i.e. each call starts on a block boundary.
+	 */
+	public void update(byte[] aBuffer, int aOffset, int aLength)
+	{
+		int blocks = aLength / BYTES_PER_BLOCK;
+
+		if (blocks >= mParallelThreshold)
+		{
+			updateParallel(aBuffer, aOffset, blocks);
+		}
+		else
+		{
+			process(aBuffer, aOffset, blocks, mAccumulator);
+		}
+
+		int remaining = aLength - blocks * BYTES_PER_BLOCK;
+
+		if (remaining > 0)
+		{
+			byte[] block = new byte[BYTES_PER_BLOCK];
+			System.arraycopy(aBuffer, aOffset + aLength - remaining, block, 0, remaining);
+			process(block, 0, 1, mAccumulator);
+		}
+	}
+
+
+	/**
+	 * Writes the 16 byte hash value to the buffer provided and resets this instance.
+	 */
+	public void digest(byte[] aOutput, int aOffset)
+	{
+		LONG.set(aOutput, aOffset, mAccumulator[1]);
+		LONG.set(aOutput, aOffset + 8, mAccumulator[0]);
+
+		reset();
+	}
+
+
+	/**
+	 * Returns the 16 byte hash value and resets this instance.
+	 */
+	public byte[] digest()
+	{
+		byte[] output = new byte[BYTES_PER_BLOCK];
+		digest(output, 0);
+		return output;
+	}
+
+
+	public void reset()
+	{
+		Arrays.fill(mAccumulator, 0);
+	}
+
+
+	private void updateParallel(byte[] aBuffer, int aOffset, int aBlocks)
+	{
+		int segments = (aBlocks + SEGMENT_BLOCKS - 1) / SEGMENT_BLOCKS;
+		long[][] partials = new long[segments][2];
+
+		powers();
+
+		IntStream.range(0, segments).parallel().forEach(i ->
+		{
+			int blocks = Math.min(SEGMENT_BLOCKS, aBlocks - i * SEGMENT_BLOCKS);
+			process(aBuffer, aOffset + i * SEGMENT_BLOCKS * BYTES_PER_BLOCK, blocks, partials[i]);
+		});
+
+		// acc = acc * H^n ^ partial, the last segment may be shorter
+		GF128 segmentPower = mH1.pow(SEGMENT_BLOCKS);
+
+		for (int i = 0; i < segments; i++)
+		{
+			int blocks = Math.min(SEGMENT_BLOCKS, aBlocks - i * SEGMENT_BLOCKS);
+			(blocks == SEGMENT_BLOCKS ? segmentPower : mH1.pow(blocks)).multiply(mAccumulator);
+			mAccumulator[0] ^= partials[i][0];
+			mAccumulator[1] ^= partials[i][1];
+		}
+	}
+
+
+	private void process(byte[] aBuffer, int aOffset, int aBlocks, long[] aAccumulator)
+	{
+		long[] acc = aAccumulator;
+		int block = 0;
+
+		if (aBlocks >= 8)
+		{
+			GF128[] powers = powers();
+			GF128 h1 = powers[0];
+			GF128 h2 = powers[1];
+			GF128 h3 = powers[2];
+			GF128 h4 = powers[3];
+			long[] sum = new long[2];
+
+			for (; block + 4 <= aBlocks; block += 4, aOffset += 4 * BYTES_PER_BLOCK)
+			{
+				sum[0] = 0;
+				sum[1] = 0;
+				h4.multiplyXor(acc[0] ^ (long)LONG.get(aBuffer, aOffset + 8), acc[1] ^ (long)LONG.get(aBuffer, aOffset), sum);
+				h3.multiplyXor((long)LONG.get(aBuffer, aOffset + 24), (long)LONG.get(aBuffer, aOffset + 16), sum);
+				h2.multiplyXor((long)LONG.get(aBuffer, aOffset + 40), (long)LONG.get(aBuffer, aOffset + 32), sum);
+				h1.multiplyXor((long)LONG.get(aBuffer, aOffset + 56), (long)LONG.get(aBuffer, aOffset + 48), sum);
+				acc[0] = sum[0];
+				acc[1] = sum[1];
+			}
+		}
+
+		for (; block < aBlocks; block++, aOffset += BYTES_PER_BLOCK)
+		{
+			acc[0] ^= (long)LONG.get(aBuffer, aOffset + 8);
+			acc[1] ^= (long)LONG.get(aBuffer, aOffset);
+			mH1.multiply(acc);
+		}
+	}
+
+
+	private GF128[] powers()
+	{
+		if (mPowers == null)
+		{
+			mPowers = new GF128[]{mH1, mH1.pow(2), mH1.pow(3), mH1.pow(4)};
+		}
+		return mPowers;
+	}
+}
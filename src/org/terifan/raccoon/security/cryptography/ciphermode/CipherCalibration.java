@@ -0,0 +1,400 @@
+package org.terifan.raccoon.security.cryptography.ciphermode;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.Kuznechik;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.Serpent;
+import org.terifan.raccoon.security.cryptography.Twofish;
+
+
+/**
+ * Measures the throughput of block cipher and cipher mode combinations on the running host and selects the fastest combination allowed
+ * by a policy. Results are cached in a file and reused by later starts on the same host, JVM, unit size and registrations.
+ * <p>
+ * The built in ciphers and modes are registered by default, other implementations, e.g. an adapter to an intrinsic AES, can be added
+ * before calibrating.
+ *
+ * <pre>
+ * CipherCalibration calibration = new CipherCalibration(4096);
+ * CipherCalibration.Measurement best = calibration.calibrate(cacheFile, CipherCalibration.minimumKeyBits(256));
+ * UnitCipher cipher = calibration.createUnitCipher(best, cipherKey, tweakKey, blockIV);
+ * </pre>
+ */
+public final class CipherCalibration
+{
+	private final static int BUFFER_SIZE = 256 * 1024;
+	private final static String CACHE_VERSION = "1";
+
+	private final LinkedHashMap<String, CipherEntry> mCiphers;
+	private final LinkedHashMap<String, Supplier<CipherMode>> mModes;
+	private final int mUnitSize;
+	private Duration mWarmup;
+	private Duration mDuration;
+	private List<Measurement> mMeasurements;
+
+
+	/**
+	 * Creates a calibration with all built in ciphers and the XTS, CBC and CTR modes registered.
+	 */
+	public CipherCalibration(int aUnitSize)
+	{
+		if (aUnitSize <= 0 || (aUnitSize % 16) != 0)
+		{
+			throw new IllegalArgumentException("Unit size must be a positive multiple of 16: " + aUnitSize);
+		}
+
+		mUnitSize = aUnitSize;
+		mCiphers = new LinkedHashMap<>();
+		mModes = new LinkedHashMap<>();
+		mWarmup = Duration.ofMillis(50);
+		mDuration = Duration.ofMillis(100);
+		mMeasurements = List.of();
+
+		addCipher("AES", AES::new, 16, 24, 32);
+		addCipher("Twofish", Twofish::new, 16, 24, 32);
+		addCipher("Serpent", Serpent::new, 16, 24, 32);
+		addCipher("Kuznechik", Kuznechik::new, 32);
+		addMode("XTS", XTSCipherMode::new);
+		addMode("CBC", CBCCipherMode::new);
+		addMode("CTR", CTRCipherMode::new);
+	}
+
+
+	/**
+	 * Registers a block cipher, replacing any cipher with the same name.
+	 *
+	 * @param aName the name of the cipher
+	 * @param aFactory creates uninitialized instances
+	 * @param aKeyLengths supported key lengths in bytes
+	 */
+	public CipherCalibration addCipher(String aName, Supplier<BlockCipher> aFactory, int... aKeyLengths)
+	{
+		mCiphers.put(aName, new CipherEntry(aFactory, aKeyLengths.clone()));
+		return this;
+	}
+
+
+	/**
+	 * Registers a cipher mode, replacing any mode with the same name.
+	 */
+	public CipherCalibration addMode(String aName, Supplier<CipherMode> aFactory)
+	{
+		mModes.put(aName, aFactory);
+		return this;
+	}
+
+
+	public CipherCalibration removeCipher(String aName)
+	{
+		mCiphers.remove(aName);
+		return this;
+	}
+
+
+	public CipherCalibration removeMode(String aName)
+	{
+		mModes.remove(aName);
+		return this;
+	}
+
+
+	/**
+	 * Sets the time each combination runs before and while being measured.
+	 */
+	public CipherCalibration setDuration(Duration aWarmup, Duration aDuration)
+	{
+		mWarmup = aWarmup;
+		mDuration = aDuration;
+		return this;
+	}
+
+
+	/**
+	 * Returns the measurements of the last calibration, fastest first.
+	 */
+	public List<Measurement> getMeasurements()
+	{
+		return mMeasurements;
+	}
+
+
+	/**
+	 * Measures every combination of registered cipher, key length and mode.
+	 *
+	 * @return the measurements, fastest first
+	 */
+	public List<Measurement> measure()
+	{
+		ArrayList<Measurement> measurements = new ArrayList<>();
+		byte[] buffer = new byte[Math.max(1, BUFFER_SIZE / mUnitSize) * mUnitSize];
+		Random random = new Random();
+		random.nextBytes(buffer);
+
+		for (Map.Entry<String, CipherEntry> cipher : mCiphers.entrySet())
+		{
+			for (int keyLength : cipher.getValue().keyLengths())
+			{
+				for (Map.Entry<String, Supplier<CipherMode>> mode : mModes.entrySet())
+				{
+					UnitCipher unitCipher = createUnitCipher(cipher.getValue().factory(), mode.getValue().get(), keyLength, random);
+
+					run(unitCipher, buffer, mWarmup.toNanos());
+					long start = System.nanoTime();
+					long bytes = run(unitCipher, buffer, mDuration.toNanos());
+					long time = Math.max(1, System.nanoTime() - start);
+
+					measurements.add(new Measurement(cipher.getKey(), mode.getKey(), 8 * keyLength, bytes * 1e9 / time / (1 << 20)));
+				}
+			}
+		}
+
+		measurements.sort(Comparator.comparingDouble(Measurement::megabytesPerSecond).reversed());
+		mMeasurements = Collections.unmodifiableList(measurements);
+
+		return mMeasurements;
+	}
+
+
+	/**
+	 * Returns the fastest measured combination accepted by the policy.
+	 *
+	 * @throws IllegalStateException
+	 *    if no measured combination is accepted
+	 */
+	public Measurement select(Predicate<Measurement> aPolicy)
+	{
+		return mMeasurements.stream().filter(aPolicy).filter(e -> mCiphers.containsKey(e.cipher()) && mModes.containsKey(e.mode())).findFirst().orElseThrow(() -> new IllegalStateException("No measured cipher satisfies the policy."));
+	}
+
+
+	/**
+	 * Loads the measurements from the cache file if it was written on this host with the same JVM, unit size, ciphers and modes,
+	 * otherwise measures and writes the cache file. Returns the fastest combination accepted by the policy.
+	 *
+	 * @param aCacheFile the cache file, may be null to always measure
+	 */
+	public Measurement calibrate(Path aCacheFile, Predicate<Measurement> aPolicy) throws IOException
+	{
+		if (aCacheFile == null || !load(aCacheFile))
+		{
+			measure();
+
+			if (aCacheFile != null)
+			{
+				save(aCacheFile);
+			}
+		}
+
+		return select(aPolicy);
+	}
+
+
+	/**
+	 * Creates a UnitCipher using the combination measured.
+	 */
+	public UnitCipher createUnitCipher(Measurement aMeasurement, SecretKey aCipherKey, SecretKey aTweakKey, int[] aBlockIV)
+	{
+		CipherEntry entry = mCiphers.get(aMeasurement.cipher());
+		Supplier<CipherMode> mode = mModes.get(aMeasurement.mode());
+
+		if (entry == null || mode == null)
+		{
+			throw new IllegalArgumentException("Cipher or mode not registered: " + aMeasurement);
+		}
+		if (aCipherKey.length() * 8 != aMeasurement.keyBits())
+		{
+			throw new IllegalArgumentException("Key length doesn't match the measurement: " + aCipherKey.length() * 8 + " bits");
+		}
+
+		BlockCipher cipher = entry.factory().get();
+		BlockCipher tweakCipher = entry.factory().get();
+		cipher.engineInit(aCipherKey);
+		tweakCipher.engineInit(aTweakKey);
+
+		return new UnitCipher(mode.get(), cipher, tweakCipher, aBlockIV, mUnitSize);
+	}
+
+
+	/**
+	 * Accepts combinations with a key length of at least the number of bits provided.
+	 */
+	public static Predicate<Measurement> minimumKeyBits(int aBits)
+	{
+		return e -> e.keyBits() >= aBits;
+	}
+
+
+	/**
+	 * Accepts combinations using one of the ciphers provided.
+	 */
+	public static Predicate<Measurement> ciphers(String... aNames)
+	{
+		List<String> names = List.of(aNames);
+		return e -> names.contains(e.cipher());
+	}
+
+
+	/**
+	 * Accepts combinations using one of the modes provided.
+	 */
+	public static Predicate<Measurement> modes(String... aNames)
+	{
+		List<String> names = List.of(aNames);
+		return e -> names.contains(e.mode());
+	}
+
+
+	private long run(UnitCipher aCipher, byte[] aBuffer, long aNanos)
+	{
+		long bytes = 0;
+		long start = System.nanoTime();
+
+		for (long unitNo = 0; System.nanoTime() - start < aNanos || bytes == 0; unitNo += aBuffer.length / mUnitSize)
+		{
+			aCipher.encrypt(aBuffer, 0, aBuffer.length, unitNo);
+			bytes += aBuffer.length;
+		}
+
+		return bytes;
+	}
+
+
+	private UnitCipher createUnitCipher(Supplier<BlockCipher> aFactory, CipherMode aMode, int aKeyLength, Random aRandom)
+	{
+		byte[] key = new byte[aKeyLength];
+		byte[] tweak = new byte[aKeyLength];
+		aRandom.nextBytes(key);
+		aRandom.nextBytes(tweak);
+
+		BlockCipher cipher = aFactory.get();
+		BlockCipher tweakCipher = aFactory.get();
+		cipher.engineInit(new SecretKey(key));
+		tweakCipher.engineInit(new SecretKey(tweak));
+
+		return new UnitCipher(aMode, cipher, tweakCipher, aRandom.ints(4).toArray(), mUnitSize);
+	}
+
+
+	/**
+	 * Identifies the conditions the measurements are valid for, including the registered ciphers, key lengths and modes with their
+	 * implementation classes so that a cache written before a registration changed is measured again.
+	 */
+	private String fingerprint()
+	{
+		TreeSet<String> ciphers = new TreeSet<>();
+		for (Map.Entry<String, CipherEntry> cipher : mCiphers.entrySet())
+		{
+			String implementation = cipher.getValue().factory().get().getClass().getName();
+
+			for (int keyLength : cipher.getValue().keyLengths())
+			{
+				ciphers.add(cipher.getKey() + "-" + 8 * keyLength + "=" + implementation);
+			}
+		}
+
+		TreeSet<String> modes = new TreeSet<>();
+		for (Map.Entry<String, Supplier<CipherMode>> mode : mModes.entrySet())
+		{
+			modes.add(mode.getKey() + "=" + mode.getValue().get().getClass().getName());
+		}
+
+		return String.join("|", CACHE_VERSION, System.getProperty("os.arch"), System.getProperty("java.vm.name"), System.getProperty("java.vm.version"), Integer.toString(Runtime.getRuntime().availableProcessors()), Integer.toString(mUnitSize), String.join(",", ciphers), String.join(",", modes));
+	}
+
+
+	private boolean load(Path aCacheFile) throws IOException
+	{
+		if (!Files.exists(aCacheFile))
+		{
+			return false;
+		}
+
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(aCacheFile))
+		{
+			properties.load(reader);
+		}
+
+		if (!fingerprint().equals(properties.getProperty("fingerprint")))
+		{
+			return false;
+		}
+
+		ArrayList<Measurement> measurements = new ArrayList<>();
+
+		try
+		{
+			for (int i = 0; properties.containsKey("measurement." + i); i++)
+			{
+				String[] values = properties.getProperty("measurement." + i).split(",");
+				measurements.add(new Measurement(values[0], values[1], Integer.parseInt(values[2]), Double.parseDouble(values[3])));
+			}
+		}
+		catch (RuntimeException e)
+		{
+			return false;
+		}
+
+		measurements.sort(Comparator.comparingDouble(Measurement::megabytesPerSecond).reversed());
+		mMeasurements = Collections.unmodifiableList(measurements);
+
+		return !measurements.isEmpty();
+	}
+
+
+	private void save(Path aCacheFile) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("fingerprint", fingerprint());
+
+		for (int i = 0; i < mMeasurements.size(); i++)
+		{
+			Measurement m = mMeasurements.get(i);
+			properties.setProperty("measurement." + i, m.cipher() + "," + m.mode() + "," + m.keyBits() + "," + m.megabytesPerSecond());
+		}
+
+		Path temp = aCacheFile.resolveSibling(aCacheFile.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temp))
+		{
+			properties.store(writer, "cipher calibration");
+		}
+		Files.move(temp, aCacheFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * The measured encryption throughput of a combination.
+	 */
+	public record Measurement(String cipher, String mode, int keyBits, double megabytesPerSecond)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format("%s-%d/%s %.1f MB/s", cipher, keyBits, mode, megabytesPerSecond);
+		}
+	}
+
+
+	private record CipherEntry(Supplier<BlockCipher> factory, int[] keyLengths)
+	{
+	}
+}
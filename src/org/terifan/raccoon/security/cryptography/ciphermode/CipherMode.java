@@ -1,6 +1,9 @@
 package org.terifan.raccoon.security.cryptography.ciphermode;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.messagedigest.Checksum128;
 
 
 public abstract class CipherMode
@@ -40,6 +43,132 @@ public abstract class CipherMode
 	public abstract void decrypt(final byte[] aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher);
 
 
+	/**
+	 * Encrypts a region of a ByteBuffer using the cipher mode and the provided ciphers. The position and limit of the buffer are not
+	 * changed. Buffers without an accessible array are copied to a temporary array unless the cipher mode overrides this method.
+	 *
+	 * @param aBuffer the buffer to encrypt
+	 * @param aOffset the absolute start offset in the buffer
+	 * @param aLength number of bytes to encrypt; must be divisible by 16
+	 * @param aStartDataUnitNo the sequential number of the data unit with which the buffer starts.
+	 * @param aUnitSize size of a unit, the length must be a multiple of unit size
+	 * @param aCipher the primary key schedule
+	 * @param aBlockIV initialization vector for this block
+	 * @param aTweakCipher cipher to used to encrypt the IV
+	 */
+	public void encrypt(final ByteBuffer aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher)
+	{
+		if (aBuffer.hasArray())
+		{
+			encrypt(aBuffer.array(), aBuffer.arrayOffset() + aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher);
+			return;
+		}
+
+		byte[] buffer = new byte[aLength];
+		aBuffer.get(aOffset, buffer);
+		encrypt(buffer, 0, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher);
+		aBuffer.put(aOffset, buffer);
+		Arrays.fill(buffer, (byte)0);
+	}
+
+
+	/**
+	 * Decrypts a region of a ByteBuffer using the cipher mode and the provided ciphers. The position and limit of the buffer are not
+	 * changed. Buffers without an accessible array are copied to a temporary array unless the cipher mode overrides this method.
+	 *
+	 * @param aBuffer the buffer to decrypt
+	 * @param aOffset the absolute start offset in the buffer
+	 * @param aLength number of bytes to decrypt; must be divisible by 16
+	 * @param aStartDataUnitNo the sequential number of the data unit with which the buffer starts.
+	 * @param aUnitSize size of a unit, the length must be a multiple of unit size
+	 * @param aCipher the primary key schedule
+	 * @param aBlockIV initialization vector for this block
+	 * @param aTweakCipher cipher to used to encrypt the IV
+	 */
+	public void decrypt(final ByteBuffer aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher)
+	{
+		if (aBuffer.hasArray())
+		{
+			decrypt(aBuffer.array(), aBuffer.arrayOffset() + aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher);
+			return;
+		}
+
+		byte[] buffer = new byte[aLength];
+		aBuffer.get(aOffset, buffer);
+		decrypt(buffer, 0, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher);
+		aBuffer.put(aOffset, buffer);
+		Arrays.fill(buffer, (byte)0);
+	}
+
+
+	/**
+	 * Encrypts a buffer and computes a checksum of each data unit, either of the plaintext or of the ciphertext. Cipher modes may
+	 * override this method to compute the checksum block by block inside the cipher loop, the default implementation checksums each
+	 * unit in a separate pass right before or after encrypting it.
+	 *
+	 * @param aChecksum the checksum algorithm
+	 * @param aSeed the seed of each unit checksum
+	 * @param aChecksumPlaintext checksum the plaintext instead of the ciphertext
+	 * @param aChecksums receives four ints per data unit
+	 */
+	public void encrypt(final byte[] aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher, Checksum128 aChecksum, long aSeed, boolean aChecksumPlaintext, int[] aChecksums)
+	{
+		for (int unit = 0, offset = aOffset; offset < aOffset + aLength; unit++, offset += aUnitSize)
+		{
+			if (aChecksumPlaintext)
+			{
+				checksum(aBuffer, offset, aUnitSize, aChecksum, aSeed, aChecksums, 4 * unit);
+			}
+
+			encrypt(aBuffer, offset, aUnitSize, aCipher, aStartDataUnitNo + unit, aUnitSize, aBlockIV, aTweakCipher);
+
+			if (!aChecksumPlaintext)
+			{
+				checksum(aBuffer, offset, aUnitSize, aChecksum, aSeed, aChecksums, 4 * unit);
+			}
+		}
+	}
+
+
+	/**
+	 * Decrypts a buffer and computes a checksum of each data unit, either of the plaintext or of the ciphertext. Cipher modes may
+	 * override this method to compute the checksum block by block inside the cipher loop.
+	 *
+	 * @param aChecksum the checksum algorithm
+	 * @param aSeed the seed of each unit checksum
+	 * @param aChecksumPlaintext checksum the plaintext instead of the ciphertext
+	 * @param aChecksums receives four ints per data unit
+	 */
+	public void decrypt(final byte[] aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher, Checksum128 aChecksum, long aSeed, boolean aChecksumPlaintext, int[] aChecksums)
+	{
+		for (int unit = 0, offset = aOffset; offset < aOffset + aLength; unit++, offset += aUnitSize)
+		{
+			if (!aChecksumPlaintext)
+			{
+				checksum(aBuffer, offset, aUnitSize, aChecksum, aSeed, aChecksums, 4 * unit);
+			}
+
+			decrypt(aBuffer, offset, aUnitSize, aCipher, aStartDataUnitNo + unit, aUnitSize, aBlockIV, aTweakCipher);
+
+			if (aChecksumPlaintext)
+			{
+				checksum(aBuffer, offset, aUnitSize, aChecksum, aSeed, aChecksums, 4 * unit);
+			}
+		}
+	}
+
+
+	private static void checksum(byte[] aBuffer, int aOffset, int aLength, Checksum128 aChecksum, long aSeed, int[] aOutput, int aOutputOffset)
+	{
+		aChecksum.reset(aSeed);
+		for (int i = 0; i < aLength; i += 16)
+		{
+			aChecksum.updateBlock(aBuffer, aOffset + i);
+		}
+		aChecksum.finish(aOutput, aOutputOffset);
+	}
+
+
 	protected static void prepareIV(int[] aBlockIV, long aDataUnitNo, byte[] aOutputIV, BlockCipher aTweakCipher)
 	{
 		assert aTweakCipher != null;
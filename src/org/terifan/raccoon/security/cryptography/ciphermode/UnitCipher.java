@@ -0,0 +1,193 @@
+package org.terifan.raccoon.security.cryptography.ciphermode;
+
+import java.nio.ByteBuffer;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.messagedigest.Checksum128;
+
+
+/**
+ * Binds a cipher mode to its ciphers, block IV and unit size so that data units can be encrypted and decrypted by number alone.
+ * <p>
+ * Instances are thread safe provided the cipher mode and the ciphers are.
+ *
+ * <pre>
+ * UnitCipher unitCipher = new UnitCipher(new XTSCipherMode(), new AES(cipherKey), new AES(tweakKey), blockIV, 4096);
+ * unitCipher.encrypt(buffer, 0, buffer.length, firstSectorNo);
+ * </pre>
+ */
+public final class UnitCipher
+{
+	private final static int BYTES_PER_BLOCK = 16;
+
+	private final CipherMode mCipherMode;
+	private final BlockCipher mCipher;
+	private final BlockCipher mTweakCipher;
+	private final int[] mBlockIV;
+	private final int mUnitSize;
+
+
+	/**
+	 * @param aCipherMode the cipher mode
+	 * @param aCipher the primary key schedule
+	 * @param aTweakCipher cipher to used to encrypt the IV
+	 * @param aBlockIV initialization vector, four ints
+	 * @param aUnitSize size of a data unit, a multiple of 16
+	 */
+	public UnitCipher(CipherMode aCipherMode, BlockCipher aCipher, BlockCipher aTweakCipher, int[] aBlockIV, int aUnitSize)
+	{
+		if (aUnitSize <= 0 || (aUnitSize % BYTES_PER_BLOCK) != 0)
+		{
+			throw new IllegalArgumentException("Unit size must be a positive multiple of 16: " + aUnitSize);
+		}
+		if (aBlockIV.length != 4)
+		{
+			throw new IllegalArgumentException("Block IV must be four ints.");
+		}
+
+		mCipherMode = aCipherMode;
+		mCipher = aCipher;
+		mTweakCipher = aTweakCipher;
+		mBlockIV = aBlockIV.clone();
+		mUnitSize = aUnitSize;
+	}
+
+
+	public int getUnitSize()
+	{
+		return mUnitSize;
+	}
+
+
+	public CipherMode getCipherMode()
+	{
+		return mCipherMode;
+	}
+
+
+	/**
+	 * Encrypts one or more whole data units.
+	 *
+	 * @param aLength number of bytes to encrypt; must be a multiple of the unit size
+	 * @param aStartDataUnitNo the sequential number of the data unit with which the buffer starts
+	 */
+	public void encrypt(byte[] aBuffer, int aOffset, int aLength, long aStartDataUnitNo)
+	{
+		checkLength(aLength);
+
+		if (aLength > 0)
+		{
+			mCipherMode.encrypt(aBuffer, aOffset, aLength, mCipher, aStartDataUnitNo, mUnitSize, mBlockIV, mTweakCipher);
+		}
+	}
+
+
+	/**
+	 * Decrypts one or more whole data units.
+	 *
+	 * @param aLength number of bytes to decrypt; must be a multiple of the unit size
+	 * @param aStartDataUnitNo the sequential number of the data unit with which the buffer starts
+	 */
+	public void decrypt(byte[] aBuffer, int aOffset, int aLength, long aStartDataUnitNo)
+	{
+		checkLength(aLength);
+
+		if (aLength > 0)
+		{
+			mCipherMode.decrypt(aBuffer, aOffset, aLength, mCipher, aStartDataUnitNo, mUnitSize, mBlockIV, mTweakCipher);
+		}
+	}
+
+
+	/**
+	 * Encrypts one or more whole data units of a ByteBuffer in place. The position and limit of the buffer are not changed.
+	 *
+	 * @param aOffset the absolute start offset in the buffer
+	 * @param aLength number of bytes to encrypt; must be a multiple of the unit size
+	 * @param aStartDataUnitNo the sequential number of the data unit with which the buffer starts
+	 */
+	public void encrypt(ByteBuffer aBuffer, int aOffset, int aLength, long aStartDataUnitNo)
+	{
+		checkLength(aLength);
+
+		if (aLength > 0)
+		{
+			mCipherMode.encrypt(aBuffer, aOffset, aLength, mCipher, aStartDataUnitNo, mUnitSize, mBlockIV, mTweakCipher);
+		}
+	}
+
+
+	/**
+	 * Decrypts one or more whole data units of a ByteBuffer in place. The position and limit of the buffer are not changed.
+	 *
+	 * @param aOffset the absolute start offset in the buffer
+	 * @param aLength number of bytes to decrypt; must be a multiple of the unit size
+	 * @param aStartDataUnitNo the sequential number of the data unit with which the buffer starts
+	 */
+	public void decrypt(ByteBuffer aBuffer, int aOffset, int aLength, long aStartDataUnitNo)
+	{
+		checkLength(aLength);
+
+		if (aLength > 0)
+		{
+			mCipherMode.decrypt(aBuffer, aOffset, aLength, mCipher, aStartDataUnitNo, mUnitSize, mBlockIV, mTweakCipher);
+		}
+	}
+
+
+	/**
+	 * Encrypts one or more whole data units and computes a 128-bit checksum of each unit in the same pass.
+	 *
+	 * @param aChecksum the checksum algorithm
+	 * @param aSeed the seed of each unit checksum
+	 * @param aChecksumPlaintext checksum the plaintext instead of the ciphertext
+	 * @param aChecksums receives four ints per data unit
+	 */
+	public void encrypt(byte[] aBuffer, int aOffset, int aLength, long aStartDataUnitNo, Checksum128 aChecksum, long aSeed, boolean aChecksumPlaintext, int[] aChecksums)
+	{
+		checkLength(aLength);
+		checkChecksums(aLength, aChecksums);
+
+		if (aLength > 0)
+		{
+			mCipherMode.encrypt(aBuffer, aOffset, aLength, mCipher, aStartDataUnitNo, mUnitSize, mBlockIV, mTweakCipher, aChecksum, aSeed, aChecksumPlaintext, aChecksums);
+		}
+	}
+
+
+	/**
+	 * Decrypts one or more whole data units and computes a 128-bit checksum of each unit in the same pass.
+	 *
+	 * @param aChecksum the checksum algorithm
+	 * @param aSeed the seed of each unit checksum
+	 * @param aChecksumPlaintext checksum the plaintext instead of the ciphertext
+	 * @param aChecksums receives four ints per data unit
+	 */
+	public void decrypt(byte[] aBuffer, int aOffset, int aLength, long aStartDataUnitNo, Checksum128 aChecksum, long aSeed, boolean aChecksumPlaintext, int[] aChecksums)
+	{
+		checkLength(aLength);
+		checkChecksums(aLength, aChecksums);
+
+		if (aLength > 0)
+		{
+			mCipherMode.decrypt(aBuffer, aOffset, aLength, mCipher, aStartDataUnitNo, mUnitSize, mBlockIV, mTweakCipher, aChecksum, aSeed, aChecksumPlaintext, aChecksums);
+		}
+	}
+
+
+	private void checkChecksums(int aLength, int[] aChecksums)
+	{
+		if (aChecksums.length < 4 * (aLength / mUnitSize))
+		{
+			throw new IllegalArgumentException("Checksum array too short: " + aChecksums.length);
+		}
+	}
+
+
+	private void checkLength(int aLength)
+	{
+		if (aLength < 0 || (aLength % mUnitSize) != 0)
+		{
+			throw new IllegalArgumentException("Length must be a multiple of the unit size: " + aLength);
+		}
+	}
+}
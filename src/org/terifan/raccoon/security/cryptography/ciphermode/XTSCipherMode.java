@@ -1,6 +1,12 @@
 package org.terifan.raccoon.security.cryptography.ciphermode;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.messagedigest.Checksum128;
 
 
 /**
@@ -10,6 +16,7 @@ import org.terifan.raccoon.security.cryptography.BlockCipher;
 public final class XTSCipherMode extends CipherMode
 {
 	private final static int BYTES_PER_BLOCK = 16;
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
 
 
 	public XTSCipherMode()
@@ -102,6 +109,168 @@ public final class XTSCipherMode extends CipherMode
 	}
 
 
+	/**
+	 * Encrypts the buffer in place without copying it, e.g. directly in mapped memory.
+	 */
+	@Override
+	public void encrypt(final ByteBuffer aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher)
+	{
+		if (aBuffer.hasArray())
+		{
+			encrypt(aBuffer.array(), aBuffer.arrayOffset() + aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher);
+		}
+		else
+		{
+			process(aBuffer, aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher, true);
+		}
+	}
+
+
+	/**
+	 * Decrypts the buffer in place without copying it, e.g. directly in mapped memory.
+	 */
+	@Override
+	public void decrypt(final ByteBuffer aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher)
+	{
+		if (aBuffer.hasArray())
+		{
+			decrypt(aBuffer.array(), aBuffer.arrayOffset() + aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher);
+		}
+		else
+		{
+			process(aBuffer, aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher, false);
+		}
+	}
+
+
+	/**
+	 * Encrypts the buffer and updates the checksum with each block while it is being encrypted, so the data is read from memory once.
+	 */
+	@Override
+	public void encrypt(final byte[] aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher, Checksum128 aChecksum, long aSeed, boolean aChecksumPlaintext, int[] aChecksums)
+	{
+		process(aBuffer, aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher, aChecksum, aSeed, aChecksumPlaintext, aChecksums, true);
+	}
+
+
+	/**
+	 * Decrypts the buffer and updates the checksum with each block while it is being decrypted, so the data is read from memory once.
+	 */
+	@Override
+	public void decrypt(final byte[] aBuffer, final int aOffset, final int aLength, final BlockCipher aCipher, final long aStartDataUnitNo, final int aUnitSize, final int[] aBlockIV, BlockCipher aTweakCipher, Checksum128 aChecksum, long aSeed, boolean aChecksumPlaintext, int[] aChecksums)
+	{
+		process(aBuffer, aOffset, aLength, aCipher, aStartDataUnitNo, aUnitSize, aBlockIV, aTweakCipher, aChecksum, aSeed, !aChecksumPlaintext, aChecksums, false);
+	}
+
+
+	/**
+	 * @param aChecksumInput checksum each block before it is processed, otherwise after
+	 */
+	private static void process(byte[] aBuffer, int aOffset, int aLength, BlockCipher aCipher, long aStartDataUnitNo, int aUnitSize, int[] aBlockIV, BlockCipher aTweakCipher, Checksum128 aChecksum, long aSeed, boolean aChecksumInput, int[] aChecksums, boolean aEncrypt)
+	{
+		assert (aUnitSize & (BYTES_PER_BLOCK - 1)) == 0;
+		assert (aLength % aUnitSize) == 0;
+		assert aBlockIV.length == 4;
+
+		byte[] whiteningValue = new byte[BYTES_PER_BLOCK];
+		int numUnits = aLength / aUnitSize;
+		int numBlocks = aUnitSize / BYTES_PER_BLOCK;
+
+		for (int unitIndex = 0; unitIndex < numUnits; unitIndex++)
+		{
+			prepareIV(aBlockIV, aStartDataUnitNo++, whiteningValue, aTweakCipher);
+
+			long w0 = (long)LONG.get(whiteningValue, 0);
+			long w1 = (long)LONG.get(whiteningValue, 8);
+
+			aChecksum.reset(aSeed);
+
+			for (int i = 0; i < numBlocks; i++, aOffset += BYTES_PER_BLOCK)
+			{
+				if (aChecksumInput)
+				{
+					aChecksum.updateBlock(aBuffer, aOffset);
+				}
+
+				LONG.set(aBuffer, aOffset, (long)LONG.get(aBuffer, aOffset) ^ w0);
+				LONG.set(aBuffer, aOffset + 8, (long)LONG.get(aBuffer, aOffset + 8) ^ w1);
+
+				if (aEncrypt)
+				{
+					aCipher.engineEncryptBlock(aBuffer, aOffset, aBuffer, aOffset);
+				}
+				else
+				{
+					aCipher.engineDecryptBlock(aBuffer, aOffset, aBuffer, aOffset);
+				}
+
+				LONG.set(aBuffer, aOffset, (long)LONG.get(aBuffer, aOffset) ^ w0);
+				LONG.set(aBuffer, aOffset + 8, (long)LONG.get(aBuffer, aOffset + 8) ^ w1);
+
+				if (!aChecksumInput)
+				{
+					aChecksum.updateBlock(aBuffer, aOffset);
+				}
+
+				long carry = w1 >> 63;
+				w1 = (w1 << 1) | (w0 >>> 63);
+				w0 = (w0 << 1) ^ (carry & 135);
+			}
+
+			aChecksum.finish(aChecksums, 4 * unitIndex);
+		}
+
+		Arrays.fill(whiteningValue, (byte)0);
+	}
+
+
+	private static void process(ByteBuffer aBuffer, int aOffset, int aLength, BlockCipher aCipher, long aStartDataUnitNo, int aUnitSize, int[] aBlockIV, BlockCipher aTweakCipher, boolean aEncrypt)
+	{
+		assert (aUnitSize & (BYTES_PER_BLOCK - 1)) == 0;
+		assert (aLength % aUnitSize) == 0;
+		assert aBlockIV.length == 4;
+
+		ByteBuffer buffer = aBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		byte[] whiteningValue = new byte[BYTES_PER_BLOCK];
+		byte[] block = new byte[BYTES_PER_BLOCK];
+		int numUnits = aLength / aUnitSize;
+		int numBlocks = aUnitSize / BYTES_PER_BLOCK;
+
+		for (int unitIndex = 0; unitIndex < numUnits; unitIndex++)
+		{
+			prepareIV(aBlockIV, aStartDataUnitNo++, whiteningValue, aTweakCipher);
+
+			long w0 = (long)LONG.get(whiteningValue, 0);
+			long w1 = (long)LONG.get(whiteningValue, 8);
+
+			for (int i = 0; i < numBlocks; i++, aOffset += BYTES_PER_BLOCK)
+			{
+				LONG.set(block, 0, buffer.getLong(aOffset) ^ w0);
+				LONG.set(block, 8, buffer.getLong(aOffset + 8) ^ w1);
+
+				if (aEncrypt)
+				{
+					aCipher.engineEncryptBlock(block, 0, block, 0);
+				}
+				else
+				{
+					aCipher.engineDecryptBlock(block, 0, block, 0);
+				}
+
+				buffer.putLong(aOffset, (long)LONG.get(block, 0) ^ w0);
+				buffer.putLong(aOffset + 8, (long)LONG.get(block, 8) ^ w1);
+
+				long carry = w1 >> 63;
+				w1 = (w1 << 1) | (w0 >>> 63);
+				w0 = (w0 << 1) ^ (carry & 135);
+			}
+		}
+
+		Arrays.fill(whiteningValue, (byte)0);
+		Arrays.fill(block, (byte)0);
+	}
+
+
 	// little endian
 	private static void putInt64LE(byte[] aBuffer, int aOffset, long aValue)
 	{
@@ -0,0 +1,171 @@
+package org.terifan.raccoon.security.cryptography.dedup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.aead.GCMSIV;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.SHA256;
+
+
+/**
+ * Convergent encryption of chunks. The key of a chunk is a keyed hash of its content and the chunk is encrypted with GCM-SIV using a
+ * fixed nonce, so identical chunks always produce identical ciphertext and can be stored once. The chunk id is a hash of the ciphertext
+ * which allows the storage to verify chunks without knowing any keys.
+ * <p>
+ * The keyed content hash defaults to HMAC-SHA256 and the id hash to SHA-256, any digests with at least 32 bytes of output can be used in
+ * their place, e.g. Skein512 or SHA3. Longer hashes are truncated to 32 bytes. All parties of a domain must use the same hashes.
+ * <p>
+ * All parties sharing a convergence key form one deduplication domain. Within a domain anyone able to guess a chunk can confirm that it
+ * is stored, the convergence key limits this to members of the domain.
+ * <p>
+ * Instances are thread safe.
+ *
+ * <pre>
+ * ConvergentCipher cc = new ConvergentCipher(convergenceKey, AES::new);
+ * ConvergentCipher skein = new ConvergentCipher(convergenceKey, AES::new, aKey -&gt; new HMAC(new Skein512(), aKey), Skein512::new);
+ * ConvergentCipher.Chunk chunk = cc.encrypt(data, 0, data.length);
+ * byte[] plain = cc.decrypt(chunk.key(), chunk.ciphertext());
+ * </pre>
+ */
+public final class ConvergentCipher
+{
+	private final static byte[] INFO = "raccoon convergent encryption".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] NONCE = new byte[12];
+
+	final static int KEY_LENGTH = 32;
+	final static int ID_LENGTH = 32;
+	final static int TAG_LENGTH = 16;
+
+	private final Supplier<BlockCipher> mCipherFactory;
+	private final Function<byte[], MessageDigest> mContentHash;
+	private final Supplier<MessageDigest> mIdHash;
+	private final byte[] mHashKey;
+
+
+	/**
+	 * Creates a cipher hashing content with HMAC-SHA256 and ciphertext with SHA-256.
+	 *
+	 * @param aConvergenceKey secret shared by all parties deduplicating against each other
+	 * @param aCipherFactory creates uninitialized instances of a 128-bit block cipher, e.g. <code>AES::new</code>
+	 */
+	public ConvergentCipher(SecretKey aConvergenceKey, Supplier<BlockCipher> aCipherFactory)
+	{
+		this(aConvergenceKey, aCipherFactory, aKey -> new HMAC(new SHA256(), aKey), SHA256::new);
+	}
+
+
+	/**
+	 * @param aConvergenceKey secret shared by all parties deduplicating against each other
+	 * @param aCipherFactory creates uninitialized instances of a 128-bit block cipher, e.g. <code>AES::new</code>
+	 * @param aContentHash creates a keyed hash of the chunk content from a 32 byte key, e.g. an HMAC
+	 * @param aIdHash creates the hash of the ciphertext used as chunk id
+	 */
+	public ConvergentCipher(SecretKey aConvergenceKey, Supplier<BlockCipher> aCipherFactory, Function<byte[], MessageDigest> aContentHash, Supplier<MessageDigest> aIdHash)
+	{
+		mCipherFactory = aCipherFactory;
+		mContentHash = aContentHash;
+		mIdHash = aIdHash;
+		mHashKey = aConvergenceKey.deriveBytes(new SHA256(), null, INFO, KEY_LENGTH);
+
+		checkLength(aContentHash.apply(mHashKey), KEY_LENGTH);
+		checkLength(aIdHash.get(), ID_LENGTH);
+	}
+
+
+	/**
+	 * Returns the key of a chunk.
+	 */
+	public byte[] chunkKey(byte[] aBuffer, int aOffset, int aLength)
+	{
+		MessageDigest digest = mContentHash.apply(mHashKey);
+		digest.update(aBuffer, aOffset, aLength);
+		return truncate(digest.digest(), KEY_LENGTH);
+	}
+
+
+	/**
+	 * Encrypts a chunk. The ciphertext is the encrypted data followed by the GCM-SIV tag.
+	 */
+	public Chunk encrypt(byte[] aBuffer, int aOffset, int aLength)
+	{
+		byte[] key = chunkKey(aBuffer, aOffset, aLength);
+
+		GCMSIV siv = new GCMSIV(mCipherFactory, new SecretKey(key.clone()));
+
+		byte[] ciphertext = new byte[aLength + siv.getTagLength()];
+		System.arraycopy(aBuffer, aOffset, ciphertext, 0, aLength);
+		siv.encrypt(NONCE, null, ciphertext, 0, aLength, ciphertext, aLength);
+
+		return new Chunk(id(ciphertext), key, ciphertext);
+	}
+
+
+	/**
+	 * Decrypts a chunk and verifies that it matches the key.
+	 *
+	 * @throws InvalidTagException
+	 *    if the ciphertext was modified or the key is wrong
+	 */
+	public byte[] decrypt(byte[] aChunkKey, byte[] aCiphertext) throws InvalidTagException
+	{
+		byte[] plaintext = new GCMSIV(mCipherFactory, new SecretKey(aChunkKey.clone())).decrypt(NONCE, null, aCiphertext);
+
+		byte[] expected = chunkKey(plaintext, 0, plaintext.length);
+		if (!MessageDigest.isEqual(expected, aChunkKey))
+		{
+			Arrays.fill(plaintext, (byte)0);
+			throw new InvalidTagException("Chunk content doesn't match the chunk key.");
+		}
+
+		return plaintext;
+	}
+
+
+	/**
+	 * Returns the id of a ciphertext.
+	 */
+	public byte[] id(byte[] aCiphertext)
+	{
+		return truncate(mIdHash.get().digest(aCiphertext), ID_LENGTH);
+	}
+
+
+	private static byte[] truncate(byte[] aHash, int aLength)
+	{
+		if (aHash.length == aLength)
+		{
+			return aHash;
+		}
+
+		byte[] output = Arrays.copyOf(aHash, aLength);
+		Arrays.fill(aHash, (byte)0);
+		return output;
+	}
+
+
+	private static void checkLength(MessageDigest aDigest, int aLength)
+	{
+		if (aDigest.getDigestLength() < aLength)
+		{
+			throw new IllegalArgumentException("Digest must produce at least " + aLength + " bytes: " + aDigest.getAlgorithm());
+		}
+	}
+
+
+	/**
+	 * An encrypted chunk.
+	 *
+	 * @param id hash of the ciphertext, used to address the chunk in storage
+	 * @param key the chunk key, needed to decrypt the chunk and kept private by the owner
+	 * @param ciphertext the encrypted chunk followed by the authentication tag
+	 */
+	public record Chunk(byte[] id, byte[] key, byte[] ciphertext)
+	{
+	}
+}
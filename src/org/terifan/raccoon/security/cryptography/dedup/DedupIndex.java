@@ -0,0 +1,238 @@
+package org.terifan.raccoon.security.cryptography.dedup;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * An off-heap hash table mapping chunk ids (32 byte cryptographic hashes) to non-negative 64-bit values. Each entry occupies 40 bytes in
+ * direct memory so very large indices put no pressure on the garbage collector.
+ * <p>
+ * The table is split into segments selected by the high bits of the id, each segment is an open addressing table with linear probing
+ * guarded by its own lock and doubles in size when three quarters full. Since ids are uniformly distributed the first bytes of the id are
+ * used as hash code without further mixing.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class DedupIndex
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private final static int ENTRY_SIZE = ConvergentCipher.ID_LENGTH + 8;
+	private final static int MAX_SEGMENT_SLOTS = Integer.MAX_VALUE / ENTRY_SIZE;
+
+	private final Segment[] mSegments;
+	private final int mSegmentShift;
+
+
+	public DedupIndex()
+	{
+		this(1 << 16);
+	}
+
+
+	/**
+	 * @param aExpectedSize number of entries the table is sized for initially
+	 */
+	public DedupIndex(int aExpectedSize)
+	{
+		int segmentCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+		int slots = Math.max(16, Integer.highestOneBit(Math.max(1, aExpectedSize / segmentCount * 2 - 1)) << 1);
+
+		mSegmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+		mSegments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++)
+		{
+			mSegments[i] = new Segment(slots);
+		}
+	}
+
+
+	/**
+	 * Returns the value of an id or -1 if not present.
+	 */
+	public long get(byte[] aId)
+	{
+		checkId(aId);
+
+		Segment segment = segment(aId);
+		synchronized (segment)
+		{
+			int slot = segment.find(aId);
+			return slot < 0 ? -1 : segment.value(slot);
+		}
+	}
+
+
+	/**
+	 * Adds an id unless present.
+	 *
+	 * @param aValue a non-negative value
+	 * @return the existing value or -1 if the id was added
+	 */
+	public long putIfAbsent(byte[] aId, long aValue)
+	{
+		checkId(aId);
+
+		if (aValue < 0)
+		{
+			throw new IllegalArgumentException("Negative value: " + aValue);
+		}
+
+		Segment segment = segment(aId);
+		synchronized (segment)
+		{
+			int slot = segment.find(aId);
+			if (slot >= 0)
+			{
+				return segment.value(slot);
+			}
+
+			segment.insert(-slot - 1, aId, aValue);
+			return -1;
+		}
+	}
+
+
+	/**
+	 * Returns the number of entries.
+	 */
+	public long size()
+	{
+		long size = 0;
+		for (Segment segment : mSegments)
+		{
+			synchronized (segment)
+			{
+				size += segment.mSize;
+			}
+		}
+		return size;
+	}
+
+
+	/**
+	 * Returns the number of bytes of direct memory used.
+	 */
+	public long getMemoryUsage()
+	{
+		long usage = 0;
+		for (Segment segment : mSegments)
+		{
+			synchronized (segment)
+			{
+				usage += segment.mTable.capacity();
+			}
+		}
+		return usage;
+	}
+
+
+	private Segment segment(byte[] aId)
+	{
+		return mSegments[(int)((long)LONG.get(aId, 0) >>> mSegmentShift)];
+	}
+
+
+	private static void checkId(byte[] aId)
+	{
+		if (aId.length != ConvergentCipher.ID_LENGTH)
+		{
+			throw new IllegalArgumentException("Illegal id length: " + aId.length);
+		}
+	}
+
+
+	/**
+	 * An open addressing table. Values are stored plus one so a zero value marks an empty slot.
+	 */
+	private static final class Segment
+	{
+		ByteBuffer mTable;
+		int mMask;
+		int mSize;
+
+
+		Segment(int aSlots)
+		{
+			mTable = ByteBuffer.allocateDirect(aSlots * ENTRY_SIZE);
+			mMask = aSlots - 1;
+		}
+
+
+		/**
+		 * Returns the slot of the id or -(slot + 1) of the free slot where it would be inserted.
+		 */
+		int find(byte[] aId)
+		{
+			long first = (long)LONG.get(aId, 0);
+			long second = (long)LONG.get(aId, 8);
+			long third = (long)LONG.get(aId, 16);
+			long fourth = (long)LONG.get(aId, 24);
+
+			for (int slot = (int)first & mMask;; slot = (slot + 1) & mMask)
+			{
+				int offset = slot * ENTRY_SIZE;
+
+				if (mTable.getLong(offset + 32) == 0)
+				{
+					return -slot - 1;
+				}
+				if (mTable.getLong(offset) == first && mTable.getLong(offset + 8) == second && mTable.getLong(offset + 16) == third && mTable.getLong(offset + 24) == fourth)
+				{
+					return slot;
+				}
+			}
+		}
+
+
+		long value(int aSlot)
+		{
+			return mTable.getLong(aSlot * ENTRY_SIZE + 32) - 1;
+		}
+
+
+		void insert(int aSlot, byte[] aId, long aValue)
+		{
+			mTable.put(aSlot * ENTRY_SIZE, aId);
+			mTable.putLong(aSlot * ENTRY_SIZE + 32, aValue + 1);
+			mSize++;
+
+			if (4L * mSize > 3L * (mMask + 1))
+			{
+				grow();
+			}
+		}
+
+
+		private void grow()
+		{
+			int slots = 2 * (mMask + 1);
+
+			if (slots > MAX_SEGMENT_SLOTS)
+			{
+				throw new IllegalStateException("Index segment is full.");
+			}
+
+			ByteBuffer old = mTable;
+			mTable = ByteBuffer.allocateDirect(slots * ENTRY_SIZE);
+			mMask = slots - 1;
+
+			for (int offset = 0; offset < old.capacity(); offset += ENTRY_SIZE)
+			{
+				long value = old.getLong(offset + 32);
+				if (value != 0)
+				{
+					int slot = (int)old.getLong(offset) & mMask;
+					while (mTable.getLong(slot * ENTRY_SIZE + 32) != 0)
+					{
+						slot = (slot + 1) & mMask;
+					}
+					mTable.put(slot * ENTRY_SIZE, old, offset, 32);
+					mTable.putLong(slot * ENTRY_SIZE + 32, value);
+				}
+			}
+		}
+	}
+}
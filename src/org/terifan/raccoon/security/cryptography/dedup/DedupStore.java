@@ -0,0 +1,349 @@
+package org.terifan.raccoon.security.cryptography.dedup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+
+
+/**
+ * A content addressed store of convergently encrypted chunks. Streams are split into fixed size chunks, each chunk is hashed and
+ * encrypted on the common fork join pool while the stream is being read, and only chunks whose ciphertext id is not already indexed are
+ * appended to the store file. Identical chunks written by any party sharing the convergence key are therefore stored once.
+ * <p>
+ * Writing a stream returns the list of chunk references needed to read it back. The references contain the chunk keys and must be kept
+ * private, e.g. by encrypting them with a key of the owner.
+ * <p>
+ * Each record in the file is the ciphertext length (int), the chunk id and the ciphertext. The index is held in memory and rebuilt
+ * from the record headers when opened. A record left incomplete at the end of the file by a crash is removed when opened, a failed
+ * write removes its partial record immediately. Instances are thread safe.
+ *
+ * <pre>
+ * try (DedupStore store = new DedupStore(path, new ConvergentCipher(convergenceKey, AES::new)))
+ * {
+ *     List&lt;DedupStore.ChunkReference&gt; refs = store.write(inputStream);
+ *     byte[] chunk = store.read(refs.get(0));
+ * }
+ * </pre>
+ */
+public final class DedupStore implements AutoCloseable
+{
+	private final static int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	private final static int HEADER_LENGTH = 4 + ConvergentCipher.ID_LENGTH;
+	private final static int MIN_CIPHERTEXT_LENGTH = ConvergentCipher.TAG_LENGTH + 1;
+
+	private final FileChannel mChannel;
+	private final ConvergentCipher mCipher;
+	private final DedupIndex mIndex;
+	private final int mChunkSize;
+	private final int mMaxPending;
+	private final LongAdder mChunksWritten;
+	private final LongAdder mChunksStored;
+	private long mEndOfFile;
+
+
+	public DedupStore(Path aPath, ConvergentCipher aCipher) throws IOException
+	{
+		this(aPath, aCipher, DEFAULT_CHUNK_SIZE);
+	}
+
+
+	/**
+	 * Opens or creates a store.
+	 *
+	 * @param aPath the store file
+	 * @param aCipher the convergent cipher
+	 * @param aChunkSize size of chunks streams are split into
+	 */
+	public DedupStore(Path aPath, ConvergentCipher aCipher, int aChunkSize) throws IOException
+	{
+		mCipher = aCipher;
+		mChunkSize = aChunkSize;
+		mMaxPending = 2 * Runtime.getRuntime().availableProcessors();
+		mChunksWritten = new LongAdder();
+		mChunksStored = new LongAdder();
+		mChannel = FileChannel.open(aPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try
+		{
+			mIndex = new DedupIndex();
+			rebuildIndex();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			mChannel.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Splits the stream into chunks and stores every chunk not already present.
+	 *
+	 * @return references to the chunks of the stream in order
+	 */
+	public List<ChunkReference> write(InputStream aInputStream) throws IOException
+	{
+		ArrayList<ChunkReference> references = new ArrayList<>();
+		ArrayDeque<CompletableFuture<ConvergentCipher.Chunk>> pending = new ArrayDeque<>();
+
+		try
+		{
+			for (;;)
+			{
+				byte[] buffer = aInputStream.readNBytes(mChunkSize);
+
+				if (buffer.length > 0)
+				{
+					pending.add(CompletableFuture.supplyAsync(() ->
+					{
+						try
+						{
+							return mCipher.encrypt(buffer, 0, buffer.length);
+						}
+						finally
+						{
+							Arrays.fill(buffer, (byte)0);
+						}
+					}));
+				}
+
+				while (!pending.isEmpty() && (pending.size() >= mMaxPending || buffer.length == 0))
+				{
+					ConvergentCipher.Chunk chunk = join(pending.removeFirst());
+					references.add(new ChunkReference(chunk.id(), chunk.key(), store(chunk)));
+				}
+
+				if (buffer.length < mChunkSize && pending.isEmpty())
+				{
+					return references;
+				}
+			}
+		}
+		finally
+		{
+			for (CompletableFuture<ConvergentCipher.Chunk> future : pending)
+			{
+				future.cancel(false);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads and decrypts a chunk.
+	 *
+	 * @throws InvalidTagException
+	 *    if the chunk was modified
+	 */
+	public byte[] read(ChunkReference aReference) throws IOException, InvalidTagException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		readFully(header, aReference.position());
+
+		int length = header.getInt(0);
+
+		if (!isValidLength(length, aReference.position(), size()))
+		{
+			throw new IOException("Illegal record length at position " + aReference.position() + ": " + length);
+		}
+
+		ByteBuffer ciphertext = ByteBuffer.allocate(length);
+		readFully(ciphertext, aReference.position() + HEADER_LENGTH);
+
+		if (!MessageDigest.isEqual(mCipher.id(ciphertext.array()), aReference.id()))
+		{
+			throw new InvalidTagException("Chunk id doesn't match the stored ciphertext.");
+		}
+
+		return mCipher.decrypt(aReference.key(), ciphertext.array());
+	}
+
+
+	/**
+	 * Returns true if a chunk with the id provided is stored.
+	 */
+	public boolean contains(byte[] aId)
+	{
+		return mIndex.get(aId) != -1;
+	}
+
+
+	/**
+	 * Returns the number of chunks written, including duplicates.
+	 */
+	public long getChunksWritten()
+	{
+		return mChunksWritten.sum();
+	}
+
+
+	/**
+	 * Returns the number of chunks appended to the store.
+	 */
+	public long getChunksStored()
+	{
+		return mChunksStored.sum();
+	}
+
+
+	/**
+	 * Returns the size of the store file in bytes.
+	 */
+	public synchronized long size()
+	{
+		return mEndOfFile;
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		mChannel.force(true);
+		mChannel.close();
+	}
+
+
+	/**
+	 * Appends the chunk unless already stored and returns its position.
+	 */
+	private synchronized long store(ConvergentCipher.Chunk aChunk) throws IOException
+	{
+		mChunksWritten.increment();
+
+		long position = mIndex.get(aChunk.id());
+
+		if (position == -1)
+		{
+			position = mEndOfFile;
+
+			ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + aChunk.ciphertext().length);
+			record.putInt(aChunk.ciphertext().length).put(aChunk.id()).put(aChunk.ciphertext()).flip();
+
+			try
+			{
+				while (record.hasRemaining())
+				{
+					mChannel.write(record, position + record.position());
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// remove the partial record so the file ends with a complete record
+				try
+				{
+					mChannel.truncate(mEndOfFile);
+				}
+				catch (IOException f)
+				{
+					e.addSuppressed(f);
+				}
+				throw e;
+			}
+
+			mEndOfFile += record.limit();
+			mIndex.putIfAbsent(aChunk.id(), position);
+			mChunksStored.increment();
+		}
+
+		return position;
+	}
+
+
+	/**
+	 * Indexes the records from their headers. The file is truncated after the last complete record, anything following it was left by an
+	 * interrupted write.
+	 */
+	private void rebuildIndex() throws IOException
+	{
+		long size = mChannel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		long position = 0;
+
+		while (size - position >= HEADER_LENGTH)
+		{
+			readFully(header.clear(), position);
+
+			int length = header.getInt(0);
+
+			if (!isValidLength(length, position, size))
+			{
+				break;
+			}
+
+			byte[] id = new byte[ConvergentCipher.ID_LENGTH];
+			header.get(4, id);
+			mIndex.putIfAbsent(id, position);
+
+			position += HEADER_LENGTH + length;
+		}
+
+		if (position < size)
+		{
+			mChannel.truncate(position);
+		}
+
+		mEndOfFile = position;
+	}
+
+
+	/**
+	 * Returns true if a record at the position with the ciphertext length provided fits in the file. Chunks are never empty.
+	 */
+	private static boolean isValidLength(int aLength, long aPosition, long aFileSize)
+	{
+		return aLength >= MIN_CIPHERTEXT_LENGTH && aLength <= aFileSize - aPosition - HEADER_LENGTH;
+	}
+
+
+	private void readFully(ByteBuffer aBuffer, long aPosition) throws IOException
+	{
+		while (aBuffer.hasRemaining())
+		{
+			if (mChannel.read(aBuffer, aPosition + aBuffer.position()) < 0)
+			{
+				throw new IOException("Unexpected end of store file.");
+			}
+		}
+	}
+
+
+	private static ConvergentCipher.Chunk join(CompletableFuture<ConvergentCipher.Chunk> aFuture)
+	{
+		try
+		{
+			return aFuture.join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException f)
+			{
+				throw f;
+			}
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Reference to a stored chunk.
+	 *
+	 * @param id the ciphertext id
+	 * @param key the chunk key
+	 * @param position position of the chunk record in the store file
+	 */
+	public record ChunkReference(byte[] id, byte[] key, long position)
+	{
+	}
+}
@@ -0,0 +1,510 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+
+
+/**
+ * Asynchronous reads and writes of encrypted data units (pages) in a file.
+ * <p>
+ * File I/O is done with an AsynchronousFileChannel whose completion handlers run on virtual threads, encryption and decryption run on a
+ * bounded pool of platform threads. Requests are queued and requests pending at the same time for adjacent or overlapping units are
+ * coalesced into a single file operation and a single cipher mode call.
+ * <p>
+ * The order in which concurrent requests for the same units complete is unspecified. Instances are thread safe.
+ *
+ * <pre>
+ * try (AsyncPageStore store = new AsyncPageStore(path, unitCipher))
+ * {
+ *     store.write(7, page).join();
+ *     byte[] data = store.read(7, 1).join();
+ * }
+ * </pre>
+ */
+public final class AsyncPageStore implements AutoCloseable
+{
+	private final static int MAX_COALESCED_UNITS = 256;
+
+	private final AsynchronousFileChannel mChannel;
+	private final ExecutorService mIOExecutor;
+	private final ExecutorService mCryptoExecutor;
+	private final boolean mOwnsCryptoExecutor;
+	private final UnitCipher mCipher;
+	private final int mUnitSize;
+	private final ConcurrentLinkedQueue<Request> mQueue;
+	private final AtomicBoolean mDrainScheduled;
+	private final Set<CompletableFuture<byte[]>> mOutstanding;
+	private final AtomicInteger mSubmitting;
+	private final LongAdder mRequestCount;
+	private final LongAdder mOperationCount;
+	private volatile boolean mClosed;
+
+
+	/**
+	 * Opens or creates a file using a crypto pool with one thread per processor.
+	 */
+	public AsyncPageStore(Path aPath, UnitCipher aCipher) throws IOException
+	{
+		this(aPath, aCipher, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true);
+	}
+
+
+	/**
+	 * Opens or creates a file.
+	 *
+	 * @param aCryptoExecutor executor used for encryption and decryption, not shut down when this store is closed
+	 */
+	public AsyncPageStore(Path aPath, UnitCipher aCipher, ExecutorService aCryptoExecutor) throws IOException
+	{
+		this(aPath, aCipher, aCryptoExecutor, false);
+	}
+
+
+	private AsyncPageStore(Path aPath, UnitCipher aCipher, ExecutorService aCryptoExecutor, boolean aOwnsCryptoExecutor) throws IOException
+	{
+		mCipher = aCipher;
+		mUnitSize = aCipher.getUnitSize();
+		mCryptoExecutor = aCryptoExecutor;
+		mOwnsCryptoExecutor = aOwnsCryptoExecutor;
+		mIOExecutor = Executors.newVirtualThreadPerTaskExecutor();
+		mQueue = new ConcurrentLinkedQueue<>();
+		mDrainScheduled = new AtomicBoolean();
+		mOutstanding = ConcurrentHashMap.newKeySet();
+		mSubmitting = new AtomicInteger();
+		mRequestCount = new LongAdder();
+		mOperationCount = new LongAdder();
+
+		try
+		{
+			mChannel = AsynchronousFileChannel.open(aPath, Set.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), mIOExecutor);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			mIOExecutor.shutdown();
+			if (aOwnsCryptoExecutor)
+			{
+				aCryptoExecutor.shutdown();
+			}
+			throw e;
+		}
+	}
+
+
+	public int getUnitSize()
+	{
+		return mUnitSize;
+	}
+
+
+	/**
+	 * Reads and decrypts a range of units.
+	 *
+	 * @return a future completed with the plaintext, or exceptionally with an EOFException if the range extends beyond the end of the
+	 * file
+	 */
+	public CompletableFuture<byte[]> read(long aFirstUnit, int aUnitCount)
+	{
+		if (aFirstUnit < 0 || aUnitCount < 1)
+		{
+			throw new IllegalArgumentException("Illegal unit range: " + aFirstUnit + ", count " + aUnitCount);
+		}
+
+		return submit(new Request(false, aFirstUnit, aUnitCount, null));
+	}
+
+
+	/**
+	 * Encrypts and writes a range of units. The buffer provided is copied and left unchanged.
+	 *
+	 * @param aData the plaintext, a multiple of the unit size
+	 */
+	public CompletableFuture<Void> write(long aFirstUnit, byte[] aData)
+	{
+		if (aFirstUnit < 0 || aData.length == 0 || (aData.length % mUnitSize) != 0)
+		{
+			throw new IllegalArgumentException("Illegal unit range: " + aFirstUnit + ", length " + aData.length);
+		}
+
+		return submit(new Request(true, aFirstUnit, aData.length / mUnitSize, aData.clone())).thenRun(() -> {});
+	}
+
+
+	/**
+	 * Returns number of read and write requests received.
+	 */
+	public long getRequestCount()
+	{
+		return mRequestCount.sum();
+	}
+
+
+	/**
+	 * Returns number of file operations performed after coalescing requests.
+	 */
+	public long getOperationCount()
+	{
+		return mOperationCount.sum();
+	}
+
+
+	/**
+	 * Waits for all outstanding requests to complete and closes the file. Requests submitted after closing fail.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		mClosed = true;
+
+		// requests being submitted are either queued before the final drain or fail
+		while (mSubmitting.get() != 0)
+		{
+			Thread.onSpinWait();
+		}
+
+		try
+		{
+			drain();
+
+			for (CompletableFuture<?> future : mOutstanding.toArray(CompletableFuture<?>[]::new))
+			{
+				future.exceptionally(e -> null).join();
+			}
+		}
+		finally
+		{
+			try
+			{
+				mChannel.close();
+			}
+			finally
+			{
+				mIOExecutor.shutdown();
+				if (mOwnsCryptoExecutor)
+				{
+					mCryptoExecutor.shutdown();
+				}
+			}
+		}
+	}
+
+
+	private CompletableFuture<byte[]> submit(Request aRequest)
+	{
+		// the executors are not shut down while a request is being submitted
+		mSubmitting.incrementAndGet();
+		try
+		{
+			if (mClosed)
+			{
+				return CompletableFuture.failedFuture(new ClosedChannelException());
+			}
+
+			mRequestCount.increment();
+			mOutstanding.add(aRequest.mFuture);
+			aRequest.mFuture.whenComplete((v, e) -> mOutstanding.remove(aRequest.mFuture));
+
+			mQueue.add(aRequest);
+
+			if (mDrainScheduled.compareAndSet(false, true))
+			{
+				try
+				{
+					mIOExecutor.execute(this::drainScheduled);
+				}
+				catch (RejectedExecutionException e)
+				{
+					mDrainScheduled.set(false);
+					mQueue.remove(aRequest);
+					aRequest.mFuture.completeExceptionally(e);
+				}
+			}
+
+			return aRequest.mFuture;
+		}
+		finally
+		{
+			mSubmitting.decrementAndGet();
+		}
+	}
+
+
+	private void drainScheduled()
+	{
+		do
+		{
+			try
+			{
+				drain();
+			}
+			finally
+			{
+				mDrainScheduled.set(false);
+			}
+		}
+		while (!mQueue.isEmpty() && mDrainScheduled.compareAndSet(false, true));
+	}
+
+
+	/**
+	 * Takes all queued requests and issues coalesced operations.
+	 */
+	private void drain()
+	{
+		ArrayList<Request> reads = new ArrayList<>();
+		ArrayList<Request> writes = new ArrayList<>();
+
+		for (Request request; (request = mQueue.poll()) != null;)
+		{
+			(request.mWrite ? writes : reads).add(request);
+		}
+
+		Comparator<Request> order = Comparator.comparingLong(aRequest -> aRequest.mFirstUnit);
+		reads.sort(order);
+		writes.sort(order);
+
+		for (int start = 0; start < reads.size();)
+		{
+			long firstUnit = reads.get(start).mFirstUnit;
+			long endUnit = reads.get(start).endUnit();
+			int end = start + 1;
+
+			for (; end < reads.size(); end++)
+			{
+				Request next = reads.get(end);
+				if (next.mFirstUnit > endUnit || Math.max(endUnit, next.endUnit()) - firstUnit > MAX_COALESCED_UNITS)
+				{
+					break;
+				}
+				endUnit = Math.max(endUnit, next.endUnit());
+			}
+
+			readRun(firstUnit, (int)(endUnit - firstUnit), List.copyOf(reads.subList(start, end)));
+			start = end;
+		}
+
+		for (int start = 0; start < writes.size();)
+		{
+			long firstUnit = writes.get(start).mFirstUnit;
+			long endUnit = writes.get(start).endUnit();
+			int end = start + 1;
+
+			for (; end < writes.size(); end++)
+			{
+				Request next = writes.get(end);
+				if (next.mFirstUnit != endUnit || next.endUnit() - firstUnit > MAX_COALESCED_UNITS)
+				{
+					break;
+				}
+				endUnit = next.endUnit();
+			}
+
+			writeRun(firstUnit, (int)(endUnit - firstUnit), List.copyOf(writes.subList(start, end)));
+			start = end;
+		}
+	}
+
+
+	private void readRun(long aFirstUnit, int aUnitCount, List<Request> aRequests)
+	{
+		mOperationCount.increment();
+
+		ByteBuffer buffer = ByteBuffer.allocate(aUnitCount * mUnitSize);
+		byte[] array = buffer.array();
+
+		transferFully(buffer, aFirstUnit * mUnitSize, false)
+			.thenCompose(v -> runCrypto(() -> mCipher.decrypt(array, 0, array.length, aFirstUnit)))
+			.whenComplete((v, e) ->
+			{
+				for (Request request : aRequests)
+				{
+					if (e != null)
+					{
+						request.mFuture.completeExceptionally(e);
+					}
+					else
+					{
+						int offset = (int)(request.mFirstUnit - aFirstUnit) * mUnitSize;
+						request.mFuture.complete(Arrays.copyOfRange(array, offset, offset + request.mUnitCount * mUnitSize));
+					}
+				}
+
+				Arrays.fill(array, (byte)0);
+			});
+	}
+
+
+	private void writeRun(long aFirstUnit, int aUnitCount, List<Request> aRequests)
+	{
+		mOperationCount.increment();
+
+		byte[] array = new byte[aUnitCount * mUnitSize];
+
+		runCrypto(() ->
+			{
+				for (Request request : aRequests)
+				{
+					int offset = (int)(request.mFirstUnit - aFirstUnit) * mUnitSize;
+					System.arraycopy(request.mData, 0, array, offset, request.mData.length);
+					Arrays.fill(request.mData, (byte)0);
+				}
+
+				mCipher.encrypt(array, 0, array.length, aFirstUnit);
+			})
+			.thenCompose(v -> transferFully(ByteBuffer.wrap(array), aFirstUnit * mUnitSize, true))
+			.whenComplete((v, e) ->
+			{
+				for (Request request : aRequests)
+				{
+					if (e != null)
+					{
+						request.mFuture.completeExceptionally(e);
+					}
+					else
+					{
+						request.mFuture.complete(null);
+					}
+				}
+			});
+	}
+
+
+	/**
+	 * Runs a task on the crypto executor. A caller supplied executor may have been shut down, the rejection fails the returned future
+	 * instead of escaping into drain or a completion handler and leaving the requests of the run incomplete.
+	 */
+	private CompletableFuture<Void> runCrypto(Runnable aTask)
+	{
+		try
+		{
+			return CompletableFuture.runAsync(aTask, mCryptoExecutor);
+		}
+		catch (RejectedExecutionException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+
+	/**
+	 * Reads or writes until the buffer is exhausted.
+	 */
+	private CompletableFuture<Void> transferFully(ByteBuffer aBuffer, long aPosition, boolean aWrite)
+	{
+		Transfer transfer = new Transfer(aBuffer, aWrite);
+		transfer.start(aPosition);
+		return transfer.mFuture;
+	}
+
+
+	private final class Transfer implements CompletionHandler<Integer, Long>
+	{
+		final ByteBuffer mBuffer;
+		final boolean mWrite;
+		final CompletableFuture<Void> mFuture;
+
+
+		Transfer(ByteBuffer aBuffer, boolean aWrite)
+		{
+			mBuffer = aBuffer;
+			mWrite = aWrite;
+			mFuture = new CompletableFuture<>();
+		}
+
+
+		@Override
+		public void completed(Integer aResult, Long aPosition)
+		{
+			if (aResult < 0)
+			{
+				mFuture.completeExceptionally(new EOFException("Read beyond end of file."));
+			}
+			else if (mBuffer.hasRemaining())
+			{
+				start(aPosition + aResult);
+			}
+			else
+			{
+				mFuture.complete(null);
+			}
+		}
+
+
+		@Override
+		public void failed(Throwable aThrowable, Long aPosition)
+		{
+			mFuture.completeExceptionally(aThrowable);
+		}
+
+
+		void start(long aPosition)
+		{
+			try
+			{
+				if (mWrite)
+				{
+					mChannel.write(mBuffer, aPosition, aPosition, this);
+				}
+				else
+				{
+					mChannel.read(mBuffer, aPosition, aPosition, this);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				mFuture.completeExceptionally(e);
+			}
+		}
+	}
+
+
+	private static final class Request
+	{
+		final boolean mWrite;
+		final long mFirstUnit;
+		final int mUnitCount;
+		final byte[] mData;
+		final CompletableFuture<byte[]> mFuture;
+
+
+		Request(boolean aWrite, long aFirstUnit, int aUnitCount, byte[] aData)
+		{
+			mWrite = aWrite;
+			mFirstUnit = aFirstUnit;
+			mUnitCount = aUnitCount;
+			mData = aData;
+			mFuture = new CompletableFuture<>();
+		}
+
+
+		long endUnit()
+		{
+			return mFirstUnit + mUnitCount;
+		}
+	}
+}
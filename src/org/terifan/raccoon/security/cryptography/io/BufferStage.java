@@ -0,0 +1,32 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * A step applied to every buffer passing through a StageProcessor. Stages of one processor run on the same thread one after another, so
+ * a buffer is still in cache when the next stage reads it.
+ */
+public interface BufferStage
+{
+	/**
+	 * Processes the remaining bytes of the buffer. The position and limit of the buffer must be left unchanged.
+	 */
+	void process(ByteBuffer aBuffer);
+
+
+	/**
+	 * Called after the last buffer.
+	 */
+	default void complete()
+	{
+	}
+
+
+	/**
+	 * Called when the stream fails.
+	 */
+	default void fail(Throwable aThrowable)
+	{
+	}
+}
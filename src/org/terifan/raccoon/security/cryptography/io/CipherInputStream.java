@@ -0,0 +1,294 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+
+
+/**
+ * Decrypts data read from an underlying stream or channel. Data is read into a large buffer, as many whole data units as fit, and
+ * decrypted with a single cipher mode call. The underlying stream must have been written by CipherOutputStream, the last two data units
+ * of each buffer are held back until more data follows so that the padding and the trailer unit are never returned as data.
+ * <p>
+ * When double buffered, the next buffer is read on a virtual thread while the caller consumes the current buffer.
+ * <p>
+ * This class is not thread safe.
+ */
+public class CipherInputStream extends InputStream implements ReadableByteChannel
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final InputStream mInputStream;
+	private final UnitCipher mCipher;
+	private final int mUnitSize;
+	private final int mHoldLength;
+	private byte[] mBuffer;
+	private byte[] mSpareBuffer;
+	private CompletableFuture<Integer> mPendingRead;
+	private int mBufferOffset;
+	private int mBufferLength;
+	private int mDataLength;
+	private long mDataUnitNo;
+	private boolean mEndOfStream;
+	private boolean mClosed;
+
+
+	public CipherInputStream(InputStream aInputStream, UnitCipher aCipher, long aStartDataUnitNo)
+	{
+		this(aInputStream, aCipher, aStartDataUnitNo, DEFAULT_BUFFER_SIZE, false);
+	}
+
+
+	public CipherInputStream(ReadableByteChannel aChannel, UnitCipher aCipher, long aStartDataUnitNo)
+	{
+		this(Channels.newInputStream(aChannel), aCipher, aStartDataUnitNo, DEFAULT_BUFFER_SIZE, false);
+	}
+
+
+	/**
+	 * @param aInputStream the stream providing encrypted data
+	 * @param aCipher the data unit cipher
+	 * @param aStartDataUnitNo the sequential number of the first data unit read
+	 * @param aBufferSize size of the internal buffer, rounded down to a multiple of the unit size and at least three units
+	 * @param aDoubleBuffered read ahead on a separate thread
+	 */
+	public CipherInputStream(InputStream aInputStream, UnitCipher aCipher, long aStartDataUnitNo, int aBufferSize, boolean aDoubleBuffered)
+	{
+		mInputStream = aInputStream;
+		mCipher = aCipher;
+		mUnitSize = aCipher.getUnitSize();
+		mHoldLength = 2 * mUnitSize;
+		mDataUnitNo = aStartDataUnitNo;
+		mBuffer = new byte[Math.max(3, aBufferSize / mUnitSize) * mUnitSize];
+		mSpareBuffer = aDoubleBuffered ? new byte[mBuffer.length] : null;
+	}
+
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!ensureAvailable())
+		{
+			return -1;
+		}
+
+		return 0xff & mBuffer[mBufferOffset++];
+	}
+
+
+	@Override
+	public int read(byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		if (aLength == 0)
+		{
+			return 0;
+		}
+
+		int total = 0;
+
+		while (total < aLength && ensureAvailable())
+		{
+			int length = Math.min(aLength - total, mBufferLength - mBufferOffset);
+
+			System.arraycopy(mBuffer, mBufferOffset, aBuffer, aOffset + total, length);
+
+			mBufferOffset += length;
+			total += length;
+		}
+
+		return total == 0 ? -1 : total;
+	}
+
+
+	@Override
+	public int read(ByteBuffer aBuffer) throws IOException
+	{
+		if (!aBuffer.hasRemaining())
+		{
+			return 0;
+		}
+
+		int total = 0;
+
+		while (aBuffer.hasRemaining() && ensureAvailable())
+		{
+			int length = Math.min(aBuffer.remaining(), mBufferLength - mBufferOffset);
+
+			aBuffer.put(mBuffer, mBufferOffset, length);
+
+			mBufferOffset += length;
+			total += length;
+		}
+
+		return total == 0 ? -1 : total;
+	}
+
+
+	@Override
+	public int available() throws IOException
+	{
+		return mBufferLength - mBufferOffset;
+	}
+
+
+	@Override
+	public boolean isOpen()
+	{
+		return !mClosed;
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		mClosed = true;
+
+		try
+		{
+			if (mPendingRead != null)
+			{
+				mPendingRead.exceptionally(e -> 0).join();
+				mPendingRead = null;
+			}
+		}
+		finally
+		{
+			Arrays.fill(mBuffer, (byte)0);
+			if (mSpareBuffer != null)
+			{
+				Arrays.fill(mSpareBuffer, (byte)0);
+			}
+
+			mInputStream.close();
+		}
+	}
+
+
+	private boolean ensureAvailable() throws IOException
+	{
+		if (mClosed)
+		{
+			throw new ClosedChannelException();
+		}
+
+		while (mBufferOffset == mBufferLength)
+		{
+			if (mEndOfStream)
+			{
+				return false;
+			}
+
+			fill();
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Reads and decrypts the next buffer. The data units held back from the previous buffer are moved to the start of the buffer and the
+	 * new data is read after them. At the end of the stream the trailer unit gives the number of padding bytes before it.
+	 */
+	private void fill() throws IOException
+	{
+		int held = mDataLength - mBufferLength;
+		int length;
+
+		if (mPendingRead != null)
+		{
+			try
+			{
+				length = mPendingRead.join();
+			}
+			catch (Exception e)
+			{
+				throw Futures.unwrapIOException(e);
+			}
+			finally
+			{
+				mPendingRead = null;
+			}
+
+			byte[] buffer = mBuffer;
+			mBuffer = mSpareBuffer;
+			mSpareBuffer = buffer;
+
+			System.arraycopy(buffer, mBufferLength, mBuffer, 0, held);
+			Arrays.fill(buffer, (byte)0);
+		}
+		else
+		{
+			System.arraycopy(mBuffer, mBufferLength, mBuffer, 0, held);
+			length = mInputStream.readNBytes(mBuffer, held, mBuffer.length - held);
+		}
+
+		if ((length % mUnitSize) != 0)
+		{
+			throw new EOFException("Stream ended inside a data unit.");
+		}
+
+		mDataLength = held + length;
+		mBufferOffset = 0;
+
+		if (mDataLength < mBuffer.length)
+		{
+			mEndOfStream = true;
+		}
+		else if (mSpareBuffer != null)
+		{
+			byte[] spare = mSpareBuffer;
+
+			mPendingRead = CompletableFuture.supplyAsync(() ->
+			{
+				try
+				{
+					return mInputStream.readNBytes(spare, mHoldLength, spare.length - mHoldLength);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, aTask -> Thread.ofVirtual().start(aTask));
+		}
+
+		mCipher.decrypt(mBuffer, held, length, mDataUnitNo);
+		mDataUnitNo += length / mUnitSize;
+
+		if (!mEndOfStream)
+		{
+			mBufferLength = mDataLength - mHoldLength;
+			return;
+		}
+
+		if (mDataLength < mUnitSize)
+		{
+			throw new EOFException("Stream ended without a trailer unit.");
+		}
+
+		int padding = (int)INT.get(mBuffer, mDataLength - mUnitSize);
+
+		if (padding < 0 || padding >= mUnitSize || padding > mDataLength - mUnitSize)
+		{
+			throw new IOException("Corrupt trailer unit.");
+		}
+
+		mBufferLength = mDataLength - mUnitSize - padding;
+	}
+}
@@ -0,0 +1,278 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.util.BlockPadding;
+
+
+/**
+ * Encrypts data written to an underlying stream or channel. Data is collected in a large buffer and each full buffer is encrypted with
+ * a single cipher mode call before being written. When the stream is closed a trailing partial data unit is padded with counter values
+ * and a final trailer unit is written holding the number of padding bytes, so that CipherInputStream returns exactly the data written.
+ * <p>
+ * When double buffered, the encrypted buffer is written on a virtual thread while the next buffer is filled and encrypted by the caller.
+ * <p>
+ * This class is not thread safe.
+ */
+public class CipherOutputStream extends OutputStream implements WritableByteChannel
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final OutputStream mOutputStream;
+	private final UnitCipher mCipher;
+	private final int mUnitSize;
+	private byte[] mBuffer;
+	private byte[] mSpareBuffer;
+	private CompletableFuture<Void> mPendingWrite;
+	private int mBufferOffset;
+	private long mDataUnitNo;
+	private boolean mClosed;
+
+
+	public CipherOutputStream(OutputStream aOutputStream, UnitCipher aCipher, long aStartDataUnitNo)
+	{
+		this(aOutputStream, aCipher, aStartDataUnitNo, DEFAULT_BUFFER_SIZE, false);
+	}
+
+
+	public CipherOutputStream(WritableByteChannel aChannel, UnitCipher aCipher, long aStartDataUnitNo)
+	{
+		this(Channels.newOutputStream(aChannel), aCipher, aStartDataUnitNo, DEFAULT_BUFFER_SIZE, false);
+	}
+
+
+	/**
+	 * @param aOutputStream the stream receiving encrypted data
+	 * @param aCipher the data unit cipher
+	 * @param aStartDataUnitNo the sequential number of the first data unit written
+	 * @param aBufferSize size of the internal buffer, rounded down to a multiple of the unit size
+	 * @param aDoubleBuffered write encrypted data on a separate thread
+	 */
+	public CipherOutputStream(OutputStream aOutputStream, UnitCipher aCipher, long aStartDataUnitNo, int aBufferSize, boolean aDoubleBuffered)
+	{
+		mOutputStream = aOutputStream;
+		mCipher = aCipher;
+		mUnitSize = aCipher.getUnitSize();
+		mDataUnitNo = aStartDataUnitNo;
+		mBuffer = new byte[Math.max(1, aBufferSize / mUnitSize) * mUnitSize];
+		mSpareBuffer = aDoubleBuffered ? new byte[mBuffer.length] : null;
+	}
+
+
+	@Override
+	public void write(int aByte) throws IOException
+	{
+		ensureOpen();
+
+		mBuffer[mBufferOffset++] = (byte)aByte;
+
+		if (mBufferOffset == mBuffer.length)
+		{
+			emit(mBufferOffset);
+		}
+	}
+
+
+	@Override
+	public void write(byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		ensureOpen();
+
+		while (aLength > 0)
+		{
+			int length = Math.min(aLength, mBuffer.length - mBufferOffset);
+
+			System.arraycopy(aBuffer, aOffset, mBuffer, mBufferOffset, length);
+
+			mBufferOffset += length;
+			aOffset += length;
+			aLength -= length;
+
+			if (mBufferOffset == mBuffer.length)
+			{
+				emit(mBufferOffset);
+			}
+		}
+	}
+
+
+	@Override
+	public int write(ByteBuffer aBuffer) throws IOException
+	{
+		ensureOpen();
+
+		int total = aBuffer.remaining();
+
+		while (aBuffer.hasRemaining())
+		{
+			int length = Math.min(aBuffer.remaining(), mBuffer.length - mBufferOffset);
+
+			aBuffer.get(mBuffer, mBufferOffset, length);
+
+			mBufferOffset += length;
+
+			if (mBufferOffset == mBuffer.length)
+			{
+				emit(mBufferOffset);
+			}
+		}
+
+		return total;
+	}
+
+
+	/**
+	 * Encrypts and writes all complete data units buffered. A partial data unit remains buffered until more data is written or the
+	 * stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		ensureOpen();
+
+		emit(mBufferOffset / mUnitSize * mUnitSize);
+		awaitPendingWrite();
+
+		mOutputStream.flush();
+	}
+
+
+	@Override
+	public boolean isOpen()
+	{
+		return !mClosed;
+	}
+
+
+	/**
+	 * Pads the final data unit, writes it followed by the trailer unit and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		try
+		{
+			int length = BlockPadding.counterPadding(mBuffer, 0, mBufferOffset, mUnitSize);
+			int padding = length - mBufferOffset;
+
+			if (length == mBuffer.length)
+			{
+				mBufferOffset = length;
+				emit(length);
+				length = 0;
+			}
+
+			Arrays.fill(mBuffer, length, length + mUnitSize, (byte)0);
+			INT.set(mBuffer, length, padding);
+
+			mBufferOffset = length + mUnitSize;
+			emit(mBufferOffset);
+			awaitPendingWrite();
+		}
+		finally
+		{
+			mClosed = true;
+
+			Arrays.fill(mBuffer, (byte)0);
+			if (mSpareBuffer != null)
+			{
+				Arrays.fill(mSpareBuffer, (byte)0);
+			}
+
+			mOutputStream.close();
+		}
+	}
+
+
+	/**
+	 * Encrypts and writes the first bytes of the buffer. Remaining bytes are moved to the start of the next buffer.
+	 */
+	private void emit(int aLength) throws IOException
+	{
+		if (aLength == 0)
+		{
+			return;
+		}
+
+		mCipher.encrypt(mBuffer, 0, aLength, mDataUnitNo);
+		mDataUnitNo += aLength / mUnitSize;
+
+		int remaining = mBufferOffset - aLength;
+
+		if (mSpareBuffer == null)
+		{
+			mOutputStream.write(mBuffer, 0, aLength);
+
+			System.arraycopy(mBuffer, aLength, mBuffer, 0, remaining);
+		}
+		else
+		{
+			awaitPendingWrite();
+
+			byte[] buffer = mBuffer;
+			mBuffer = mSpareBuffer;
+			mSpareBuffer = buffer;
+
+			System.arraycopy(buffer, aLength, mBuffer, 0, remaining);
+
+			mPendingWrite = CompletableFuture.runAsync(() ->
+			{
+				try
+				{
+					mOutputStream.write(buffer, 0, aLength);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, aTask -> Thread.ofVirtual().start(aTask));
+		}
+
+		mBufferOffset = remaining;
+	}
+
+
+	private void awaitPendingWrite() throws IOException
+	{
+		if (mPendingWrite != null)
+		{
+			CompletableFuture<Void> pending = mPendingWrite;
+			mPendingWrite = null;
+
+			try
+			{
+				pending.join();
+			}
+			catch (Exception e)
+			{
+				throw Futures.unwrapIOException(e);
+			}
+		}
+	}
+
+
+	private void ensureOpen() throws IOException
+	{
+		if (mClosed)
+		{
+			throw new ClosedChannelException();
+		}
+	}
+}
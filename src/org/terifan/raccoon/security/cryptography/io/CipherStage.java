@@ -0,0 +1,52 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.nio.ByteBuffer;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+
+
+/**
+ * Encrypts or decrypts buffers in place with consecutive data unit numbers. Buffers must hold whole data units, use BlockPadding to pad
+ * the final buffer.
+ */
+public final class CipherStage implements BufferStage
+{
+	private final UnitCipher mCipher;
+	private final boolean mEncrypt;
+	private long mDataUnitNo;
+
+
+	/**
+	 * @param aCipher the data unit cipher
+	 * @param aStartDataUnitNo the sequential number of the first data unit
+	 * @param aEncrypt true to encrypt, false to decrypt
+	 */
+	public CipherStage(UnitCipher aCipher, long aStartDataUnitNo, boolean aEncrypt)
+	{
+		mCipher = aCipher;
+		mEncrypt = aEncrypt;
+		mDataUnitNo = aStartDataUnitNo;
+	}
+
+
+	@Override
+	public void process(ByteBuffer aBuffer)
+	{
+		int length = aBuffer.remaining();
+
+		if ((length % mCipher.getUnitSize()) != 0)
+		{
+			throw new IllegalArgumentException("Buffer length must be a multiple of the unit size: " + length);
+		}
+
+		if (mEncrypt)
+		{
+			mCipher.encrypt(aBuffer, aBuffer.position(), length, mDataUnitNo);
+		}
+		else
+		{
+			mCipher.decrypt(aBuffer, aBuffer.position(), length, mDataUnitNo);
+		}
+
+		mDataUnitNo += length / mCipher.getUnitSize();
+	}
+}
@@ -0,0 +1,213 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.util.BlockPadding;
+
+
+/**
+ * Compresses data in chunks and encrypts the compressed frames by data unit. Compression runs on one thread and encryption and output
+ * on another, the caller only copies data into chunks. The stages are connected by bounded queues so memory use is limited and a slow
+ * stage throttles the stages before it.
+ * <p>
+ * Each frame is a 12 byte header (plaintext length, stored length, flags) followed by the stored data, padded with counter values to a
+ * multiple of the unit size and encrypted with consecutive data unit numbers. Chunks that do not compress are stored raw. The frames are
+ * not authenticated, use the chunked container for authenticated storage.
+ * <p>
+ * This class is not thread safe.
+ *
+ * <pre>
+ * try (CompressingCipherOutputStream out = new CompressingCipherOutputStream(fileStream, unitCipher, 0, new DeflateCodec()))
+ * {
+ *     out.write(data);
+ * }
+ * </pre>
+ */
+public class CompressingCipherOutputStream extends OutputStream
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private final static byte[] END = new byte[0];
+
+	final static int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	final static int QUEUE_CAPACITY = 4;
+	final static int HEADER_LENGTH = 12;
+	final static int FLAG_COMPRESSED = 1;
+
+	private final OutputStream mOutputStream;
+	private final UnitCipher mCipher;
+	private final CompressionCodec mCodec;
+	private final Pipeline mPipeline;
+	private final BlockingQueue<byte[]> mChunks;
+	private final BlockingQueue<byte[]> mFrames;
+	private final int mChunkSize;
+	private final int mUnitSize;
+	private byte[] mChunk;
+	private int mChunkOffset;
+	private long mDataUnitNo;
+	private boolean mClosed;
+
+
+	public CompressingCipherOutputStream(OutputStream aOutputStream, UnitCipher aCipher, long aStartDataUnitNo, CompressionCodec aCodec)
+	{
+		this(aOutputStream, aCipher, aStartDataUnitNo, aCodec, DEFAULT_CHUNK_SIZE);
+	}
+
+
+	/**
+	 * @param aOutputStream receives the encrypted frames
+	 * @param aCipher the data unit cipher
+	 * @param aStartDataUnitNo the sequential number of the first data unit written
+	 * @param aCodec the compression codec, used by the compression thread only and closed when this stream is closed
+	 * @param aChunkSize number of bytes compressed together
+	 */
+	public CompressingCipherOutputStream(OutputStream aOutputStream, UnitCipher aCipher, long aStartDataUnitNo, CompressionCodec aCodec, int aChunkSize)
+	{
+		mOutputStream = aOutputStream;
+		mCipher = aCipher;
+		mCodec = aCodec;
+		mChunkSize = aChunkSize;
+		mUnitSize = aCipher.getUnitSize();
+		mDataUnitNo = aStartDataUnitNo;
+		mChunk = new byte[aChunkSize];
+
+		mPipeline = new Pipeline();
+		mChunks = mPipeline.newQueue(QUEUE_CAPACITY);
+		mFrames = mPipeline.newQueue(QUEUE_CAPACITY);
+		mPipeline.start("compress", this::compressStage);
+		mPipeline.start("encrypt", this::encryptStage);
+	}
+
+
+	@Override
+	public void write(int aByte) throws IOException
+	{
+		write(new byte[]{(byte)aByte}, 0, 1);
+	}
+
+
+	@Override
+	public void write(byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		if (mClosed)
+		{
+			throw new ClosedChannelException();
+		}
+
+		while (aLength > 0)
+		{
+			int length = Math.min(mChunkSize - mChunkOffset, aLength);
+
+			System.arraycopy(aBuffer, aOffset, mChunk, mChunkOffset, length);
+
+			mChunkOffset += length;
+			aOffset += length;
+			aLength -= length;
+
+			if (mChunkOffset == mChunkSize)
+			{
+				mPipeline.put(mChunks, mChunk);
+				mChunk = new byte[mChunkSize];
+				mChunkOffset = 0;
+			}
+		}
+	}
+
+
+	/**
+	 * Compresses, encrypts and writes the buffered data and waits for the stages to finish, then closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		mClosed = true;
+
+		try
+		{
+			if (mChunkOffset > 0)
+			{
+				mPipeline.put(mChunks, Arrays.copyOf(mChunk, mChunkOffset));
+				Arrays.fill(mChunk, (byte)0);
+			}
+
+			mPipeline.put(mChunks, END);
+			mPipeline.join();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			mPipeline.cancel();
+			throw e;
+		}
+		finally
+		{
+			mOutputStream.close();
+		}
+	}
+
+
+	private void compressStage() throws IOException
+	{
+		try (mCodec)
+		{
+			for (;;)
+			{
+				byte[] chunk = mPipeline.take(mChunks);
+
+				if (chunk == END)
+				{
+					mPipeline.put(mFrames, END);
+					return;
+				}
+
+				byte[] compressed = mCodec.compress(chunk, 0, chunk.length);
+				boolean useCompressed = compressed.length < chunk.length;
+				byte[] stored = useCompressed ? compressed : chunk;
+
+				int length = HEADER_LENGTH + stored.length;
+				byte[] frame = new byte[(length + mUnitSize - 1) / mUnitSize * mUnitSize];
+
+				INT.set(frame, 0, chunk.length);
+				INT.set(frame, 4, stored.length);
+				INT.set(frame, 8, useCompressed ? FLAG_COMPRESSED : 0);
+				System.arraycopy(stored, 0, frame, HEADER_LENGTH, stored.length);
+				BlockPadding.counterPadding(frame, 0, length, mUnitSize);
+
+				Arrays.fill(chunk, (byte)0);
+				Arrays.fill(compressed, (byte)0);
+
+				mPipeline.put(mFrames, frame);
+			}
+		}
+	}
+
+
+	private void encryptStage() throws IOException
+	{
+		for (;;)
+		{
+			byte[] frame = mPipeline.take(mFrames);
+
+			if (frame == END)
+			{
+				mOutputStream.flush();
+				return;
+			}
+
+			mCipher.encrypt(frame, 0, frame.length, mDataUnitNo);
+			mDataUnitNo += frame.length / mUnitSize;
+
+			mOutputStream.write(frame);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+
+
+/**
+ * A block compression algorithm used by the compressing cipher streams. An instance is only used by a single thread at a time and is
+ * closed by the stream using it when the stream is closed.
+ */
+public interface CompressionCodec extends AutoCloseable
+{
+	/**
+	 * Returns the compressed data. The result may be larger than the input.
+	 */
+	byte[] compress(byte[] aBuffer, int aOffset, int aLength);
+
+
+	/**
+	 * Decompresses data into the output buffer which must be filled completely.
+	 *
+	 * @throws IOException
+	 *    if the data is corrupt or does not decompress to the expected length
+	 */
+	void decompress(byte[] aBuffer, int aOffset, int aLength, byte[] aOutput, int aOutputOffset, int aOutputLength) throws IOException;
+
+
+	/**
+	 * Releases any native resources held by the codec.
+	 */
+	@Override
+	default void close()
+	{
+	}
+}
@@ -0,0 +1,209 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.CipherMode;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.util.BlockPadding;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.SHA256;
+
+
+/**
+ * Layout and key schedule of the chunked container format.
+ *
+ * <pre>
+ * header:  magic "RCN1" | chunk size (int) | unit size (int) | salt (32) | header tag (32)
+ * chunk:   ciphertext (chunk size, final chunk padded to unit size) | plaintext length (int) | tag (32)
+ * </pre>
+ *
+ * The cipher key, tweak key, MAC key and block IV are derived from the master key and the salt using HKDF-SHA256. Chunk n is encrypted
+ * with data unit numbers starting at n * units per chunk, which makes the chunk index the nonce. The tag is HMAC-SHA256 over the chunk
+ * index, a final chunk marker, the ciphertext and the plaintext length. All integers are big endian. All chunks except the final are
+ * full, so any chunk can be located in constant time and truncation or reordering is detected.
+ */
+final class ContainerFormat
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private final static byte[] MAGIC = "RCN1".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] INFO = "raccoon chunked container".getBytes(StandardCharsets.US_ASCII);
+	private final static int KEY_LENGTH = 32;
+
+	final static int SALT_LENGTH = 32;
+	final static int TAG_LENGTH = 32;
+	final static int TRAILER_LENGTH = 4 + TAG_LENGTH;
+	final static int HEADER_LENGTH = 12 + SALT_LENGTH + TAG_LENGTH;
+
+	private final UnitCipher mCipher;
+	private final byte[] mMacKey;
+	private final byte[] mSalt;
+	private final int mChunkSize;
+	private final int mUnitSize;
+
+
+	ContainerFormat(SecretKey aKey, CipherMode aCipherMode, Supplier<BlockCipher> aCipherFactory, byte[] aSalt, int aChunkSize, int aUnitSize)
+	{
+		if (aUnitSize <= 0 || (aUnitSize % 16) != 0 || aChunkSize <= 0 || (aChunkSize % aUnitSize) != 0)
+		{
+			throw new IllegalArgumentException("Chunk size must be a multiple of the unit size which must be a multiple of 16: " + aChunkSize + ", " + aUnitSize);
+		}
+
+		byte[] keys = aKey.deriveBytes(new SHA256(), aSalt, INFO, 3 * KEY_LENGTH + 16);
+
+		try
+		{
+			BlockCipher cipher = aCipherFactory.get();
+			BlockCipher tweakCipher = aCipherFactory.get();
+			cipher.engineInit(new SecretKey(Arrays.copyOfRange(keys, 0, KEY_LENGTH)));
+			tweakCipher.engineInit(new SecretKey(Arrays.copyOfRange(keys, KEY_LENGTH, 2 * KEY_LENGTH)));
+
+			int[] blockIV = new int[4];
+			for (int i = 0; i < 4; i++)
+			{
+				blockIV[i] = (int)INT.get(keys, 3 * KEY_LENGTH + 4 * i);
+			}
+
+			mCipher = new UnitCipher(aCipherMode, cipher, tweakCipher, blockIV, aUnitSize);
+			mMacKey = Arrays.copyOfRange(keys, 2 * KEY_LENGTH, 3 * KEY_LENGTH);
+			mSalt = aSalt.clone();
+			mChunkSize = aChunkSize;
+			mUnitSize = aUnitSize;
+		}
+		finally
+		{
+			Arrays.fill(keys, (byte)0);
+		}
+	}
+
+
+	int getChunkSize()
+	{
+		return mChunkSize;
+	}
+
+
+	int getRecordSize()
+	{
+		return mChunkSize + TRAILER_LENGTH;
+	}
+
+
+	byte[] createHeader()
+	{
+		byte[] header = new byte[HEADER_LENGTH];
+		System.arraycopy(MAGIC, 0, header, 0, 4);
+		INT.set(header, 4, mChunkSize);
+		INT.set(header, 8, mUnitSize);
+		System.arraycopy(mSalt, 0, header, 12, SALT_LENGTH);
+
+		HMAC mac = new HMAC(new SHA256(), mMacKey);
+		mac.update(header, 0, HEADER_LENGTH - TAG_LENGTH);
+		System.arraycopy(mac.digest(), 0, header, HEADER_LENGTH - TAG_LENGTH, TAG_LENGTH);
+
+		return header;
+	}
+
+
+	/**
+	 * Parses a header and verifies its tag.
+	 */
+	static ContainerFormat readHeader(byte[] aHeader, SecretKey aKey, CipherMode aCipherMode, Supplier<BlockCipher> aCipherFactory) throws InvalidTagException
+	{
+		if (!Arrays.equals(aHeader, 0, 4, MAGIC, 0, 4))
+		{
+			throw new InvalidTagException("Not a container.");
+		}
+
+		ContainerFormat format;
+		try
+		{
+			format = new ContainerFormat(aKey, aCipherMode, aCipherFactory, Arrays.copyOfRange(aHeader, 12, 12 + SALT_LENGTH), (int)INT.get(aHeader, 4), (int)INT.get(aHeader, 8));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new InvalidTagException("Container header is corrupt.");
+		}
+
+		if (!MessageDigest.isEqual(format.createHeader(), aHeader))
+		{
+			throw new InvalidTagException("Container header authentication failed.");
+		}
+
+		return format;
+	}
+
+
+	/**
+	 * Encrypts a chunk in place and appends the trailer. The buffer must have room for padding and trailer.
+	 *
+	 * @return length of the chunk record
+	 */
+	int seal(long aChunkIndex, byte[] aBuffer, int aOffset, int aLength, boolean aFinal)
+	{
+		int paddedLength = BlockPadding.counterPadding(aBuffer, aOffset, aLength, mUnitSize);
+
+		mCipher.encrypt(aBuffer, aOffset, paddedLength, aChunkIndex * (mChunkSize / mUnitSize));
+		INT.set(aBuffer, aOffset + paddedLength, aLength);
+
+		byte[] tag = computeTag(aChunkIndex, aFinal, aBuffer, aOffset, paddedLength + 4);
+		System.arraycopy(tag, 0, aBuffer, aOffset + paddedLength + 4, TAG_LENGTH);
+
+		return paddedLength + TRAILER_LENGTH;
+	}
+
+
+	/**
+	 * Verifies and decrypts a chunk record in place.
+	 *
+	 * @return length of the plaintext
+	 */
+	int open(long aChunkIndex, byte[] aBuffer, int aOffset, int aRecordLength, boolean aFinal) throws InvalidTagException
+	{
+		int cipherLength = aRecordLength - TRAILER_LENGTH;
+
+		if (cipherLength < 0 || cipherLength > mChunkSize || (cipherLength % mUnitSize) != 0 || (!aFinal && cipherLength != mChunkSize))
+		{
+			throw new InvalidTagException("Malformed chunk " + aChunkIndex + ".");
+		}
+
+		byte[] tag = computeTag(aChunkIndex, aFinal, aBuffer, aOffset, cipherLength + 4);
+
+		if (!MessageDigest.isEqual(tag, Arrays.copyOfRange(aBuffer, aOffset + cipherLength + 4, aOffset + aRecordLength)))
+		{
+			throw new InvalidTagException("Authentication failed for chunk " + aChunkIndex + ".");
+		}
+
+		int length = (int)INT.get(aBuffer, aOffset + cipherLength);
+
+		if (length < 0 || length > cipherLength || (!aFinal && length != mChunkSize))
+		{
+			throw new InvalidTagException("Malformed chunk " + aChunkIndex + ".");
+		}
+
+		mCipher.decrypt(aBuffer, aOffset, cipherLength, aChunkIndex * (mChunkSize / mUnitSize));
+
+		return length;
+	}
+
+
+	private byte[] computeTag(long aChunkIndex, boolean aFinal, byte[] aBuffer, int aOffset, int aLength)
+	{
+		byte[] prefix = new byte[9];
+		LONG.set(prefix, 0, aChunkIndex);
+		prefix[8] = (byte)(aFinal ? 1 : 0);
+
+		HMAC mac = new HMAC(new SHA256(), mMacKey);
+		mac.update(prefix);
+		mac.update(aBuffer, aOffset, aLength);
+		return mac.digest();
+	}
+}
@@ -0,0 +1,173 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.ClosedChannelException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.CipherMode;
+
+
+/**
+ * Writes a chunked authenticated container. Data is split in fixed size chunks, each encrypted and authenticated independently so the
+ * container can be read with random access using ContainerReader. A batch of chunks is collected and sealed in parallel before being
+ * written in order.
+ * <p>
+ * The final chunk is written when the stream is closed, a container without its final chunk is rejected when read.
+ * <p>
+ * This class is not thread safe.
+ *
+ * <pre>
+ * try (ContainerOutputStream out = new ContainerOutputStream(Files.newOutputStream(path), key, new XTSCipherMode(), AES::new))
+ * {
+ *     out.write(data);
+ * }
+ * </pre>
+ */
+public class ContainerOutputStream extends OutputStream
+{
+	public final static int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	public final static int DEFAULT_UNIT_SIZE = 4096;
+
+	private final OutputStream mOutputStream;
+	private final ContainerFormat mFormat;
+	private final byte[] mBuffer;
+	private final int[] mRecordLengths;
+	private final int mBatchChunks;
+	private final int mChunkSize;
+	private final int mRecordSize;
+	private int mFilledChunks;
+	private int mChunkOffset;
+	private long mChunkIndex;
+	private boolean mClosed;
+
+
+	public ContainerOutputStream(OutputStream aOutputStream, SecretKey aKey, CipherMode aCipherMode, Supplier<BlockCipher> aCipherFactory) throws IOException
+	{
+		this(aOutputStream, aKey, aCipherMode, aCipherFactory, DEFAULT_CHUNK_SIZE, DEFAULT_UNIT_SIZE);
+	}
+
+
+	/**
+	 * Creates a container and writes its header.
+	 *
+	 * @param aOutputStream receives the container
+	 * @param aKey the master key, cipher and MAC keys are derived from it using a random salt
+	 * @param aCipherMode the cipher mode used to encrypt chunks
+	 * @param aCipherFactory creates uninitialized instances of the block cipher, e.g. <code>AES::new</code>
+	 * @param aChunkSize size of a chunk, a multiple of the unit size
+	 * @param aUnitSize data unit size of the cipher mode, a multiple of 16
+	 */
+	public ContainerOutputStream(OutputStream aOutputStream, SecretKey aKey, CipherMode aCipherMode, Supplier<BlockCipher> aCipherFactory, int aChunkSize, int aUnitSize) throws IOException
+	{
+		byte[] salt = new byte[ContainerFormat.SALT_LENGTH];
+		new SecureRandom().nextBytes(salt);
+
+		mOutputStream = aOutputStream;
+		mFormat = new ContainerFormat(aKey, aCipherMode, aCipherFactory, salt, aChunkSize, aUnitSize);
+		mChunkSize = aChunkSize;
+		mRecordSize = mFormat.getRecordSize();
+		mBatchChunks = Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(), (16 << 20) / mRecordSize));
+		mBuffer = new byte[mBatchChunks * mRecordSize];
+		mRecordLengths = new int[mBatchChunks];
+
+		mOutputStream.write(mFormat.createHeader());
+	}
+
+
+	@Override
+	public void write(int aByte) throws IOException
+	{
+		write(new byte[]{(byte)aByte}, 0, 1);
+	}
+
+
+	@Override
+	public void write(byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		if (mClosed)
+		{
+			throw new ClosedChannelException();
+		}
+
+		while (aLength > 0)
+		{
+			// a full chunk is only sealed once more data arrives, the last chunk must be marked final
+			if (mChunkOffset == mChunkSize)
+			{
+				mFilledChunks++;
+				mChunkOffset = 0;
+
+				if (mFilledChunks == mBatchChunks)
+				{
+					emit(mFilledChunks, false);
+				}
+			}
+
+			int length = Math.min(mChunkSize - mChunkOffset, aLength);
+
+			System.arraycopy(aBuffer, aOffset, mBuffer, mFilledChunks * mRecordSize + mChunkOffset, length);
+
+			mChunkOffset += length;
+			aOffset += length;
+			aLength -= length;
+		}
+	}
+
+
+	/**
+	 * Writes the final chunk and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		mClosed = true;
+
+		try
+		{
+			emit(mFilledChunks + 1, true);
+			mOutputStream.flush();
+		}
+		finally
+		{
+			Arrays.fill(mBuffer, (byte)0);
+			mOutputStream.close();
+		}
+	}
+
+
+	/**
+	 * Seals the buffered chunks in parallel and writes them in order.
+	 */
+	private void emit(int aChunkCount, boolean aFinal) throws IOException
+	{
+		IntStream range = IntStream.range(0, aChunkCount);
+		if (aChunkCount > 1)
+		{
+			range = range.parallel();
+		}
+
+		range.forEach(i ->
+		{
+			boolean last = aFinal && i == aChunkCount - 1;
+			mRecordLengths[i] = mFormat.seal(mChunkIndex + i, mBuffer, i * mRecordSize, last ? mChunkOffset : mChunkSize, last);
+		});
+
+		for (int i = 0; i < aChunkCount; i++)
+		{
+			mOutputStream.write(mBuffer, i * mRecordSize, mRecordLengths[i]);
+		}
+
+		mChunkIndex += aChunkCount;
+		mFilledChunks = 0;
+	}
+}
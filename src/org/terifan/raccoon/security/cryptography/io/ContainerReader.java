@@ -0,0 +1,234 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.CipherMode;
+
+
+/**
+ * Random access reader of containers written by ContainerOutputStream. Any chunk is located in constant time. Reads spanning several
+ * chunks read the chunk records with a single channel read and verify and decrypt them in parallel.
+ * <p>
+ * The header and the final chunk are verified when the reader is created. Every chunk is verified before any of its plaintext is
+ * returned, failures are reported with an InvalidTagException.
+ * <p>
+ * Instances are thread safe.
+ *
+ * <pre>
+ * try (ContainerReader reader = new ContainerReader(FileChannel.open(path), key, new XTSCipherMode(), AES::new))
+ * {
+ *     reader.read(position, buffer);
+ * }
+ * </pre>
+ */
+public final class ContainerReader implements AutoCloseable
+{
+	private final SeekableByteChannel mChannel;
+	private final ContainerFormat mFormat;
+	private final int mChunkSize;
+	private final int mRecordSize;
+	private final long mChunkCount;
+	private final int mFinalRecordLength;
+	private final long mSize;
+	private final int mBatchChunks;
+
+
+	/**
+	 * @param aChannel the container
+	 * @param aKey the master key
+	 * @param aCipherMode the cipher mode used when the container was written
+	 * @param aCipherFactory creates uninitialized instances of the block cipher used when the container was written
+	 *
+	 * @throws InvalidTagException
+	 *    if the header or the final chunk fails authentication, or the container is truncated
+	 */
+	public ContainerReader(SeekableByteChannel aChannel, SecretKey aKey, CipherMode aCipherMode, Supplier<BlockCipher> aCipherFactory) throws IOException, InvalidTagException
+	{
+		mChannel = aChannel;
+
+		byte[] header = new byte[ContainerFormat.HEADER_LENGTH];
+		readFully(ByteBuffer.wrap(header), 0);
+
+		mFormat = ContainerFormat.readHeader(header, aKey, aCipherMode, aCipherFactory);
+		mChunkSize = mFormat.getChunkSize();
+		mRecordSize = mFormat.getRecordSize();
+		mBatchChunks = Math.max(1, Math.min(4 * Runtime.getRuntime().availableProcessors(), (16 << 20) / mRecordSize));
+
+		long payload = aChannel.size() - ContainerFormat.HEADER_LENGTH;
+
+		if (payload < ContainerFormat.TRAILER_LENGTH)
+		{
+			throw new InvalidTagException("Container is truncated.");
+		}
+
+		mChunkCount = (payload + mRecordSize - 1) / mRecordSize;
+		mFinalRecordLength = (int)(payload - (mChunkCount - 1) * mRecordSize);
+
+		byte[] record = new byte[mFinalRecordLength];
+		readFully(ByteBuffer.wrap(record), recordPosition(mChunkCount - 1));
+		int finalLength = mFormat.open(mChunkCount - 1, record, 0, mFinalRecordLength, true);
+		Arrays.fill(record, (byte)0);
+
+		mSize = (mChunkCount - 1) * mChunkSize + finalLength;
+	}
+
+
+	/**
+	 * Returns the length of the plaintext.
+	 */
+	public long size()
+	{
+		return mSize;
+	}
+
+
+	public long getChunkCount()
+	{
+		return mChunkCount;
+	}
+
+
+	public int getChunkSize()
+	{
+		return mChunkSize;
+	}
+
+
+	/**
+	 * Returns the plaintext of a chunk.
+	 */
+	public byte[] readChunk(long aChunkIndex) throws IOException, InvalidTagException
+	{
+		if (aChunkIndex < 0 || aChunkIndex >= mChunkCount)
+		{
+			throw new IllegalArgumentException("Chunk index out of range: " + aChunkIndex);
+		}
+
+		int recordLength = recordLength(aChunkIndex);
+		byte[] record = new byte[recordLength];
+		readFully(ByteBuffer.wrap(record), recordPosition(aChunkIndex));
+
+		int length = mFormat.open(aChunkIndex, record, 0, recordLength, aChunkIndex == mChunkCount - 1);
+		byte[] plaintext = Arrays.copyOf(record, length);
+		Arrays.fill(record, (byte)0);
+
+		return plaintext;
+	}
+
+
+	/**
+	 * Reads plaintext starting at the position provided into the remaining space of the buffer. The position of the buffer is advanced.
+	 *
+	 * @return number of bytes read or -1 if the position is at or beyond the end of the container
+	 */
+	public int read(long aPosition, ByteBuffer aBuffer) throws IOException, InvalidTagException
+	{
+		if (aPosition < 0)
+		{
+			throw new IllegalArgumentException("Negative position: " + aPosition);
+		}
+		if (aPosition >= mSize)
+		{
+			return aBuffer.hasRemaining() ? -1 : 0;
+		}
+
+		long end = Math.min(mSize, aPosition + aBuffer.remaining());
+		long firstChunk = aPosition / mChunkSize;
+		long lastChunk = (end - 1) / mChunkSize;
+		byte[] records = new byte[(int)Math.min(lastChunk - firstChunk + 1, mBatchChunks) * mRecordSize];
+		long position = aPosition;
+
+		try
+		{
+			for (long chunk = firstChunk; chunk <= lastChunk;)
+			{
+				long batchStart = chunk;
+				int count = (int)Math.min(lastChunk - chunk + 1, mBatchChunks);
+				boolean includesFinal = batchStart + count == mChunkCount;
+				int length = (count - 1) * mRecordSize + (includesFinal ? mFinalRecordLength : mRecordSize);
+
+				readFully(ByteBuffer.wrap(records, 0, length), recordPosition(batchStart));
+
+				IntStream range = IntStream.range(0, count);
+				if (count > 1)
+				{
+					range = range.parallel();
+				}
+				range.forEach(i -> mFormat.open(batchStart + i, records, i * mRecordSize, recordLength(batchStart + i), batchStart + i == mChunkCount - 1));
+
+				for (int i = 0; i < count; i++, chunk++)
+				{
+					int chunkOffset = (int)(position - chunk * mChunkSize);
+					int n = (int)Math.min(mChunkSize - chunkOffset, end - position);
+					aBuffer.put(records, i * mRecordSize + chunkOffset, n);
+					position += n;
+				}
+			}
+		}
+		finally
+		{
+			Arrays.fill(records, (byte)0);
+		}
+
+		return (int)(end - aPosition);
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		mChannel.close();
+	}
+
+
+	private long recordPosition(long aChunkIndex)
+	{
+		return ContainerFormat.HEADER_LENGTH + aChunkIndex * mRecordSize;
+	}
+
+
+	private int recordLength(long aChunkIndex)
+	{
+		return aChunkIndex == mChunkCount - 1 ? mFinalRecordLength : mRecordSize;
+	}
+
+
+	private void readFully(ByteBuffer aBuffer, long aPosition) throws IOException
+	{
+		if (mChannel instanceof FileChannel fc)
+		{
+			while (aBuffer.hasRemaining())
+			{
+				int n = fc.read(aBuffer, aPosition);
+				if (n < 0)
+				{
+					throw new EOFException();
+				}
+				aPosition += n;
+			}
+		}
+		else
+		{
+			synchronized (mChannel)
+			{
+				mChannel.position(aPosition);
+				while (aBuffer.hasRemaining())
+				{
+					if (mChannel.read(aBuffer) < 0)
+					{
+						throw new EOFException();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import static org.terifan.raccoon.security.cryptography.io.CompressingCipherOutputStream.*;
+
+
+/**
+ * Reads data written by CompressingCipherOutputStream. Reading and decryption run on one thread and decompression on another, the
+ * stages are connected by bounded queues.
+ * <p>
+ * This class is not thread safe.
+ */
+public class DecompressingCipherInputStream extends InputStream
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private final static byte[] END = new byte[0];
+
+	private final InputStream mInputStream;
+	private final UnitCipher mCipher;
+	private final CompressionCodec mCodec;
+	private final Pipeline mPipeline;
+	private final BlockingQueue<byte[]> mFrames;
+	private final BlockingQueue<byte[]> mChunks;
+	private final int mUnitSize;
+	private final int mMaxChunkSize;
+	private byte[] mChunk;
+	private int mChunkOffset;
+	private long mDataUnitNo;
+	private boolean mClosed;
+
+
+	public DecompressingCipherInputStream(InputStream aInputStream, UnitCipher aCipher, long aStartDataUnitNo, CompressionCodec aCodec)
+	{
+		this(aInputStream, aCipher, aStartDataUnitNo, aCodec, DEFAULT_CHUNK_SIZE);
+	}
+
+
+	/**
+	 * @param aInputStream provides the encrypted frames
+	 * @param aCipher the data unit cipher
+	 * @param aStartDataUnitNo the sequential number of the first data unit read
+	 * @param aCodec the compression codec, used by the decompression thread only and closed when this stream is closed
+	 * @param aMaxChunkSize largest chunk size accepted, frames claiming to be larger are rejected as corrupt
+	 */
+	public DecompressingCipherInputStream(InputStream aInputStream, UnitCipher aCipher, long aStartDataUnitNo, CompressionCodec aCodec, int aMaxChunkSize)
+	{
+		mInputStream = aInputStream;
+		mCipher = aCipher;
+		mCodec = aCodec;
+		mUnitSize = aCipher.getUnitSize();
+		mMaxChunkSize = aMaxChunkSize;
+		mDataUnitNo = aStartDataUnitNo;
+		mChunk = new byte[0];
+
+		mPipeline = new Pipeline();
+		mFrames = mPipeline.newQueue(QUEUE_CAPACITY);
+		mChunks = mPipeline.newQueue(QUEUE_CAPACITY);
+		mPipeline.start("decrypt", this::decryptStage);
+		mPipeline.start("decompress", this::decompressStage);
+	}
+
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!ensureAvailable())
+		{
+			return -1;
+		}
+
+		return 0xff & mChunk[mChunkOffset++];
+	}
+
+
+	@Override
+	public int read(byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		if (aLength == 0)
+		{
+			return 0;
+		}
+		if (!ensureAvailable())
+		{
+			return -1;
+		}
+
+		int length = Math.min(aLength, mChunk.length - mChunkOffset);
+
+		System.arraycopy(mChunk, mChunkOffset, aBuffer, aOffset, length);
+		mChunkOffset += length;
+
+		return length;
+	}
+
+
+	@Override
+	public int available() throws IOException
+	{
+		return mChunk == END ? 0 : mChunk.length - mChunkOffset;
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		mClosed = true;
+
+		try
+		{
+			mInputStream.close();
+		}
+		finally
+		{
+			mPipeline.cancel();
+			mPipeline.await();
+			Arrays.fill(mChunk, (byte)0);
+		}
+	}
+
+
+	private boolean ensureAvailable() throws IOException
+	{
+		if (mClosed)
+		{
+			throw new ClosedChannelException();
+		}
+
+		while (mChunk != END && mChunkOffset == mChunk.length)
+		{
+			Arrays.fill(mChunk, (byte)0);
+			mChunk = mPipeline.take(mChunks);
+			mChunkOffset = 0;
+		}
+
+		return mChunk != END;
+	}
+
+
+	private void decryptStage() throws IOException
+	{
+		for (;;)
+		{
+			byte[] unit = mInputStream.readNBytes(mUnitSize);
+
+			if (unit.length == 0)
+			{
+				mPipeline.put(mFrames, END);
+				return;
+			}
+			if (unit.length < mUnitSize)
+			{
+				throw new EOFException("Stream ended inside a data unit.");
+			}
+
+			mCipher.decrypt(unit, 0, mUnitSize, mDataUnitNo);
+
+			int length = (int)INT.get(unit, 0);
+			int storedLength = (int)INT.get(unit, 4);
+			boolean compressed = ((int)INT.get(unit, 8) & FLAG_COMPRESSED) != 0;
+
+			// raw chunks are stored as is, a raw frame of another length would be copied out of bounds or return padding as data
+			if (length < 0 || length > mMaxChunkSize || storedLength < 0 || storedLength > length || (!compressed && storedLength != length))
+			{
+				throw new IOException("Corrupt frame header.");
+			}
+
+			byte[] frame = new byte[(HEADER_LENGTH + storedLength + mUnitSize - 1) / mUnitSize * mUnitSize];
+			System.arraycopy(unit, 0, frame, 0, mUnitSize);
+			Arrays.fill(unit, (byte)0);
+
+			if (mInputStream.readNBytes(frame, mUnitSize, frame.length - mUnitSize) != frame.length - mUnitSize)
+			{
+				throw new EOFException("Stream ended inside a frame.");
+			}
+
+			mCipher.decrypt(frame, mUnitSize, frame.length - mUnitSize, mDataUnitNo + 1);
+			mDataUnitNo += frame.length / mUnitSize;
+
+			mPipeline.put(mFrames, frame);
+		}
+	}
+
+
+	private void decompressStage() throws IOException
+	{
+		try (mCodec)
+		{
+			for (;;)
+			{
+				byte[] frame = mPipeline.take(mFrames);
+
+				if (frame == END)
+				{
+					mPipeline.put(mChunks, END);
+					return;
+				}
+
+				int length = (int)INT.get(frame, 0);
+				int storedLength = (int)INT.get(frame, 4);
+				byte[] chunk = new byte[length];
+
+				if (((int)INT.get(frame, 8) & FLAG_COMPRESSED) != 0)
+				{
+					mCodec.decompress(frame, HEADER_LENGTH, storedLength, chunk, 0, length);
+				}
+				else
+				{
+					System.arraycopy(frame, HEADER_LENGTH, chunk, 0, length);
+				}
+
+				Arrays.fill(frame, (byte)0);
+
+				mPipeline.put(mChunks, chunk);
+			}
+		}
+	}
+}
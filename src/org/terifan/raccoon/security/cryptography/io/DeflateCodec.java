@@ -0,0 +1,97 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Compression codec using java.util.zip Deflater and Inflater without zlib headers. Instances are not thread safe, closing the codec
+ * releases the native zlib state.
+ */
+public final class DeflateCodec implements CompressionCodec
+{
+	private final Deflater mDeflater;
+	private final Inflater mInflater;
+
+
+	public DeflateCodec()
+	{
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+
+	/**
+	 * @param aLevel compression level 0-9 or Deflater.DEFAULT_COMPRESSION
+	 */
+	public DeflateCodec(int aLevel)
+	{
+		mDeflater = new Deflater(aLevel, true);
+		mInflater = new Inflater(true);
+	}
+
+
+	@Override
+	public byte[] compress(byte[] aBuffer, int aOffset, int aLength)
+	{
+		mDeflater.reset();
+		mDeflater.setInput(aBuffer, aOffset, aLength);
+		mDeflater.finish();
+
+		byte[] output = new byte[aLength + (aLength >> 8) + 64];
+		int length = 0;
+
+		while (!mDeflater.finished())
+		{
+			if (length == output.length)
+			{
+				output = Arrays.copyOf(output, 2 * output.length);
+			}
+			length += mDeflater.deflate(output, length, output.length - length);
+		}
+
+		return Arrays.copyOf(output, length);
+	}
+
+
+	@Override
+	public void decompress(byte[] aBuffer, int aOffset, int aLength, byte[] aOutput, int aOutputOffset, int aOutputLength) throws IOException
+	{
+		mInflater.reset();
+		mInflater.setInput(aBuffer, aOffset, aLength);
+
+		try
+		{
+			int length = 0;
+
+			while (length < aOutputLength && !mInflater.finished())
+			{
+				int n = mInflater.inflate(aOutput, aOutputOffset + length, aOutputLength - length);
+				if (n == 0 && (mInflater.needsInput() || mInflater.needsDictionary()))
+				{
+					break;
+				}
+				length += n;
+			}
+
+			if (length != aOutputLength)
+			{
+				throw new IOException("Compressed data is truncated.");
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+
+	@Override
+	public void close()
+	{
+		mDeflater.end();
+		mInflater.end();
+	}
+}
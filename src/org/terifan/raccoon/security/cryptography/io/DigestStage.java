@@ -0,0 +1,53 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Updates a message digest with every buffer. Any MessageDigest can be used, including HMAC to compute a message authentication code.
+ * The digest is completed when the stream completes.
+ */
+public final class DigestStage implements BufferStage
+{
+	private final MessageDigest mMessageDigest;
+	private final CompletableFuture<byte[]> mResult;
+
+
+	public DigestStage(MessageDigest aMessageDigest)
+	{
+		mMessageDigest = aMessageDigest;
+		mResult = new CompletableFuture<>();
+	}
+
+
+	/**
+	 * Returns the digest of all buffers, completed exceptionally if the stream fails.
+	 */
+	public CompletableFuture<byte[]> getResult()
+	{
+		return mResult;
+	}
+
+
+	@Override
+	public void process(ByteBuffer aBuffer)
+	{
+		mMessageDigest.update(aBuffer.duplicate());
+	}
+
+
+	@Override
+	public void complete()
+	{
+		mResult.complete(mMessageDigest.digest());
+	}
+
+
+	@Override
+	public void fail(Throwable aThrowable)
+	{
+		mResult.completeExceptionally(aThrowable);
+	}
+}
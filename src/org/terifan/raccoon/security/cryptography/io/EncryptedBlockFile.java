@@ -0,0 +1,288 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+
+
+/**
+ * A memory mapped file of encrypted sectors offering random access to the plaintext. The sector size is the unit size of the cipher and
+ * the sector index is used as data unit number.
+ * <p>
+ * Reads copy whole sectors of ciphertext from the mapping straight into the destination buffer and decrypt them there, no matter if the
+ * buffer is on or off heap. Writes encrypt into a temporary buffer before copying to the mapping so plaintext never reaches the page
+ * cache. Partial sectors are read, modified and written.
+ * <p>
+ * Reads and writes of different sectors may run concurrently, writes of partial sectors overlapping other writes must be synchronized
+ * by the caller.
+ *
+ * <pre>
+ * UnitCipher unitCipher = new UnitCipher(new XTSCipherMode(), new AES(cipherKey), new AES(tweakKey), blockIV, 4096);
+ * try (EncryptedBlockFile file = new EncryptedBlockFile(path, unitCipher, 1024))
+ * {
+ *     file.write(100, ByteBuffer.wrap(data));
+ * }
+ * </pre>
+ */
+public final class EncryptedBlockFile implements SectorStore, AutoCloseable
+{
+	private final static int MAX_SEGMENT_SIZE = 1 << 30;
+	private final static int MAX_WRITE_BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel mChannel;
+	private final UnitCipher mCipher;
+	private final MappedByteBuffer[] mSegments;
+	private final int mSectorSize;
+	private final int mSectorsPerSegment;
+	private final long mSectorCount;
+
+
+	/**
+	 * Opens or creates a file. The file is extended to the size provided if shorter.
+	 *
+	 * @param aPath the file
+	 * @param aCipher the sector cipher
+	 * @param aSectorCount number of sectors in the file
+	 */
+	public EncryptedBlockFile(Path aPath, UnitCipher aCipher, long aSectorCount) throws IOException
+	{
+		mCipher = aCipher;
+		mSectorSize = aCipher.getUnitSize();
+		mSectorCount = aSectorCount;
+		mSectorsPerSegment = MAX_SEGMENT_SIZE / mSectorSize;
+		mChannel = FileChannel.open(aPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try
+		{
+			long size = aSectorCount * mSectorSize;
+
+			if (mChannel.size() < size)
+			{
+				mChannel.write(ByteBuffer.allocate(1), size - 1);
+			}
+
+			mSegments = new MappedByteBuffer[(int)((aSectorCount + mSectorsPerSegment - 1) / mSectorsPerSegment)];
+
+			for (int i = 0; i < mSegments.length; i++)
+			{
+				long start = (long)i * mSectorsPerSegment * mSectorSize;
+				mSegments[i] = mChannel.map(FileChannel.MapMode.READ_WRITE, start, Math.min((long)mSectorsPerSegment * mSectorSize, size - start));
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			mChannel.close();
+			throw e;
+		}
+	}
+
+
+	@Override
+	public int getSectorSize()
+	{
+		return mSectorSize;
+	}
+
+
+	@Override
+	public long getSectorCount()
+	{
+		return mSectorCount;
+	}
+
+
+	/**
+	 * Returns the size of the plaintext in bytes.
+	 */
+	public long size()
+	{
+		return mSectorCount * mSectorSize;
+	}
+
+
+	/**
+	 * Reads plaintext starting at the position provided into the remaining space of the buffer. The position of the buffer is advanced.
+	 *
+	 * @return number of bytes read or -1 if the position is at or beyond the end of the file
+	 */
+	public int read(long aPosition, ByteBuffer aBuffer)
+	{
+		if (aPosition < 0)
+		{
+			throw new IllegalArgumentException("Negative position: " + aPosition);
+		}
+		if (aPosition >= size())
+		{
+			return aBuffer.hasRemaining() ? -1 : 0;
+		}
+
+		long end = Math.min(size(), aPosition + aBuffer.remaining());
+		int total = (int)(end - aPosition);
+		byte[] sector = null;
+
+		try
+		{
+			for (long position = aPosition; position < end;)
+			{
+				long sectorIndex = position / mSectorSize;
+				int sectorOffset = (int)(position % mSectorSize);
+				MappedByteBuffer segment = mSegments[(int)(sectorIndex / mSectorsPerSegment)];
+				int segmentOffset = (int)(sectorIndex % mSectorsPerSegment) * mSectorSize;
+
+				if (sectorOffset == 0 && end - position >= mSectorSize)
+				{
+					int count = (int)Math.min((end - position) / mSectorSize, mSectorsPerSegment - sectorIndex % mSectorsPerSegment);
+					int length = count * mSectorSize;
+					int bufferOffset = aBuffer.position();
+
+					aBuffer.put(bufferOffset, segment, segmentOffset, length);
+					mCipher.decrypt(aBuffer, bufferOffset, length, sectorIndex);
+					aBuffer.position(bufferOffset + length);
+
+					position += length;
+				}
+				else
+				{
+					if (sector == null)
+					{
+						sector = new byte[mSectorSize];
+					}
+
+					int length = (int)Math.min(mSectorSize - sectorOffset, end - position);
+
+					segment.get(segmentOffset, sector);
+					mCipher.decrypt(sector, 0, mSectorSize, sectorIndex);
+					aBuffer.put(sector, sectorOffset, length);
+
+					position += length;
+				}
+			}
+		}
+		finally
+		{
+			if (sector != null)
+			{
+				Arrays.fill(sector, (byte)0);
+			}
+		}
+
+		return total;
+	}
+
+
+	/**
+	 * Writes the remaining plaintext of the buffer starting at the position provided. The position of the buffer is advanced.
+	 *
+	 * @throws IllegalArgumentException
+	 *    if the data extends beyond the end of the file
+	 */
+	public void write(long aPosition, ByteBuffer aBuffer)
+	{
+		if (aPosition < 0 || aPosition + aBuffer.remaining() > size())
+		{
+			throw new IllegalArgumentException("Write outside file bounds: position " + aPosition + ", length " + aBuffer.remaining() + ", size " + size());
+		}
+
+		long end = aPosition + aBuffer.remaining();
+		byte[] buffer = new byte[(int)Math.min(MAX_WRITE_BUFFER_SIZE / mSectorSize * mSectorSize, (end - aPosition + 2L * mSectorSize - 1) / mSectorSize * mSectorSize)];
+
+		try
+		{
+			for (long position = aPosition; position < end;)
+			{
+				long sectorIndex = position / mSectorSize;
+				int sectorOffset = (int)(position % mSectorSize);
+				MappedByteBuffer segment = mSegments[(int)(sectorIndex / mSectorsPerSegment)];
+				int segmentOffset = (int)(sectorIndex % mSectorsPerSegment) * mSectorSize;
+
+				if (sectorOffset == 0 && end - position >= mSectorSize)
+				{
+					int count = (int)Math.min(Math.min((end - position) / mSectorSize, buffer.length / mSectorSize), mSectorsPerSegment - sectorIndex % mSectorsPerSegment);
+					int length = count * mSectorSize;
+
+					aBuffer.get(buffer, 0, length);
+					mCipher.encrypt(buffer, 0, length, sectorIndex);
+					segment.put(segmentOffset, buffer, 0, length);
+
+					position += length;
+				}
+				else
+				{
+					int length = (int)Math.min(mSectorSize - sectorOffset, end - position);
+
+					segment.get(segmentOffset, buffer, 0, mSectorSize);
+					mCipher.decrypt(buffer, 0, mSectorSize, sectorIndex);
+					aBuffer.get(buffer, sectorOffset, length);
+					mCipher.encrypt(buffer, 0, mSectorSize, sectorIndex);
+					segment.put(segmentOffset, buffer, 0, mSectorSize);
+
+					position += length;
+				}
+			}
+		}
+		finally
+		{
+			Arrays.fill(buffer, (byte)0);
+		}
+	}
+
+
+	@Override
+	public void readSectors(long aSectorIndex, byte[] aBuffer, int aOffset, int aSectorCount)
+	{
+		checkSectorRange(aSectorIndex, aSectorCount);
+
+		ByteBuffer buffer = ByteBuffer.wrap(aBuffer, aOffset, aSectorCount * mSectorSize);
+		read(aSectorIndex * mSectorSize, buffer);
+	}
+
+
+	@Override
+	public void writeSectors(long aSectorIndex, byte[] aBuffer, int aOffset, int aSectorCount)
+	{
+		checkSectorRange(aSectorIndex, aSectorCount);
+
+		write(aSectorIndex * mSectorSize, ByteBuffer.wrap(aBuffer, aOffset, aSectorCount * mSectorSize));
+	}
+
+
+	/**
+	 * Forces changes to the storage device.
+	 */
+	public void force() throws IOException
+	{
+		for (MappedByteBuffer segment : mSegments)
+		{
+			segment.force();
+		}
+		mChannel.force(true);
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			force();
+		}
+		finally
+		{
+			mChannel.close();
+		}
+	}
+
+
+	private void checkSectorRange(long aSectorIndex, int aSectorCount)
+	{
+		if (aSectorIndex < 0 || aSectorCount < 0 || aSectorIndex + aSectorCount > mSectorCount)
+		{
+			throw new IllegalArgumentException("Sector range outside file: " + aSectorIndex + ", count " + aSectorCount);
+		}
+	}
+}
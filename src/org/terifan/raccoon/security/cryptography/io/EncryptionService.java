@@ -0,0 +1,409 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+
+
+/**
+ * Encrypts and decrypts small payloads submitted by many threads. Requests are put on a lock-free queue and a dispatcher thread groups
+ * them by cipher and direction into batches. A batch is handed to the worker pool when it holds the maximum number of requests or when
+ * its oldest request has waited the maximum latency. Workers sort a batch by data unit number and process each run of consecutive units
+ * with a single cipher mode call.
+ * <p>
+ * Instances are thread safe.
+ *
+ * <pre>
+ * try (EncryptionService service = new EncryptionService())
+ * {
+ *     byte[] ciphertext = service.encrypt(unitCipher, recordNo, payload).join();
+ * }
+ * </pre>
+ */
+public final class EncryptionService implements AutoCloseable
+{
+	private final static int DEFAULT_MAX_BATCH_SIZE = 64;
+	private final static Duration DEFAULT_MAX_LATENCY = Duration.ofNanos(100_000);
+
+	private final ExecutorService mWorkers;
+	private final boolean mOwnsWorkers;
+	private final int mMaxBatchSize;
+	private final long mMaxLatency;
+	private final MpscQueue<Request> mQueue;
+	private final Thread mDispatcher;
+	private final AtomicInteger mSubmitting;
+	private final LongAdder mRequestCount;
+	private final LongAdder mBatchCount;
+	private final LongAdder mCallCount;
+	private volatile boolean mDispatcherParked;
+	private volatile boolean mClosed;
+
+
+	/**
+	 * Creates a service with one worker per processor, batches of up to 64 requests and a maximum latency of 100 microseconds.
+	 */
+	public EncryptionService()
+	{
+		this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LATENCY);
+	}
+
+
+	/**
+	 * @param aWorkers executor processing batches, not shut down when this service is closed
+	 * @param aMaxBatchSize maximum number of requests in a batch
+	 * @param aMaxLatency maximum time a request waits for more requests to join its batch
+	 */
+	public EncryptionService(ExecutorService aWorkers, int aMaxBatchSize, Duration aMaxLatency)
+	{
+		this(aWorkers, false, aMaxBatchSize, aMaxLatency);
+	}
+
+
+	private EncryptionService(ExecutorService aWorkers, boolean aOwnsWorkers, int aMaxBatchSize, Duration aMaxLatency)
+	{
+		if (aMaxBatchSize < 1 || aMaxLatency.isNegative())
+		{
+			throw new IllegalArgumentException("Illegal batch size or latency: " + aMaxBatchSize + ", " + aMaxLatency);
+		}
+
+		mWorkers = aWorkers;
+		mOwnsWorkers = aOwnsWorkers;
+		mMaxBatchSize = aMaxBatchSize;
+		mMaxLatency = aMaxLatency.toNanos();
+		mQueue = new MpscQueue<>();
+		mSubmitting = new AtomicInteger();
+		mRequestCount = new LongAdder();
+		mBatchCount = new LongAdder();
+		mCallCount = new LongAdder();
+		mDispatcher = Thread.ofPlatform().name("encryption-service").daemon().start(this::dispatch);
+	}
+
+
+	/**
+	 * Encrypts a payload. The payload is copied and left unchanged.
+	 *
+	 * @param aCipher the cipher, requests using the same instance are batched together
+	 * @param aDataUnitNo the data unit number of the first unit of the payload
+	 * @param aPlaintext whole data units
+	 * @return a future completed with the ciphertext
+	 */
+	public CompletableFuture<byte[]> encrypt(UnitCipher aCipher, long aDataUnitNo, byte[] aPlaintext)
+	{
+		return submit(aCipher, true, aDataUnitNo, aPlaintext);
+	}
+
+
+	/**
+	 * Decrypts a payload. The payload is copied and left unchanged.
+	 *
+	 * @param aCipher the cipher, requests using the same instance are batched together
+	 * @param aDataUnitNo the data unit number of the first unit of the payload
+	 * @param aCiphertext whole data units
+	 * @return a future completed with the plaintext
+	 */
+	public CompletableFuture<byte[]> decrypt(UnitCipher aCipher, long aDataUnitNo, byte[] aCiphertext)
+	{
+		return submit(aCipher, false, aDataUnitNo, aCiphertext);
+	}
+
+
+	/**
+	 * Returns number of requests received.
+	 */
+	public long getRequestCount()
+	{
+		return mRequestCount.sum();
+	}
+
+
+	/**
+	 * Returns number of batches processed.
+	 */
+	public long getBatchCount()
+	{
+		return mBatchCount.sum();
+	}
+
+
+	/**
+	 * Returns number of cipher mode calls made after merging consecutive data units.
+	 */
+	public long getCallCount()
+	{
+		return mCallCount.sum();
+	}
+
+
+	/**
+	 * Processes all queued requests and waits for the dispatcher to stop. Requests submitted after closing fail.
+	 */
+	@Override
+	public void close()
+	{
+		if (mClosed)
+		{
+			return;
+		}
+
+		mClosed = true;
+		LockSupport.unpark(mDispatcher);
+
+		try
+		{
+			mDispatcher.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if (mOwnsWorkers)
+			{
+				mWorkers.shutdown();
+			}
+		}
+	}
+
+
+	private CompletableFuture<byte[]> submit(UnitCipher aCipher, boolean aEncrypt, long aDataUnitNo, byte[] aData)
+	{
+		if (aData.length == 0 || (aData.length % aCipher.getUnitSize()) != 0)
+		{
+			throw new IllegalArgumentException("Length must be a positive multiple of the unit size: " + aData.length);
+		}
+
+		Request request = new Request(new BatchKey(aCipher, aEncrypt), aDataUnitNo, aData.clone(), System.nanoTime());
+
+		// the dispatcher doesn't stop while a request is being submitted
+		mSubmitting.incrementAndGet();
+		try
+		{
+			if (mClosed)
+			{
+				return CompletableFuture.failedFuture(new ClosedChannelException());
+			}
+
+			mRequestCount.increment();
+			mQueue.offer(request);
+		}
+		finally
+		{
+			mSubmitting.decrementAndGet();
+		}
+
+		if (mDispatcherParked)
+		{
+			LockSupport.unpark(mDispatcher);
+		}
+
+		return request.mFuture;
+	}
+
+
+	/**
+	 * Dispatcher loop, the only consumer of the queue.
+	 */
+	private void dispatch()
+	{
+		HashMap<BatchKey, ArrayList<Request>> pending = new HashMap<>();
+
+		for (;;)
+		{
+			for (Request request; (request = mQueue.poll()) != null;)
+			{
+				ArrayList<Request> batch = pending.computeIfAbsent(request.mKey, aKey -> new ArrayList<>());
+				batch.add(request);
+
+				if (batch.size() == mMaxBatchSize)
+				{
+					pending.remove(request.mKey);
+					execute(request.mKey, batch);
+				}
+			}
+
+			boolean closed = mClosed;
+			long now = System.nanoTime();
+			long nextDeadline = Long.MAX_VALUE;
+
+			for (Iterator<Map.Entry<BatchKey, ArrayList<Request>>> it = pending.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<BatchKey, ArrayList<Request>> entry = it.next();
+				long deadline = entry.getValue().get(0).mArrival + mMaxLatency;
+
+				if (closed || deadline - now <= 0)
+				{
+					it.remove();
+					execute(entry.getKey(), entry.getValue());
+				}
+				else
+				{
+					nextDeadline = Math.min(nextDeadline, deadline - now);
+				}
+			}
+
+			if (closed && mSubmitting.get() == 0 && mQueue.isEmpty())
+			{
+				return;
+			}
+
+			mDispatcherParked = true;
+
+			if (mQueue.isEmpty() && !closed)
+			{
+				if (nextDeadline == Long.MAX_VALUE)
+				{
+					LockSupport.park(this);
+				}
+				else
+				{
+					LockSupport.parkNanos(this, nextDeadline);
+				}
+			}
+			else
+			{
+				Thread.onSpinWait();
+			}
+
+			mDispatcherParked = false;
+		}
+	}
+
+
+	private void execute(BatchKey aKey, List<Request> aBatch)
+	{
+		mBatchCount.increment();
+
+		try
+		{
+			mWorkers.execute(() -> process(aKey, aBatch));
+		}
+		catch (RejectedExecutionException e)
+		{
+			for (Request request : aBatch)
+			{
+				request.mFuture.completeExceptionally(e);
+			}
+		}
+	}
+
+
+	/**
+	 * Processes a batch, each run of requests with consecutive data units is processed with one cipher mode call.
+	 */
+	private void process(BatchKey aKey, List<Request> aBatch)
+	{
+		try
+		{
+			UnitCipher cipher = aKey.cipher();
+			int unitSize = cipher.getUnitSize();
+
+			aBatch.sort(Comparator.comparingLong(aRequest -> aRequest.mDataUnitNo));
+
+			for (int start = 0; start < aBatch.size();)
+			{
+				Request first = aBatch.get(start);
+				int length = first.mData.length;
+				int end = start + 1;
+
+				for (; end < aBatch.size(); end++)
+				{
+					Request previous = aBatch.get(end - 1);
+					if (aBatch.get(end).mDataUnitNo != previous.mDataUnitNo + previous.mData.length / unitSize)
+					{
+						break;
+					}
+					length += aBatch.get(end).mData.length;
+				}
+
+				if (end - start == 1)
+				{
+					transform(cipher, aKey.encrypt(), first.mData, first.mDataUnitNo);
+					first.mFuture.complete(first.mData);
+				}
+				else
+				{
+					byte[] buffer = new byte[length];
+					for (int i = start, offset = 0; i < end; offset += aBatch.get(i++).mData.length)
+					{
+						System.arraycopy(aBatch.get(i).mData, 0, buffer, offset, aBatch.get(i).mData.length);
+					}
+
+					transform(cipher, aKey.encrypt(), buffer, first.mDataUnitNo);
+
+					for (int i = start, offset = 0; i < end; offset += aBatch.get(i++).mData.length)
+					{
+						Request request = aBatch.get(i);
+						System.arraycopy(buffer, offset, request.mData, 0, request.mData.length);
+						request.mFuture.complete(request.mData);
+					}
+
+					Arrays.fill(buffer, (byte)0);
+				}
+
+				start = end;
+			}
+		}
+		catch (Throwable e)
+		{
+			for (Request request : aBatch)
+			{
+				request.mFuture.completeExceptionally(e);
+			}
+		}
+	}
+
+
+	private void transform(UnitCipher aCipher, boolean aEncrypt, byte[] aBuffer, long aDataUnitNo)
+	{
+		mCallCount.increment();
+
+		if (aEncrypt)
+		{
+			aCipher.encrypt(aBuffer, 0, aBuffer.length, aDataUnitNo);
+		}
+		else
+		{
+			aCipher.decrypt(aBuffer, 0, aBuffer.length, aDataUnitNo);
+		}
+	}
+
+
+	private record BatchKey(UnitCipher cipher, boolean encrypt)
+	{
+	}
+
+
+	private static final class Request
+	{
+		final BatchKey mKey;
+		final long mDataUnitNo;
+		final byte[] mData;
+		final long mArrival;
+		final CompletableFuture<byte[]> mFuture;
+
+
+		Request(BatchKey aKey, long aDataUnitNo, byte[] aData, long aArrival)
+		{
+			mKey = aKey;
+			mDataUnitNo = aDataUnitNo;
+			mData = aData;
+			mArrival = aArrival;
+			mFuture = new CompletableFuture<>();
+		}
+	}
+}
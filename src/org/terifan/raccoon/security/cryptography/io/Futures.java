@@ -0,0 +1,37 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletionException;
+
+
+class Futures
+{
+	private Futures()
+	{
+	}
+
+
+	/**
+	 * Returns the IOException wrapped by an exception thrown from a future, or a new IOException wrapping the cause.
+	 */
+	static IOException unwrapIOException(Throwable aThrowable)
+	{
+		Throwable cause = aThrowable;
+		while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null)
+		{
+			cause = cause.getCause();
+		}
+
+		if (cause instanceof IOException e)
+		{
+			return e;
+		}
+		if (cause instanceof RuntimeException e)
+		{
+			throw e;
+		}
+
+		return new IOException(cause);
+	}
+}
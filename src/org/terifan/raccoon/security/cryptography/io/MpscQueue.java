@@ -0,0 +1,94 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * An unbounded lock-free multiple producer, single consumer queue (Vyukov). Producers swap the tail with a single atomic operation and
+ * then link the previous tail, the consumer follows the links from a stub node. A producer preempted between the two steps briefly hides
+ * the elements after it from the consumer, isEmpty reports such a queue as not empty.
+ */
+final class MpscQueue<T>
+{
+	private final static VarHandle NEXT;
+
+	static
+	{
+		try
+		{
+			NEXT = MethodHandles.lookup().findVarHandle(Node.class, "mNext", Node.class);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final AtomicReference<Node<T>> mTail;
+	private Node<T> mHead;
+
+
+	MpscQueue()
+	{
+		mHead = new Node<>(null);
+		mTail = new AtomicReference<>(mHead);
+	}
+
+
+	/**
+	 * Adds an element, may be called by any thread.
+	 */
+	void offer(T aElement)
+	{
+		Node<T> node = new Node<>(aElement);
+		Node<T> previous = mTail.getAndSet(node);
+		NEXT.setRelease(previous, node);
+	}
+
+
+	/**
+	 * Removes an element, must only be called by the consumer.
+	 *
+	 * @return an element or null if none is visible
+	 */
+	@SuppressWarnings("unchecked")
+	T poll()
+	{
+		Node<T> next = (Node<T>)NEXT.getAcquire(mHead);
+
+		if (next == null)
+		{
+			return null;
+		}
+
+		T element = next.mElement;
+		next.mElement = null;
+		mHead = next;
+
+		return element;
+	}
+
+
+	/**
+	 * Returns true if no elements have been added that were not polled. Must only be called by the consumer.
+	 */
+	boolean isEmpty()
+	{
+		return mTail.get() == mHead;
+	}
+
+
+	private static final class Node<T>
+	{
+		T mElement;
+		volatile Node<T> mNext;
+
+
+		Node(T aElement)
+		{
+			mElement = aElement;
+		}
+	}
+}
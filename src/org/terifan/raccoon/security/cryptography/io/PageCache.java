@@ -0,0 +1,535 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A bounded cache of decrypted sectors (pages) layered over a SectorStore. Pages are evicted using the CLOCK algorithm, only clean pages
+ * are evicted. Modified pages passed over by the clock are collected and, when no clean page is found, written back in runs of adjacent
+ * pages with a single store call each, the same way the cache is flushed, so each run is encrypted in one cipher mode call.
+ * <p>
+ * Lookups of cached pages only lock the page itself. Misses allocate a page under a shared lock, the page is then read outside of that
+ * lock and write-back of modified pages is also done outside of it. When zeroing is enabled the plaintext of a page is erased when it is
+ * evicted and when the cache is closed.
+ * <p>
+ * Instances are thread safe.
+ *
+ * <pre>
+ * try (PageCache cache = new PageCache(file, 1024, true))
+ * {
+ *     cache.read(position, buffer, 0, buffer.length);
+ * }
+ * </pre>
+ */
+public final class PageCache implements AutoCloseable
+{
+	private final static int MAX_WRITE_BACK_PAGES = 256;
+
+	private final SectorStore mStore;
+	private final ConcurrentHashMap<Long, Page> mPages;
+	private final ReentrantLock mEvictionLock;
+	private final Page[] mFrames;
+	private final int mPageSize;
+	private final boolean mZeroOnEvict;
+	private final LongAdder mHits;
+	private final LongAdder mMisses;
+	private final LongAdder mEvictions;
+	private final LongAdder mWriteBacks;
+	private int mFrameCount;
+	private int mClockHand;
+
+
+	/**
+	 * @param aStore the store of encrypted sectors
+	 * @param aCapacity maximum number of cached pages
+	 * @param aZeroOnEvict erase the plaintext of pages when evicted
+	 */
+	public PageCache(SectorStore aStore, int aCapacity, boolean aZeroOnEvict)
+	{
+		if (aCapacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive: " + aCapacity);
+		}
+
+		mStore = aStore;
+		mPageSize = aStore.getSectorSize();
+		mZeroOnEvict = aZeroOnEvict;
+		mFrames = new Page[aCapacity];
+		mPages = new ConcurrentHashMap<>(aCapacity);
+		mEvictionLock = new ReentrantLock();
+		mHits = new LongAdder();
+		mMisses = new LongAdder();
+		mEvictions = new LongAdder();
+		mWriteBacks = new LongAdder();
+	}
+
+
+	public int getPageSize()
+	{
+		return mPageSize;
+	}
+
+
+	/**
+	 * Reads plaintext at the position provided.
+	 */
+	public void read(long aPosition, byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		checkRange(aPosition, aLength);
+
+		while (aLength > 0)
+		{
+			long index = aPosition / mPageSize;
+			int pageOffset = (int)(aPosition % mPageSize);
+			int length = Math.min(mPageSize - pageOffset, aLength);
+
+			Page page = acquire(index, true);
+			try
+			{
+				System.arraycopy(page.mData, pageOffset, aBuffer, aOffset, length);
+			}
+			finally
+			{
+				page.mLock.unlock();
+			}
+
+			aPosition += length;
+			aOffset += length;
+			aLength -= length;
+		}
+	}
+
+
+	/**
+	 * Writes plaintext at the position provided. The data is encrypted and written to the store when the pages are evicted or flushed.
+	 * Pages completely overwritten are not read from the store.
+	 */
+	public void write(long aPosition, byte[] aBuffer, int aOffset, int aLength) throws IOException
+	{
+		checkRange(aPosition, aLength);
+
+		while (aLength > 0)
+		{
+			long index = aPosition / mPageSize;
+			int pageOffset = (int)(aPosition % mPageSize);
+			int length = Math.min(mPageSize - pageOffset, aLength);
+
+			Page page = acquire(index, length < mPageSize);
+			try
+			{
+				System.arraycopy(aBuffer, aOffset, page.mData, pageOffset, length);
+				page.mDirty = true;
+			}
+			finally
+			{
+				page.mLock.unlock();
+			}
+
+			aPosition += length;
+			aOffset += length;
+			aLength -= length;
+		}
+	}
+
+
+	/**
+	 * Writes all modified pages to the store. Adjacent pages are written together.
+	 */
+	public void flush() throws IOException
+	{
+		int frameCount;
+		mEvictionLock.lock();
+		try
+		{
+			frameCount = mFrameCount;
+		}
+		finally
+		{
+			mEvictionLock.unlock();
+		}
+
+		ArrayList<DirtyPage> dirty = new ArrayList<>();
+
+		for (int i = 0; i < frameCount; i++)
+		{
+			Page page = mFrames[i];
+			page.mLock.lock();
+			try
+			{
+				if (page.mDirty)
+				{
+					dirty.add(new DirtyPage(page, page.mIndex));
+				}
+			}
+			finally
+			{
+				page.mLock.unlock();
+			}
+		}
+
+		writeBack(dirty);
+	}
+
+
+	/**
+	 * Flushes the cache and erases all pages if zeroing is enabled. The store is not closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flush();
+
+		mEvictionLock.lock();
+		try
+		{
+			for (int i = 0; i < mFrameCount; i++)
+			{
+				Page page = mFrames[i];
+				page.mLock.lock();
+				try
+				{
+					mPages.remove(page.mIndex, page);
+					page.mIndex = -1;
+					if (mZeroOnEvict)
+					{
+						Arrays.fill(page.mData, (byte)0);
+					}
+				}
+				finally
+				{
+					page.mLock.unlock();
+				}
+			}
+		}
+		finally
+		{
+			mEvictionLock.unlock();
+		}
+	}
+
+
+	public long getHitCount()
+	{
+		return mHits.sum();
+	}
+
+
+	public long getMissCount()
+	{
+		return mMisses.sum();
+	}
+
+
+	public long getEvictionCount()
+	{
+		return mEvictions.sum();
+	}
+
+
+	/**
+	 * Returns number of pages written to the store.
+	 */
+	public long getWriteBackCount()
+	{
+		return mWriteBacks.sum();
+	}
+
+
+	/**
+	 * Returns the fraction of page lookups found in the cache.
+	 */
+	public double getHitRate()
+	{
+		long hits = mHits.sum();
+		long total = hits + mMisses.sum();
+		return total == 0 ? 0 : hits / (double)total;
+	}
+
+
+	/**
+	 * Returns the locked page for the index provided, loading it from the store if necessary.
+	 */
+	private Page acquire(long aIndex, boolean aLoad) throws IOException
+	{
+		for (;;)
+		{
+			Page page = mPages.get(aIndex);
+
+			if (page != null)
+			{
+				page.mLock.lock();
+
+				if (page.mIndex == aIndex)
+				{
+					page.mReferenced = true;
+					mHits.increment();
+					return page;
+				}
+
+				// the page was evicted while waiting for the lock
+				page.mLock.unlock();
+				continue;
+			}
+
+			ArrayList<DirtyPage> dirty = new ArrayList<>();
+
+			mEvictionLock.lock();
+			try
+			{
+				if (mPages.containsKey(aIndex))
+				{
+					continue;
+				}
+
+				page = allocate(dirty);
+
+				if (page != null)
+				{
+					page.mIndex = aIndex;
+					page.mDirty = false;
+					page.mReferenced = true;
+					mPages.put(aIndex, page);
+				}
+			}
+			finally
+			{
+				mEvictionLock.unlock();
+			}
+
+			if (page == null)
+			{
+				// every candidate was modified, clean them in batches and scan again
+				writeBack(dirty);
+				continue;
+			}
+
+			mMisses.increment();
+
+			if (aLoad)
+			{
+				try
+				{
+					mStore.readSectors(aIndex, page.mData, 0, 1);
+				}
+				catch (IOException | RuntimeException e)
+				{
+					mPages.remove(aIndex, page);
+					page.mIndex = -1;
+					page.mLock.unlock();
+					throw e;
+				}
+			}
+
+			return page;
+		}
+	}
+
+
+	/**
+	 * Returns a locked free page, evicting a clean page using the CLOCK algorithm when the cache is full. Modified pages that would have
+	 * been evicted are added to the list provided and skipped. Returns null when only modified pages were found, these must be written
+	 * back before trying again. Must be called holding the eviction lock.
+	 */
+	private Page allocate(List<DirtyPage> aDirty)
+	{
+		if (mFrameCount < mFrames.length)
+		{
+			Page page = new Page(mPageSize, mFrameCount);
+			page.mLock.lock();
+			mFrames[mFrameCount++] = page;
+			return page;
+		}
+
+		for (int scanned = 1;; scanned++)
+		{
+			Page page = mFrames[mClockHand];
+			mClockHand = (mClockHand + 1) % mFrames.length;
+
+			if (page.mReferenced)
+			{
+				page.mReferenced = false;
+			}
+			else if (page.mLock.tryLock())
+			{
+				if (page.mIndex != -1 && page.mDirty)
+				{
+					aDirty.add(new DirtyPage(page, page.mIndex));
+					page.mLock.unlock();
+				}
+				else
+				{
+					if (page.mIndex != -1)
+					{
+						mPages.remove(page.mIndex, page);
+						mEvictions.increment();
+
+						if (mZeroOnEvict)
+						{
+							Arrays.fill(page.mData, (byte)0);
+						}
+					}
+
+					return page;
+				}
+			}
+
+			// stop when the batch is full or the clock is back at the first modified page
+			if (!aDirty.isEmpty() && (aDirty.size() == MAX_WRITE_BACK_PAGES || mFrames[mClockHand] == aDirty.get(0).page()))
+			{
+				return null;
+			}
+
+			if ((scanned % (2 * mFrames.length)) == 0)
+			{
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+
+	/**
+	 * Writes the pages provided to the store, sorted by index. Adjacent pages are written together.
+	 */
+	private void writeBack(List<DirtyPage> aDirty) throws IOException
+	{
+		aDirty.sort(Comparator.comparingLong(DirtyPage::index));
+
+		byte[] buffer = null;
+
+		try
+		{
+			for (int start = 0; start < aDirty.size();)
+			{
+				int end = start + 1;
+				while (end < aDirty.size() && end - start < MAX_WRITE_BACK_PAGES && aDirty.get(end).index() == aDirty.get(end - 1).index() + 1)
+				{
+					end++;
+				}
+
+				if (buffer == null)
+				{
+					buffer = new byte[Math.min(aDirty.size(), MAX_WRITE_BACK_PAGES) * mPageSize];
+				}
+
+				writeBack(aDirty.subList(start, end), buffer);
+
+				start = end;
+			}
+		}
+		finally
+		{
+			if (buffer != null)
+			{
+				Arrays.fill(buffer, (byte)0);
+			}
+		}
+	}
+
+
+	/**
+	 * Writes a run of adjacent pages with a single store call. Pages are locked in frame order, the index a page was collected with may
+	 * be stale and a page can be part of runs collected by several threads.
+	 */
+	private void writeBack(List<DirtyPage> aRun, byte[] aBuffer) throws IOException
+	{
+		Page[] pages = new Page[aRun.size()];
+		for (int i = 0; i < pages.length; i++)
+		{
+			pages[i] = aRun.get(i).page();
+		}
+		Arrays.sort(pages, Comparator.comparingInt(aPage -> aPage.mSlot));
+
+		int locked = 0;
+
+		try
+		{
+			for (Page page : pages)
+			{
+				page.mLock.lock();
+				locked++;
+			}
+
+			// pages may have been evicted or reused since collected, write the longest unchanged prefix as one run
+			int count = 0;
+			for (DirtyPage dirty : aRun)
+			{
+				if (dirty.page().mIndex != dirty.index() || !dirty.page().mDirty)
+				{
+					break;
+				}
+				System.arraycopy(dirty.page().mData, 0, aBuffer, count * mPageSize, mPageSize);
+				count++;
+			}
+
+			if (count > 0)
+			{
+				mStore.writeSectors(aRun.get(0).index(), aBuffer, 0, count);
+				mWriteBacks.add(count);
+
+				for (int i = 0; i < count; i++)
+				{
+					aRun.get(i).page().mDirty = false;
+				}
+			}
+
+			for (int i = count; i < aRun.size(); i++)
+			{
+				Page page = aRun.get(i).page();
+				if (page.mIndex != -1 && page.mDirty)
+				{
+					mStore.writeSectors(page.mIndex, page.mData, 0, 1);
+					mWriteBacks.increment();
+					page.mDirty = false;
+				}
+			}
+		}
+		finally
+		{
+			for (int i = 0; i < locked; i++)
+			{
+				pages[i].mLock.unlock();
+			}
+		}
+	}
+
+
+	private void checkRange(long aPosition, int aLength)
+	{
+		if (aPosition < 0 || aLength < 0 || aPosition + aLength > mStore.getSectorCount() * mPageSize)
+		{
+			throw new IllegalArgumentException("Range outside store: position " + aPosition + ", length " + aLength);
+		}
+	}
+
+
+	private static final class Page
+	{
+		final ReentrantLock mLock;
+		final byte[] mData;
+		final int mSlot;
+		long mIndex;
+		boolean mDirty;
+		volatile boolean mReferenced;
+
+
+		Page(int aPageSize, int aSlot)
+		{
+			mLock = new ReentrantLock();
+			mData = new byte[aPageSize];
+			mSlot = aSlot;
+			mIndex = -1;
+		}
+	}
+
+
+	private record DirtyPage(Page page, long index)
+	{
+	}
+}
@@ -0,0 +1,221 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Stage threads connected by bounded queues. A failure in any stage is recorded and rethrown to every other stage and to the caller so
+ * that no stage blocks forever on a queue: the other stages are interrupted and every queue is cleared and given a poison element, which
+ * wakes a producer blocked on a full queue as well as a consumer blocked on an empty one.
+ */
+final class Pipeline
+{
+	private final static Object POISON = new Object();
+
+	private final AtomicReference<Throwable> mFailure;
+	private final CopyOnWriteArrayList<Thread> mThreads;
+	private final CopyOnWriteArrayList<BlockingQueue<?>> mQueues;
+
+
+	Pipeline()
+	{
+		mFailure = new AtomicReference<>();
+		mThreads = new CopyOnWriteArrayList<>();
+		mQueues = new CopyOnWriteArrayList<>();
+	}
+
+
+	/**
+	 * @param aCapacity at least two, so that the poison fits next to the element of a producer woken by clearing the queue
+	 */
+	<T> BlockingQueue<T> newQueue(int aCapacity)
+	{
+		if (aCapacity < 2)
+		{
+			throw new IllegalArgumentException("Queue capacity must be at least 2: " + aCapacity);
+		}
+
+		BlockingQueue<T> queue = new ArrayBlockingQueue<>(aCapacity);
+		mQueues.add(queue);
+		return queue;
+	}
+
+
+	void start(String aName, Stage aStage)
+	{
+		Thread thread = Thread.ofPlatform().name(aName).daemon().start(() ->
+		{
+			try
+			{
+				aStage.run();
+			}
+			catch (Throwable e)
+			{
+				fail(e);
+			}
+		});
+
+		mThreads.add(thread);
+	}
+
+
+	<T> void put(BlockingQueue<T> aQueue, T aElement) throws IOException
+	{
+		checkFailure();
+
+		try
+		{
+			aQueue.put(aElement);
+		}
+		catch (InterruptedException e)
+		{
+			checkFailure();
+			throw new InterruptedIOException();
+		}
+	}
+
+
+	<T> T take(BlockingQueue<T> aQueue) throws IOException
+	{
+		checkFailure();
+
+		T element;
+		try
+		{
+			element = aQueue.take();
+		}
+		catch (InterruptedException e)
+		{
+			checkFailure();
+			throw new InterruptedIOException();
+		}
+
+		if (element == POISON)
+		{
+			checkFailure();
+		}
+
+		return element;
+	}
+
+
+	/**
+	 * Waits for all stages to finish and rethrows the first failure.
+	 */
+	void join() throws IOException
+	{
+		try
+		{
+			for (Thread thread : mThreads)
+			{
+				thread.join();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+
+		checkFailure();
+	}
+
+
+	/**
+	 * Stops all stages.
+	 */
+	void cancel()
+	{
+		fail(new IOException("Pipeline closed."));
+	}
+
+
+	/**
+	 * Waits for all stages to finish without rethrowing failures, used after cancel.
+	 */
+	void await()
+	{
+		boolean interrupted = false;
+
+		for (Thread thread : mThreads)
+		{
+			for (;;)
+			{
+				try
+				{
+					thread.join();
+					break;
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	void checkFailure() throws IOException
+	{
+		Throwable failure = mFailure.get();
+
+		if (failure instanceof IOException e)
+		{
+			throw e;
+		}
+		if (failure instanceof RuntimeException e)
+		{
+			throw e;
+		}
+		if (failure instanceof Error e)
+		{
+			throw e;
+		}
+		if (failure != null)
+		{
+			throw new IOException(failure);
+		}
+	}
+
+
+	/**
+	 * Records the first failure and wakes every thread blocked on a queue. The failure is recorded before the queues are cleared, so a
+	 * producer finding space afterwards fails on its next put.
+	 */
+	@SuppressWarnings("unchecked")
+	private void fail(Throwable aFailure)
+	{
+		mFailure.compareAndSet(null, aFailure);
+
+		for (Thread thread : mThreads)
+		{
+			if (thread != Thread.currentThread())
+			{
+				thread.interrupt();
+			}
+		}
+
+		for (BlockingQueue<?> queue : mQueues)
+		{
+			queue.clear();
+			((BlockingQueue<Object>)queue).offer(POISON);
+		}
+	}
+
+
+	@FunctionalInterface
+	interface Stage
+	{
+		void run() throws IOException;
+	}
+}
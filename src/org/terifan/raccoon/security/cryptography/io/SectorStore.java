@@ -0,0 +1,37 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+
+
+/**
+ * Storage of fixed size sectors addressed by index. Implementations encrypt on write and decrypt on read.
+ */
+public interface SectorStore
+{
+	int getSectorSize();
+
+
+	long getSectorCount();
+
+
+	/**
+	 * Reads and decrypts whole sectors.
+	 *
+	 * @param aSectorIndex index of the first sector
+	 * @param aBuffer receives the plaintext
+	 * @param aOffset offset in the buffer
+	 * @param aSectorCount number of sectors to read
+	 */
+	void readSectors(long aSectorIndex, byte[] aBuffer, int aOffset, int aSectorCount) throws IOException;
+
+
+	/**
+	 * Encrypts and writes whole sectors. The buffer provided is left unchanged.
+	 *
+	 * @param aSectorIndex index of the first sector
+	 * @param aBuffer the plaintext
+	 * @param aOffset offset in the buffer
+	 * @param aSectorCount number of sectors to write
+	 */
+	void writeSectors(long aSectorIndex, byte[] aBuffer, int aOffset, int aSectorCount) throws IOException;
+}
@@ -0,0 +1,114 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+
+/**
+ * A Flow processor applying a sequence of stages to each buffer and publishing the buffer to its subscribers. Buffers are processed on
+ * the thread delivering them and published using the executor of this processor, so a chain of processors runs each link on its own
+ * executor while the stages within one processor are fused and touch each buffer once.
+ * <p>
+ * Buffers are requested from upstream in batches as they are consumed. When the subscribers fall behind, publishing blocks the delivering
+ * thread which stops further requests, so demand propagates back to the source.
+ *
+ * <pre>
+ * DigestStage sha = new DigestStage(new SHA256());
+ * StageProcessor encrypt = new StageProcessor(cryptoPool, 16, new CipherStage(unitCipher, 0, true), sha);
+ * source.subscribe(encrypt);
+ * encrypt.subscribe(sink);
+ * </pre>
+ */
+public class StageProcessor extends SubmissionPublisher<ByteBuffer> implements Flow.Processor<ByteBuffer, ByteBuffer>
+{
+	private final BufferStage[] mStages;
+	private final int mBatchSize;
+	private Flow.Subscription mSubscription;
+	private int mConsumed;
+
+
+	/**
+	 * @param aExecutor the executor delivering buffers to subscribers
+	 * @param aMaxBufferCapacity maximum number of buffers queued for each subscriber
+	 * @param aStages the stages applied in order
+	 */
+	public StageProcessor(Executor aExecutor, int aMaxBufferCapacity, BufferStage... aStages)
+	{
+		super(aExecutor, aMaxBufferCapacity);
+
+		mStages = aStages.clone();
+		mBatchSize = Math.max(1, aMaxBufferCapacity / 2);
+	}
+
+
+	@Override
+	public void onSubscribe(Flow.Subscription aSubscription)
+	{
+		if (mSubscription != null)
+		{
+			aSubscription.cancel();
+			return;
+		}
+
+		mSubscription = aSubscription;
+		mSubscription.request(2 * mBatchSize);
+	}
+
+
+	@Override
+	public void onNext(ByteBuffer aBuffer)
+	{
+		if (isClosed())
+		{
+			return;
+		}
+
+		try
+		{
+			for (BufferStage stage : mStages)
+			{
+				stage.process(aBuffer);
+			}
+		}
+		catch (RuntimeException | Error e)
+		{
+			mSubscription.cancel();
+			onError(e);
+			return;
+		}
+
+		submit(aBuffer);
+
+		if (++mConsumed == mBatchSize)
+		{
+			mConsumed = 0;
+			mSubscription.request(mBatchSize);
+		}
+	}
+
+
+	@Override
+	public void onError(Throwable aThrowable)
+	{
+		for (BufferStage stage : mStages)
+		{
+			stage.fail(aThrowable);
+		}
+
+		closeExceptionally(aThrowable);
+	}
+
+
+	@Override
+	public void onComplete()
+	{
+		for (BufferStage stage : mStages)
+		{
+			stage.complete();
+		}
+
+		close();
+	}
+}
@@ -54,4 +54,37 @@ public class BlockPadding
 
 		return paddedBlock;
 	}
+
+
+	/**
+	 * Pads the data in place with counter values up to the next multiple of the unit size. The buffer must have room for the padding.
+	 *
+	 * @return the padded length
+	 */
+	public static int counterPadding(byte[] aBuffer, int aOffset, int aLength, int aUnitSize)
+	{
+		int paddedLength = (aLength + aUnitSize - 1) / aUnitSize * aUnitSize;
+
+		for (int i = aOffset + aLength, j = 0; i < aOffset + paddedLength; i++)
+		{
+			aBuffer[i] = (byte)j++;
+		}
+
+		return paddedLength;
+	}
+
+
+	/**
+	 * Pads the data in place with random values up to the next multiple of the unit size. The buffer must have room for the padding.
+	 *
+	 * @return the padded length
+	 */
+	public static int randomPadding(byte[] aBuffer, int aOffset, int aLength, int aUnitSize)
+	{
+		int paddedLength = (aLength + aUnitSize - 1) / aUnitSize * aUnitSize;
+
+		Holder.PRNG.nextBytes(aBuffer, aOffset + aLength, paddedLength - aLength);
+
+		return paddedLength;
+	}
 }
@@ -0,0 +1,333 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+
+/**
+ * RFC 7693 BLAKE2b with digest lengths of 1 to 64 bytes and an optional key of up to 64 bytes. Whole blocks are compressed straight
+ * from the input array.
+ *
+ * <pre>
+ * byte[] hash = new BLAKE2b().digest(data);
+ * byte[] mac = new BLAKE2b(32, key).digest(data);
+ * </pre>
+ */
+public final class BLAKE2b extends MessageDigest implements Cloneable
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final static long[] IV =
+	{
+		0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+		0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+	};
+
+	private final static byte[][] SIGMA =
+	{
+		{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+		{14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+		{11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+		{7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+		{9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+		{2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+		{12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+		{13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+		{6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+		{10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}
+	};
+
+	private final static int BLOCK_SIZE = 128;
+
+	private final byte[] mKey;
+	private final int mDigestLength;
+	private final long[] mH;
+	private final long[] mM;
+	private final byte[] mBuffer;
+	private int mBufferLength;
+	private long mCounter0;
+	private long mCounter1;
+
+
+	/**
+	 * Creates an unkeyed BLAKE2b-512.
+	 */
+	public BLAKE2b()
+	{
+		this(64, new byte[0]);
+	}
+
+
+	/**
+	 * Creates an unkeyed BLAKE2b.
+	 *
+	 * @param aDigestLength the digest length in bytes, 1 to 64
+	 */
+	public BLAKE2b(int aDigestLength)
+	{
+		this(aDigestLength, new byte[0]);
+	}
+
+
+	/**
+	 * @param aDigestLength the digest length in bytes, 1 to 64
+	 * @param aKey a key of 0 to 64 bytes
+	 */
+	public BLAKE2b(int aDigestLength, byte[] aKey)
+	{
+		super(aDigestLength == 64 ? "blake2b-512" : "blake2b-" + 8 * aDigestLength);
+
+		if (aDigestLength < 1 || aDigestLength > 64)
+		{
+			throw new IllegalArgumentException("Digest length must be 1 to 64 bytes: " + aDigestLength);
+		}
+		if (aKey.length > 64)
+		{
+			throw new IllegalArgumentException("Key length must be 0 to 64 bytes: " + aKey.length);
+		}
+
+		mDigestLength = aDigestLength;
+		mKey = aKey.clone();
+		mH = new long[8];
+		mM = new long[16];
+		mBuffer = new byte[BLOCK_SIZE];
+
+		engineReset();
+	}
+
+
+	/**
+	 * Constructor for cloning
+	 */
+	public BLAKE2b(BLAKE2b aSource)
+	{
+		super(aSource.getAlgorithm());
+
+		mDigestLength = aSource.mDigestLength;
+		mKey = aSource.mKey.clone();
+		mH = aSource.mH.clone();
+		mM = new long[16];
+		mBuffer = aSource.mBuffer.clone();
+		mBufferLength = aSource.mBufferLength;
+		mCounter0 = aSource.mCounter0;
+		mCounter1 = aSource.mCounter1;
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		if (mBufferLength == BLOCK_SIZE)
+		{
+			increment(BLOCK_SIZE);
+			compress(mBuffer, 0, false);
+			mBufferLength = 0;
+		}
+
+		mBuffer[mBufferLength++] = aInput;
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		if (aLength == 0)
+		{
+			return;
+		}
+
+		// the last block is compressed when finished, a full buffer is only compressed when more input follows
+		if (mBufferLength > 0)
+		{
+			int length = Math.min(aLength, BLOCK_SIZE - mBufferLength);
+
+			System.arraycopy(aInput, aOffset, mBuffer, mBufferLength, length);
+
+			mBufferLength += length;
+			aOffset += length;
+			aLength -= length;
+
+			if (aLength == 0)
+			{
+				return;
+			}
+
+			increment(BLOCK_SIZE);
+			compress(mBuffer, 0, false);
+			mBufferLength = 0;
+		}
+
+		for (; aLength > BLOCK_SIZE; aOffset += BLOCK_SIZE, aLength -= BLOCK_SIZE)
+		{
+			increment(BLOCK_SIZE);
+			compress(aInput, aOffset, false);
+		}
+
+		System.arraycopy(aInput, aOffset, mBuffer, 0, aLength);
+		mBufferLength = aLength;
+	}
+
+
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		if (aInput.hasArray())
+		{
+			engineUpdate(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+			aInput.position(aInput.limit());
+			return;
+		}
+
+		byte[] buffer = new byte[Math.min(aInput.remaining(), 16 * BLOCK_SIZE)];
+
+		while (aInput.hasRemaining())
+		{
+			int length = Math.min(aInput.remaining(), buffer.length);
+			aInput.get(buffer, 0, length);
+			engineUpdate(buffer, 0, length);
+		}
+	}
+
+
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return mDigestLength;
+	}
+
+
+	@Override
+	protected byte[] engineDigest()
+	{
+		byte[] output = new byte[mDigestLength];
+		finish(output, 0);
+		return output;
+	}
+
+
+	@Override
+	protected int engineDigest(byte[] aBuffer, int aOffset, int aLength) throws DigestException
+	{
+		if (aLength < mDigestLength)
+		{
+			throw new DigestException("Buffer too short.");
+		}
+
+		finish(aBuffer, aOffset);
+		return mDigestLength;
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		System.arraycopy(IV, 0, mH, 0, 8);
+		mH[0] ^= 0x01010000L ^ (mKey.length << 8) ^ mDigestLength;
+
+		mCounter0 = 0;
+		mCounter1 = 0;
+		mBufferLength = 0;
+		Arrays.fill(mBuffer, (byte)0);
+
+		if (mKey.length > 0)
+		{
+			System.arraycopy(mKey, 0, mBuffer, 0, mKey.length);
+			mBufferLength = BLOCK_SIZE;
+		}
+	}
+
+
+	@Override
+	public BLAKE2b clone()
+	{
+		return new BLAKE2b(this);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "BLAKE2b-" + 8 * mDigestLength;
+	}
+
+
+	private void finish(byte[] aOutput, int aOffset)
+	{
+		increment(mBufferLength);
+		Arrays.fill(mBuffer, mBufferLength, BLOCK_SIZE, (byte)0);
+		compress(mBuffer, 0, true);
+
+		byte[] h = new byte[64];
+		for (int i = 0; i < 8; i++)
+		{
+			LONG.set(h, 8 * i, mH[i]);
+		}
+		System.arraycopy(h, 0, aOutput, aOffset, mDigestLength);
+
+		engineReset();
+	}
+
+
+	private void increment(int aLength)
+	{
+		mCounter0 += aLength;
+		if (Long.compareUnsigned(mCounter0, aLength) < 0)
+		{
+			mCounter1++;
+		}
+	}
+
+
+	private void compress(byte[] aInput, int aOffset, boolean aLast)
+	{
+		long[] m = mM;
+		for (int i = 0; i < 16; i++)
+		{
+			m[i] = (long)LONG.get(aInput, aOffset + 8 * i);
+		}
+
+		long v0 = mH[0], v1 = mH[1], v2 = mH[2], v3 = mH[3];
+		long v4 = mH[4], v5 = mH[5], v6 = mH[6], v7 = mH[7];
+		long v8 = IV[0], v9 = IV[1], v10 = IV[2], v11 = IV[3];
+		long v12 = IV[4] ^ mCounter0, v13 = IV[5] ^ mCounter1, v14 = aLast ? ~IV[6] : IV[6], v15 = IV[7];
+
+		for (int round = 0; round < 12; round++)
+		{
+			byte[] s = SIGMA[round % 10];
+
+			// columns
+			v0 += v4 + m[s[0]];   v12 = Long.rotateRight(v12 ^ v0, 32); v8 += v12;  v4 = Long.rotateRight(v4 ^ v8, 24);
+			v0 += v4 + m[s[1]];   v12 = Long.rotateRight(v12 ^ v0, 16); v8 += v12;  v4 = Long.rotateRight(v4 ^ v8, 63);
+			v1 += v5 + m[s[2]];   v13 = Long.rotateRight(v13 ^ v1, 32); v9 += v13;  v5 = Long.rotateRight(v5 ^ v9, 24);
+			v1 += v5 + m[s[3]];   v13 = Long.rotateRight(v13 ^ v1, 16); v9 += v13;  v5 = Long.rotateRight(v5 ^ v9, 63);
+			v2 += v6 + m[s[4]];   v14 = Long.rotateRight(v14 ^ v2, 32); v10 += v14; v6 = Long.rotateRight(v6 ^ v10, 24);
+			v2 += v6 + m[s[5]];   v14 = Long.rotateRight(v14 ^ v2, 16); v10 += v14; v6 = Long.rotateRight(v6 ^ v10, 63);
+			v3 += v7 + m[s[6]];   v15 = Long.rotateRight(v15 ^ v3, 32); v11 += v15; v7 = Long.rotateRight(v7 ^ v11, 24);
+			v3 += v7 + m[s[7]];   v15 = Long.rotateRight(v15 ^ v3, 16); v11 += v15; v7 = Long.rotateRight(v7 ^ v11, 63);
+
+			// diagonals
+			v0 += v5 + m[s[8]];   v15 = Long.rotateRight(v15 ^ v0, 32); v10 += v15; v5 = Long.rotateRight(v5 ^ v10, 24);
+			v0 += v5 + m[s[9]];   v15 = Long.rotateRight(v15 ^ v0, 16); v10 += v15; v5 = Long.rotateRight(v5 ^ v10, 63);
+			v1 += v6 + m[s[10]];  v12 = Long.rotateRight(v12 ^ v1, 32); v11 += v12; v6 = Long.rotateRight(v6 ^ v11, 24);
+			v1 += v6 + m[s[11]];  v12 = Long.rotateRight(v12 ^ v1, 16); v11 += v12; v6 = Long.rotateRight(v6 ^ v11, 63);
+			v2 += v7 + m[s[12]];  v13 = Long.rotateRight(v13 ^ v2, 32); v8 += v13;  v7 = Long.rotateRight(v7 ^ v8, 24);
+			v2 += v7 + m[s[13]];  v13 = Long.rotateRight(v13 ^ v2, 16); v8 += v13;  v7 = Long.rotateRight(v7 ^ v8, 63);
+			v3 += v4 + m[s[14]];  v14 = Long.rotateRight(v14 ^ v3, 32); v9 += v14;  v4 = Long.rotateRight(v4 ^ v9, 24);
+			v3 += v4 + m[s[15]];  v14 = Long.rotateRight(v14 ^ v3, 16); v9 += v14;  v4 = Long.rotateRight(v4 ^ v9, 63);
+		}
+
+		mH[0] ^= v0 ^ v8;
+		mH[1] ^= v1 ^ v9;
+		mH[2] ^= v2 ^ v10;
+		mH[3] ^= v3 ^ v11;
+		mH[4] ^= v4 ^ v12;
+		mH[5] ^= v5 ^ v13;
+		mH[6] ^= v6 ^ v14;
+		mH[7] ^= v7 ^ v15;
+	}
+}
@@ -0,0 +1,647 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+/**
+ * BLAKE3 in hash, keyed hash and derive key modes. The digest methods return output of the configured length, any length of output can
+ * be read with the squeeze methods.
+ * <p>
+ * Large updates are split into 1 KiB chunks whose chaining values are computed in parallel on the common ForkJoinPool, the chunks are
+ * then merged into the tree in order.
+ *
+ * <pre>
+ * byte[] hash = new BLAKE3().digest(data);
+ * byte[] mac = BLAKE3.newKeyedHash(key).digest(data);
+ * byte[] subkey = BLAKE3.newDeriveKey("raccoon 2024 file encryption key").digest(masterKey);
+ * </pre>
+ */
+public final class BLAKE3 extends MessageDigest implements Cloneable
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final static int[] IV =
+	{
+		0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19
+	};
+
+	/** message word order of each round */
+	private final static byte[][] SCHEDULE = createSchedule();
+
+	private final static int BLOCK_LEN = 64;
+	private final static int CHUNK_LEN = 1024;
+	private final static int MIN_PARALLEL_CHUNKS = 16;
+
+	private final static int CHUNK_START = 1;
+	private final static int CHUNK_END = 2;
+	private final static int PARENT = 4;
+	private final static int ROOT = 8;
+	private final static int KEYED_HASH = 16;
+	private final static int DERIVE_KEY_CONTEXT = 32;
+	private final static int DERIVE_KEY_MATERIAL = 64;
+
+	private final int[] mKey;
+	private final int mFlags;
+	private final int mDigestLength;
+
+	private final int[] mChunkCV;
+	private final byte[] mBlock;
+	private final int[] mCVStack;
+	private final int[] mWords;
+	private int mBlockLength;
+	private int mBlocksCompressed;
+	private long mChunkCounter;
+	private int mStackSize;
+
+	// output state, valid while squeezing
+	private int[] mOutputCV;
+	private int[] mOutputBlock;
+	private int mOutputBlockLength;
+	private int mOutputFlags;
+	private long mOutputCounter;
+	private byte[] mOutputBuffer;
+	private int mOutputOffset;
+
+
+	/**
+	 * Creates a hash with a 32 byte digest.
+	 */
+	public BLAKE3()
+	{
+		this(32);
+	}
+
+
+	/**
+	 * @param aDigestLength length of the output returned by the digest methods in bytes
+	 */
+	public BLAKE3(int aDigestLength)
+	{
+		this("blake3", IV, 0, aDigestLength);
+	}
+
+
+	private BLAKE3(String aAlgorithm, int[] aKey, int aFlags, int aDigestLength)
+	{
+		super(aAlgorithm);
+
+		if (aDigestLength < 1)
+		{
+			throw new IllegalArgumentException("Illegal digest length: " + aDigestLength);
+		}
+
+		mKey = aKey.clone();
+		mFlags = aFlags;
+		mDigestLength = aDigestLength;
+		mChunkCV = new int[8];
+		mBlock = new byte[BLOCK_LEN];
+		mCVStack = new int[8 * 54];
+		mWords = new int[16];
+
+		engineReset();
+	}
+
+
+	/**
+	 * Constructor for cloning
+	 */
+	public BLAKE3(BLAKE3 aSource)
+	{
+		super(aSource.getAlgorithm());
+
+		mKey = aSource.mKey.clone();
+		mFlags = aSource.mFlags;
+		mDigestLength = aSource.mDigestLength;
+		mChunkCV = aSource.mChunkCV.clone();
+		mBlock = aSource.mBlock.clone();
+		mCVStack = aSource.mCVStack.clone();
+		mWords = new int[16];
+		mBlockLength = aSource.mBlockLength;
+		mBlocksCompressed = aSource.mBlocksCompressed;
+		mChunkCounter = aSource.mChunkCounter;
+		mStackSize = aSource.mStackSize;
+
+		if (aSource.mOutputCV != null)
+		{
+			mOutputCV = aSource.mOutputCV.clone();
+			mOutputBlock = aSource.mOutputBlock.clone();
+			mOutputBlockLength = aSource.mOutputBlockLength;
+			mOutputFlags = aSource.mOutputFlags;
+			mOutputCounter = aSource.mOutputCounter;
+			mOutputBuffer = aSource.mOutputBuffer.clone();
+			mOutputOffset = aSource.mOutputOffset;
+		}
+	}
+
+
+	/**
+	 * Returns a keyed hash (MAC) with a 32 byte digest.
+	 *
+	 * @param aKey a 32 byte key
+	 */
+	public static BLAKE3 newKeyedHash(byte[] aKey)
+	{
+		return newKeyedHash(aKey, 32);
+	}
+
+
+	/**
+	 * @param aKey a 32 byte key
+	 * @param aDigestLength length of the output returned by the digest methods in bytes
+	 */
+	public static BLAKE3 newKeyedHash(byte[] aKey, int aDigestLength)
+	{
+		if (aKey.length != 32)
+		{
+			throw new IllegalArgumentException("Key must be 32 bytes: " + aKey.length);
+		}
+
+		int[] key = new int[8];
+		for (int i = 0; i < 8; i++)
+		{
+			key[i] = (int)INT.get(aKey, 4 * i);
+		}
+
+		return new BLAKE3("blake3-keyed", key, KEYED_HASH, aDigestLength);
+	}
+
+
+	/**
+	 * Returns a key derivation function with a 32 byte digest. The key material is passed as message.
+	 *
+	 * @param aContext a hardcoded, globally unique and application specific context string
+	 */
+	public static BLAKE3 newDeriveKey(String aContext)
+	{
+		return newDeriveKey(aContext, 32);
+	}
+
+
+	/**
+	 * @param aContext a hardcoded, globally unique and application specific context string
+	 * @param aDigestLength length of the derived key in bytes
+	 */
+	public static BLAKE3 newDeriveKey(String aContext, int aDigestLength)
+	{
+		BLAKE3 context = new BLAKE3("blake3-derive-key", IV, DERIVE_KEY_CONTEXT, 32);
+		context.update(aContext.getBytes(StandardCharsets.UTF_8));
+		byte[] contextKey = context.digest();
+
+		int[] key = new int[8];
+		for (int i = 0; i < 8; i++)
+		{
+			key[i] = (int)INT.get(contextKey, 4 * i);
+		}
+
+		return new BLAKE3("blake3-derive-key", key, DERIVE_KEY_MATERIAL, aDigestLength);
+	}
+
+
+	/**
+	 * Finishes the message, if not already done, and writes the next bytes of output. Updating the digest after output has been read
+	 * requires a reset.
+	 */
+	public void squeeze(byte[] aOutput, int aOffset, int aLength)
+	{
+		if (mOutputCV == null)
+		{
+			finish();
+		}
+
+		while (aLength > 0)
+		{
+			if (mOutputOffset == 64)
+			{
+				compress(mOutputCV, mOutputBlock, mOutputCounter++, mOutputBlockLength, mOutputFlags, mOutputBuffer);
+				mOutputOffset = 0;
+			}
+
+			int length = Math.min(aLength, 64 - mOutputOffset);
+			System.arraycopy(mOutputBuffer, mOutputOffset, aOutput, aOffset, length);
+
+			mOutputOffset += length;
+			aOffset += length;
+			aLength -= length;
+		}
+	}
+
+
+	/**
+	 * Finishes the message, if not already done, and returns the next bytes of output.
+	 */
+	public byte[] squeeze(int aLength)
+	{
+		byte[] output = new byte[aLength];
+		squeeze(output, 0, aLength);
+		return output;
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		checkAbsorbing();
+
+		if (mBlockLength == BLOCK_LEN)
+		{
+			if (mBlocksCompressed == CHUNK_LEN / BLOCK_LEN - 1)
+			{
+				finishChunk();
+			}
+			else
+			{
+				compressBlock(mBlock, 0);
+			}
+		}
+
+		mBlock[mBlockLength++] = aInput;
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		checkAbsorbing();
+
+		while (aLength > 0)
+		{
+			if (mBlockLength == BLOCK_LEN)
+			{
+				if (mBlocksCompressed == CHUNK_LEN / BLOCK_LEN - 1)
+				{
+					finishChunk();
+				}
+				else
+				{
+					compressBlock(mBlock, 0);
+				}
+			}
+
+			// chunks followed by more input are hashed in parallel
+			if (mBlockLength == 0 && mBlocksCompressed == 0 && aLength > MIN_PARALLEL_CHUNKS * CHUNK_LEN)
+			{
+				int chunks = (aLength - 1) / CHUNK_LEN;
+				hashChunks(aInput, aOffset, chunks);
+				aOffset += chunks * CHUNK_LEN;
+				aLength -= chunks * CHUNK_LEN;
+				continue;
+			}
+
+			// whole blocks followed by more input are compressed from the input
+			while (mBlockLength == 0 && aLength > BLOCK_LEN && mBlocksCompressed < CHUNK_LEN / BLOCK_LEN - 1)
+			{
+				compressBlock(aInput, aOffset);
+				aOffset += BLOCK_LEN;
+				aLength -= BLOCK_LEN;
+			}
+
+			int length = Math.min(aLength, BLOCK_LEN - mBlockLength);
+			System.arraycopy(aInput, aOffset, mBlock, mBlockLength, length);
+
+			mBlockLength += length;
+			aOffset += length;
+			aLength -= length;
+		}
+	}
+
+
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		if (aInput.hasArray())
+		{
+			engineUpdate(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+			aInput.position(aInput.limit());
+			return;
+		}
+
+		byte[] buffer = new byte[Math.min(aInput.remaining(), 64 * CHUNK_LEN)];
+
+		while (aInput.hasRemaining())
+		{
+			int length = Math.min(aInput.remaining(), buffer.length);
+			aInput.get(buffer, 0, length);
+			engineUpdate(buffer, 0, length);
+		}
+	}
+
+
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return mDigestLength;
+	}
+
+
+	@Override
+	protected byte[] engineDigest()
+	{
+		byte[] output = squeeze(mDigestLength);
+		engineReset();
+		return output;
+	}
+
+
+	@Override
+	protected int engineDigest(byte[] aBuffer, int aOffset, int aLength) throws DigestException
+	{
+		if (aLength < mDigestLength)
+		{
+			throw new DigestException("Buffer too short.");
+		}
+
+		squeeze(aBuffer, aOffset, mDigestLength);
+		engineReset();
+
+		return mDigestLength;
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		System.arraycopy(mKey, 0, mChunkCV, 0, 8);
+		Arrays.fill(mBlock, (byte)0);
+		mBlockLength = 0;
+		mBlocksCompressed = 0;
+		mChunkCounter = 0;
+		mStackSize = 0;
+		mOutputCV = null;
+		mOutputBlock = null;
+		mOutputBuffer = null;
+	}
+
+
+	@Override
+	public BLAKE3 clone()
+	{
+		return new BLAKE3(this);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "BLAKE3";
+	}
+
+
+	private void checkAbsorbing()
+	{
+		if (mOutputCV != null)
+		{
+			throw new IllegalStateException("Attempt to update while squeezing.");
+		}
+	}
+
+
+	private void compressBlock(byte[] aInput, int aOffset)
+	{
+		int flags = mFlags | (mBlocksCompressed == 0 ? CHUNK_START : 0);
+
+		load(aInput, aOffset, mWords);
+		compressInPlace(mChunkCV, mWords, mChunkCounter, BLOCK_LEN, flags);
+
+		mBlocksCompressed++;
+		mBlockLength = 0;
+	}
+
+
+	/**
+	 * Compresses the last block of a full chunk followed by more input and adds the chunk to the tree.
+	 */
+	private void finishChunk()
+	{
+		load(mBlock, 0, mWords);
+		compressInPlace(mChunkCV, mWords, mChunkCounter, BLOCK_LEN, mFlags | CHUNK_END | (mBlocksCompressed == 0 ? CHUNK_START : 0));
+
+		addChunk(mChunkCV);
+
+		System.arraycopy(mKey, 0, mChunkCV, 0, 8);
+		mBlockLength = 0;
+		mBlocksCompressed = 0;
+	}
+
+
+	/**
+	 * Computes the chaining values of whole chunks in parallel and adds them to the tree in order.
+	 */
+	private void hashChunks(byte[] aInput, int aOffset, int aChunks)
+	{
+		int[] cvs = new int[8 * aChunks];
+		long counter = mChunkCounter;
+
+		IntStream.range(0, aChunks).parallel().forEach(i ->
+		{
+			int[] cv = mKey.clone();
+			int[] words = new int[16];
+
+			for (int j = 0, offset = aOffset + i * CHUNK_LEN; j < CHUNK_LEN / BLOCK_LEN; j++, offset += BLOCK_LEN)
+			{
+				load(aInput, offset, words);
+				compressInPlace(cv, words, counter + i, BLOCK_LEN, mFlags | (j == 0 ? CHUNK_START : 0) | (j == CHUNK_LEN / BLOCK_LEN - 1 ? CHUNK_END : 0));
+			}
+
+			System.arraycopy(cv, 0, cvs, 8 * i, 8);
+		});
+
+		int[] cv = new int[8];
+		for (int i = 0; i < aChunks; i++)
+		{
+			System.arraycopy(cvs, 8 * i, cv, 0, 8);
+			addChunk(cv);
+		}
+	}
+
+
+	/**
+	 * Pushes the chaining value of a completed chunk, merging completed subtrees as indicated by the number of chunks.
+	 */
+	private void addChunk(int[] aChunkCV)
+	{
+		int[] cv = aChunkCV.clone();
+		long totalChunks = ++mChunkCounter;
+
+		while ((totalChunks & 1) == 0)
+		{
+			mStackSize--;
+			parentCV(mCVStack, 8 * mStackSize, cv, cv);
+			totalChunks >>>= 1;
+		}
+
+		System.arraycopy(cv, 0, mCVStack, 8 * mStackSize, 8);
+		mStackSize++;
+	}
+
+
+	/**
+	 * Computes the chaining value of a parent node. The right child is replaced by the result.
+	 */
+	private void parentCV(int[] aLeft, int aLeftOffset, int[] aRight, int[] aOutput)
+	{
+		int[] block = mWords;
+		System.arraycopy(aLeft, aLeftOffset, block, 0, 8);
+		System.arraycopy(aRight, 0, block, 8, 8);
+
+		System.arraycopy(mKey, 0, aOutput, 0, 8);
+		compressInPlace(aOutput, block, 0, BLOCK_LEN, mFlags | PARENT);
+	}
+
+
+	/**
+	 * Computes the root node and prepares the first block of output.
+	 */
+	private void finish()
+	{
+		int[] cv = mChunkCV.clone();
+		int[] block = new int[16];
+		int blockLength = mBlockLength;
+		long counter = mChunkCounter;
+		int flags = mFlags | CHUNK_END | (mBlocksCompressed == 0 ? CHUNK_START : 0);
+
+		byte[] padded = Arrays.copyOf(mBlock, BLOCK_LEN);
+		Arrays.fill(padded, mBlockLength, BLOCK_LEN, (byte)0);
+		load(padded, 0, block);
+
+		for (int i = mStackSize; --i >= 0;)
+		{
+			compressInPlace(cv, block, counter, blockLength, flags);
+
+			System.arraycopy(mCVStack, 8 * i, block, 0, 8);
+			System.arraycopy(cv, 0, block, 8, 8);
+			System.arraycopy(mKey, 0, cv, 0, 8);
+			blockLength = BLOCK_LEN;
+			counter = 0;
+			flags = mFlags | PARENT;
+		}
+
+		mOutputCV = cv;
+		mOutputBlock = block;
+		mOutputBlockLength = blockLength;
+		mOutputFlags = flags | ROOT;
+		mOutputCounter = 0;
+		mOutputBuffer = new byte[64];
+		mOutputOffset = 64;
+	}
+
+
+	private static void load(byte[] aInput, int aOffset, int[] aWords)
+	{
+		for (int i = 0; i < 16; i++)
+		{
+			aWords[i] = (int)INT.get(aInput, aOffset + 4 * i);
+		}
+	}
+
+
+	/**
+	 * Replaces the chaining value with the first half of the compression output.
+	 */
+	private static void compressInPlace(int[] aCV, int[] aBlock, long aCounter, int aBlockLength, int aFlags)
+	{
+		compress(aCV, aBlock, aCounter, aBlockLength, aFlags, aCV);
+	}
+
+
+	/**
+	 * Writes the full 64 byte compression output.
+	 */
+	private static void compress(int[] aCV, int[] aBlock, long aCounter, int aBlockLength, int aFlags, byte[] aOutput)
+	{
+		int[] state = new int[16];
+		compress(aCV, aBlock, aCounter, aBlockLength, aFlags, state);
+
+		for (int i = 0; i < 16; i++)
+		{
+			INT.set(aOutput, 4 * i, state[i]);
+		}
+	}
+
+
+	/**
+	 * Writes the first 8 words of the compression output or all 16 words if the output array is long enough. The output may be the
+	 * chaining value.
+	 */
+	private static void compress(int[] aCV, int[] m, long aCounter, int aBlockLength, int aFlags, int[] aOutput)
+	{
+		int v0 = aCV[0], v1 = aCV[1], v2 = aCV[2], v3 = aCV[3];
+		int v4 = aCV[4], v5 = aCV[5], v6 = aCV[6], v7 = aCV[7];
+		int v8 = IV[0], v9 = IV[1], v10 = IV[2], v11 = IV[3];
+		int v12 = (int)aCounter, v13 = (int)(aCounter >>> 32), v14 = aBlockLength, v15 = aFlags;
+
+		for (int round = 0; round < 7; round++)
+		{
+			byte[] s = SCHEDULE[round];
+
+			// columns
+			v0 += v4 + m[s[0]];   v12 = Integer.rotateRight(v12 ^ v0, 16); v8 += v12;  v4 = Integer.rotateRight(v4 ^ v8, 12);
+			v0 += v4 + m[s[1]];   v12 = Integer.rotateRight(v12 ^ v0, 8);  v8 += v12;  v4 = Integer.rotateRight(v4 ^ v8, 7);
+			v1 += v5 + m[s[2]];   v13 = Integer.rotateRight(v13 ^ v1, 16); v9 += v13;  v5 = Integer.rotateRight(v5 ^ v9, 12);
+			v1 += v5 + m[s[3]];   v13 = Integer.rotateRight(v13 ^ v1, 8);  v9 += v13;  v5 = Integer.rotateRight(v5 ^ v9, 7);
+			v2 += v6 + m[s[4]];   v14 = Integer.rotateRight(v14 ^ v2, 16); v10 += v14; v6 = Integer.rotateRight(v6 ^ v10, 12);
+			v2 += v6 + m[s[5]];   v14 = Integer.rotateRight(v14 ^ v2, 8);  v10 += v14; v6 = Integer.rotateRight(v6 ^ v10, 7);
+			v3 += v7 + m[s[6]];   v15 = Integer.rotateRight(v15 ^ v3, 16); v11 += v15; v7 = Integer.rotateRight(v7 ^ v11, 12);
+			v3 += v7 + m[s[7]];   v15 = Integer.rotateRight(v15 ^ v3, 8);  v11 += v15; v7 = Integer.rotateRight(v7 ^ v11, 7);
+
+			// diagonals
+			v0 += v5 + m[s[8]];   v15 = Integer.rotateRight(v15 ^ v0, 16); v10 += v15; v5 = Integer.rotateRight(v5 ^ v10, 12);
+			v0 += v5 + m[s[9]];   v15 = Integer.rotateRight(v15 ^ v0, 8);  v10 += v15; v5 = Integer.rotateRight(v5 ^ v10, 7);
+			v1 += v6 + m[s[10]];  v12 = Integer.rotateRight(v12 ^ v1, 16); v11 += v12; v6 = Integer.rotateRight(v6 ^ v11, 12);
+			v1 += v6 + m[s[11]];  v12 = Integer.rotateRight(v12 ^ v1, 8);  v11 += v12; v6 = Integer.rotateRight(v6 ^ v11, 7);
+			v2 += v7 + m[s[12]];  v13 = Integer.rotateRight(v13 ^ v2, 16); v8 += v13;  v7 = Integer.rotateRight(v7 ^ v8, 12);
+			v2 += v7 + m[s[13]];  v13 = Integer.rotateRight(v13 ^ v2, 8);  v8 += v13;  v7 = Integer.rotateRight(v7 ^ v8, 7);
+			v3 += v4 + m[s[14]];  v14 = Integer.rotateRight(v14 ^ v3, 16); v9 += v14;  v4 = Integer.rotateRight(v4 ^ v9, 12);
+			v3 += v4 + m[s[15]];  v14 = Integer.rotateRight(v14 ^ v3, 8);  v9 += v14;  v4 = Integer.rotateRight(v4 ^ v9, 7);
+		}
+
+		if (aOutput.length >= 16)
+		{
+			aOutput[8] = v8 ^ aCV[0];
+			aOutput[9] = v9 ^ aCV[1];
+			aOutput[10] = v10 ^ aCV[2];
+			aOutput[11] = v11 ^ aCV[3];
+			aOutput[12] = v12 ^ aCV[4];
+			aOutput[13] = v13 ^ aCV[5];
+			aOutput[14] = v14 ^ aCV[6];
+			aOutput[15] = v15 ^ aCV[7];
+		}
+
+		aOutput[0] = v0 ^ v8;
+		aOutput[1] = v1 ^ v9;
+		aOutput[2] = v2 ^ v10;
+		aOutput[3] = v3 ^ v11;
+		aOutput[4] = v4 ^ v12;
+		aOutput[5] = v5 ^ v13;
+		aOutput[6] = v6 ^ v14;
+		aOutput[7] = v7 ^ v15;
+	}
+
+
+	private static byte[][] createSchedule()
+	{
+		byte[] permutation = {2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8};
+		byte[][] schedule = new byte[7][16];
+
+		for (int i = 0; i < 16; i++)
+		{
+			schedule[0][i] = (byte)i;
+		}
+		for (int round = 1; round < 7; round++)
+		{
+			for (int i = 0; i < 16; i++)
+			{
+				schedule[round][i] = schedule[round - 1][permutation[i]];
+			}
+		}
+
+		return schedule;
+	}
+}
@@ -0,0 +1,155 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * NIST SP 800-185 cSHAKE128 and cSHAKE256, SHAKE with domain separation by a function name and a customization string. With both empty
+ * cSHAKE equals SHAKE.
+ * <p>
+ * The encoded function name and customization string are absorbed once and the resulting state is restored when reset.
+ *
+ * <pre>
+ * CSHAKE cshake = new CSHAKE(256, 32, "", "Email Signature");
+ * byte[] hash = cshake.digest(message);
+ * </pre>
+ */
+public class CSHAKE extends SHAKE
+{
+	private final static int DOMAIN_SUFFIX = 0x04;
+
+	private final Keccak mInitialState;
+
+
+	/**
+	 * @param aSecurityStrength 128 or 256
+	 * @param aDigestLength length of the output returned by the digest methods in bytes
+	 * @param aFunctionName the function name (N), reserved for functions defined by NIST
+	 * @param aCustomization the customization string (S)
+	 */
+	public CSHAKE(int aSecurityStrength, int aDigestLength, String aFunctionName, String aCustomization)
+	{
+		this(aSecurityStrength, aDigestLength, aFunctionName.getBytes(StandardCharsets.UTF_8), aCustomization.getBytes(StandardCharsets.UTF_8));
+	}
+
+
+	public CSHAKE(int aSecurityStrength, int aDigestLength, byte[] aFunctionName, byte[] aCustomization)
+	{
+		this("cshake" + aSecurityStrength, aSecurityStrength, aDigestLength, aFunctionName, aCustomization);
+	}
+
+
+	CSHAKE(String aAlgorithm, int aSecurityStrength, int aDigestLength, byte[] aFunctionName, byte[] aCustomization)
+	{
+		super(aAlgorithm, aSecurityStrength, aDigestLength);
+
+		if (aFunctionName.length > 0 || aCustomization.length > 0)
+		{
+			bytepad(mSponge, aFunctionName, aCustomization);
+			mInitialState = new Keccak(mSponge);
+		}
+		else
+		{
+			mInitialState = null;
+		}
+	}
+
+
+	/**
+	 * Constructor for cloning
+	 */
+	CSHAKE(CSHAKE aSource)
+	{
+		super(aSource);
+
+		mInitialState = aSource.mInitialState;
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		if (mInitialState == null)
+		{
+			super.engineReset();
+		}
+		else
+		{
+			mSponge.set(mInitialState);
+		}
+	}
+
+
+	@Override
+	int getDomainSuffix()
+	{
+		return mInitialState == null ? super.getDomainSuffix() : DOMAIN_SUFFIX;
+	}
+
+
+	@Override
+	public CSHAKE clone()
+	{
+		return new CSHAKE(this);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "cSHAKE" + mSecurityStrength;
+	}
+
+
+	/**
+	 * Absorbs bytepad(encode_string(X1) || ... || encode_string(Xn), rate).
+	 */
+	static void bytepad(Keccak aSponge, byte[]... aStrings)
+	{
+		int length = absorb(aSponge, leftEncode(aSponge.getRate()));
+
+		for (byte[] s : aStrings)
+		{
+			length += absorb(aSponge, leftEncode(8L * s.length));
+			length += absorb(aSponge, s);
+		}
+
+		for (; length % aSponge.getRate() != 0; length++)
+		{
+			aSponge.absorb((byte)0);
+		}
+	}
+
+
+	static byte[] leftEncode(long aValue)
+	{
+		int n = Math.max(1, (71 - Long.numberOfLeadingZeros(aValue)) / 8);
+		byte[] output = new byte[n + 1];
+		output[0] = (byte)n;
+		for (int i = 1; i <= n; i++)
+		{
+			output[i] = (byte)(aValue >>> (8 * (n - i)));
+		}
+		return output;
+	}
+
+
+	static byte[] rightEncode(long aValue)
+	{
+		int n = Math.max(1, (71 - Long.numberOfLeadingZeros(aValue)) / 8);
+		byte[] output = new byte[n + 1];
+		for (int i = 0; i < n; i++)
+		{
+			output[i] = (byte)(aValue >>> (8 * (n - 1 - i)));
+		}
+		output[n] = (byte)n;
+		return output;
+	}
+
+
+	private static int absorb(Keccak aSponge, byte[] aData)
+	{
+		aSponge.absorb(aData, 0, aData.length);
+		return aData.length;
+	}
+}
@@ -0,0 +1,65 @@
+package org.terifan.raccoon.security.messagedigest;
+
+
+/**
+ * A 128-bit checksum computed incrementally over 16 byte blocks. This allows a checksum to be computed inside a cipher mode loop while
+ * each block is still in a register or the L1 cache. The result for a message of whole blocks equals the result of the corresponding
+ * one-shot function.
+ * <p>
+ * Instances are not thread safe.
+ */
+public interface Checksum128
+{
+	/**
+	 * Starts a new checksum.
+	 */
+	void reset(long aSeed);
+
+
+	/**
+	 * Updates the checksum with the 16 bytes at the offset provided.
+	 */
+	void updateBlock(byte[] aBuffer, int aOffset);
+
+
+	/**
+	 * Completes the checksum and writes four ints to the output array.
+	 */
+	void finish(int[] aOutput, int aOutputOffset);
+
+
+	/**
+	 * Returns a checksum equal to <code>Fletcher4.hash128</code>.
+	 */
+	static Checksum128 fletcher4()
+	{
+		return new Fletcher4.Checksum();
+	}
+
+
+	/**
+	 * Returns a checksum equal to <code>MurmurHash3.hash128</code>.
+	 */
+	static Checksum128 murmurHash3()
+	{
+		return new MurmurHash3.Checksum();
+	}
+
+
+	/**
+	 * Returns a checksum equal to <code>SHA3.hash128_256</code>.
+	 */
+	static Checksum128 sha3()
+	{
+		return new SHA3.Checksum();
+	}
+
+
+	/**
+	 * Returns a checksum equal to <code>XXH3.hash128</code>.
+	 */
+	static Checksum128 xxh3()
+	{
+		return new XXH3.Checksum();
+	}
+}
@@ -1,29 +1,343 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+
+/**
+ * Fletcher-4 checksum over big-endian 32-bit words with four 32-bit sums (a, b, c, d). A trailing partial word is padded with zeros.
+ * <p>
+ * The serial dependency of the sums is broken up by running four interleaved lanes, each summing every fourth word, that are merged
+ * into the checksum afterwards. Checksums of consecutive chunks can be computed independently and merged with combine, as ZFS does.
+ *
+ * <pre>
+ * Fletcher4 checksum = new Fletcher4(seed);
+ * checksum.update(header, 0, header.length);
+ * checksum.update(payload);
+ * int[] sums = checksum.finish();
+ * </pre>
+ */
 public final class Fletcher4
 {
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final long mSeed;
+	private final int[] mState;
+	private final byte[] mBuffer;
+	private int mBufferLength;
+	private byte[] mTransfer;
+
+
+	public Fletcher4(long aSeed)
+	{
+		mSeed = aSeed;
+		mState = new int[4];
+		mBuffer = new byte[4];
+
+		reset();
+	}
+
+
+	public void reset()
+	{
+		initState(mState, mSeed);
+		mBufferLength = 0;
+	}
+
+
+	public void update(byte aInput)
+	{
+		mBuffer[mBufferLength++] = aInput;
+
+		if (mBufferLength == 4)
+		{
+			update(mState, mBuffer, 0, 1);
+			mBufferLength = 0;
+		}
+	}
+
+
+	public void update(byte[] aInput, int aOffset, int aLength)
+	{
+		while (mBufferLength > 0 && aLength > 0)
+		{
+			update(aInput[aOffset++]);
+			aLength--;
+		}
+
+		update(mState, aInput, aOffset, aLength / 4);
+
+		aOffset += aLength & ~3;
+		for (int i = aLength & 3; --i >= 0;)
+		{
+			update(aInput[aOffset++]);
+		}
+	}
+
+
 	/**
-	 * note: this implementation might compute beyond the end of the buffer since it operates on four bytes at a time!
+	 * Heap buffers are summed from their backing array, direct buffers are copied in chunks.
 	 */
+	public void update(ByteBuffer aInput)
+	{
+		if (aInput.hasArray())
+		{
+			update(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+			aInput.position(aInput.limit());
+			return;
+		}
+
+		if (mTransfer == null)
+		{
+			mTransfer = new byte[4096];
+		}
+
+		while (aInput.hasRemaining())
+		{
+			int length = Math.min(aInput.remaining(), mTransfer.length);
+			aInput.get(mTransfer, 0, length);
+			update(mTransfer, 0, length);
+		}
+	}
+
+
+	/**
+	 * Returns the sums of the input so far. A buffered partial word is padded with zeros without changing the state, more input can
+	 * follow.
+	 */
+	public int[] finish()
+	{
+		int[] state = mState.clone();
+
+		if (mBufferLength > 0)
+		{
+			byte[] word = new byte[4];
+			System.arraycopy(mBuffer, 0, word, 0, mBufferLength);
+			update(state, word, 0, 1);
+		}
+
+		return state;
+	}
+
+
 	public static int[] hash128(byte[] aData, int aOffset, int aLength, long aSeed)
 	{
-		int a = (int)(aSeed >>> 32);
-		int b = (int)(aSeed >>> 24);
-		int c = (int)(aSeed >>> 8);
-		int d = (int)(aSeed);
+		int[] state = new int[4];
+		initState(state, aSeed);
+
+		update(state, aData, aOffset, aLength / 4);
+
+		int remaining = aLength & 3;
+		if (remaining > 0)
+		{
+			byte[] word = new byte[4];
+			System.arraycopy(aData, aOffset + (aLength & ~3), word, 0, remaining);
+			update(state, word, 0, 1);
+		}
+
+		return state;
+	}
+
+
+	/**
+	 * Returns the checksum of two consecutive chunks of data.
+	 *
+	 * @param aState1 checksum of the first chunk, its length must be a multiple of four bytes
+	 * @param aState2 checksum of the second chunk computed with a zero seed
+	 * @param aLength2 length of the second chunk in bytes
+	 */
+	public static int[] combine(int[] aState1, int[] aState2, long aLength2)
+	{
+		int[] state = aState1.clone();
+		combine(state, aState2[0], aState2[1], aState2[2], aState2[3], (aLength2 + 3) / 4);
+		return state;
+	}
+
+
+	private static void initState(int[] aState, long aSeed)
+	{
+		aState[0] = (int)(aSeed >>> 32);
+		aState[1] = (int)(aSeed >>> 24);
+		aState[2] = (int)(aSeed >>> 8);
+		aState[3] = (int)(aSeed);
+	}
+
+
+	/**
+	 * Adds whole words to the state. Groups of four words are summed in four lanes started from zero, lane j sums the words 4k + j. The
+	 * lane sums are merged into the sums of the whole run, which are combined with the state before the remaining words are added.
+	 */
+	private static void update(int[] aState, byte[] aData, int aOffset, int aWords)
+	{
+		int groups = aWords / 4;
+
+		if (groups > 0)
+		{
+			int a0 = 0, b0 = 0, c0 = 0, d0 = 0;
+			int a1 = 0, b1 = 0, c1 = 0, d1 = 0;
+			int a2 = 0, b2 = 0, c2 = 0, d2 = 0;
+			int a3 = 0, b3 = 0, c3 = 0, d3 = 0;
+
+			for (int end = aOffset + 16 * groups; aOffset < end; aOffset += 16)
+			{
+				a0 += (int)INT.get(aData, aOffset);
+				b0 += a0;
+				c0 += b0;
+				d0 += c0;
+
+				a1 += (int)INT.get(aData, aOffset + 4);
+				b1 += a1;
+				c1 += b1;
+				d1 += c1;
+
+				a2 += (int)INT.get(aData, aOffset + 8);
+				b2 += a2;
+				c2 += b2;
+				d2 += c2;
+
+				a3 += (int)INT.get(aData, aOffset + 12);
+				b3 += a3;
+				c3 += b3;
+				d3 += c3;
+			}
 
-		for (int i = 0; i < aLength; i += 4, aOffset += 4)
+			// the weights of word i of n in the sums are 1, n - i + 1, C(n - i + 2, 2) and C(n - i + 3, 3), expressed in lane sums
+			int a = a0 + a1 + a2 + a3;
+			int b = 4 * (b0 + b1 + b2 + b3) - (a1 + 2 * a2 + 3 * a3);
+			int c = 16 * (c0 + c1 + c2 + c3) - (6 * b0 + 10 * b1 + 14 * b2 + 18 * b3) + (a2 + 3 * a3);
+			int d = 64 * (d0 + d1 + d2 + d3) - (48 * c0 + 64 * c1 + 80 * c2 + 96 * c3) + (4 * b0 + 10 * b1 + 20 * b2 + 34 * b3) - a3;
+
+			combine(aState, a, b, c, d, 4L * groups);
+		}
+
+		int a = aState[0];
+		int b = aState[1];
+		int c = aState[2];
+		int d = aState[3];
+
+		for (int i = aWords & 3; --i >= 0; aOffset += 4)
 		{
-			a += ((aData[aOffset] & 255) << 24) + ((aData[aOffset + 1] & 255) << 16) + ((aData[aOffset + 2] & 255) << 8) + (aData[aOffset + 3] & 255);
+			a += (int)INT.get(aData, aOffset);
 			b += a;
 			c += b;
 			d += c;
 		}
 
-		return new int[]
+		aState[0] = a;
+		aState[1] = b;
+		aState[2] = c;
+		aState[3] = d;
+	}
+
+
+	/**
+	 * Appends the sums of a run of words computed from zero to the state.
+	 */
+	private static void combine(int[] aState, int aA, int aB, int aC, int aD, long aWords)
+	{
+		int n1 = (int)aWords;
+		int n2 = (int)binomial2(aWords + 1);
+		int n3 = (int)binomial3(aWords + 2);
+
+		int a = aState[0];
+		int b = aState[1];
+		int c = aState[2];
+		int d = aState[3];
+
+		aState[0] = a + aA;
+		aState[1] = b + n1 * a + aB;
+		aState[2] = c + n1 * b + n2 * a + aC;
+		aState[3] = d + n1 * c + n2 * b + n3 * a + aD;
+	}
+
+
+	/**
+	 * Returns C(n, 2) modulo 2^64, the division is done before the multiplication overflows.
+	 */
+	private static long binomial2(long n)
+	{
+		return (n & 1) == 0 ? (n / 2) * (n - 1) : n * ((n - 1) / 2);
+	}
+
+
+	/**
+	 * Returns C(n, 3) modulo 2^64, the divisions are done before the multiplications overflow.
+	 */
+	private static long binomial3(long n)
+	{
+		long[] f = {n, n - 1, n - 2};
+
+		for (int i = 0; i < 3; i++)
+		{
+			if (f[i] % 3 == 0)
+			{
+				f[i] /= 3;
+				break;
+			}
+		}
+		for (int i = 0; i < 3; i++)
 		{
-			a, b, c, d
-		};
+			if ((f[i] & 1) == 0)
+			{
+				f[i] /= 2;
+				break;
+			}
+		}
+
+		return f[0] * f[1] * f[2];
+	}
+
+
+	static final class Checksum implements Checksum128
+	{
+		private int mA;
+		private int mB;
+		private int mC;
+		private int mD;
+
+
+		@Override
+		public void reset(long aSeed)
+		{
+			mA = (int)(aSeed >>> 32);
+			mB = (int)(aSeed >>> 24);
+			mC = (int)(aSeed >>> 8);
+			mD = (int)(aSeed);
+		}
+
+
+		@Override
+		public void updateBlock(byte[] aBuffer, int aOffset)
+		{
+			int a = mA;
+			int b = mB;
+			int c = mC;
+			int d = mD;
+
+			for (int i = 0; i < 16; i += 4)
+			{
+				a += (int)INT.get(aBuffer, aOffset + i);
+				b += a;
+				c += b;
+				d += c;
+			}
+
+			mA = a;
+			mB = b;
+			mC = c;
+			mD = d;
+		}
+
+
+		@Override
+		public void finish(int[] aOutput, int aOutputOffset)
+		{
+			aOutput[aOutputOffset] = mA;
+			aOutput[aOutputOffset + 1] = mB;
+			aOutput[aOutputOffset + 2] = mC;
+			aOutput[aOutputOffset + 3] = mD;
+		}
 	}
 }
@@ -0,0 +1,244 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+
+/**
+ * NIST SP 800-185 KMAC128 and KMAC256. KMAC is a single pass over the message, unlike HMAC over SHA-3 which permutes the key pads once
+ * more for every message. The keyed state is computed once and restored when reset.
+ * <p>
+ * The digest methods return the fixed length KMAC output. The squeeze methods return KMACXOF output of any length, useful for key
+ * derivation, and may be called repeatedly until reset.
+ *
+ * <pre>
+ * KMAC kmac = new KMAC(256, key, 32, "File Tag");
+ * byte[] tag = kmac.digest(message);
+ * </pre>
+ */
+public final class KMAC extends MessageDigest implements Cloneable
+{
+	private final static byte[] FUNCTION_NAME = "KMAC".getBytes(StandardCharsets.US_ASCII);
+	private final static int DOMAIN_SUFFIX = 0x04;
+
+	private final Keccak mSponge;
+	private final Keccak mInitialState;
+	private final int mSecurityStrength;
+	private final int mOutputLength;
+	private boolean mCleared;
+
+
+	/**
+	 * @param aSecurityStrength 128 or 256
+	 * @param aKey the key, at least as long as the security strength, i.e. 16 or 32 bytes
+	 * @param aOutputLength length of the output returned by the digest methods in bytes
+	 */
+	public KMAC(int aSecurityStrength, byte[] aKey, int aOutputLength)
+	{
+		this(aSecurityStrength, aKey, aOutputLength, new byte[0]);
+	}
+
+
+	public KMAC(int aSecurityStrength, byte[] aKey, int aOutputLength, String aCustomization)
+	{
+		this(aSecurityStrength, aKey, aOutputLength, aCustomization.getBytes(StandardCharsets.UTF_8));
+	}
+
+
+	/**
+	 * @param aSecurityStrength 128 or 256
+	 * @param aKey the key, at least as long as the security strength, i.e. 16 or 32 bytes
+	 * @param aOutputLength length of the output returned by the digest methods in bytes
+	 * @param aCustomization the customization string (S)
+	 */
+	public KMAC(int aSecurityStrength, byte[] aKey, int aOutputLength, byte[] aCustomization)
+	{
+		super("kmac" + aSecurityStrength);
+
+		if (aSecurityStrength != 128 && aSecurityStrength != 256)
+		{
+			throw new IllegalArgumentException("Security strength must be 128 or 256: " + aSecurityStrength);
+		}
+		if (aOutputLength < 1)
+		{
+			throw new IllegalArgumentException("Illegal output length: " + aOutputLength);
+		}
+		if (aKey.length < aSecurityStrength / 8)
+		{
+			throw new IllegalArgumentException("Key must be at least " + aSecurityStrength / 8 + " bytes: " + aKey.length);
+		}
+
+		mSecurityStrength = aSecurityStrength;
+		mOutputLength = aOutputLength;
+		mInitialState = new Keccak(200 - aSecurityStrength / 4);
+
+		CSHAKE.bytepad(mInitialState, FUNCTION_NAME, aCustomization);
+		CSHAKE.bytepad(mInitialState, aKey);
+
+		mSponge = new Keccak(mInitialState);
+	}
+
+
+	/**
+	 * Constructor for cloning
+	 */
+	private KMAC(KMAC aSource)
+	{
+		super(aSource.getAlgorithm());
+
+		mSecurityStrength = aSource.mSecurityStrength;
+		mOutputLength = aSource.mOutputLength;
+		mInitialState = new Keccak(aSource.mInitialState);
+		mSponge = new Keccak(aSource.mSponge);
+	}
+
+
+	/**
+	 * Finishes the message as KMACXOF, if not already done, and writes the next bytes of output.
+	 */
+	public void squeeze(byte[] aOutput, int aOffset, int aLength)
+	{
+		checkCleared();
+
+		if (!mSponge.isSqueezing())
+		{
+			finish(0);
+		}
+
+		mSponge.squeeze(aOutput, aOffset, aLength);
+	}
+
+
+	/**
+	 * Finishes the message as KMACXOF, if not already done, and returns the next bytes of output.
+	 */
+	public byte[] squeeze(int aLength)
+	{
+		byte[] output = new byte[aLength];
+		squeeze(output, 0, aLength);
+		return output;
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		checkCleared();
+		mSponge.absorb(aInput);
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		checkCleared();
+		mSponge.absorb(aInput, aOffset, aLength);
+	}
+
+
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		checkCleared();
+		mSponge.absorb(aInput);
+	}
+
+
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return mOutputLength;
+	}
+
+
+	@Override
+	protected byte[] engineDigest()
+	{
+		checkCleared();
+
+		byte[] output = new byte[mOutputLength];
+
+		finish(8L * mOutputLength);
+		mSponge.squeeze(output, 0, mOutputLength);
+		engineReset();
+
+		return output;
+	}
+
+
+	@Override
+	protected int engineDigest(byte[] aBuffer, int aOffset, int aLength) throws DigestException
+	{
+		checkCleared();
+
+		if (aLength < mOutputLength)
+		{
+			throw new DigestException("Buffer too short.");
+		}
+
+		finish(8L * mOutputLength);
+		mSponge.squeeze(aBuffer, aOffset, mOutputLength);
+		engineReset();
+
+		return mOutputLength;
+	}
+
+
+	/**
+	 * Restores the keyed state. The key is kept, use clear to erase it.
+	 */
+	@Override
+	protected void engineReset()
+	{
+		checkCleared();
+
+		mSponge.set(mInitialState);
+	}
+
+
+	/**
+	 * Erases the keyed state of this instance, clones hold their own copy and are cleared separately. Any later use throws an
+	 * IllegalStateException.
+	 */
+	public void clear()
+	{
+		mSponge.reset();
+		mInitialState.reset();
+		mCleared = true;
+	}
+
+
+	@Override
+	public KMAC clone()
+	{
+		checkCleared();
+
+		return new KMAC(this);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "KMAC" + mSecurityStrength;
+	}
+
+
+	private void checkCleared()
+	{
+		if (mCleared)
+		{
+			throw new IllegalStateException("KMAC has been cleared.");
+		}
+	}
+
+
+	private void finish(long aOutputBits)
+	{
+		byte[] encoded = CSHAKE.rightEncode(aOutputBits);
+		mSponge.absorb(encoded, 0, encoded.length);
+		mSponge.pad(DOMAIN_SUFFIX);
+	}
+}
@@ -0,0 +1,399 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * The Keccak-f[1600] sponge shared by the SHA-3 family. The state is held as 25 lanes, input is absorbed a lane at a time straight from
+ * the caller's array and the permutation runs on local variables with each round written out, nothing is allocated after construction.
+ */
+final class Keccak
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final static long[] ROUND_CONSTANTS =
+	{
+		0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+		0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+		0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+		0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+		0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+		0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+	};
+
+	private final long[] mState;
+	private final byte[] mQueue;
+	private final int mRate;
+	private int mQueueLength;
+	private int mSqueezeOffset;
+	private boolean mSqueezing;
+
+
+	/**
+	 * @param aRate the rate in bytes
+	 */
+	Keccak(int aRate)
+	{
+		if (aRate <= 0 || aRate >= 200 || (aRate % 8) != 0)
+		{
+			throw new IllegalArgumentException("Illegal rate: " + aRate);
+		}
+
+		mRate = aRate;
+		mState = new long[25];
+		mQueue = new byte[aRate];
+	}
+
+
+	Keccak(Keccak aSource)
+	{
+		mRate = aSource.mRate;
+		mState = aSource.mState.clone();
+		mQueue = aSource.mQueue.clone();
+		mQueueLength = aSource.mQueueLength;
+		mSqueezeOffset = aSource.mSqueezeOffset;
+		mSqueezing = aSource.mSqueezing;
+	}
+
+
+	/**
+	 * Copies the state of a sponge with the same rate into this sponge.
+	 */
+	void set(Keccak aSource)
+	{
+		System.arraycopy(aSource.mState, 0, mState, 0, 25);
+		System.arraycopy(aSource.mQueue, 0, mQueue, 0, mRate);
+		mQueueLength = aSource.mQueueLength;
+		mSqueezeOffset = aSource.mSqueezeOffset;
+		mSqueezing = aSource.mSqueezing;
+	}
+
+
+	/**
+	 * Returns the rate in bytes.
+	 */
+	int getRate()
+	{
+		return mRate;
+	}
+
+
+	void reset()
+	{
+		Arrays.fill(mState, 0);
+		Arrays.fill(mQueue, (byte)0);
+		mQueueLength = 0;
+		mSqueezeOffset = 0;
+		mSqueezing = false;
+	}
+
+
+	boolean isSqueezing()
+	{
+		return mSqueezing;
+	}
+
+
+	void absorb(byte aInput)
+	{
+		checkAbsorbing();
+
+		mQueue[mQueueLength++] = aInput;
+
+		if (mQueueLength == mRate)
+		{
+			absorbBlock(mQueue, 0);
+			mQueueLength = 0;
+		}
+	}
+
+
+	void absorb(byte[] aInput, int aOffset, int aLength)
+	{
+		checkAbsorbing();
+
+		if (mQueueLength > 0)
+		{
+			int length = Math.min(aLength, mRate - mQueueLength);
+
+			System.arraycopy(aInput, aOffset, mQueue, mQueueLength, length);
+
+			mQueueLength += length;
+			aOffset += length;
+			aLength -= length;
+
+			if (mQueueLength < mRate)
+			{
+				return;
+			}
+
+			absorbBlock(mQueue, 0);
+			mQueueLength = 0;
+		}
+
+		for (; aLength >= mRate; aOffset += mRate, aLength -= mRate)
+		{
+			absorbBlock(aInput, aOffset);
+		}
+
+		System.arraycopy(aInput, aOffset, mQueue, 0, aLength);
+		mQueueLength = aLength;
+	}
+
+
+	/**
+	 * Heap buffers are absorbed from their backing array, whole blocks of direct buffers are absorbed with absolute little-endian loads.
+	 */
+	void absorb(ByteBuffer aInput)
+	{
+		if (aInput.hasArray())
+		{
+			absorb(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+			aInput.position(aInput.limit());
+			return;
+		}
+
+		while (mQueueLength > 0 && aInput.hasRemaining())
+		{
+			absorb(aInput.get());
+		}
+
+		checkAbsorbing();
+
+		if (aInput.remaining() >= mRate)
+		{
+			ByteBuffer input = aInput.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int offset = input.position();
+
+			for (int length = input.remaining(); length >= mRate; offset += mRate, length -= mRate)
+			{
+				for (int i = 0, j = offset; i < mRate / 8; i++, j += 8)
+				{
+					mState[i] ^= input.getLong(j);
+				}
+
+				permute(mState);
+			}
+
+			aInput.position(offset);
+		}
+
+		while (aInput.hasRemaining())
+		{
+			absorb(aInput.get());
+		}
+	}
+
+
+	/**
+	 * Appends the domain separation bits and the padding and switches to squeezing.
+	 *
+	 * @param aSuffix the domain separation bits followed by the first bit of the padding, e.g. 0x06 for SHA-3 and 0x1F for SHAKE
+	 */
+	void pad(int aSuffix)
+	{
+		checkAbsorbing();
+
+		Arrays.fill(mQueue, mQueueLength, mRate, (byte)0);
+		mQueue[mQueueLength] ^= (byte)aSuffix;
+		mQueue[mRate - 1] ^= (byte)0x80;
+
+		absorbBlock(mQueue, 0);
+
+		Arrays.fill(mQueue, (byte)0);
+		mQueueLength = 0;
+		mSqueezeOffset = 0;
+		mSqueezing = true;
+	}
+
+
+	void squeeze(byte[] aOutput, int aOffset, int aLength)
+	{
+		if (!mSqueezing)
+		{
+			throw new IllegalStateException("Attempt to squeeze while absorbing.");
+		}
+
+		while (aLength > 0)
+		{
+			if (mSqueezeOffset == mRate)
+			{
+				permute(mState);
+				mSqueezeOffset = 0;
+			}
+
+			if ((mSqueezeOffset & 7) == 0 && aLength >= 8)
+			{
+				int lanes = Math.min(aLength, mRate - mSqueezeOffset) / 8;
+
+				for (int i = 0, j = mSqueezeOffset / 8; i < lanes; i++, j++, aOffset += 8)
+				{
+					LONG.set(aOutput, aOffset, mState[j]);
+				}
+
+				mSqueezeOffset += 8 * lanes;
+				aLength -= 8 * lanes;
+			}
+			else
+			{
+				aOutput[aOffset++] = (byte)(mState[mSqueezeOffset >>> 3] >>> (8 * (mSqueezeOffset & 7)));
+				mSqueezeOffset++;
+				aLength--;
+			}
+		}
+	}
+
+
+	private void absorbBlock(byte[] aInput, int aOffset)
+	{
+		long[] state = mState;
+
+		for (int i = 0, n = mRate / 8; i < n; i++, aOffset += 8)
+		{
+			state[i] ^= (long)LONG.get(aInput, aOffset);
+		}
+
+		permute(state);
+	}
+
+
+	private void checkAbsorbing()
+	{
+		if (mSqueezing)
+		{
+			throw new IllegalStateException("Attempt to absorb while squeezing.");
+		}
+	}
+
+
+	/**
+	 * The Keccak-f[1600] permutation.
+	 */
+	static void permute(long[] aState)
+	{
+		long a00 = aState[0];
+		long a01 = aState[1];
+		long a02 = aState[2];
+		long a03 = aState[3];
+		long a04 = aState[4];
+		long a05 = aState[5];
+		long a06 = aState[6];
+		long a07 = aState[7];
+		long a08 = aState[8];
+		long a09 = aState[9];
+		long a10 = aState[10];
+		long a11 = aState[11];
+		long a12 = aState[12];
+		long a13 = aState[13];
+		long a14 = aState[14];
+		long a15 = aState[15];
+		long a16 = aState[16];
+		long a17 = aState[17];
+		long a18 = aState[18];
+		long a19 = aState[19];
+		long a20 = aState[20];
+		long a21 = aState[21];
+		long a22 = aState[22];
+		long a23 = aState[23];
+		long a24 = aState[24];
+
+		for (int round = 0; round < 24; round++)
+		{
+			// theta
+			long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+			long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+			long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+			long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+			long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+			long d0 = c4 ^ Long.rotateLeft(c1, 1);
+			long d1 = c0 ^ Long.rotateLeft(c2, 1);
+			long d2 = c1 ^ Long.rotateLeft(c3, 1);
+			long d3 = c2 ^ Long.rotateLeft(c4, 1);
+			long d4 = c3 ^ Long.rotateLeft(c0, 1);
+
+			// rho and pi
+			long b00 = a00 ^ d0;
+			long b01 = Long.rotateLeft(a06 ^ d1, 44);
+			long b02 = Long.rotateLeft(a12 ^ d2, 43);
+			long b03 = Long.rotateLeft(a18 ^ d3, 21);
+			long b04 = Long.rotateLeft(a24 ^ d4, 14);
+			long b05 = Long.rotateLeft(a03 ^ d3, 28);
+			long b06 = Long.rotateLeft(a09 ^ d4, 20);
+			long b07 = Long.rotateLeft(a10 ^ d0, 3);
+			long b08 = Long.rotateLeft(a16 ^ d1, 45);
+			long b09 = Long.rotateLeft(a22 ^ d2, 61);
+			long b10 = Long.rotateLeft(a01 ^ d1, 1);
+			long b11 = Long.rotateLeft(a07 ^ d2, 6);
+			long b12 = Long.rotateLeft(a13 ^ d3, 25);
+			long b13 = Long.rotateLeft(a19 ^ d4, 8);
+			long b14 = Long.rotateLeft(a20 ^ d0, 18);
+			long b15 = Long.rotateLeft(a04 ^ d4, 27);
+			long b16 = Long.rotateLeft(a05 ^ d0, 36);
+			long b17 = Long.rotateLeft(a11 ^ d1, 10);
+			long b18 = Long.rotateLeft(a17 ^ d2, 15);
+			long b19 = Long.rotateLeft(a23 ^ d3, 56);
+			long b20 = Long.rotateLeft(a02 ^ d2, 62);
+			long b21 = Long.rotateLeft(a08 ^ d3, 55);
+			long b22 = Long.rotateLeft(a14 ^ d4, 39);
+			long b23 = Long.rotateLeft(a15 ^ d0, 41);
+			long b24 = Long.rotateLeft(a21 ^ d1, 2);
+
+			// chi and iota
+			a00 = b00 ^ (~b01 & b02) ^ ROUND_CONSTANTS[round];
+			a01 = b01 ^ (~b02 & b03);
+			a02 = b02 ^ (~b03 & b04);
+			a03 = b03 ^ (~b04 & b00);
+			a04 = b04 ^ (~b00 & b01);
+			a05 = b05 ^ (~b06 & b07);
+			a06 = b06 ^ (~b07 & b08);
+			a07 = b07 ^ (~b08 & b09);
+			a08 = b08 ^ (~b09 & b05);
+			a09 = b09 ^ (~b05 & b06);
+			a10 = b10 ^ (~b11 & b12);
+			a11 = b11 ^ (~b12 & b13);
+			a12 = b12 ^ (~b13 & b14);
+			a13 = b13 ^ (~b14 & b10);
+			a14 = b14 ^ (~b10 & b11);
+			a15 = b15 ^ (~b16 & b17);
+			a16 = b16 ^ (~b17 & b18);
+			a17 = b17 ^ (~b18 & b19);
+			a18 = b18 ^ (~b19 & b15);
+			a19 = b19 ^ (~b15 & b16);
+			a20 = b20 ^ (~b21 & b22);
+			a21 = b21 ^ (~b22 & b23);
+			a22 = b22 ^ (~b23 & b24);
+			a23 = b23 ^ (~b24 & b20);
+			a24 = b24 ^ (~b20 & b21);
+		}
+
+		aState[0] = a00;
+		aState[1] = a01;
+		aState[2] = a02;
+		aState[3] = a03;
+		aState[4] = a04;
+		aState[5] = a05;
+		aState[6] = a06;
+		aState[7] = a07;
+		aState[8] = a08;
+		aState[9] = a09;
+		aState[10] = a10;
+		aState[11] = a11;
+		aState[12] = a12;
+		aState[13] = a13;
+		aState[14] = a14;
+		aState[15] = a15;
+		aState[16] = a16;
+		aState[17] = a17;
+		aState[18] = a18;
+		aState[19] = a19;
+		aState[20] = a20;
+		aState[21] = a21;
+		aState[22] = a22;
+		aState[23] = a23;
+		aState[24] = a24;
+	}
+}
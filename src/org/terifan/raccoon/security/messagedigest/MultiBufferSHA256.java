@@ -0,0 +1,303 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Hashes many independent messages with SHA-256, or HMAC-SHA-256, in lockstep. Messages are sorted by length and compressed in groups of
+ * eight lanes with interleaved state, every step of the compression function is a loop over the lanes. This amortizes the per message
+ * overhead and lets the compiler keep the lanes in vector registers.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * <pre>
+ * byte[][] hashes = new MultiBufferSHA256().digest(records);
+ * byte[][] macs = new MultiBufferSHA256(key).digest(records);
+ * </pre>
+ */
+public final class MultiBufferSHA256
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private final static int LANES = 8;
+	private final static int BLOCK_SIZE = 64;
+	private final static int DIGEST_LENGTH = 32;
+
+	private final static int[] IV =
+	{
+		0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+	};
+
+	private final int[] mInnerState;
+	private final int[] mOuterState;
+	private final int[] mState;
+	private final int[] mW;
+	private final int[][] mVars;
+
+
+	/**
+	 * Creates a multi-buffer SHA-256.
+	 */
+	public MultiBufferSHA256()
+	{
+		mState = new int[8 * LANES];
+		mW = new int[16 * LANES];
+		mVars = new int[8][LANES];
+		mInnerState = IV.clone();
+		mOuterState = null;
+	}
+
+
+	/**
+	 * Creates a multi-buffer HMAC-SHA-256.
+	 *
+	 * @param aKey the HMAC key
+	 */
+	public MultiBufferSHA256(byte[] aKey)
+	{
+		mState = new int[8 * LANES];
+		mW = new int[16 * LANES];
+		mVars = new int[8][LANES];
+
+		if (aKey.length > BLOCK_SIZE)
+		{
+			aKey = new SHA256().digest(aKey);
+		}
+
+		byte[] pad = Arrays.copyOf(aKey, BLOCK_SIZE);
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			pad[i] ^= 0x36;
+		}
+		mInnerState = prefixState(pad);
+
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			pad[i] ^= 0x36 ^ 0x5c;
+		}
+		mOuterState = prefixState(pad);
+	}
+
+
+	/**
+	 * Returns the digest, or HMAC, of each message in the same order as the messages.
+	 */
+	public byte[][] digest(byte[]... aMessages)
+	{
+		byte[][] output = new byte[aMessages.length][];
+
+		if (mOuterState == null)
+		{
+			hash(mInnerState, 0, aMessages, output);
+		}
+		else
+		{
+			hash(mInnerState, BLOCK_SIZE, aMessages, output);
+			hash(mOuterState, BLOCK_SIZE, output, output);
+		}
+
+		return output;
+	}
+
+
+	/**
+	 * Returns the chaining value after compressing a single block from the initial state.
+	 */
+	private int[] prefixState(byte[] aBlock)
+	{
+		for (int l = 0; l < LANES; l++)
+		{
+			for (int i = 0; i < 8; i++)
+			{
+				mState[i * LANES + l] = IV[i];
+			}
+			for (int j = 0; j < 16; j++)
+			{
+				mW[j * LANES + l] = (int)INT.get(aBlock, 4 * j);
+			}
+		}
+
+		compress();
+
+		int[] state = new int[8];
+		for (int i = 0; i < 8; i++)
+		{
+			state[i] = mState[i * LANES];
+		}
+		return state;
+	}
+
+
+	/**
+	 * Hashes the messages starting from a chaining value that has already absorbed aPrefixLength bytes. The output array may be the
+	 * message array, each message is read completely before its digest is stored.
+	 */
+	private void hash(int[] aInitialState, long aPrefixLength, byte[][] aMessages, byte[][] aOutput)
+	{
+		// group messages of similar length so that the lanes of a group finish at about the same block
+		long[] order = new long[aMessages.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = ((long)aMessages[i].length << 32) | i;
+		}
+		Arrays.sort(order);
+
+		byte[][] messages = new byte[LANES][];
+		byte[][] tails = new byte[LANES][];
+		int[] fullBlocks = new int[LANES];
+		int[] blocks = new int[LANES];
+		int[] index = new int[LANES];
+
+		for (int group = 0; group < order.length; group += LANES)
+		{
+			int lanes = Math.min(LANES, order.length - group);
+			int maxBlocks = 0;
+
+			for (int l = 0; l < lanes; l++)
+			{
+				index[l] = (int)order[group + l];
+				messages[l] = aMessages[index[l]];
+				fullBlocks[l] = messages[l].length / BLOCK_SIZE;
+				tails[l] = pad(messages[l], aPrefixLength);
+				blocks[l] = fullBlocks[l] + tails[l].length / BLOCK_SIZE;
+				maxBlocks = Math.max(maxBlocks, blocks[l]);
+
+				for (int i = 0; i < 8; i++)
+				{
+					mState[i * LANES + l] = aInitialState[i];
+				}
+			}
+
+			for (int block = 0; block < maxBlocks; block++)
+			{
+				for (int l = 0; l < lanes; l++)
+				{
+					if (block < fullBlocks[l])
+					{
+						load(messages[l], block * BLOCK_SIZE, l);
+					}
+					else if (block < blocks[l])
+					{
+						load(tails[l], (block - fullBlocks[l]) * BLOCK_SIZE, l);
+					}
+				}
+
+				compress();
+
+				for (int l = 0; l < lanes; l++)
+				{
+					if (block == blocks[l] - 1)
+					{
+						byte[] digest = new byte[DIGEST_LENGTH];
+						for (int i = 0; i < 8; i++)
+						{
+							INT.set(digest, 4 * i, mState[i * LANES + l]);
+						}
+						aOutput[index[l]] = digest;
+					}
+				}
+			}
+
+			Arrays.fill(messages, null);
+		}
+	}
+
+
+	/**
+	 * Returns the padded last one or two blocks of a message.
+	 */
+	private static byte[] pad(byte[] aMessage, long aPrefixLength)
+	{
+		int remainder = aMessage.length % BLOCK_SIZE;
+		byte[] tail = new byte[remainder + 9 <= BLOCK_SIZE ? BLOCK_SIZE : 2 * BLOCK_SIZE];
+
+		System.arraycopy(aMessage, aMessage.length - remainder, tail, 0, remainder);
+		tail[remainder] = (byte)0x80;
+
+		long bitLength = 8 * (aPrefixLength + aMessage.length);
+		INT.set(tail, tail.length - 8, (int)(bitLength >>> 32));
+		INT.set(tail, tail.length - 4, (int)bitLength);
+
+		return tail;
+	}
+
+
+	private void load(byte[] aInput, int aOffset, int aLane)
+	{
+		for (int j = 0; j < 16; j++)
+		{
+			mW[j * LANES + aLane] = (int)INT.get(aInput, aOffset + 4 * j);
+		}
+	}
+
+
+	/**
+	 * Compresses one block in every lane. Lanes without input compress stale data that is never read. The working variables rotate by
+	 * swapping array references, after 64 rounds they are back in place.
+	 */
+	private void compress()
+	{
+		int[] w = mW;
+		int[] s = mState;
+		int[][] vars = mVars;
+
+		for (int i = 0; i < 8; i++)
+		{
+			System.arraycopy(s, i * LANES, vars[i], 0, LANES);
+		}
+
+		int[] a = vars[0], b = vars[1], c = vars[2], d = vars[3], e = vars[4], f = vars[5], g = vars[6], h = vars[7];
+
+		for (int t = 0; t < 64; t++)
+		{
+			int wt = (t & 15) * LANES;
+
+			if (t >= 16)
+			{
+				int w2 = ((t - 2) & 15) * LANES;
+				int w7 = ((t - 7) & 15) * LANES;
+				int w15 = ((t - 15) & 15) * LANES;
+
+				for (int l = 0; l < LANES; l++)
+				{
+					int x = w[w2 + l];
+					int y = w[w15 + l];
+					w[wt + l] += (Integer.rotateRight(x, 17) ^ Integer.rotateRight(x, 19) ^ (x >>> 10)) + w[w7 + l] + (Integer.rotateRight(y, 7) ^ Integer.rotateRight(y, 18) ^ (y >>> 3));
+				}
+			}
+
+			int k = SHA256.K[t];
+
+			for (int l = 0; l < LANES; l++)
+			{
+				int el = e[l];
+				int al = a[l];
+				int t1 = h[l] + (Integer.rotateRight(el, 6) ^ Integer.rotateRight(el, 11) ^ Integer.rotateRight(el, 25)) + ((el & f[l]) ^ (~el & g[l])) + k + w[wt + l];
+				int t2 = (Integer.rotateRight(al, 2) ^ Integer.rotateRight(al, 13) ^ Integer.rotateRight(al, 22)) + ((al & b[l]) ^ (al & c[l]) ^ (b[l] & c[l]));
+				d[l] += t1;
+				h[l] = t1 + t2;
+			}
+
+			int[] tmp = h;
+			h = g;
+			g = f;
+			f = e;
+			e = d;
+			d = c;
+			c = b;
+			b = a;
+			a = tmp;
+		}
+
+		for (int i = 0; i < 8; i++)
+		{
+			int[] v = vars[i];
+			for (int l = 0; l < LANES; l++)
+			{
+				s[i * LANES + l] += v[l];
+			}
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Hashes many independent messages with SHA-512, or HMAC-SHA-512, in lockstep. Messages are sorted by length and compressed in groups of
+ * four lanes with interleaved state, every step of the compression function is a loop over the lanes. This amortizes the per message
+ * overhead and lets the compiler keep the lanes in vector registers.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * <pre>
+ * byte[][] hashes = new MultiBufferSHA512().digest(records);
+ * byte[][] macs = new MultiBufferSHA512(key).digest(records);
+ * </pre>
+ */
+public final class MultiBufferSHA512
+{
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private final static int LANES = 4;
+	private final static int BLOCK_SIZE = 128;
+	private final static int DIGEST_LENGTH = 64;
+
+	private final static long[] IV =
+	{
+		0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+		0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+	};
+
+	private final long[] mInnerState;
+	private final long[] mOuterState;
+	private final long[] mState;
+	private final long[] mW;
+	private final long[][] mVars;
+
+
+	/**
+	 * Creates a multi-buffer SHA-512.
+	 */
+	public MultiBufferSHA512()
+	{
+		mState = new long[8 * LANES];
+		mW = new long[16 * LANES];
+		mVars = new long[8][LANES];
+		mInnerState = IV.clone();
+		mOuterState = null;
+	}
+
+
+	/**
+	 * Creates a multi-buffer HMAC-SHA-512.
+	 *
+	 * @param aKey the HMAC key
+	 */
+	public MultiBufferSHA512(byte[] aKey)
+	{
+		mState = new long[8 * LANES];
+		mW = new long[16 * LANES];
+		mVars = new long[8][LANES];
+
+		if (aKey.length > BLOCK_SIZE)
+		{
+			aKey = new SHA512().digest(aKey);
+		}
+
+		byte[] pad = Arrays.copyOf(aKey, BLOCK_SIZE);
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			pad[i] ^= 0x36;
+		}
+		mInnerState = prefixState(pad);
+
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			pad[i] ^= 0x36 ^ 0x5c;
+		}
+		mOuterState = prefixState(pad);
+	}
+
+
+	/**
+	 * Returns the digest, or HMAC, of each message in the same order as the messages.
+	 */
+	public byte[][] digest(byte[]... aMessages)
+	{
+		byte[][] output = new byte[aMessages.length][];
+
+		if (mOuterState == null)
+		{
+			hash(mInnerState, 0, aMessages, output);
+		}
+		else
+		{
+			hash(mInnerState, BLOCK_SIZE, aMessages, output);
+			hash(mOuterState, BLOCK_SIZE, output, output);
+		}
+
+		return output;
+	}
+
+
+	/**
+	 * Returns the chaining value after compressing a single block from the initial state.
+	 */
+	private long[] prefixState(byte[] aBlock)
+	{
+		for (int l = 0; l < LANES; l++)
+		{
+			for (int i = 0; i < 8; i++)
+			{
+				mState[i * LANES + l] = IV[i];
+			}
+			for (int j = 0; j < 16; j++)
+			{
+				mW[j * LANES + l] = (long)LONG.get(aBlock, 8 * j);
+			}
+		}
+
+		compress();
+
+		long[] state = new long[8];
+		for (int i = 0; i < 8; i++)
+		{
+			state[i] = mState[i * LANES];
+		}
+		return state;
+	}
+
+
+	/**
+	 * Hashes the messages starting from a chaining value that has already absorbed aPrefixLength bytes. The output array may be the
+	 * message array, each message is read completely before its digest is stored.
+	 */
+	private void hash(long[] aInitialState, long aPrefixLength, byte[][] aMessages, byte[][] aOutput)
+	{
+		// group messages of similar length so that the lanes of a group finish at about the same block
+		long[] order = new long[aMessages.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = ((long)aMessages[i].length << 32) | i;
+		}
+		Arrays.sort(order);
+
+		byte[][] messages = new byte[LANES][];
+		byte[][] tails = new byte[LANES][];
+		int[] fullBlocks = new int[LANES];
+		int[] blocks = new int[LANES];
+		int[] index = new int[LANES];
+
+		for (int group = 0; group < order.length; group += LANES)
+		{
+			int lanes = Math.min(LANES, order.length - group);
+			int maxBlocks = 0;
+
+			for (int l = 0; l < lanes; l++)
+			{
+				index[l] = (int)order[group + l];
+				messages[l] = aMessages[index[l]];
+				fullBlocks[l] = messages[l].length / BLOCK_SIZE;
+				tails[l] = pad(messages[l], aPrefixLength);
+				blocks[l] = fullBlocks[l] + tails[l].length / BLOCK_SIZE;
+				maxBlocks = Math.max(maxBlocks, blocks[l]);
+
+				for (int i = 0; i < 8; i++)
+				{
+					mState[i * LANES + l] = aInitialState[i];
+				}
+			}
+
+			for (int block = 0; block < maxBlocks; block++)
+			{
+				for (int l = 0; l < lanes; l++)
+				{
+					if (block < fullBlocks[l])
+					{
+						load(messages[l], block * BLOCK_SIZE, l);
+					}
+					else if (block < blocks[l])
+					{
+						load(tails[l], (block - fullBlocks[l]) * BLOCK_SIZE, l);
+					}
+				}
+
+				compress();
+
+				for (int l = 0; l < lanes; l++)
+				{
+					if (block == blocks[l] - 1)
+					{
+						byte[] digest = new byte[DIGEST_LENGTH];
+						for (int i = 0; i < 8; i++)
+						{
+							LONG.set(digest, 8 * i, mState[i * LANES + l]);
+						}
+						aOutput[index[l]] = digest;
+					}
+				}
+			}
+
+			Arrays.fill(messages, null);
+		}
+	}
+
+
+	/**
+	 * Returns the padded last one or two blocks of a message.
+	 */
+	private static byte[] pad(byte[] aMessage, long aPrefixLength)
+	{
+		int remainder = aMessage.length % BLOCK_SIZE;
+		byte[] tail = new byte[remainder + 17 <= BLOCK_SIZE ? BLOCK_SIZE : 2 * BLOCK_SIZE];
+
+		System.arraycopy(aMessage, aMessage.length - remainder, tail, 0, remainder);
+		tail[remainder] = (byte)0x80;
+
+		long bitLength = 8 * (aPrefixLength + aMessage.length);
+		LONG.set(tail, tail.length - 8, bitLength);
+
+		return tail;
+	}
+
+
+	private void load(byte[] aInput, int aOffset, int aLane)
+	{
+		for (int j = 0; j < 16; j++)
+		{
+			mW[j * LANES + aLane] = (long)LONG.get(aInput, aOffset + 8 * j);
+		}
+	}
+
+
+	/**
+	 * Compresses one block in every lane. Lanes without input compress stale data that is never read. The working variables rotate by
+	 * swapping array references, after 80 rounds they are back in place.
+	 */
+	private void compress()
+	{
+		long[] w = mW;
+		long[] s = mState;
+		long[][] vars = mVars;
+
+		for (int i = 0; i < 8; i++)
+		{
+			System.arraycopy(s, i * LANES, vars[i], 0, LANES);
+		}
+
+		long[] a = vars[0], b = vars[1], c = vars[2], d = vars[3], e = vars[4], f = vars[5], g = vars[6], h = vars[7];
+
+		for (int t = 0; t < 80; t++)
+		{
+			int wt = (t & 15) * LANES;
+
+			if (t >= 16)
+			{
+				int w2 = ((t - 2) & 15) * LANES;
+				int w7 = ((t - 7) & 15) * LANES;
+				int w15 = ((t - 15) & 15) * LANES;
+
+				for (int l = 0; l < LANES; l++)
+				{
+					long x = w[w2 + l];
+					long y = w[w15 + l];
+					w[wt + l] += (Long.rotateRight(x, 19) ^ Long.rotateRight(x, 61) ^ (x >>> 6)) + w[w7 + l] + (Long.rotateRight(y, 1) ^ Long.rotateRight(y, 8) ^ (y >>> 7));
+				}
+			}
+
+			long k = SHABase.K[t];
+
+			for (int l = 0; l < LANES; l++)
+			{
+				long el = e[l];
+				long al = a[l];
+				long t1 = h[l] + (Long.rotateRight(el, 14) ^ Long.rotateRight(el, 18) ^ Long.rotateRight(el, 41)) + ((el & f[l]) ^ (~el & g[l])) + k + w[wt + l];
+				long t2 = (Long.rotateRight(al, 28) ^ Long.rotateRight(al, 34) ^ Long.rotateRight(al, 39)) + ((al & b[l]) ^ (al & c[l]) ^ (b[l] & c[l]));
+				d[l] += t1;
+				h[l] = t1 + t2;
+			}
+
+			long[] tmp = h;
+			h = g;
+			g = f;
+			f = e;
+			e = d;
+			d = c;
+			c = b;
+			b = a;
+			a = tmp;
+		}
+
+		for (int i = 0; i < 8; i++)
+		{
+			long[] v = vars[i];
+			for (int l = 0; l < LANES; l++)
+			{
+				s[i * LANES + l] += v[l];
+			}
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * The MurmurHash3 algorithm was created by Austin Appleby. This java port was authored by Yonik Seeley and is placed into the public
@@ -16,6 +20,10 @@ package org.terifan.raccoon.security.messagedigest;
  */
 public class MurmurHash3
 {
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+
 	/**
 	 * Compute the hash value of buffer provided.
 	 *
@@ -47,8 +55,7 @@ public class MurmurHash3
 
 		for (int i = aOffset; i < roundedEnd; i += 4)
 		{
-			// little endian load order
-			int k1 = (aData[i] & 0xff) | ((aData[i + 1] & 0xff) << 8) | ((aData[i + 2] & 0xff) << 16) | (aData[i + 3] << 24);
+			int k1 = (int)INT.get(aData, i);
 			k1 *= c1;
 			k1 = (k1 << 15) | (k1 >>> 17);
 			k1 *= c2;
@@ -112,8 +119,8 @@ public class MurmurHash3
 
 		for (int i = 0; i < nblocks; i++)
 		{
-			long k1 = getLong(aData, aOffset + 16 * i);
-			long k2 = getLong(aData, aOffset + 16 * i + 8);
+			long k1 = (long)LONG.get(aData, aOffset + 16 * i);
+			long k2 = (long)LONG.get(aData, aOffset + 16 * i + 8);
 
 			k1 *= c1;
 			k1 = Long.rotateLeft(k1, 31);
@@ -212,19 +219,6 @@ public class MurmurHash3
 	}
 
 
-	private static long getLong(byte[] aBuffer, int aPosition)
-	{
-		return (((long)(aBuffer[aPosition + 7]) << 56)
-			+ ((long)(aBuffer[aPosition + 6] & 255) << 48)
-			+ ((long)(aBuffer[aPosition + 5] & 255) << 40)
-			+ ((long)(aBuffer[aPosition + 4] & 255) << 32)
-			+ ((long)(aBuffer[aPosition + 3] & 255) << 24)
-			+ ((aBuffer[aPosition + 2] & 255) << 16)
-			+ ((aBuffer[aPosition + 1] & 255) << 8)
-			+ ((aBuffer[aPosition] & 255)));
-	}
-
-
 	/**
 	 * Compute the hash value of buffer provided.
 	 *
@@ -245,8 +239,8 @@ public class MurmurHash3
 
 		for (int i = 0; i < nblocks; i++)
 		{
-			long k1 = getLong(aData, aOffset + 16 * i);
-			long k2 = getLong(aData, aOffset + 16 * i + 8);
+			long k1 = (long)LONG.get(aData, aOffset + 16 * i);
+			long k2 = (long)LONG.get(aData, aOffset + 16 * i + 8);
 
 			k1 *= c1;
 			k1 = Long.rotateLeft(k1, 31);
@@ -364,8 +358,8 @@ public class MurmurHash3
 
 		for (int i = 0; i < nblocks; i++)
 		{
-			long k1 = getLong(aData, aOffset + 16 * i);
-			long k2 = getLong(aData, aOffset + 16 * i + 8);
+			long k1 = (long)LONG.get(aData, aOffset + 16 * i);
+			long k2 = (long)LONG.get(aData, aOffset + 16 * i + 8);
 
 			k1 *= c1;
 			k1 = Long.rotateLeft(k1, 31);
@@ -589,4 +583,501 @@ public class MurmurHash3
 
 		return h1;
 	}
+
+
+	/**
+	 * Incremental x86 32-bit MurmurHash3 producing the same value as hash32 over the concatenated input. Finishing does not change the
+	 * state, more input can follow.
+	 *
+	 * <pre>
+	 * MurmurHash3.Hasher32 hasher = new MurmurHash3.Hasher32(seed);
+	 * hasher.update(header, 0, header.length);
+	 * hasher.update(payload);
+	 * int hash = hasher.finish();
+	 * </pre>
+	 */
+	public static final class Hasher32
+	{
+		private final static int C1 = 0xcc9e2d51;
+		private final static int C2 = 0x1b873593;
+
+		private final int mSeed;
+		private final byte[] mBuffer;
+		private int mBufferLength;
+		private int mH1;
+		private long mLength;
+
+
+		public Hasher32(int aSeed)
+		{
+			mSeed = aSeed;
+			mBuffer = new byte[4];
+			mH1 = aSeed;
+		}
+
+
+		public void reset()
+		{
+			mH1 = mSeed;
+			mLength = 0;
+			mBufferLength = 0;
+		}
+
+
+		public void update(byte aInput)
+		{
+			mBuffer[mBufferLength++] = aInput;
+			mLength++;
+
+			if (mBufferLength == 4)
+			{
+				block((int)INT.get(mBuffer, 0));
+				mBufferLength = 0;
+			}
+		}
+
+
+		public void update(byte[] aInput, int aOffset, int aLength)
+		{
+			while (mBufferLength > 0 && aLength > 0)
+			{
+				update(aInput[aOffset++]);
+				aLength--;
+			}
+
+			mLength += aLength & ~3;
+
+			for (int end = aOffset + (aLength & ~3); aOffset < end; aOffset += 4)
+			{
+				block((int)INT.get(aInput, aOffset));
+			}
+
+			for (int i = aLength & 3; --i >= 0;)
+			{
+				update(aInput[aOffset++]);
+			}
+		}
+
+
+		/**
+		 * Heap buffers are hashed from their backing array, direct buffers with absolute little-endian int loads.
+		 */
+		public void update(ByteBuffer aInput)
+		{
+			if (aInput.hasArray())
+			{
+				update(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+				aInput.position(aInput.limit());
+				return;
+			}
+
+			while (mBufferLength > 0 && aInput.hasRemaining())
+			{
+				update(aInput.get());
+			}
+
+			ByteBuffer in = aInput.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int offset = in.position();
+			int length = in.remaining() & ~3;
+
+			for (int end = offset + length; offset < end; offset += 4)
+			{
+				block(in.getInt(offset));
+			}
+
+			mLength += length;
+			aInput.position(offset);
+
+			while (aInput.hasRemaining())
+			{
+				update(aInput.get());
+			}
+		}
+
+
+		/**
+		 * Returns the hash of the input so far.
+		 */
+		public int finish()
+		{
+			int h1 = mH1;
+
+			if (mBufferLength > 0)
+			{
+				int k1 = 0;
+				for (int i = mBufferLength; --i >= 0;)
+				{
+					k1 = (k1 << 8) | (mBuffer[i] & 0xff);
+				}
+				k1 *= C1;
+				k1 = Integer.rotateLeft(k1, 15);
+				k1 *= C2;
+				h1 ^= k1;
+			}
+
+			h1 ^= (int)mLength;
+
+			h1 ^= h1 >>> 16;
+			h1 *= 0x85ebca6b;
+			h1 ^= h1 >>> 13;
+			h1 *= 0xc2b2ae35;
+			h1 ^= h1 >>> 16;
+
+			return h1;
+		}
+
+
+		private void block(int k1)
+		{
+			k1 *= C1;
+			k1 = Integer.rotateLeft(k1, 15);
+			k1 *= C2;
+
+			int h1 = mH1 ^ k1;
+			h1 = Integer.rotateLeft(h1, 13);
+			mH1 = h1 * 5 + 0xe6546b64;
+		}
+	}
+
+
+	/**
+	 * Incremental x64 MurmurHash3 producing the same value as hash64 over the concatenated input.
+	 */
+	public static final class Hasher64 extends X64Hasher
+	{
+		public Hasher64(long aSeed)
+		{
+			super(aSeed);
+		}
+
+
+		/**
+		 * Returns the hash of the input so far.
+		 */
+		public long finish()
+		{
+			return finishState()[0];
+		}
+	}
+
+
+	/**
+	 * Incremental x64 MurmurHash3 producing the same value as hash128 over the concatenated input.
+	 */
+	public static final class Hasher128 extends X64Hasher
+	{
+		public Hasher128(long aSeed)
+		{
+			super(aSeed);
+		}
+
+
+		/**
+		 * Returns the hash of the input so far as an array with four ints.
+		 */
+		public int[] finish()
+		{
+			long[] h = finishState();
+			return new int[]{(int)(h[0] >>> 32), (int)h[0], (int)(h[1] >>> 32), (int)h[1]};
+		}
+	}
+
+
+	/**
+	 * Incremental version of the 256-bit extension producing the same value as hash256 over the concatenated input.
+	 */
+	public static final class Hasher256 extends X64Hasher
+	{
+		public Hasher256(long aSeed)
+		{
+			super(aSeed);
+		}
+
+
+		/**
+		 * Returns the hash of the input so far as an array with four longs.
+		 */
+		public long[] finish()
+		{
+			return finishState();
+		}
+	}
+
+
+	/**
+	 * Streaming state of the x64 variants. Whole 16 byte blocks are mixed straight from the input, a partial block is buffered. The
+	 * extension lanes of the 256-bit variant are cheap enough to always be maintained.
+	 */
+	abstract static class X64Hasher
+	{
+		private final static long C1 = 0x87c37b91114253d5L;
+		private final static long C2 = 0x4cf5ad432745937fL;
+
+		private final long mSeed;
+		private final byte[] mBuffer;
+		private int mBufferLength;
+		private long mH1;
+		private long mH2;
+		private long mH3;
+		private long mH4;
+		private long mLength;
+
+
+		X64Hasher(long aSeed)
+		{
+			mSeed = aSeed;
+			mBuffer = new byte[16];
+			reset();
+		}
+
+
+		public void reset()
+		{
+			mH1 = mSeed;
+			mH2 = mSeed;
+			mH3 = mSeed;
+			mH4 = mSeed;
+			mLength = 0;
+			mBufferLength = 0;
+		}
+
+
+		public void update(byte aInput)
+		{
+			mBuffer[mBufferLength++] = aInput;
+			mLength++;
+
+			if (mBufferLength == 16)
+			{
+				block((long)LONG.get(mBuffer, 0), (long)LONG.get(mBuffer, 8));
+				mBufferLength = 0;
+			}
+		}
+
+
+		public void update(byte[] aInput, int aOffset, int aLength)
+		{
+			while (mBufferLength > 0 && aLength > 0)
+			{
+				update(aInput[aOffset++]);
+				aLength--;
+			}
+
+			mLength += aLength & ~15;
+
+			for (int end = aOffset + (aLength & ~15); aOffset < end; aOffset += 16)
+			{
+				block((long)LONG.get(aInput, aOffset), (long)LONG.get(aInput, aOffset + 8));
+			}
+
+			for (int i = aLength & 15; --i >= 0;)
+			{
+				update(aInput[aOffset++]);
+			}
+		}
+
+
+		/**
+		 * Heap buffers are hashed from their backing array, direct buffers with absolute little-endian long loads.
+		 */
+		public void update(ByteBuffer aInput)
+		{
+			if (aInput.hasArray())
+			{
+				update(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+				aInput.position(aInput.limit());
+				return;
+			}
+
+			while (mBufferLength > 0 && aInput.hasRemaining())
+			{
+				update(aInput.get());
+			}
+
+			ByteBuffer in = aInput.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int offset = in.position();
+			int length = in.remaining() & ~15;
+
+			for (int end = offset + length; offset < end; offset += 16)
+			{
+				block(in.getLong(offset), in.getLong(offset + 8));
+			}
+
+			mLength += length;
+			aInput.position(offset);
+
+			while (aInput.hasRemaining())
+			{
+				update(aInput.get());
+			}
+		}
+
+
+		/**
+		 * Mixes the buffered tail and finalizes a copy of the state, returns the four 64-bit words of the 256-bit extension. The first
+		 * word is the 64-bit hash and the first two the 128-bit hash.
+		 */
+		long[] finishState()
+		{
+			long h1 = mH1;
+			long h2 = mH2;
+			long h3 = mH3;
+			long h4 = mH4;
+			long k1 = 0;
+			long k2 = 0;
+
+			for (int i = mBufferLength; --i >= 8;)
+			{
+				k2 = (k2 << 8) | (mBuffer[i] & 0xff);
+			}
+			for (int i = Math.min(mBufferLength, 8); --i >= 0;)
+			{
+				k1 = (k1 << 8) | (mBuffer[i] & 0xff);
+			}
+
+			if (mBufferLength > 8)
+			{
+				k2 *= C2;
+				k2 = Long.rotateLeft(k2, 33);
+				k2 *= C1;
+				h2 ^= k2;
+			}
+			if (mBufferLength > 0)
+			{
+				k1 *= C1;
+				k1 = Long.rotateLeft(k1, 31);
+				k1 *= C2;
+				h1 ^= k1;
+			}
+
+			h3 ^= k1;
+			h4 ^= k2;
+
+			h1 ^= mLength;
+			h2 ^= mLength;
+			h3 ^= mLength;
+			h4 ^= mLength;
+
+			h1 += h2;
+			h2 += h1;
+			h3 += h4;
+			h4 += h3;
+
+			h1 = fmix64(h1);
+			h2 = fmix64(h2);
+			h3 = fmix64(h3);
+			h4 = fmix64(h4);
+
+			h1 += h2;
+			h2 += h1;
+			h3 += h4;
+			h4 += h3;
+
+			return new long[]{h1, h2, h3, h4};
+		}
+
+
+		private void block(long k1, long k2)
+		{
+			long h1 = mH1;
+			long h2 = mH2;
+
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+
+			mH1 = h1;
+			mH2 = h2;
+			mH3 ^= k1;
+			mH4 ^= k2;
+		}
+	}
+
+
+	static final class Checksum implements Checksum128
+	{
+		private final static long C1 = 0x87c37b91114253d5L;
+		private final static long C2 = 0x4cf5ad432745937fL;
+
+		private long mH1;
+		private long mH2;
+		private long mLength;
+
+
+		@Override
+		public void reset(long aSeed)
+		{
+			mH1 = aSeed;
+			mH2 = aSeed;
+			mLength = 0;
+		}
+
+
+		@Override
+		public void updateBlock(byte[] aBuffer, int aOffset)
+		{
+			long h1 = mH1;
+			long h2 = mH2;
+			long k1 = (long)LONG.get(aBuffer, aOffset);
+			long k2 = (long)LONG.get(aBuffer, aOffset + 8);
+
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+
+			mH1 = h1;
+			mH2 = h2;
+			mLength += 16;
+		}
+
+
+		@Override
+		public void finish(int[] aOutput, int aOutputOffset)
+		{
+			long h1 = mH1 ^ mLength;
+			long h2 = mH2 ^ mLength;
+
+			h1 += h2;
+			h2 += h1;
+
+			h1 = fmix64(h1);
+			h2 = fmix64(h2);
+
+			h1 += h2;
+			h2 += h1;
+
+			aOutput[aOutputOffset] = (int)(h1 >>> 32);
+			aOutput[aOutputOffset + 1] = (int)(h1);
+			aOutput[aOutputOffset + 2] = (int)(h2 >>> 32);
+			aOutput[aOutputOffset + 3] = (int)(h2);
+		}
+	}
 }
@@ -1,11 +1,16 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
 
 
 /**
  * An implementation of the SHA-1 Algorithm
  *
+ * Whole 64-byte blocks are compressed straight from the input array, the message schedule is kept in a rolling window of 16 words.
+ *
  * Implementation from bouncycastle.org
  *
  * Copyright (c) 2000-2006 The Legion Of The Bouncy Castle (http://www.bouncycastle.org)
@@ -13,9 +18,11 @@ import java.security.MessageDigest;
 public final class SHA1 extends MessageDigest implements Cloneable
 {
 	private static final int DIGEST_LENGTH = 20;
+	private static final int BLOCK_SIZE = 64;
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
 
 	private int H1, H2, H3, H4, H5;
-	private int[] X = new int[80];
+	private int[] X = new int[16];
 	private int xOff;
     private byte[]  xBuf;
     private int     xBufOff;
@@ -80,6 +87,41 @@ public final class SHA1 extends MessageDigest implements Cloneable
             len--;
         }
 
+        //
+        // process whole words until the block is complete.
+        //
+        while (xOff != 0 && len > xBuf.length)
+        {
+            processWord(in, inOff);
+
+            inOff += xBuf.length;
+            len -= xBuf.length;
+            byteCount += xBuf.length;
+        }
+
+        //
+        // process whole blocks.
+        //
+        if (xOff == 0 && len >= BLOCK_SIZE)
+        {
+            int blocks = len / BLOCK_SIZE;
+
+            for (int i = 0; i < blocks; i++, inOff += BLOCK_SIZE)
+            {
+                for (int j = 0; j < 16; j++)
+                {
+                    X[j] = (int)INT.get(in, inOff + 4 * j);
+                }
+
+                compress();
+            }
+
+            len -= blocks * BLOCK_SIZE;
+            byteCount += blocks * BLOCK_SIZE;
+
+            clearBlock();
+        }
+
         //
         // process whole words.
         //
@@ -216,32 +258,64 @@ public final class SHA1 extends MessageDigest implements Cloneable
 	private static final int Y3 = 0x8f1bbcdc;
 	private static final int Y4 = 0xca62c1d6;
 
-	private int f(int u, int v, int w)
+	private static int f(int u, int v, int w)
 	{
 		return ((u & v) | ((~u) & w));
 	}
 
-	private int h(int u, int v, int w)
+	private static int h(int u, int v, int w)
 	{
 		return (u ^ v ^ w);
 	}
 
-	private int g(int u, int v, int w)
+	private static int g(int u, int v, int w)
 	{
 		return ((u & v) | (u & w) | (v & w));
 	}
 
 	private void processBlock()
 	{
-		//
-		// expand 16 word block into 80 word block.
-		//
-		for (int i = 16; i < 80; i++)
+		compress();
+
+		clearBlock();
+	}
+
+
+	/**
+	 * Reset start of the buffer.
+	 */
+	private void clearBlock()
+	{
+		xOff = 0;
+		for (int i = 0; i < 16; i++)
+		{
+			X[i] = 0;
+		}
+	}
+
+
+	/**
+	 * Returns word i of the message schedule. The schedule is expanded in place, X[i & 15] holds word i.
+	 */
+	private static int w(int[] x, int i)
+	{
+		if (i < 16)
 		{
-			int t = X[i - 3] ^ X[i - 8] ^ X[i - 14] ^ X[i - 16];
-			X[i] = t << 1 | t >>> 31;
+			return x[i];
 		}
 
+		int t = x[(i - 3) & 15] ^ x[(i - 8) & 15] ^ x[(i - 14) & 15] ^ x[i & 15];
+		return x[i & 15] = t << 1 | t >>> 31;
+	}
+
+
+	/**
+	 * Compresses the block held by X.
+	 */
+	private void compress()
+	{
+		int[] x = X;
+
 		//
 		// set up working variables.
 		//
@@ -258,21 +332,21 @@ public final class SHA1 extends MessageDigest implements Cloneable
 
 		for (int j = 0; j < 4; j++)
 		{
-			// E = rotateLeft(A, 5) + f(B, C, D) + E + X[idx++] + Y1
+			// E = rotateLeft(A, 5) + f(B, C, D) + E + w(x, idx++) + Y1
 			// B = rotateLeft(B, 30)
-			E += (A << 5 | A >>> 27) + f(B, C, D) + X[idx++] + Y1;
+			E += (A << 5 | A >>> 27) + f(B, C, D) + w(x, idx++) + Y1;
 			B = B << 30 | B >>> 2;
 
-			D += (E << 5 | E >>> 27) + f(A, B, C) + X[idx++] + Y1;
+			D += (E << 5 | E >>> 27) + f(A, B, C) + w(x, idx++) + Y1;
 			A = A << 30 | A >>> 2;
 
-			C += (D << 5 | D >>> 27) + f(E, A, B) + X[idx++] + Y1;
+			C += (D << 5 | D >>> 27) + f(E, A, B) + w(x, idx++) + Y1;
 			E = E << 30 | E >>> 2;
 
-			B += (C << 5 | C >>> 27) + f(D, E, A) + X[idx++] + Y1;
+			B += (C << 5 | C >>> 27) + f(D, E, A) + w(x, idx++) + Y1;
 			D = D << 30 | D >>> 2;
 
-			A += (B << 5 | B >>> 27) + f(C, D, E) + X[idx++] + Y1;
+			A += (B << 5 | B >>> 27) + f(C, D, E) + w(x, idx++) + Y1;
 			C = C << 30 | C >>> 2;
 		}
 
@@ -281,21 +355,21 @@ public final class SHA1 extends MessageDigest implements Cloneable
 		//
 		for (int j = 0; j < 4; j++)
 		{
-			// E = rotateLeft(A, 5) + h(B, C, D) + E + X[idx++] + Y2
+			// E = rotateLeft(A, 5) + h(B, C, D) + E + w(x, idx++) + Y2
 			// B = rotateLeft(B, 30)
-			E += (A << 5 | A >>> 27) + h(B, C, D) + X[idx++] + Y2;
+			E += (A << 5 | A >>> 27) + h(B, C, D) + w(x, idx++) + Y2;
 			B = B << 30 | B >>> 2;
 
-			D += (E << 5 | E >>> 27) + h(A, B, C) + X[idx++] + Y2;
+			D += (E << 5 | E >>> 27) + h(A, B, C) + w(x, idx++) + Y2;
 			A = A << 30 | A >>> 2;
 
-			C += (D << 5 | D >>> 27) + h(E, A, B) + X[idx++] + Y2;
+			C += (D << 5 | D >>> 27) + h(E, A, B) + w(x, idx++) + Y2;
 			E = E << 30 | E >>> 2;
 
-			B += (C << 5 | C >>> 27) + h(D, E, A) + X[idx++] + Y2;
+			B += (C << 5 | C >>> 27) + h(D, E, A) + w(x, idx++) + Y2;
 			D = D << 30 | D >>> 2;
 
-			A += (B << 5 | B >>> 27) + h(C, D, E) + X[idx++] + Y2;
+			A += (B << 5 | B >>> 27) + h(C, D, E) + w(x, idx++) + Y2;
 			C = C << 30 | C >>> 2;
 		}
 
@@ -304,21 +378,21 @@ public final class SHA1 extends MessageDigest implements Cloneable
 		//
 		for (int j = 0; j < 4; j++)
 		{
-			// E = rotateLeft(A, 5) + g(B, C, D) + E + X[idx++] + Y3
+			// E = rotateLeft(A, 5) + g(B, C, D) + E + w(x, idx++) + Y3
 			// B = rotateLeft(B, 30)
-			E += (A << 5 | A >>> 27) + g(B, C, D) + X[idx++] + Y3;
+			E += (A << 5 | A >>> 27) + g(B, C, D) + w(x, idx++) + Y3;
 			B = B << 30 | B >>> 2;
 
-			D += (E << 5 | E >>> 27) + g(A, B, C) + X[idx++] + Y3;
+			D += (E << 5 | E >>> 27) + g(A, B, C) + w(x, idx++) + Y3;
 			A = A << 30 | A >>> 2;
 
-			C += (D << 5 | D >>> 27) + g(E, A, B) + X[idx++] + Y3;
+			C += (D << 5 | D >>> 27) + g(E, A, B) + w(x, idx++) + Y3;
 			E = E << 30 | E >>> 2;
 
-			B += (C << 5 | C >>> 27) + g(D, E, A) + X[idx++] + Y3;
+			B += (C << 5 | C >>> 27) + g(D, E, A) + w(x, idx++) + Y3;
 			D = D << 30 | D >>> 2;
 
-			A += (B << 5 | B >>> 27) + g(C, D, E) + X[idx++] + Y3;
+			A += (B << 5 | B >>> 27) + g(C, D, E) + w(x, idx++) + Y3;
 			C = C << 30 | C >>> 2;
 		}
 
@@ -327,21 +401,21 @@ public final class SHA1 extends MessageDigest implements Cloneable
 		//
 		for (int j = 0; j <= 3; j++)
 		{
-			// E = rotateLeft(A, 5) + h(B, C, D) + E + X[idx++] + Y4
+			// E = rotateLeft(A, 5) + h(B, C, D) + E + w(x, idx++) + Y4
 			// B = rotateLeft(B, 30)
-			E += (A << 5 | A >>> 27) + h(B, C, D) + X[idx++] + Y4;
+			E += (A << 5 | A >>> 27) + h(B, C, D) + w(x, idx++) + Y4;
 			B = B << 30 | B >>> 2;
 
-			D += (E << 5 | E >>> 27) + h(A, B, C) + X[idx++] + Y4;
+			D += (E << 5 | E >>> 27) + h(A, B, C) + w(x, idx++) + Y4;
 			A = A << 30 | A >>> 2;
 
-			C += (D << 5 | D >>> 27) + h(E, A, B) + X[idx++] + Y4;
+			C += (D << 5 | D >>> 27) + h(E, A, B) + w(x, idx++) + Y4;
 			E = E << 30 | E >>> 2;
 
-			B += (C << 5 | C >>> 27) + h(D, E, A) + X[idx++] + Y4;
+			B += (C << 5 | C >>> 27) + h(D, E, A) + w(x, idx++) + Y4;
 			D = D << 30 | D >>> 2;
 
-			A += (B << 5 | B >>> 27) + h(C, D, E) + X[idx++] + Y4;
+			A += (B << 5 | B >>> 27) + h(C, D, E) + w(x, idx++) + Y4;
 			C = C << 30 | C >>> 2;
 		}
 
@@ -351,15 +425,6 @@ public final class SHA1 extends MessageDigest implements Cloneable
 		H3 += C;
 		H4 += D;
 		H5 += E;
-
-		//
-		// reset start of the buffer.
-		//
-		xOff = 0;
-		for (int i = 0; i < 16; i++)
-		{
-			X[i] = 0;
-		}
 	}
 
 
@@ -1,11 +1,18 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
 
 
 /**
  * FIPS-180-2 compliant SHA-256 implementation<p>
  *
+ * Whole 64-byte blocks are compressed straight from the input array or buffer, the message schedule is kept in a rolling window of 16
+ * words.<p>
+ *
  * Implementation from bouncycastle.org
  *
  * Copyright (c) 2000-2006 The Legion Of The Bouncy Castle (http://www.bouncycastle.org)
@@ -13,12 +20,14 @@ import java.security.MessageDigest;
 public final class SHA256 extends MessageDigest implements Cloneable
 {
 	private static final int DIGEST_LENGTH = 32;
+	private static final int BLOCK_SIZE = 64;
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
 
 	/* SHA-256 Constants
 	 * (represent the first 32 bits of the fractional parts of the
 	 * cube roots of the first sixty-four prime numbers)
 	 */
-	private static final int K[] =
+	static final int K[] =
 	{
 		0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
 		0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
@@ -30,7 +39,7 @@ public final class SHA256 extends MessageDigest implements Cloneable
 		0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
 	};
 	private int H1, H2, H3, H4, H5, H6, H7, H8;
-	private int[] X = new int[64];
+	private int[] X = new int[16];
 	private int xOff;
 	private byte[] xBuf;
 	private int xBufOff;
@@ -102,6 +111,41 @@ public final class SHA256 extends MessageDigest implements Cloneable
 			len--;
 		}
 
+		//
+		// process whole words until the block is complete.
+		//
+		while (xOff != 0 && len > xBuf.length)
+		{
+			processWord(in, inOff);
+
+			inOff += xBuf.length;
+			len -= xBuf.length;
+			byteCount += xBuf.length;
+		}
+
+		//
+		// process whole blocks.
+		//
+		if (xOff == 0 && len >= BLOCK_SIZE)
+		{
+			int blocks = len / BLOCK_SIZE;
+
+			for (int i = 0; i < blocks; i++, inOff += BLOCK_SIZE)
+			{
+				for (int j = 0; j < 16; j++)
+				{
+					X[j] = (int)INT.get(in, inOff + 4 * j);
+				}
+
+				compress();
+			}
+
+			len -= blocks * BLOCK_SIZE;
+			byteCount += blocks * BLOCK_SIZE;
+
+			clearBlock();
+		}
+
 		//
 		// process whole words.
 		//
@@ -127,6 +171,65 @@ public final class SHA256 extends MessageDigest implements Cloneable
 	}
 
 
+	/**
+	 * Heap buffers are hashed from their backing array. Whole blocks of direct buffers are read with absolute big-endian int loads,
+	 * without copying.
+	 */
+	@Override
+	protected void engineUpdate(ByteBuffer input)
+	{
+		if (input.hasArray())
+		{
+			engineUpdate(input.array(), input.arrayOffset() + input.position(), input.remaining());
+			input.position(input.limit());
+			return;
+		}
+
+		//
+		// fill the current block
+		//
+		while ((xBufOff != 0 || xOff != 0) && input.hasRemaining())
+		{
+			engineUpdate(input.get());
+		}
+
+		//
+		// process whole blocks.
+		//
+		int len = input.remaining();
+
+		if (len >= BLOCK_SIZE)
+		{
+			ByteBuffer in = input.duplicate().order(ByteOrder.BIG_ENDIAN);
+			int inOff = in.position();
+			int blocks = len / BLOCK_SIZE;
+
+			for (int i = 0; i < blocks; i++, inOff += BLOCK_SIZE)
+			{
+				for (int j = 0; j < 16; j++)
+				{
+					X[j] = in.getInt(inOff + 4 * j);
+				}
+
+				compress();
+			}
+
+			input.position(inOff);
+			byteCount += blocks * BLOCK_SIZE;
+
+			clearBlock();
+		}
+
+		//
+		// load in the remainder.
+		//
+		while (input.hasRemaining())
+		{
+			engineUpdate(input.get());
+		}
+	}
+
+
 	@Override
 	public void engineReset()
 	{
@@ -260,13 +363,31 @@ public final class SHA256 extends MessageDigest implements Cloneable
 
 	private void processBlock()
 	{
-		//
-		// expand 16 word block into 64 word blocks.
-		//
-		for (int t = 16; t <= 63; t++)
+		compress();
+
+		clearBlock();
+	}
+
+
+	/**
+	 * Reset the offset and clean out the word buffer.
+	 */
+	private void clearBlock()
+	{
+		xOff = 0;
+		for (int i = 0; i < 16; i++)
 		{
-			X[t] = Theta1(X[t - 2]) + X[t - 7] + Theta0(X[t - 15]) + X[t - 16];
+			X[i] = 0;
 		}
+	}
+
+
+	/**
+	 * Compresses the block held by X. The message schedule is expanded in place, X[t & 15] holds word t.
+	 */
+	private void compress()
+	{
+		int[] x = X;
 
 		//
 		// set up working variables.
@@ -280,56 +401,52 @@ public final class SHA256 extends MessageDigest implements Cloneable
 		int g = H7;
 		int h = H8;
 
-		int t = 0;
-		for (int i = 0; i < 8; i++)
+		for (int t = 0; t < 64; t += 8)
 		{
+			if (t >= 16)
+			{
+				schedule(x, t);
+			}
+
 			// t = 8 * i
-			h += Sum1(e) + Ch(e, f, g) + K[t] + X[t];
+			h += Sum1(e) + Ch(e, f, g) + K[t] + x[t & 15];
 			d += h;
 			h += Sum0(a) + Maj(a, b, c);
-			++t;
 
 			// t = 8 * i + 1
-			g += Sum1(d) + Ch(d, e, f) + K[t] + X[t];
+			g += Sum1(d) + Ch(d, e, f) + K[t + 1] + x[(t + 1) & 15];
 			c += g;
 			g += Sum0(h) + Maj(h, a, b);
-			++t;
 
 			// t = 8 * i + 2
-			f += Sum1(c) + Ch(c, d, e) + K[t] + X[t];
+			f += Sum1(c) + Ch(c, d, e) + K[t + 2] + x[(t + 2) & 15];
 			b += f;
 			f += Sum0(g) + Maj(g, h, a);
-			++t;
 
 			// t = 8 * i + 3
-			e += Sum1(b) + Ch(b, c, d) + K[t] + X[t];
+			e += Sum1(b) + Ch(b, c, d) + K[t + 3] + x[(t + 3) & 15];
 			a += e;
 			e += Sum0(f) + Maj(f, g, h);
-			++t;
 
 			// t = 8 * i + 4
-			d += Sum1(a) + Ch(a, b, c) + K[t] + X[t];
+			d += Sum1(a) + Ch(a, b, c) + K[t + 4] + x[(t + 4) & 15];
 			h += d;
 			d += Sum0(e) + Maj(e, f, g);
-			++t;
 
 			// t = 8 * i + 5
-			c += Sum1(h) + Ch(h, a, b) + K[t] + X[t];
+			c += Sum1(h) + Ch(h, a, b) + K[t + 5] + x[(t + 5) & 15];
 			g += c;
 			c += Sum0(d) + Maj(d, e, f);
-			++t;
 
 			// t = 8 * i + 6
-			b += Sum1(g) + Ch(g, h, a) + K[t] + X[t];
+			b += Sum1(g) + Ch(g, h, a) + K[t + 6] + x[(t + 6) & 15];
 			f += b;
 			b += Sum0(c) + Maj(c, d, e);
-			++t;
 
 			// t = 8 * i + 7
-			a += Sum1(f) + Ch(f, g, h) + K[t] + X[t];
+			a += Sum1(f) + Ch(f, g, h) + K[t + 7] + x[(t + 7) & 15];
 			e += a;
 			a += Sum0(b) + Maj(b, c, d);
-			++t;
 		}
 
 		H1 += a;
@@ -340,50 +457,53 @@ public final class SHA256 extends MessageDigest implements Cloneable
 		H6 += f;
 		H7 += g;
 		H8 += h;
+	}
 
-		//
-		// reset the offset and clean out the word buffer.
-		//
-		xOff = 0;
-		for (int i = 0; i < 16; i++)
+
+	/**
+	 * Expands the eight schedule words starting at t, replacing words t - 16 to t - 9 in the window.
+	 */
+	private static void schedule(int[] x, int t)
+	{
+		for (int i = t; i < t + 8; i++)
 		{
-			X[i] = 0;
+			x[i & 15] += Theta1(x[(i - 2) & 15]) + x[(i - 7) & 15] + Theta0(x[(i - 15) & 15]);
 		}
 	}
 
 	/* SHA-256 functions */
 
-	private int Ch(int x, int y, int z)
+	private static int Ch(int x, int y, int z)
 	{
 		return (x & y) ^ ((~x) & z);
 	}
 
 
-	private int Maj(int x, int y, int z)
+	private static int Maj(int x, int y, int z)
 	{
 		return (x & y) ^ (x & z) ^ (y & z);
 	}
 
 
-	private int Sum0(int x)
+	private static int Sum0(int x)
 	{
 		return ((x >>> 2) | (x << 30)) ^ ((x >>> 13) | (x << 19)) ^ ((x >>> 22) | (x << 10));
 	}
 
 
-	private int Sum1(int x)
+	private static int Sum1(int x)
 	{
 		return ((x >>> 6) | (x << 26)) ^ ((x >>> 11) | (x << 21)) ^ ((x >>> 25) | (x << 7));
 	}
 
 
-	private int Theta0(int x)
+	private static int Theta0(int x)
 	{
 		return ((x >>> 7) | (x << 25)) ^ ((x >>> 18) | (x << 14)) ^ (x >>> 3);
 	}
 
 
-	private int Theta1(int x)
+	private static int Theta1(int x)
 	{
 		return ((x >>> 17) | (x << 15)) ^ ((x >>> 19) | (x << 13)) ^ (x >>> 10);
 	}
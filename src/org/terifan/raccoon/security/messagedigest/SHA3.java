@@ -1,11 +1,21 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
-import java.util.Arrays;
 
 
+/**
+ * FIPS 202 SHA-3 implementation (SHA3-224, SHA3-256, SHA3-384 and SHA3-512).
+ */
 public final class SHA3 extends MessageDigest implements Cloneable
 {
+	private final static int DOMAIN_SUFFIX = 0x06;
+
+	private final Keccak mSponge;
+	private final int mBitLength;
+
+
 	public SHA3()
 	{
 		this(256);
@@ -22,553 +32,176 @@ public final class SHA3 extends MessageDigest implements Cloneable
 			case 256:
 			case 384:
 			case 512:
-				init(bitLength);
-				return;
+				break;
 			default:
 				throw new IllegalArgumentException("'bitLength' " + bitLength + " not supported for SHA-3");
 		}
-	}
-
 
-	public SHA3(SHA3 source)
-	{
-		super("sha3-" + source.fixedOutputLength);
-
-		System.arraycopy(source.state, 0, this.state, 0, source.state.length);
-		System.arraycopy(source.dataQueue, 0, this.dataQueue, 0, source.dataQueue.length);
-		this.rate = source.rate;
-		this.bitsInQueue = source.bitsInQueue;
-		this.fixedOutputLength = source.fixedOutputLength;
-		this.squeezing = source.squeezing;
-		this.bitsAvailableForSqueezing = source.bitsAvailableForSqueezing;
-		this.chunk = source.chunk.clone();
-		this.oneByte = source.oneByte.clone();
+		mBitLength = bitLength;
+		mSponge = new Keccak(200 - bitLength / 4);
 	}
 
-	private static long[] keccakRoundConstants = keccakInitializeRoundConstants();
-
-	private static int[] keccakRhoOffsets = keccakInitializeRhoOffsets();
 
-
-	private static long[] keccakInitializeRoundConstants()
-	{
-		long[] output = new long[24];
-		byte[] lfsrState = new byte[1];
-
-		lfsrState[0] = 0x01;
-		int i, j, bitPosition;
-
-		for (i = 0; i < 24; i++)
-		{
-			output[i] = 0;
-			for (j = 0; j < 7; j++)
-			{
-				bitPosition = (1 << j) - 1;
-				if (lfsr86540(lfsrState))
-				{
-					output[i] ^= 1L << bitPosition;
-				}
-			}
-		}
-
-		return output;
-	}
-
-
-	private static boolean lfsr86540(byte[] aLFSR)
-	{
-		boolean result = (((aLFSR[0]) & 0x01) != 0);
-		if (((aLFSR[0]) & 0x80) != 0)
-		{
-			aLFSR[0] = (byte)(((aLFSR[0]) << 1) ^ 0x71);
-		}
-		else
-		{
-			aLFSR[0] <<= 1;
-		}
-
-		return result;
-	}
-
-
-	private static int[] keccakInitializeRhoOffsets()
+	public SHA3(SHA3 source)
 	{
-		int[] output = new int[25];
-		int x, y, t, newX, newY;
-
-		output[(((0) % 5) + 5 * ((0) % 5))] = 0;
-		x = 1;
-		y = 0;
-		for (t = 0; t < 24; t++)
-		{
-			output[(((x) % 5) + 5 * ((y) % 5))] = ((t + 1) * (t + 2) / 2) % 64;
-			newX = (0 * x + 1 * y) % 5;
-			newY = (2 * x + 3 * y) % 5;
-			x = newX;
-			y = newY;
-		}
-
-		return output;
-	}
-
-	private byte[] state = new byte[(1600 / 8)];
-	private byte[] dataQueue = new byte[(1536 / 8)];
-	private int rate;
-	private int bitsInQueue;
-	private int fixedOutputLength;
-	private boolean squeezing;
-	private int bitsAvailableForSqueezing;
-	private byte[] chunk;
-	private byte[] oneByte;
+		super("sha3-" + source.mBitLength);
 
-
-	private void clearDataQueueSection(int off, int len)
-	{
-		for (int i = off; i != off + len; i++)
-		{
-			dataQueue[i] = 0;
-		}
+		mBitLength = source.mBitLength;
+		mSponge = new Keccak(source.mSponge);
 	}
 
 
-	private int getDigestSize()
+	@Override
+	public SHA3 clone()
 	{
-		return fixedOutputLength / 8;
+		return new SHA3(this);
 	}
 
 
 	@Override
 	protected void engineUpdate(byte in)
 	{
-		oneByte[0] = in;
-
-		absorb(oneByte, 0, 8L);
+		mSponge.absorb(in);
 	}
 
 
 	@Override
 	protected void engineUpdate(byte[] in, int inOff, int len)
 	{
-		absorb(in, inOff, len * 8L);
+		mSponge.absorb(in, inOff, len);
 	}
 
 
 	@Override
-	protected void engineReset()
+	protected void engineUpdate(ByteBuffer input)
 	{
-		init(fixedOutputLength);
+		mSponge.absorb(input);
 	}
 
 
 	@Override
-	protected byte[] engineDigest()
-	{
-		byte[] out = new byte[getDigestSize()];
-
-		absorb(new byte[]
-		{
-			0x02
-		}, 0, 2);
-
-		squeeze(out, 0, fixedOutputLength);
-
-		reset();
-
-		return out;
-	}
-
-
-	private void init(int bitLength)
-	{
-		switch (bitLength)
-		{
-			case 288:
-				initSponge(1024, 576);
-				break;
-			case 128:
-				initSponge(1344, 256);
-				break;
-			case 224:
-				initSponge(1152, 448);
-				break;
-			case 256:
-				initSponge(1088, 512);
-				break;
-			case 384:
-				initSponge(832, 768);
-				break;
-			case 512:
-				initSponge(576, 1024);
-				break;
-			default:
-				throw new IllegalArgumentException("bitLength must be one of 128, 224, 256, 288, 384, or 512.");
-		}
-	}
-
-
-	private void initSponge(int rate, int capacity)
+	protected void engineReset()
 	{
-		if (rate + capacity != 1600)
-		{
-			throw new IllegalStateException("rate + capacity != 1600");
-		}
-		if ((rate <= 0) || (rate >= 1600) || ((rate % 64) != 0))
-		{
-			throw new IllegalStateException("invalid rate value");
-		}
-
-		this.rate = rate;
-		Arrays.fill(this.state, (byte)0);
-		Arrays.fill(this.dataQueue, (byte)0);
-		this.bitsInQueue = 0;
-		this.squeezing = false;
-		this.bitsAvailableForSqueezing = 0;
-		this.fixedOutputLength = capacity / 2;
-		this.chunk = new byte[rate / 8];
-		this.oneByte = new byte[1];
+		mSponge.reset();
 	}
 
 
-	private void absorbQueue()
+	@Override
+	protected int engineGetDigestLength()
 	{
-		keccakAbsorb(state, dataQueue, rate / 8);
-
-		bitsInQueue = 0;
+		return mBitLength / 8;
 	}
 
 
-	private void absorb(byte[] data, int off, long databitlen)
+	@Override
+	protected byte[] engineDigest()
 	{
-		long i, j, wholeBlocks;
+		byte[] out = new byte[mBitLength / 8];
 
-		if ((bitsInQueue % 8) != 0)
-		{
-			throw new IllegalStateException("attempt to absorb with odd length queue");
-		}
-		if (squeezing)
-		{
-			throw new IllegalStateException("attempt to absorb while squeezing");
-		}
+		mSponge.pad(DOMAIN_SUFFIX);
+		mSponge.squeeze(out, 0, out.length);
+		mSponge.reset();
 
-		i = 0;
-		while (i < databitlen)
-		{
-			if ((bitsInQueue == 0) && (databitlen >= rate) && (i <= (databitlen - rate)))
-			{
-				wholeBlocks = (databitlen - i) / rate;
-
-				for (j = 0; j < wholeBlocks; j++)
-				{
-					System.arraycopy(data, (int)(off + (i / 8) + (j * chunk.length)), chunk, 0, chunk.length);
-					keccakAbsorb(state, chunk, chunk.length);
-				}
-
-				i += wholeBlocks * rate;
-			}
-			else
-			{
-				int partialBlock = (int)(databitlen - i);
-				if (partialBlock + bitsInQueue > rate)
-				{
-					partialBlock = rate - bitsInQueue;
-				}
-				int partialByte = partialBlock % 8;
-				partialBlock -= partialByte;
-				System.arraycopy(data, off + (int)(i / 8), dataQueue, bitsInQueue / 8, partialBlock / 8);
-
-				bitsInQueue += partialBlock;
-				i += partialBlock;
-				if (bitsInQueue == rate)
-				{
-					absorbQueue();
-				}
-				if (partialByte > 0)
-				{
-					int mask = (1 << partialByte) - 1;
-					dataQueue[bitsInQueue / 8] = (byte)(data[off + ((int)(i / 8))] & mask);
-					bitsInQueue += partialByte;
-					i += partialByte;
-				}
-			}
-		}
+		return out;
 	}
 
 
-	private void padAndSwitchToSqueezingPhase()
+	@Override
+	protected int engineDigest(byte[] buf, int offset, int len) throws DigestException
 	{
-		if (bitsInQueue + 1 == rate)
-		{
-			dataQueue[bitsInQueue / 8] |= 1 << (bitsInQueue % 8);
-			absorbQueue();
-			clearDataQueueSection(0, rate / 8);
-		}
-		else
+		if (len < mBitLength / 8)
 		{
-			clearDataQueueSection((bitsInQueue + 7) / 8, rate / 8 - (bitsInQueue + 7) / 8);
-			dataQueue[bitsInQueue / 8] |= 1 << (bitsInQueue % 8);
+			throw new DigestException("Buffer too short.");
 		}
-		dataQueue[(rate - 1) / 8] |= 1 << ((rate - 1) % 8);
-		absorbQueue();
 
-		if (rate == 1024)
-		{
-			keccakExtract1024bits(state, dataQueue);
-			bitsAvailableForSqueezing = 1024;
-		}
-		else
-		{
-			keccakExtract(state, dataQueue, rate / 64);
-			bitsAvailableForSqueezing = rate;
-		}
+		mSponge.pad(DOMAIN_SUFFIX);
+		mSponge.squeeze(buf, offset, mBitLength / 8);
+		mSponge.reset();
 
-		squeezing = true;
+		return mBitLength / 8;
 	}
 
 
-	private void squeeze(byte[] output, int offset, long outputLength)
+	@Override
+	public String toString()
 	{
-		long i;
-		int partialBlock;
-
-		if (!squeezing)
-		{
-			padAndSwitchToSqueezingPhase();
-		}
-		if ((outputLength % 8) != 0)
-		{
-			throw new IllegalStateException("outputLength not a multiple of 8");
-		}
-
-		i = 0;
-		while (i < outputLength)
-		{
-			if (bitsAvailableForSqueezing == 0)
-			{
-				keccakPermutation(state);
-
-				if (rate == 1024)
-				{
-					keccakExtract1024bits(state, dataQueue);
-					bitsAvailableForSqueezing = 1024;
-				}
-				else
-				{
-					keccakExtract(state, dataQueue, rate / 64);
-					bitsAvailableForSqueezing = rate;
-				}
-			}
-			partialBlock = bitsAvailableForSqueezing;
-			if ((long)partialBlock > outputLength - i)
-			{
-				partialBlock = (int)(outputLength - i);
-			}
-
-			System.arraycopy(dataQueue, (rate - bitsAvailableForSqueezing) / 8, output, offset + (int)(i / 8), partialBlock / 8);
-			bitsAvailableForSqueezing -= partialBlock;
-			i += partialBlock;
-		}
+		return "SHA3-" + mBitLength;
 	}
 
 
-	private void fromBytesToWords(long[] stateAsWords, byte[] state)
+	public static int[] hash128_256(byte[] aData, int aOffset, int aLength, long aSeed)
 	{
-		for (int i = 0; i < (1600 / 64); i++)
-		{
-			stateAsWords[i] = 0;
-			int index = i * (64 / 8);
-			for (int j = 0; j < (64 / 8); j++)
-			{
-				stateAsWords[i] |= ((long)state[index + j] & 0xff) << ((8 * j));
-			}
-		}
+		return hash128(new Keccak(136), aData, aOffset, aLength, aSeed);
 	}
 
 
-	private void fromWordsToBytes(byte[] state, long[] stateAsWords)
+	public static int[] hash128_512(byte[] aData, int aOffset, int aLength, long aSeed)
 	{
-		for (int i = 0; i < (1600 / 64); i++)
-		{
-			int index = i * (64 / 8);
-			for (int j = 0; j < (64 / 8); j++)
-			{
-				state[index + j] = (byte)((stateAsWords[i] >>> ((8 * j))) & 0xFF);
-			}
-		}
+		return hash128(new Keccak(72), aData, aOffset, aLength, aSeed);
 	}
 
 
-	private void keccakPermutation(byte[] state)
+	/**
+	 * Returns the first 128 bits of the digest of the big-endian seed followed by the data. Only the 16 bytes needed are squeezed.
+	 */
+	private static int[] hash128(Keccak aSponge, byte[] aData, int aOffset, int aLength, long aSeed)
 	{
-		long[] longState = new long[state.length / 8];
+		absorbSeed(aSponge, aSeed);
+		aSponge.absorb(aData, aOffset, aLength);
 
-		fromBytesToWords(longState, state);
-		keccakPermutationOnWords(longState);
-		fromWordsToBytes(state, longState);
+		int[] result = new int[4];
+		finish(aSponge, result, 0);
+		return result;
 	}
 
 
-	private void keccakPermutationAfterXor(byte[] state, byte[] data, int dataLengthInBytes)
+	private static void absorbSeed(Keccak aSponge, long aSeed)
 	{
-		int i;
-
-		for (i = 0; i < dataLengthInBytes; i++)
+		for (int i = 56; i >= 0; i -= 8)
 		{
-			state[i] ^= data[i];
+			aSponge.absorb((byte)(aSeed >>> i));
 		}
-
-		keccakPermutation(state);
 	}
 
 
-	private void keccakPermutationOnWords(long[] state)
+	private static void finish(Keccak aSponge, int[] aOutput, int aOutputOffset)
 	{
-		int i;
-
-		for (i = 0; i < 24; i++)
-		{
-			theta(state);
-			rho(state);
-			pi(state);
-			chi(state);
-			iota(state, i);
-		}
-	}
-
-	private long[] c = new long[5];
+		byte[] tmp = new byte[16];
 
+		aSponge.pad(DOMAIN_SUFFIX);
+		aSponge.squeeze(tmp, 0, 16);
 
-	private void theta(long[] a)
-	{
-		for (int x = 0; x < 5; x++)
+		for (int i = 0; i < 16; i += 4)
 		{
-			c[x] = 0;
-			for (int y = 0; y < 5; y++)
-			{
-				c[x] ^= a[x + 5 * y];
-			}
-		}
-		for (int x = 0; x < 5; x++)
-		{
-			long dX = ((((c[(x + 1) % 5]) << 1) ^ ((c[(x + 1) % 5]) >>> (64 - 1)))) ^ c[(x + 4) % 5];
-			for (int y = 0; y < 5; y++)
-			{
-				a[x + 5 * y] ^= dX;
-			}
-		}
-	}
-
-
-	private void rho(long[] a)
-	{
-		for (int x = 0; x < 5; x++)
-		{
-			for (int y = 0; y < 5; y++)
-			{
-				int index = x + 5 * y;
-				a[index] = ((keccakRhoOffsets[index] != 0) ? (((a[index]) << keccakRhoOffsets[index]) ^ ((a[index]) >>> (64 - keccakRhoOffsets[index]))) : a[index]);
-			}
+			aOutput[aOutputOffset++] = ((tmp[i] & 255) << 24) + ((tmp[i + 1] & 255) << 16) + ((tmp[i + 2] & 255) << 8) + (tmp[i + 3] & 255);
 		}
 	}
 
-	private long[] tempA = new long[25];
-
 
-	private void pi(long[] a)
+	static final class Checksum implements Checksum128
 	{
-		System.arraycopy(a, 0, tempA, 0, tempA.length);
-
-		for (int x = 0; x < 5; x++)
-		{
-			for (int y = 0; y < 5; y++)
-			{
-				a[y + 5 * ((2 * x + 3 * y) % 5)] = tempA[x + 5 * y];
-			}
-		}
-	}
-
-	long[] chiC = new long[5];
+		private final Keccak mSponge = new Keccak(136);
 
 
-	private void chi(long[] a)
-	{
-		for (int y = 0; y < 5; y++)
+		@Override
+		public void reset(long aSeed)
 		{
-			for (int x = 0; x < 5; x++)
-			{
-				chiC[x] = a[x + 5 * y] ^ ((~a[(((x + 1) % 5) + 5 * y)]) & a[(((x + 2) % 5) + 5 * y)]);
-			}
-			for (int x = 0; x < 5; x++)
-			{
-				a[x + 5 * y] = chiC[x];
-			}
+			mSponge.reset();
+			absorbSeed(mSponge, aSeed);
 		}
-	}
-
-
-	private void iota(long[] a, int indexRound)
-	{
-		a[(((0) % 5) + 5 * ((0) % 5))] ^= keccakRoundConstants[indexRound];
-	}
-
 
-	private void keccakAbsorb(byte[] byteState, byte[] data, int dataInBytes)
-	{
-		keccakPermutationAfterXor(byteState, data, dataInBytes);
-	}
-
-
-	private void keccakExtract1024bits(byte[] byteState, byte[] data)
-	{
-		System.arraycopy(byteState, 0, data, 0, 128);
-	}
-
-
-	private void keccakExtract(byte[] byteState, byte[] data, int laneCount)
-	{
-		System.arraycopy(byteState, 0, data, 0, laneCount * 8);
-	}
 
-
-	public static int[] hash128_256(byte[] aData, int aOffset, int aLength, long aSeed)
-	{
-		SHA3 instance = new SHA3(256);
-		instance.update((byte)(aSeed >>> 56));
-		instance.update((byte)(aSeed >> 48));
-		instance.update((byte)(aSeed >> 40));
-		instance.update((byte)(aSeed >> 32));
-		instance.update((byte)(aSeed >> 24));
-		instance.update((byte)(aSeed >> 16));
-		instance.update((byte)(aSeed >> 8));
-		instance.update((byte)(aSeed));
-		instance.update(aData, aOffset, aLength);
-		byte[] tmp = instance.engineDigest();
-		int[] result = new int[4];
-		for (int i = 0, j = 0; i < 16; i+=4)
+		@Override
+		public void updateBlock(byte[] aBuffer, int aOffset)
 		{
-			result[j++] = ((tmp[i] & 255) << 24) + ((tmp[i + 1] & 255) << 16) + ((tmp[i + 2] & 255) << 8) + (tmp[i + 3] & 255);
+			mSponge.absorb(aBuffer, aOffset, 16);
 		}
-		return result;
-	}
 
 
-	public static int[] hash128_512(byte[] aData, int aOffset, int aLength, long aSeed)
-	{
-		SHA3 instance = new SHA3(512);
-		instance.update((byte)(aSeed >>> 56));
-		instance.update((byte)(aSeed >> 48));
-		instance.update((byte)(aSeed >> 40));
-		instance.update((byte)(aSeed >> 32));
-		instance.update((byte)(aSeed >> 24));
-		instance.update((byte)(aSeed >> 16));
-		instance.update((byte)(aSeed >> 8));
-		instance.update((byte)(aSeed));
-		instance.update(aData, aOffset, aLength);
-		byte[] tmp = instance.engineDigest();
-		int[] result = new int[4];
-		for (int i = 0, j = 0; i < 16; i+=4)
+		@Override
+		public void finish(int[] aOutput, int aOutputOffset)
 		{
-			result[j++] = ((tmp[i] & 255) << 24) + ((tmp[i + 1] & 255) << 16) + ((tmp[i + 2] & 255) << 8) + (tmp[i + 3] & 255);
+			SHA3.finish(mSponge, aOutput, aOutputOffset);
 		}
-		return result;
 	}
 }
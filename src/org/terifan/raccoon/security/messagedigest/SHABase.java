@@ -1,6 +1,9 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.DigestException;
 import java.security.MessageDigest;
 
@@ -8,6 +11,8 @@ import java.security.MessageDigest;
 /**
  * Base class for SHA-384 and SHA-512
  * .<p>
+ * Whole 128-byte blocks are compressed straight from the input array, the message schedule is kept in a rolling window of 16 words.
+ * <p>
  *
  * Implementation from bouncycastle.org
  *
@@ -15,6 +20,9 @@ import java.security.MessageDigest;
  */
 public abstract class SHABase extends MessageDigest implements Cloneable
 {
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private final static int BLOCK_SIZE = 128;
+
 	private byte[] xBuf;
 	private int xBufOff;
 
@@ -23,7 +31,7 @@ public abstract class SHABase extends MessageDigest implements Cloneable
 
 	protected long H1, H2, H3, H4, H5, H6, H7, H8;
 
-	private long[] W = new long[80];
+	private long[] W = new long[16];
 	private int wOff;
 
 
@@ -83,9 +91,20 @@ public abstract class SHABase extends MessageDigest implements Cloneable
 	@Override
 	protected void engineUpdate(ByteBuffer input)
 	{
+		if (input.hasArray())
+		{
+			engineUpdate(input.array(), input.arrayOffset() + input.position(), input.remaining());
+			input.position(input.limit());
+			return;
+		}
+
+		byte[] buffer = new byte[Math.min(input.remaining(), 16 * 128)];
+
 		while (input.hasRemaining())
 		{
-			engineUpdate(input.get());
+			int len = Math.min(input.remaining(), buffer.length);
+			input.get(buffer, 0, len);
+			engineUpdate(buffer, 0, len);
 		}
 	}
 
@@ -119,6 +138,32 @@ public abstract class SHABase extends MessageDigest implements Cloneable
 			len--;
 		}
 
+		//
+		// process whole words until the block is complete.
+		//
+		while (wOff != 0 && len > xBuf.length)
+		{
+			processWord(in, inOff);
+
+			inOff += xBuf.length;
+			len -= xBuf.length;
+			byteCount1 += xBuf.length;
+		}
+
+		//
+		// process whole blocks.
+		//
+		if (wOff == 0 && len >= BLOCK_SIZE)
+		{
+			int blocks = len / BLOCK_SIZE;
+
+			processBlocks(in, inOff, blocks);
+
+			inOff += blocks * BLOCK_SIZE;
+			len -= blocks * BLOCK_SIZE;
+			byteCount1 += blocks * BLOCK_SIZE;
+		}
+
 		//
 		// process whole words.
 		//
@@ -255,13 +300,49 @@ public abstract class SHABase extends MessageDigest implements Cloneable
 	{
 		adjustByteCounts();
 
+		compress();
+
 		//
-		// expand 16 word block into 80 word blocks.
+		// reset the offset and clean out the word buffer.
 		//
-		for (int t = 16; t <= 79; t++)
+		wOff = 0;
+		for (int i = 0; i < 16; i++)
 		{
-			W[t] = Sigma1(W[t - 2]) + W[t - 7] + Sigma0(W[t - 15]) + W[t - 16];
+			W[i] = 0;
 		}
+	}
+
+
+	/**
+	 * Compresses whole blocks read directly from the input array.
+	 */
+	private void processBlocks(byte[] in, int inOff, int blocks)
+	{
+		adjustByteCounts();
+
+		for (int i = 0; i < blocks; i++, inOff += BLOCK_SIZE)
+		{
+			for (int j = 0; j < 16; j++)
+			{
+				W[j] = (long)LONG.get(in, inOff + 8 * j);
+			}
+
+			compress();
+		}
+
+		for (int i = 0; i < 16; i++)
+		{
+			W[i] = 0;
+		}
+	}
+
+
+	/**
+	 * Compresses the block held by the first 16 words of W. The message schedule is expanded in place, W[t & 15] holds word t.
+	 */
+	private void compress()
+	{
+		long[] w = W;
 
 		//
 		// set up working variables.
@@ -275,46 +356,50 @@ public abstract class SHABase extends MessageDigest implements Cloneable
 		long g = H7;
 		long h = H8;
 
-		int t = 0;
-		for (int i = 0; i < 10; i++)
+		for (int t = 0; t < 80; t += 8)
 		{
+			if (t >= 16)
+			{
+				schedule(w, t);
+			}
+
 			// t = 8 * i
-			h += Sum1(e) + Ch(e, f, g) + K[t] + W[t++];
+			h += Sum1(e) + Ch(e, f, g) + K[t] + w[t & 15];
 			d += h;
 			h += Sum0(a) + Maj(a, b, c);
 
 			// t = 8 * i + 1
-			g += Sum1(d) + Ch(d, e, f) + K[t] + W[t++];
+			g += Sum1(d) + Ch(d, e, f) + K[t + 1] + w[(t + 1) & 15];
 			c += g;
 			g += Sum0(h) + Maj(h, a, b);
 
 			// t = 8 * i + 2
-			f += Sum1(c) + Ch(c, d, e) + K[t] + W[t++];
+			f += Sum1(c) + Ch(c, d, e) + K[t + 2] + w[(t + 2) & 15];
 			b += f;
 			f += Sum0(g) + Maj(g, h, a);
 
 			// t = 8 * i + 3
-			e += Sum1(b) + Ch(b, c, d) + K[t] + W[t++];
+			e += Sum1(b) + Ch(b, c, d) + K[t + 3] + w[(t + 3) & 15];
 			a += e;
 			e += Sum0(f) + Maj(f, g, h);
 
 			// t = 8 * i + 4
-			d += Sum1(a) + Ch(a, b, c) + K[t] + W[t++];
+			d += Sum1(a) + Ch(a, b, c) + K[t + 4] + w[(t + 4) & 15];
 			h += d;
 			d += Sum0(e) + Maj(e, f, g);
 
 			// t = 8 * i + 5
-			c += Sum1(h) + Ch(h, a, b) + K[t] + W[t++];
+			c += Sum1(h) + Ch(h, a, b) + K[t + 5] + w[(t + 5) & 15];
 			g += c;
 			c += Sum0(d) + Maj(d, e, f);
 
 			// t = 8 * i + 6
-			b += Sum1(g) + Ch(g, h, a) + K[t] + W[t++];
+			b += Sum1(g) + Ch(g, h, a) + K[t + 6] + w[(t + 6) & 15];
 			f += b;
 			b += Sum0(c) + Maj(c, d, e);
 
 			// t = 8 * i + 7
-			a += Sum1(f) + Ch(f, g, h) + K[t] + W[t++];
+			a += Sum1(f) + Ch(f, g, h) + K[t + 7] + w[(t + 7) & 15];
 			e += a;
 			a += Sum0(b) + Maj(b, c, d);
 		}
@@ -327,50 +412,53 @@ public abstract class SHABase extends MessageDigest implements Cloneable
 		H6 += f;
 		H7 += g;
 		H8 += h;
+	}
 
-		//
-		// reset the offset and clean out the word buffer.
-		//
-		wOff = 0;
-		for (int i = 0; i < 16; i++)
+
+	/**
+	 * Expands the eight schedule words starting at t, replacing words t - 16 to t - 9 in the window.
+	 */
+	private static void schedule(long[] w, int t)
+	{
+		for (int i = t; i < t + 8; i++)
 		{
-			W[i] = 0;
+			w[i & 15] += Sigma1(w[(i - 2) & 15]) + w[(i - 7) & 15] + Sigma0(w[(i - 15) & 15]);
 		}
 	}
 
 
 	/* SHA-384 and SHA-512 functions (as for SHA-256 but for longs) */
-	private long Ch(long x, long y, long z)
+	private static long Ch(long x, long y, long z)
 	{
 		return ((x & y) ^ ((~x) & z));
 	}
 
 
-	private long Maj(long x, long y, long z)
+	private static long Maj(long x, long y, long z)
 	{
 		return ((x & y) ^ (x & z) ^ (y & z));
 	}
 
 
-	private long Sum0(long x)
+	private static long Sum0(long x)
 	{
 		return ((x << 36) | (x >>> 28)) ^ ((x << 30) | (x >>> 34)) ^ ((x << 25) | (x >>> 39));
 	}
 
 
-	private long Sum1(long x)
+	private static long Sum1(long x)
 	{
 		return ((x << 50) | (x >>> 14)) ^ ((x << 46) | (x >>> 18)) ^ ((x << 23) | (x >>> 41));
 	}
 
 
-	private long Sigma0(long x)
+	private static long Sigma0(long x)
 	{
 		return ((x << 63) | (x >>> 1)) ^ ((x << 56) | (x >>> 8)) ^ (x >>> 7);
 	}
 
 
-	private long Sigma1(long x)
+	private static long Sigma1(long x)
 	{
 		return ((x << 45) | (x >>> 19)) ^ ((x << 3) | (x >>> 61)) ^ (x >>> 6);
 	}
@@ -0,0 +1,193 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+
+/**
+ * FIPS 202 SHAKE128 and SHAKE256 extendable-output functions. The digest methods return a fixed length output, any length of output
+ * can be read with the squeeze methods, which may be called repeatedly to stream output until the function is reset.
+ *
+ * <pre>
+ * SHAKE shake = new SHAKE(256);
+ * shake.update(seed);
+ * byte[] key = shake.squeeze(32);
+ * byte[] iv = shake.squeeze(16);
+ * </pre>
+ */
+public class SHAKE extends MessageDigest implements Cloneable
+{
+	private final static int DOMAIN_SUFFIX = 0x1F;
+
+	final Keccak mSponge;
+	final int mSecurityStrength;
+	final int mDigestLength;
+
+
+	/**
+	 * Creates a SHAKE with a digest length of twice the security strength.
+	 *
+	 * @param aSecurityStrength 128 or 256
+	 */
+	public SHAKE(int aSecurityStrength)
+	{
+		this(aSecurityStrength, aSecurityStrength / 4);
+	}
+
+
+	/**
+	 * @param aSecurityStrength 128 or 256
+	 * @param aDigestLength length of the output returned by the digest methods in bytes
+	 */
+	public SHAKE(int aSecurityStrength, int aDigestLength)
+	{
+		this("shake" + aSecurityStrength, aSecurityStrength, aDigestLength);
+	}
+
+
+	SHAKE(String aAlgorithm, int aSecurityStrength, int aDigestLength)
+	{
+		super(aAlgorithm);
+
+		if (aSecurityStrength != 128 && aSecurityStrength != 256)
+		{
+			throw new IllegalArgumentException("Security strength must be 128 or 256: " + aSecurityStrength);
+		}
+		if (aDigestLength < 1)
+		{
+			throw new IllegalArgumentException("Illegal digest length: " + aDigestLength);
+		}
+
+		mSecurityStrength = aSecurityStrength;
+		mDigestLength = aDigestLength;
+		mSponge = new Keccak(200 - aSecurityStrength / 4);
+	}
+
+
+	/**
+	 * Constructor for cloning
+	 */
+	SHAKE(SHAKE aSource)
+	{
+		super(aSource.getAlgorithm());
+
+		mSecurityStrength = aSource.mSecurityStrength;
+		mDigestLength = aSource.mDigestLength;
+		mSponge = new Keccak(aSource.mSponge);
+	}
+
+
+	public int getSecurityStrength()
+	{
+		return mSecurityStrength;
+	}
+
+
+	/**
+	 * Finishes absorbing, if not already done, and writes the next bytes of output. Updating the function after output has been read
+	 * requires a reset.
+	 */
+	public void squeeze(byte[] aOutput, int aOffset, int aLength)
+	{
+		if (!mSponge.isSqueezing())
+		{
+			mSponge.pad(getDomainSuffix());
+		}
+
+		mSponge.squeeze(aOutput, aOffset, aLength);
+	}
+
+
+	/**
+	 * Finishes absorbing, if not already done, and returns the next bytes of output.
+	 */
+	public byte[] squeeze(int aLength)
+	{
+		byte[] output = new byte[aLength];
+		squeeze(output, 0, aLength);
+		return output;
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		mSponge.absorb(aInput);
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		mSponge.absorb(aInput, aOffset, aLength);
+	}
+
+
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		mSponge.absorb(aInput);
+	}
+
+
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return mDigestLength;
+	}
+
+
+	@Override
+	protected byte[] engineDigest()
+	{
+		byte[] output = squeeze(mDigestLength);
+		engineReset();
+		return output;
+	}
+
+
+	@Override
+	protected int engineDigest(byte[] aBuffer, int aOffset, int aLength) throws DigestException
+	{
+		if (aLength < mDigestLength)
+		{
+			throw new DigestException("Buffer too short.");
+		}
+
+		squeeze(aBuffer, aOffset, mDigestLength);
+		engineReset();
+
+		return mDigestLength;
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		mSponge.reset();
+	}
+
+
+	/**
+	 * Returns the domain separation bits followed by the first padding bit.
+	 */
+	int getDomainSuffix()
+	{
+		return DOMAIN_SUFFIX;
+	}
+
+
+	@Override
+	public SHAKE clone()
+	{
+		return new SHAKE(this);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "SHAKE" + mSecurityStrength;
+	}
+}
@@ -0,0 +1,352 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+
+/**
+ * A Merkle tree hash over fixed size leaves using any message digest. Leaves are hashed in parallel on a ForkJoinPool and combined up
+ * the tree, making hashing of large inputs scale with the number of cores.
+ * <p>
+ * The tree is built over leaf hashes H(0x00 || leaf). Two subtrees are combined as H(0x01 || left || right), where the left subtree is
+ * the largest complete tree of a power of two leaves, as in RFC 6962. The root is H(0x02 || node || leaf size || length) with the leaf
+ * size and the message length as 64-bit big-endian values. An empty message is hashed as a single empty leaf. The result depends on the
+ * leaf size but not on how the input is passed to the digest.
+ * <p>
+ * Buffered input is hashed asynchronously while the next batch of leaves is collected. Direct buffers and memory mapped files are hashed
+ * straight from the buffer.
+ *
+ * <pre>
+ * TreeHash digest = new TreeHash(SHA256::new, 1024 * 1024);
+ * byte[] hash = digest.digest(path);
+ * </pre>
+ */
+public final class TreeHash extends MessageDigest
+{
+	private final static int LEAF = 0x00;
+	private final static int NODE = 0x01;
+	private final static int ROOT = 0x02;
+	private final static int MAX_BATCH_SIZE = 64 << 20;
+	private final static long MAX_SEGMENT_SIZE = 1 << 30;
+
+	private final Supplier<MessageDigest> mFactory;
+	private final MessageDigest mNodeDigest;
+	private final ForkJoinPool mPool;
+	private final ArrayList<Node> mStack;
+	private final int mLeafSize;
+	private byte[] mBuffer;
+	private byte[] mSpareBuffer;
+	private int mBufferLength;
+	private ForkJoinTask<byte[][]> mPending;
+	private long mLength;
+
+
+	/**
+	 * Creates a tree hash using the common pool.
+	 *
+	 * @param aFactory creates the digest used for leaves and nodes
+	 * @param aLeafSize the leaf size in bytes
+	 */
+	public TreeHash(Supplier<MessageDigest> aFactory, int aLeafSize)
+	{
+		this(aFactory, aLeafSize, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * @param aFactory creates the digest used for leaves and nodes
+	 * @param aLeafSize the leaf size in bytes
+	 * @param aPool the pool hashing leaves
+	 */
+	public TreeHash(Supplier<MessageDigest> aFactory, int aLeafSize, ForkJoinPool aPool)
+	{
+		super("tree-" + aFactory.get().getAlgorithm());
+
+		if (aLeafSize < 1)
+		{
+			throw new IllegalArgumentException("Illegal leaf size: " + aLeafSize);
+		}
+
+		mFactory = aFactory;
+		mNodeDigest = aFactory.get();
+		mLeafSize = aLeafSize;
+		mPool = aPool;
+		mStack = new ArrayList<>();
+
+		int batchLeaves = Math.max(1, Math.min(4 * aPool.getParallelism(), MAX_BATCH_SIZE / aLeafSize));
+		mBuffer = new byte[batchLeaves * aLeafSize];
+		mSpareBuffer = new byte[mBuffer.length];
+	}
+
+
+	public int getLeafSize()
+	{
+		return mLeafSize;
+	}
+
+
+	/**
+	 * Resets the digest and returns the hash of a file. The file is memory mapped and the leaves are hashed straight from the mapping.
+	 */
+	public byte[] digest(Path aFile) throws IOException
+	{
+		reset();
+
+		try (FileChannel channel = FileChannel.open(aFile, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			long segmentSize = Math.max(1, MAX_SEGMENT_SIZE / mLeafSize) * mLeafSize;
+
+			for (long position = 0; position < size; position += segmentSize)
+			{
+				MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+				update(segment);
+			}
+		}
+
+		return digest();
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		mBuffer[mBufferLength++] = aInput;
+		mLength++;
+
+		if (mBufferLength == mBuffer.length)
+		{
+			submitBatch();
+		}
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		mLength += aLength;
+
+		while (aLength > 0)
+		{
+			int length = Math.min(aLength, mBuffer.length - mBufferLength);
+
+			System.arraycopy(aInput, aOffset, mBuffer, mBufferLength, length);
+
+			mBufferLength += length;
+			aOffset += length;
+			aLength -= length;
+
+			if (mBufferLength == mBuffer.length)
+			{
+				submitBatch();
+			}
+		}
+	}
+
+
+	/**
+	 * Whole leaves of a buffer are hashed in place when no input is buffered.
+	 */
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		if (mBufferLength == 0 && aInput.remaining() >= mLeafSize)
+		{
+			int leaves = aInput.remaining() / mLeafSize;
+			int length = leaves * mLeafSize;
+
+			ByteBuffer input = aInput.slice(aInput.position(), length);
+
+			awaitPending();
+			push(mPool.invoke(createTask(input, leaves, mLeafSize)));
+
+			aInput.position(aInput.position() + length);
+			mLength += length;
+		}
+
+		while (aInput.hasRemaining())
+		{
+			int length = Math.min(aInput.remaining(), mBuffer.length - mBufferLength);
+
+			aInput.get(mBuffer, mBufferLength, length);
+
+			mBufferLength += length;
+			mLength += length;
+
+			if (mBufferLength == mBuffer.length)
+			{
+				submitBatch();
+			}
+		}
+	}
+
+
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return mNodeDigest.getDigestLength();
+	}
+
+
+	@Override
+	protected byte[] engineDigest()
+	{
+		awaitPending();
+
+		if (mBufferLength > 0 || mStack.isEmpty())
+		{
+			int leaves = Math.max(1, (mBufferLength + mLeafSize - 1) / mLeafSize);
+			int lastLeafSize = mBufferLength - (leaves - 1) * mLeafSize;
+
+			push(mPool.invoke(createTask(ByteBuffer.wrap(mBuffer, 0, mBufferLength), leaves, lastLeafSize)));
+		}
+
+		byte[] node = mStack.remove(mStack.size() - 1).hash();
+		while (!mStack.isEmpty())
+		{
+			node = combine(mStack.remove(mStack.size() - 1).hash(), node);
+		}
+
+		mNodeDigest.update((byte)ROOT);
+		mNodeDigest.update(node);
+		for (int i = 56; i >= 0; i -= 8)
+		{
+			mNodeDigest.update((byte)((long)mLeafSize >>> i));
+		}
+		for (int i = 56; i >= 0; i -= 8)
+		{
+			mNodeDigest.update((byte)(mLength >>> i));
+		}
+		byte[] root = mNodeDigest.digest();
+
+		engineReset();
+
+		return root;
+	}
+
+
+	@Override
+	protected int engineDigest(byte[] aBuffer, int aOffset, int aLength) throws DigestException
+	{
+		if (aLength < engineGetDigestLength())
+		{
+			throw new DigestException("Buffer too short.");
+		}
+
+		byte[] root = engineDigest();
+		System.arraycopy(root, 0, aBuffer, aOffset, root.length);
+		return root.length;
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		if (mPending != null)
+		{
+			mPending.cancel(false);
+			mPending = null;
+		}
+
+		mStack.clear();
+		mNodeDigest.reset();
+		mBufferLength = 0;
+		mLength = 0;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "TreeHash-" + mNodeDigest + "/" + mLeafSize;
+	}
+
+
+	/**
+	 * Starts hashing the full buffer and continues buffering into the spare buffer.
+	 */
+	private void submitBatch()
+	{
+		awaitPending();
+
+		byte[] buffer = mBuffer;
+		mBuffer = mSpareBuffer;
+		mSpareBuffer = buffer;
+		mBufferLength = 0;
+
+		mPending = mPool.submit(createTask(ByteBuffer.wrap(buffer), buffer.length / mLeafSize, mLeafSize));
+	}
+
+
+	private void awaitPending()
+	{
+		if (mPending != null)
+		{
+			ForkJoinTask<byte[][]> pending = mPending;
+			mPending = null;
+			push(pending.join());
+		}
+	}
+
+
+	/**
+	 * Returns a task hashing consecutive leaves of the input, all leaves but the last are full.
+	 */
+	private ForkJoinTask<byte[][]> createTask(ByteBuffer aInput, int aLeaves, int aLastLeafSize)
+	{
+		int position = aInput.position();
+
+		return ForkJoinTask.adapt(() -> IntStream.range(0, aLeaves).parallel().mapToObj(i ->
+		{
+			MessageDigest digest = mFactory.get();
+			digest.update((byte)LEAF);
+			digest.update(aInput.slice(position + i * mLeafSize, i == aLeaves - 1 ? aLastLeafSize : mLeafSize));
+			return digest.digest();
+		}).toArray(byte[][]::new));
+	}
+
+
+	/**
+	 * Adds leaf hashes to the stack of complete subtrees, combining subtrees of the same height.
+	 */
+	private void push(byte[][] aLeafHashes)
+	{
+		for (byte[] hash : aLeafHashes)
+		{
+			Node node = new Node(0, hash);
+
+			while (!mStack.isEmpty() && mStack.get(mStack.size() - 1).height() == node.height())
+			{
+				Node left = mStack.remove(mStack.size() - 1);
+				node = new Node(node.height() + 1, combine(left.hash(), node.hash()));
+			}
+
+			mStack.add(node);
+		}
+	}
+
+
+	private byte[] combine(byte[] aLeft, byte[] aRight)
+	{
+		mNodeDigest.update((byte)NODE);
+		mNodeDigest.update(aLeft);
+		mNodeDigest.update(aRight);
+		return mNodeDigest.digest();
+	}
+
+
+	private record Node(int height, byte[] hash)
+	{
+	}
+}
@@ -0,0 +1,780 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static org.terifan.raccoon.security.messagedigest.XXH64.PRIME64_1;
+import static org.terifan.raccoon.security.messagedigest.XXH64.PRIME64_2;
+import static org.terifan.raccoon.security.messagedigest.XXH64.PRIME64_3;
+import static org.terifan.raccoon.security.messagedigest.XXH64.PRIME64_4;
+import static org.terifan.raccoon.security.messagedigest.XXH64.PRIME64_5;
+
+
+/**
+ * The XXH3 64 and 128-bit non-cryptographic hashes by Yann Collet with the default secret, producing the same values as the
+ * reference implementation. A seed other than zero derives a custom secret for inputs longer than 240 bytes, as the reference does.
+ * <p>
+ * Inputs longer than 240 bytes are consumed in 64 byte stripes by eight independent accumulators, each multiplying the 32-bit halves of
+ * one keyed input word. The accumulators are kept in locals for a whole block and have no dependencies between them.
+ * <p>
+ * The 128-bit hash is returned as four ints, the high 64 bits first, matching the canonical big-endian representation.
+ *
+ * <pre>
+ * int[] hash = XXH3.hash128(data, 0, data.length, seed);
+ *
+ * XXH3.Hasher hasher = new XXH3.Hasher(seed);
+ * hasher.update(header, 0, header.length);
+ * hasher.update(payload);
+ * long hash = hasher.finish64();
+ * </pre>
+ */
+public final class XXH3
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final static long PRIME32_1 = 0x9E3779B1L;
+	private final static long PRIME32_2 = 0x85EBCA77L;
+	private final static long PRIME32_3 = 0xC2B2AE3DL;
+	private final static long PRIME_MX1 = 0x165667919E3779F9L;
+	private final static long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+	private final static int SECRET_SIZE = 192;
+	private final static int STRIPE_LEN = 64;
+	private final static int STRIPES_PER_BLOCK = (SECRET_SIZE - STRIPE_LEN) / 8;
+	private final static int BLOCK_LEN = STRIPE_LEN * STRIPES_PER_BLOCK;
+	private final static int MIDSIZE_MAX = 240;
+	private final static int MIDSIZE_START_OFFSET = 3;
+	private final static int MIDSIZE_LAST_OFFSET = 17;
+	private final static int SECRET_MERGEACCS_START = 11;
+	private final static int SECRET_LASTACC_START = 7;
+	private final static int BUFFER_SIZE = 256;
+
+	private final static byte[] SECRET =
+	{
+		(byte)0xb8, (byte)0xfe, (byte)0x6c, (byte)0x39, (byte)0x23, (byte)0xa4, (byte)0x4b, (byte)0xbe, (byte)0x7c, (byte)0x01, (byte)0x81, (byte)0x2c, (byte)0xf7, (byte)0x21, (byte)0xad, (byte)0x1c,
+		(byte)0xde, (byte)0xd4, (byte)0x6d, (byte)0xe9, (byte)0x83, (byte)0x90, (byte)0x97, (byte)0xdb, (byte)0x72, (byte)0x40, (byte)0xa4, (byte)0xa4, (byte)0xb7, (byte)0xb3, (byte)0x67, (byte)0x1f,
+		(byte)0xcb, (byte)0x79, (byte)0xe6, (byte)0x4e, (byte)0xcc, (byte)0xc0, (byte)0xe5, (byte)0x78, (byte)0x82, (byte)0x5a, (byte)0xd0, (byte)0x7d, (byte)0xcc, (byte)0xff, (byte)0x72, (byte)0x21,
+		(byte)0xb8, (byte)0x08, (byte)0x46, (byte)0x74, (byte)0xf7, (byte)0x43, (byte)0x24, (byte)0x8e, (byte)0xe0, (byte)0x35, (byte)0x90, (byte)0xe6, (byte)0x81, (byte)0x3a, (byte)0x26, (byte)0x4c,
+		(byte)0x3c, (byte)0x28, (byte)0x52, (byte)0xbb, (byte)0x91, (byte)0xc3, (byte)0x00, (byte)0xcb, (byte)0x88, (byte)0xd0, (byte)0x65, (byte)0x8b, (byte)0x1b, (byte)0x53, (byte)0x2e, (byte)0xa3,
+		(byte)0x71, (byte)0x64, (byte)0x48, (byte)0x97, (byte)0xa2, (byte)0x0d, (byte)0xf9, (byte)0x4e, (byte)0x38, (byte)0x19, (byte)0xef, (byte)0x46, (byte)0xa9, (byte)0xde, (byte)0xac, (byte)0xd8,
+		(byte)0xa8, (byte)0xfa, (byte)0x76, (byte)0x3f, (byte)0xe3, (byte)0x9c, (byte)0x34, (byte)0x3f, (byte)0xf9, (byte)0xdc, (byte)0xbb, (byte)0xc7, (byte)0xc7, (byte)0x0b, (byte)0x4f, (byte)0x1d,
+		(byte)0x8a, (byte)0x51, (byte)0xe0, (byte)0x4b, (byte)0xcd, (byte)0xb4, (byte)0x59, (byte)0x31, (byte)0xc8, (byte)0x9f, (byte)0x7e, (byte)0xc9, (byte)0xd9, (byte)0x78, (byte)0x73, (byte)0x64,
+		(byte)0xea, (byte)0xc5, (byte)0xac, (byte)0x83, (byte)0x34, (byte)0xd3, (byte)0xeb, (byte)0xc3, (byte)0xc5, (byte)0x81, (byte)0xa0, (byte)0xff, (byte)0xfa, (byte)0x13, (byte)0x63, (byte)0xeb,
+		(byte)0x17, (byte)0x0d, (byte)0xdd, (byte)0x51, (byte)0xb7, (byte)0xf0, (byte)0xda, (byte)0x49, (byte)0xd3, (byte)0x16, (byte)0x55, (byte)0x26, (byte)0x29, (byte)0xd4, (byte)0x68, (byte)0x9e,
+		(byte)0x2b, (byte)0x16, (byte)0xbe, (byte)0x58, (byte)0x7d, (byte)0x47, (byte)0xa1, (byte)0xfc, (byte)0x8f, (byte)0xf8, (byte)0xb8, (byte)0xd1, (byte)0x7a, (byte)0xd0, (byte)0x31, (byte)0xce,
+		(byte)0x45, (byte)0xcb, (byte)0x3a, (byte)0x8f, (byte)0x95, (byte)0x16, (byte)0x04, (byte)0x28, (byte)0xaf, (byte)0xd7, (byte)0xfb, (byte)0xca, (byte)0xbb, (byte)0x4b, (byte)0x40, (byte)0x7e
+	};
+
+
+	public static long hash64(byte[] aData, long aSeed)
+	{
+		return hash64(aData, 0, aData.length, aSeed);
+	}
+
+
+	public static long hash64(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		if (aLength <= 16)
+		{
+			return hash64_0to16(aData, aOffset, aLength, aSeed);
+		}
+		if (aLength <= 128)
+		{
+			return hash64_17to128(aData, aOffset, aLength, aSeed);
+		}
+		if (aLength <= MIDSIZE_MAX)
+		{
+			return hash64_129to240(aData, aOffset, aLength, aSeed);
+		}
+
+		byte[] secret = secret(aSeed);
+		long[] acc = initAccumulators();
+		hashLong(acc, aData, aOffset, aLength, secret);
+
+		return mergeAccumulators(acc, secret, SECRET_MERGEACCS_START, aLength * PRIME64_1);
+	}
+
+
+	/**
+	 * Returns the 64-bit hash of the remaining bytes of the buffer. Heap buffers are hashed from their backing array.
+	 */
+	public static long hash64(ByteBuffer aData, long aSeed)
+	{
+		if (aData.hasArray())
+		{
+			long h = hash64(aData.array(), aData.arrayOffset() + aData.position(), aData.remaining(), aSeed);
+			aData.position(aData.limit());
+			return h;
+		}
+
+		Hasher hasher = new Hasher(aSeed);
+		hasher.update(aData);
+		return hasher.finish64();
+	}
+
+
+	/**
+	 * Returns the 128-bit hash as four ints, the high 64 bits first.
+	 */
+	public static int[] hash128(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		if (aLength <= 16)
+		{
+			return hash128_0to16(aData, aOffset, aLength, aSeed);
+		}
+		if (aLength <= MIDSIZE_MAX)
+		{
+			return hash128_17to240(aData, aOffset, aLength, aSeed);
+		}
+
+		byte[] secret = secret(aSeed);
+		long[] acc = initAccumulators();
+		hashLong(acc, aData, aOffset, aLength, secret);
+
+		return finishLong128(acc, secret, aLength);
+	}
+
+
+	/**
+	 * Returns the 128-bit hash of the remaining bytes of the buffer. Heap buffers are hashed from their backing array.
+	 */
+	public static int[] hash128(ByteBuffer aData, long aSeed)
+	{
+		if (aData.hasArray())
+		{
+			int[] h = hash128(aData.array(), aData.arrayOffset() + aData.position(), aData.remaining(), aSeed);
+			aData.position(aData.limit());
+			return h;
+		}
+
+		Hasher hasher = new Hasher(aSeed);
+		hasher.update(aData);
+		return hasher.finish128();
+	}
+
+
+	private static long hash64_0to16(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		if (aLength > 8)
+		{
+			long bitflip1 = (getLong(SECRET, 24) ^ getLong(SECRET, 32)) + aSeed;
+			long bitflip2 = (getLong(SECRET, 40) ^ getLong(SECRET, 48)) - aSeed;
+			long lo = getLong(aData, aOffset) ^ bitflip1;
+			long hi = getLong(aData, aOffset + aLength - 8) ^ bitflip2;
+			long acc = aLength + Long.reverseBytes(lo) + hi + multiplyFold64(lo, hi);
+			return avalanche(acc);
+		}
+		if (aLength >= 4)
+		{
+			long seed = aSeed ^ ((long)Integer.reverseBytes((int)aSeed) << 32);
+			long input1 = getUnsignedInt(aData, aOffset);
+			long input2 = getUnsignedInt(aData, aOffset + aLength - 4);
+			long bitflip = (getLong(SECRET, 8) ^ getLong(SECRET, 16)) - seed;
+			return rrmxmx((input2 + (input1 << 32)) ^ bitflip, aLength);
+		}
+		if (aLength > 0)
+		{
+			long bitflip = (getUnsignedInt(SECRET, 0) ^ getUnsignedInt(SECRET, 4)) + aSeed;
+			return XXH64.avalanche((combine1to3(aData, aOffset, aLength) & 0xFFFFFFFFL) ^ bitflip);
+		}
+		return XXH64.avalanche(aSeed ^ getLong(SECRET, 56) ^ getLong(SECRET, 64));
+	}
+
+
+	private static long hash64_17to128(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		long acc = aLength * PRIME64_1;
+
+		if (aLength > 32)
+		{
+			if (aLength > 64)
+			{
+				if (aLength > 96)
+				{
+					acc += mix16(aData, aOffset + 48, 96, aSeed);
+					acc += mix16(aData, aOffset + aLength - 64, 112, aSeed);
+				}
+				acc += mix16(aData, aOffset + 32, 64, aSeed);
+				acc += mix16(aData, aOffset + aLength - 48, 80, aSeed);
+			}
+			acc += mix16(aData, aOffset + 16, 32, aSeed);
+			acc += mix16(aData, aOffset + aLength - 32, 48, aSeed);
+		}
+		acc += mix16(aData, aOffset, 0, aSeed);
+		acc += mix16(aData, aOffset + aLength - 16, 16, aSeed);
+
+		return avalanche(acc);
+	}
+
+
+	private static long hash64_129to240(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		int rounds = aLength / 16;
+		long acc = aLength * PRIME64_1;
+
+		for (int i = 0; i < 8; i++)
+		{
+			acc += mix16(aData, aOffset + 16 * i, 16 * i, aSeed);
+		}
+		acc = avalanche(acc);
+
+		for (int i = 8; i < rounds; i++)
+		{
+			acc += mix16(aData, aOffset + 16 * i, 16 * (i - 8) + MIDSIZE_START_OFFSET, aSeed);
+		}
+		acc += mix16(aData, aOffset + aLength - 16, 136 - MIDSIZE_LAST_OFFSET, aSeed);
+
+		return avalanche(acc);
+	}
+
+
+	private static int[] hash128_0to16(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		if (aLength > 8)
+		{
+			long bitflipl = (getLong(SECRET, 32) ^ getLong(SECRET, 40)) - aSeed;
+			long bitfliph = (getLong(SECRET, 48) ^ getLong(SECRET, 56)) + aSeed;
+			long inputLo = getLong(aData, aOffset);
+			long inputHi = getLong(aData, aOffset + aLength - 8);
+
+			long x = inputLo ^ inputHi ^ bitflipl;
+			long mlo = x * PRIME64_1;
+			long mhi = Math.unsignedMultiplyHigh(x, PRIME64_1);
+
+			mlo += (long)(aLength - 1) << 54;
+			inputHi ^= bitfliph;
+			mhi += inputHi + (inputHi & 0xFFFFFFFFL) * (PRIME32_2 - 1);
+			mlo ^= Long.reverseBytes(mhi);
+
+			long lo = mlo * PRIME64_2;
+			long hi = Math.unsignedMultiplyHigh(mlo, PRIME64_2) + mhi * PRIME64_2;
+
+			return toInts(avalanche(lo), avalanche(hi));
+		}
+		if (aLength >= 4)
+		{
+			long seed = aSeed ^ ((long)Integer.reverseBytes((int)aSeed) << 32);
+			long inputLo = getUnsignedInt(aData, aOffset);
+			long inputHi = getUnsignedInt(aData, aOffset + aLength - 4);
+			long bitflip = (getLong(SECRET, 16) ^ getLong(SECRET, 24)) + seed;
+			long keyed = (inputLo + (inputHi << 32)) ^ bitflip;
+
+			long multiplier = PRIME64_1 + ((long)aLength << 2);
+			long lo = keyed * multiplier;
+			long hi = Math.unsignedMultiplyHigh(keyed, multiplier);
+
+			hi += lo << 1;
+			lo ^= hi >>> 3;
+			lo ^= lo >>> 35;
+			lo *= PRIME_MX2;
+			lo ^= lo >>> 28;
+
+			return toInts(lo, avalanche(hi));
+		}
+		if (aLength > 0)
+		{
+			int combinedl = combine1to3(aData, aOffset, aLength);
+			int combinedh = Integer.rotateLeft(Integer.reverseBytes(combinedl), 13);
+			long bitflipl = (getUnsignedInt(SECRET, 0) ^ getUnsignedInt(SECRET, 4)) + aSeed;
+			long bitfliph = (getUnsignedInt(SECRET, 8) ^ getUnsignedInt(SECRET, 12)) - aSeed;
+
+			return toInts(XXH64.avalanche((combinedl & 0xFFFFFFFFL) ^ bitflipl), XXH64.avalanche((combinedh & 0xFFFFFFFFL) ^ bitfliph));
+		}
+		return toInts(XXH64.avalanche(aSeed ^ getLong(SECRET, 64) ^ getLong(SECRET, 72)), XXH64.avalanche(aSeed ^ getLong(SECRET, 80) ^ getLong(SECRET, 88)));
+	}
+
+
+	private static int[] hash128_17to240(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		long[] acc = {aLength * PRIME64_1, 0};
+
+		if (aLength <= 128)
+		{
+			if (aLength > 32)
+			{
+				if (aLength > 64)
+				{
+					if (aLength > 96)
+					{
+						mix32(acc, aData, aOffset + 48, aOffset + aLength - 64, 96, aSeed);
+					}
+					mix32(acc, aData, aOffset + 32, aOffset + aLength - 48, 64, aSeed);
+				}
+				mix32(acc, aData, aOffset + 16, aOffset + aLength - 32, 32, aSeed);
+			}
+			mix32(acc, aData, aOffset, aOffset + aLength - 16, 0, aSeed);
+		}
+		else
+		{
+			int rounds = aLength / 32;
+
+			for (int i = 0; i < 4; i++)
+			{
+				mix32(acc, aData, aOffset + 32 * i, aOffset + 32 * i + 16, 32 * i, aSeed);
+			}
+			acc[0] = avalanche(acc[0]);
+			acc[1] = avalanche(acc[1]);
+
+			for (int i = 4; i < rounds; i++)
+			{
+				mix32(acc, aData, aOffset + 32 * i, aOffset + 32 * i + 16, MIDSIZE_START_OFFSET + 32 * (i - 4), aSeed);
+			}
+			mix32(acc, aData, aOffset + aLength - 16, aOffset + aLength - 32, 136 - MIDSIZE_LAST_OFFSET - 16, -aSeed);
+		}
+
+		long lo = acc[0] + acc[1];
+		long hi = acc[0] * PRIME64_1 + acc[1] * PRIME64_4 + (aLength - aSeed) * PRIME64_2;
+
+		return toInts(avalanche(lo), -avalanche(hi));
+	}
+
+
+	private static int[] finishLong128(long[] aAcc, byte[] aSecret, long aLength)
+	{
+		long lo = mergeAccumulators(aAcc, aSecret, SECRET_MERGEACCS_START, aLength * PRIME64_1);
+		long hi = mergeAccumulators(aAcc, aSecret, SECRET_SIZE - STRIPE_LEN - SECRET_MERGEACCS_START, ~(aLength * PRIME64_2));
+
+		return toInts(lo, hi);
+	}
+
+
+	/**
+	 * Packs the first, middle and last byte of a 1 to 3 byte input with the length.
+	 */
+	private static int combine1to3(byte[] aData, int aOffset, int aLength)
+	{
+		int c1 = aData[aOffset] & 0xff;
+		int c2 = aData[aOffset + (aLength >> 1)] & 0xff;
+		int c3 = aData[aOffset + aLength - 1] & 0xff;
+
+		return (c1 << 16) | (c2 << 24) | c3 | (aLength << 8);
+	}
+
+
+	private static long mix16(byte[] aData, int aOffset, int aSecretOffset, long aSeed)
+	{
+		long lo = getLong(aData, aOffset);
+		long hi = getLong(aData, aOffset + 8);
+
+		return multiplyFold64(lo ^ (getLong(SECRET, aSecretOffset) + aSeed), hi ^ (getLong(SECRET, aSecretOffset + 8) - aSeed));
+	}
+
+
+	private static void mix32(long[] aAcc, byte[] aData, int aOffset1, int aOffset2, int aSecretOffset, long aSeed)
+	{
+		aAcc[0] += mix16(aData, aOffset1, aSecretOffset, aSeed);
+		aAcc[0] ^= getLong(aData, aOffset2) + getLong(aData, aOffset2 + 8);
+		aAcc[1] += mix16(aData, aOffset2, aSecretOffset + 16, aSeed);
+		aAcc[1] ^= getLong(aData, aOffset1) + getLong(aData, aOffset1 + 8);
+	}
+
+
+	/**
+	 * Returns the default secret when the seed is zero, otherwise a secret with the seed added to and subtracted from alternating words.
+	 */
+	private static byte[] secret(long aSeed)
+	{
+		if (aSeed == 0)
+		{
+			return SECRET;
+		}
+
+		byte[] secret = new byte[SECRET_SIZE];
+		for (int i = 0; i < SECRET_SIZE; i += 16)
+		{
+			LONG.set(secret, i, getLong(SECRET, i) + aSeed);
+			LONG.set(secret, i + 8, getLong(SECRET, i + 8) - aSeed);
+		}
+		return secret;
+	}
+
+
+	private static long[] initAccumulators()
+	{
+		return new long[]
+		{
+			PRIME32_3, PRIME64_1, PRIME64_2, PRIME64_3, PRIME64_4, PRIME32_2, PRIME64_5, PRIME32_1
+		};
+	}
+
+
+	private static void hashLong(long[] aAcc, byte[] aData, int aOffset, int aLength, byte[] aSecret)
+	{
+		int blocks = (aLength - 1) / BLOCK_LEN;
+
+		for (int i = 0; i < blocks; i++)
+		{
+			accumulate(aAcc, aData, aOffset + i * BLOCK_LEN, aSecret, 0, STRIPES_PER_BLOCK);
+			scramble(aAcc, aSecret);
+		}
+
+		int stripes = ((aLength - 1) - BLOCK_LEN * blocks) / STRIPE_LEN;
+		accumulate(aAcc, aData, aOffset + blocks * BLOCK_LEN, aSecret, 0, stripes);
+		accumulate(aAcc, aData, aOffset + aLength - STRIPE_LEN, aSecret, SECRET_SIZE - STRIPE_LEN - SECRET_LASTACC_START, 1);
+	}
+
+
+	/**
+	 * Accumulates consecutive stripes, the secret offset advances eight bytes per stripe.
+	 */
+	private static void accumulate(long[] aAcc, byte[] aData, int aOffset, byte[] aSecret, int aSecretOffset, int aStripes)
+	{
+		long a0 = aAcc[0];
+		long a1 = aAcc[1];
+		long a2 = aAcc[2];
+		long a3 = aAcc[3];
+		long a4 = aAcc[4];
+		long a5 = aAcc[5];
+		long a6 = aAcc[6];
+		long a7 = aAcc[7];
+
+		for (int i = 0; i < aStripes; i++, aOffset += STRIPE_LEN, aSecretOffset += 8)
+		{
+			long d0 = getLong(aData, aOffset);
+			long d1 = getLong(aData, aOffset + 8);
+			long d2 = getLong(aData, aOffset + 16);
+			long d3 = getLong(aData, aOffset + 24);
+			long d4 = getLong(aData, aOffset + 32);
+			long d5 = getLong(aData, aOffset + 40);
+			long d6 = getLong(aData, aOffset + 48);
+			long d7 = getLong(aData, aOffset + 56);
+
+			long k0 = d0 ^ getLong(aSecret, aSecretOffset);
+			long k1 = d1 ^ getLong(aSecret, aSecretOffset + 8);
+			long k2 = d2 ^ getLong(aSecret, aSecretOffset + 16);
+			long k3 = d3 ^ getLong(aSecret, aSecretOffset + 24);
+			long k4 = d4 ^ getLong(aSecret, aSecretOffset + 32);
+			long k5 = d5 ^ getLong(aSecret, aSecretOffset + 40);
+			long k6 = d6 ^ getLong(aSecret, aSecretOffset + 48);
+			long k7 = d7 ^ getLong(aSecret, aSecretOffset + 56);
+
+			a0 += d1 + (k0 & 0xFFFFFFFFL) * (k0 >>> 32);
+			a1 += d0 + (k1 & 0xFFFFFFFFL) * (k1 >>> 32);
+			a2 += d3 + (k2 & 0xFFFFFFFFL) * (k2 >>> 32);
+			a3 += d2 + (k3 & 0xFFFFFFFFL) * (k3 >>> 32);
+			a4 += d5 + (k4 & 0xFFFFFFFFL) * (k4 >>> 32);
+			a5 += d4 + (k5 & 0xFFFFFFFFL) * (k5 >>> 32);
+			a6 += d7 + (k6 & 0xFFFFFFFFL) * (k6 >>> 32);
+			a7 += d6 + (k7 & 0xFFFFFFFFL) * (k7 >>> 32);
+		}
+
+		aAcc[0] = a0;
+		aAcc[1] = a1;
+		aAcc[2] = a2;
+		aAcc[3] = a3;
+		aAcc[4] = a4;
+		aAcc[5] = a5;
+		aAcc[6] = a6;
+		aAcc[7] = a7;
+	}
+
+
+	private static void scramble(long[] aAcc, byte[] aSecret)
+	{
+		for (int i = 0; i < 8; i++)
+		{
+			long a = aAcc[i];
+			a ^= a >>> 47;
+			a ^= getLong(aSecret, SECRET_SIZE - STRIPE_LEN + 8 * i);
+			aAcc[i] = a * PRIME32_1;
+		}
+	}
+
+
+	private static long mergeAccumulators(long[] aAcc, byte[] aSecret, int aSecretOffset, long aStart)
+	{
+		long result = aStart;
+
+		for (int i = 0; i < 4; i++)
+		{
+			result += multiplyFold64(aAcc[2 * i] ^ getLong(aSecret, aSecretOffset + 16 * i), aAcc[2 * i + 1] ^ getLong(aSecret, aSecretOffset + 16 * i + 8));
+		}
+
+		return avalanche(result);
+	}
+
+
+	/**
+	 * Returns the low and high 64 bits of the unsigned 128-bit product xored together.
+	 */
+	private static long multiplyFold64(long aA, long aB)
+	{
+		return aA * aB ^ Math.unsignedMultiplyHigh(aA, aB);
+	}
+
+
+	private static long avalanche(long aHash)
+	{
+		long h = aHash;
+		h ^= h >>> 37;
+		h *= PRIME_MX1;
+		return h ^ (h >>> 32);
+	}
+
+
+	private static long rrmxmx(long aHash, int aLength)
+	{
+		long h = aHash;
+		h ^= Long.rotateLeft(h, 49) ^ Long.rotateLeft(h, 24);
+		h *= PRIME_MX2;
+		h ^= (h >>> 35) + aLength;
+		h *= PRIME_MX2;
+		return h ^ (h >>> 28);
+	}
+
+
+	private static int[] toInts(long aLow, long aHigh)
+	{
+		return new int[]{(int)(aHigh >>> 32), (int)aHigh, (int)(aLow >>> 32), (int)aLow};
+	}
+
+
+	private static long getLong(byte[] aBuffer, int aOffset)
+	{
+		return (long)LONG.get(aBuffer, aOffset);
+	}
+
+
+	private static long getUnsignedInt(byte[] aBuffer, int aOffset)
+	{
+		return (int)INT.get(aBuffer, aOffset) & 0xFFFFFFFFL;
+	}
+
+
+	/**
+	 * Incremental XXH3 producing the same values as hash64 and hash128 over the concatenated input. Up to 256 bytes are buffered, whole
+	 * buffers of stripes are consumed and inputs of more than a buffer are consumed straight from the input array. Finishing does not
+	 * change the state, more input can follow.
+	 */
+	public static final class Hasher
+	{
+		private final long mSeed;
+		private final byte[] mSecret;
+		private final long[] mAcc;
+		private final byte[] mBuffer;
+		private int mBufferLength;
+		private int mStripesSoFar;
+		private long mLength;
+		private byte[] mTransfer;
+
+
+		public Hasher(long aSeed)
+		{
+			mSeed = aSeed;
+			mSecret = secret(aSeed);
+			mAcc = new long[8];
+			mBuffer = new byte[BUFFER_SIZE];
+
+			reset();
+		}
+
+
+		public void reset()
+		{
+			System.arraycopy(initAccumulators(), 0, mAcc, 0, 8);
+			mBufferLength = 0;
+			mStripesSoFar = 0;
+			mLength = 0;
+		}
+
+
+		public void update(byte aInput)
+		{
+			if (mBufferLength == BUFFER_SIZE)
+			{
+				mStripesSoFar = consumeStripes(mAcc, mStripesSoFar, mBuffer, 0, BUFFER_SIZE / STRIPE_LEN, mSecret);
+				mBufferLength = 0;
+			}
+
+			mBuffer[mBufferLength++] = aInput;
+			mLength++;
+		}
+
+
+		/**
+		 * The last input byte is always kept in the buffer, the final stripe is accumulated when finishing.
+		 */
+		public void update(byte[] aInput, int aOffset, int aLength)
+		{
+			mLength += aLength;
+
+			if (aLength <= BUFFER_SIZE - mBufferLength)
+			{
+				System.arraycopy(aInput, aOffset, mBuffer, mBufferLength, aLength);
+				mBufferLength += aLength;
+				return;
+			}
+
+			if (mBufferLength > 0)
+			{
+				int length = BUFFER_SIZE - mBufferLength;
+
+				System.arraycopy(aInput, aOffset, mBuffer, mBufferLength, length);
+
+				aOffset += length;
+				aLength -= length;
+
+				mStripesSoFar = consumeStripes(mAcc, mStripesSoFar, mBuffer, 0, BUFFER_SIZE / STRIPE_LEN, mSecret);
+				mBufferLength = 0;
+			}
+
+			if (aLength > BUFFER_SIZE)
+			{
+				int length = (aLength - 1) / BUFFER_SIZE * BUFFER_SIZE;
+
+				mStripesSoFar = consumeStripes(mAcc, mStripesSoFar, aInput, aOffset, length / STRIPE_LEN, mSecret);
+
+				aOffset += length;
+				aLength -= length;
+
+				// the final stripe may reach back into consumed input
+				System.arraycopy(aInput, aOffset - STRIPE_LEN, mBuffer, BUFFER_SIZE - STRIPE_LEN, STRIPE_LEN);
+			}
+
+			System.arraycopy(aInput, aOffset, mBuffer, 0, aLength);
+			mBufferLength = aLength;
+		}
+
+
+		/**
+		 * Heap buffers are hashed from their backing array, direct buffers are copied in chunks.
+		 */
+		public void update(ByteBuffer aInput)
+		{
+			if (aInput.hasArray())
+			{
+				update(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+				aInput.position(aInput.limit());
+				return;
+			}
+
+			if (mTransfer == null)
+			{
+				mTransfer = new byte[4 * BLOCK_LEN];
+			}
+
+			while (aInput.hasRemaining())
+			{
+				int length = Math.min(aInput.remaining(), mTransfer.length);
+				aInput.get(mTransfer, 0, length);
+				update(mTransfer, 0, length);
+			}
+		}
+
+
+		/**
+		 * Returns the 64-bit hash of the input so far.
+		 */
+		public long finish64()
+		{
+			if (mLength <= MIDSIZE_MAX)
+			{
+				return hash64(mBuffer, 0, (int)mLength, mSeed);
+			}
+
+			return mergeAccumulators(finishAccumulators(), mSecret, SECRET_MERGEACCS_START, mLength * PRIME64_1);
+		}
+
+
+		/**
+		 * Returns the 128-bit hash of the input so far as four ints, the high 64 bits first.
+		 */
+		public int[] finish128()
+		{
+			if (mLength <= MIDSIZE_MAX)
+			{
+				return hash128(mBuffer, 0, (int)mLength, mSeed);
+			}
+
+			return finishLong128(finishAccumulators(), mSecret, mLength);
+		}
+
+
+		/**
+		 * Returns a copy of the accumulators with the buffered stripes and the final stripe accumulated.
+		 */
+		private long[] finishAccumulators()
+		{
+			long[] acc = mAcc.clone();
+
+			if (mBufferLength >= STRIPE_LEN)
+			{
+				consumeStripes(acc, mStripesSoFar, mBuffer, 0, (mBufferLength - 1) / STRIPE_LEN, mSecret);
+				accumulate(acc, mBuffer, mBufferLength - STRIPE_LEN, mSecret, SECRET_SIZE - STRIPE_LEN - SECRET_LASTACC_START, 1);
+			}
+			else
+			{
+				byte[] stripe = new byte[STRIPE_LEN];
+				int catchup = STRIPE_LEN - mBufferLength;
+				System.arraycopy(mBuffer, BUFFER_SIZE - catchup, stripe, 0, catchup);
+				System.arraycopy(mBuffer, 0, stripe, catchup, mBufferLength);
+				accumulate(acc, stripe, 0, mSecret, SECRET_SIZE - STRIPE_LEN - SECRET_LASTACC_START, 1);
+			}
+
+			return acc;
+		}
+
+
+		/**
+		 * Accumulates stripes, scrambling the accumulators after each completed block. Returns the number of stripes of the current
+		 * block.
+		 */
+		private static int consumeStripes(long[] aAcc, int aStripesSoFar, byte[] aData, int aOffset, int aStripes, byte[] aSecret)
+		{
+			while (aStripes > 0)
+			{
+				int stripes = Math.min(aStripes, STRIPES_PER_BLOCK - aStripesSoFar);
+
+				accumulate(aAcc, aData, aOffset, aSecret, 8 * aStripesSoFar, stripes);
+
+				aOffset += STRIPE_LEN * stripes;
+				aStripes -= stripes;
+				aStripesSoFar += stripes;
+
+				if (aStripesSoFar == STRIPES_PER_BLOCK)
+				{
+					scramble(aAcc, aSecret);
+					aStripesSoFar = 0;
+				}
+			}
+
+			return aStripesSoFar;
+		}
+	}
+
+
+	static final class Checksum implements Checksum128
+	{
+		private Hasher mHasher;
+
+
+		@Override
+		public void reset(long aSeed)
+		{
+			if (mHasher == null || mHasher.mSeed != aSeed)
+			{
+				mHasher = new Hasher(aSeed);
+			}
+			else
+			{
+				mHasher.reset();
+			}
+		}
+
+
+		@Override
+		public void updateBlock(byte[] aBuffer, int aOffset)
+		{
+			mHasher.update(aBuffer, aOffset, 16);
+		}
+
+
+		@Override
+		public void finish(int[] aOutput, int aOutputOffset)
+		{
+			System.arraycopy(mHasher.finish128(), 0, aOutput, aOutputOffset, 4);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * The XXH64 non-cryptographic hash by Yann Collet, producing the same values as the reference implementation.
+ *
+ * <pre>
+ * long hash = XXH64.hash64(data, 0, data.length, seed);
+ *
+ * XXH64.Hasher hasher = new XXH64.Hasher(seed);
+ * hasher.update(header, 0, header.length);
+ * hasher.update(payload);
+ * long hash = hasher.finish();
+ * </pre>
+ */
+public final class XXH64
+{
+	private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	final static long PRIME64_1 = 0x9E3779B185EBCA87L;
+	final static long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	final static long PRIME64_3 = 0x165667B19E3779F9L;
+	final static long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	final static long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+
+	public static long hash64(byte[] aData, long aSeed)
+	{
+		return hash64(aData, 0, aData.length, aSeed);
+	}
+
+
+	public static long hash64(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		int end = aOffset + aLength;
+		long h;
+
+		if (aLength >= 32)
+		{
+			long v1 = aSeed + PRIME64_1 + PRIME64_2;
+			long v2 = aSeed + PRIME64_2;
+			long v3 = aSeed;
+			long v4 = aSeed - PRIME64_1;
+
+			for (int limit = end - 32; aOffset <= limit; aOffset += 32)
+			{
+				v1 = round(v1, (long)LONG.get(aData, aOffset));
+				v2 = round(v2, (long)LONG.get(aData, aOffset + 8));
+				v3 = round(v3, (long)LONG.get(aData, aOffset + 16));
+				v4 = round(v4, (long)LONG.get(aData, aOffset + 24));
+			}
+
+			h = mergeAccumulators(v1, v2, v3, v4);
+		}
+		else
+		{
+			h = aSeed + PRIME64_5;
+		}
+
+		return finish(h + aLength, aData, aOffset, end - aOffset);
+	}
+
+
+	/**
+	 * Returns the hash of the remaining bytes of the buffer. Heap buffers are hashed from their backing array.
+	 */
+	public static long hash64(ByteBuffer aData, long aSeed)
+	{
+		if (aData.hasArray())
+		{
+			long h = hash64(aData.array(), aData.arrayOffset() + aData.position(), aData.remaining(), aSeed);
+			aData.position(aData.limit());
+			return h;
+		}
+
+		Hasher hasher = new Hasher(aSeed);
+		hasher.update(aData);
+		return hasher.finish();
+	}
+
+
+	private static long round(long aAcc, long aInput)
+	{
+		aAcc += aInput * PRIME64_2;
+		aAcc = Long.rotateLeft(aAcc, 31);
+		return aAcc * PRIME64_1;
+	}
+
+
+	private static long mergeRound(long aAcc, long aValue)
+	{
+		aAcc ^= round(0, aValue);
+		return aAcc * PRIME64_1 + PRIME64_4;
+	}
+
+
+	private static long mergeAccumulators(long aV1, long aV2, long aV3, long aV4)
+	{
+		long h = Long.rotateLeft(aV1, 1) + Long.rotateLeft(aV2, 7) + Long.rotateLeft(aV3, 12) + Long.rotateLeft(aV4, 18);
+		h = mergeRound(h, aV1);
+		h = mergeRound(h, aV2);
+		h = mergeRound(h, aV3);
+		return mergeRound(h, aV4);
+	}
+
+
+	/**
+	 * Mixes the final 0 to 31 bytes and avalanches the hash.
+	 */
+	private static long finish(long aHash, byte[] aData, int aOffset, int aLength)
+	{
+		long h = aHash;
+
+		for (; aLength >= 8; aOffset += 8, aLength -= 8)
+		{
+			h ^= round(0, (long)LONG.get(aData, aOffset));
+			h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+		}
+
+		if (aLength >= 4)
+		{
+			h ^= ((int)INT.get(aData, aOffset) & 0xFFFFFFFFL) * PRIME64_1;
+			h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+			aOffset += 4;
+			aLength -= 4;
+		}
+
+		for (; aLength > 0; aOffset++, aLength--)
+		{
+			h ^= (aData[aOffset] & 0xFFL) * PRIME64_5;
+			h = Long.rotateLeft(h, 11) * PRIME64_1;
+		}
+
+		return avalanche(h);
+	}
+
+
+	static long avalanche(long aHash)
+	{
+		long h = aHash;
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+
+	/**
+	 * Incremental XXH64 producing the same value as hash64 over the concatenated input. Whole 32 byte stripes are consumed straight
+	 * from the input, a partial stripe is buffered. Finishing does not change the state, more input can follow.
+	 */
+	public static final class Hasher
+	{
+		private final long mSeed;
+		private final byte[] mBuffer;
+		private int mBufferLength;
+		private long mV1;
+		private long mV2;
+		private long mV3;
+		private long mV4;
+		private long mLength;
+
+
+		public Hasher(long aSeed)
+		{
+			mSeed = aSeed;
+			mBuffer = new byte[32];
+
+			reset();
+		}
+
+
+		public void reset()
+		{
+			mV1 = mSeed + PRIME64_1 + PRIME64_2;
+			mV2 = mSeed + PRIME64_2;
+			mV3 = mSeed;
+			mV4 = mSeed - PRIME64_1;
+			mLength = 0;
+			mBufferLength = 0;
+		}
+
+
+		public void update(byte aInput)
+		{
+			mBuffer[mBufferLength++] = aInput;
+			mLength++;
+
+			if (mBufferLength == 32)
+			{
+				stripes(mBuffer, 0, 32);
+				mBufferLength = 0;
+			}
+		}
+
+
+		public void update(byte[] aInput, int aOffset, int aLength)
+		{
+			mLength += aLength;
+
+			if (mBufferLength > 0)
+			{
+				int length = Math.min(aLength, 32 - mBufferLength);
+
+				System.arraycopy(aInput, aOffset, mBuffer, mBufferLength, length);
+
+				mBufferLength += length;
+				aOffset += length;
+				aLength -= length;
+
+				if (mBufferLength < 32)
+				{
+					return;
+				}
+
+				stripes(mBuffer, 0, 32);
+				mBufferLength = 0;
+			}
+
+			int length = aLength & ~31;
+
+			stripes(aInput, aOffset, length);
+
+			mBufferLength = aLength - length;
+			System.arraycopy(aInput, aOffset + length, mBuffer, 0, mBufferLength);
+		}
+
+
+		/**
+		 * Heap buffers are hashed from their backing array, direct buffers are copied in stripes.
+		 */
+		public void update(ByteBuffer aInput)
+		{
+			if (aInput.hasArray())
+			{
+				update(aInput.array(), aInput.arrayOffset() + aInput.position(), aInput.remaining());
+				aInput.position(aInput.limit());
+				return;
+			}
+
+			while (aInput.hasRemaining())
+			{
+				int length = Math.min(aInput.remaining(), 32 - mBufferLength);
+
+				aInput.get(mBuffer, mBufferLength, length);
+
+				mBufferLength += length;
+				mLength += length;
+
+				if (mBufferLength == 32)
+				{
+					stripes(mBuffer, 0, 32);
+					mBufferLength = 0;
+				}
+			}
+		}
+
+
+		/**
+		 * Returns the hash of the input so far.
+		 */
+		public long finish()
+		{
+			long h = mLength >= 32 ? mergeAccumulators(mV1, mV2, mV3, mV4) : mSeed + PRIME64_5;
+
+			return XXH64.finish(h + mLength, mBuffer, 0, mBufferLength);
+		}
+
+
+		private void stripes(byte[] aInput, int aOffset, int aLength)
+		{
+			long v1 = mV1;
+			long v2 = mV2;
+			long v3 = mV3;
+			long v4 = mV4;
+
+			for (int end = aOffset + aLength; aOffset < end; aOffset += 32)
+			{
+				v1 = round(v1, (long)LONG.get(aInput, aOffset));
+				v2 = round(v2, (long)LONG.get(aInput, aOffset + 8));
+				v3 = round(v3, (long)LONG.get(aInput, aOffset + 16));
+				v4 = round(v4, (long)LONG.get(aInput, aOffset + 24));
+			}
+
+			mV1 = v1;
+			mV2 = v2;
+			mV3 = v3;
+			mV4 = v4;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package org.terifan.raccoon.security.provider;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+
+/**
+ * Parameters of the data unit ciphers: the block IV, the number of the first data unit and the size of a data unit.
+ */
+public final class DataUnitParameterSpec implements AlgorithmParameterSpec
+{
+	private final byte[] mBlockIV;
+	private final long mStartDataUnitNo;
+	private final int mUnitSize;
+
+
+	/**
+	 * @param aBlockIV 16 bytes
+	 * @param aStartDataUnitNo the sequential number of the first data unit
+	 * @param aUnitSize size of a data unit, a multiple of 16
+	 */
+	public DataUnitParameterSpec(byte[] aBlockIV, long aStartDataUnitNo, int aUnitSize)
+	{
+		if (aBlockIV.length != 16)
+		{
+			throw new IllegalArgumentException("Block IV must be 16 bytes: " + aBlockIV.length);
+		}
+		if (aUnitSize <= 0 || (aUnitSize % 16) != 0)
+		{
+			throw new IllegalArgumentException("Unit size must be a positive multiple of 16: " + aUnitSize);
+		}
+
+		mBlockIV = aBlockIV.clone();
+		mStartDataUnitNo = aStartDataUnitNo;
+		mUnitSize = aUnitSize;
+	}
+
+
+	public byte[] getBlockIV()
+	{
+		return mBlockIV.clone();
+	}
+
+
+	public long getStartDataUnitNo()
+	{
+		return mStartDataUnitNo;
+	}
+
+
+	public int getUnitSize()
+	{
+		return mUnitSize;
+	}
+}
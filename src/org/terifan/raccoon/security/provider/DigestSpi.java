@@ -0,0 +1,154 @@
+package org.terifan.raccoon.security.provider;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.MessageDigestSpi;
+import java.util.function.Supplier;
+import org.terifan.raccoon.security.messagedigest.SHA3;
+
+
+/**
+ * Message digest engine delegating to the digests of this library.
+ */
+public abstract class DigestSpi extends MessageDigestSpi implements Cloneable
+{
+	private MessageDigest mDigest;
+
+
+	protected DigestSpi(Supplier<MessageDigest> aFactory)
+	{
+		mDigest = aFactory.get();
+	}
+
+
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return mDigest.getDigestLength();
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		mDigest.update(aInput);
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		mDigest.update(aInput, aOffset, aLength);
+	}
+
+
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		mDigest.update(aInput);
+	}
+
+
+	@Override
+	protected byte[] engineDigest()
+	{
+		return mDigest.digest();
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		mDigest.reset();
+	}
+
+
+	@Override
+	public Object clone() throws CloneNotSupportedException
+	{
+		DigestSpi clone = (DigestSpi)super.clone();
+		clone.mDigest = (MessageDigest)mDigest.clone();
+		return clone;
+	}
+
+
+	public static final class SHA1 extends DigestSpi
+	{
+		public SHA1()
+		{
+			super(org.terifan.raccoon.security.messagedigest.SHA1::new);
+		}
+	}
+
+
+	public static final class SHA256 extends DigestSpi
+	{
+		public SHA256()
+		{
+			super(org.terifan.raccoon.security.messagedigest.SHA256::new);
+		}
+	}
+
+
+	public static final class SHA384 extends DigestSpi
+	{
+		public SHA384()
+		{
+			super(org.terifan.raccoon.security.messagedigest.SHA384::new);
+		}
+	}
+
+
+	public static final class SHA512 extends DigestSpi
+	{
+		public SHA512()
+		{
+			super(org.terifan.raccoon.security.messagedigest.SHA512::new);
+		}
+	}
+
+
+	public static final class SHA3_224 extends DigestSpi
+	{
+		public SHA3_224()
+		{
+			super(() -> new SHA3(224));
+		}
+	}
+
+
+	public static final class SHA3_256 extends DigestSpi
+	{
+		public SHA3_256()
+		{
+			super(() -> new SHA3(256));
+		}
+	}
+
+
+	public static final class SHA3_384 extends DigestSpi
+	{
+		public SHA3_384()
+		{
+			super(() -> new SHA3(384));
+		}
+	}
+
+
+	public static final class SHA3_512 extends DigestSpi
+	{
+		public SHA3_512()
+		{
+			super(() -> new SHA3(512));
+		}
+	}
+
+
+	public static final class Skein512 extends DigestSpi
+	{
+		public Skein512()
+		{
+			super(org.terifan.raccoon.security.messagedigest.Skein512::new);
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package org.terifan.raccoon.security.provider;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import javax.crypto.MacSpi;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.SHA3;
+
+
+/**
+ * HMAC engine. Keyed HMAC instances are copied from the key schedule pool of the provider, so initializing with a recently used key
+ * doesn't hash the key pads again.
+ */
+public abstract class HMACSpi extends MacSpi implements Cloneable
+{
+	private final String mAlgorithm;
+	private final Supplier<MessageDigest> mFactory;
+	private final int mBlockLength;
+	private KeySchedulePool mKeySchedules;
+	private HMAC mPrototype;
+	private HMAC mMac;
+
+
+	/**
+	 * @param aBlockLength the block length (rate) of the digest in bytes
+	 */
+	protected HMACSpi(String aAlgorithm, Supplier<MessageDigest> aFactory, int aBlockLength)
+	{
+		mAlgorithm = aAlgorithm;
+		mFactory = aFactory;
+		mBlockLength = aBlockLength;
+	}
+
+
+	@Override
+	protected int engineGetMacLength()
+	{
+		return mMac == null ? mFactory.get().getDigestLength() : mMac.getDigestLength();
+	}
+
+
+	@Override
+	protected void engineInit(Key aKey, AlgorithmParameterSpec aParams) throws InvalidKeyException, InvalidAlgorithmParameterException
+	{
+		if (aParams != null)
+		{
+			throw new InvalidAlgorithmParameterException("HMAC doesn't take parameters.");
+		}
+
+		byte[] key = aKey.getEncoded();
+
+		if (key == null || !"RAW".equalsIgnoreCase(aKey.getFormat()))
+		{
+			throw new InvalidKeyException("Key must be in RAW format.");
+		}
+
+		try
+		{
+			if (mKeySchedules == null)
+			{
+				mPrototype = new HMAC(mFactory.get(), key, mBlockLength);
+			}
+			else
+			{
+				mPrototype = mKeySchedules.get(mAlgorithm, key, aKey2 -> new HMAC(mFactory.get(), aKey2, mBlockLength), HMACSpi::copy);
+			}
+			mMac = copy(mPrototype);
+		}
+		finally
+		{
+			Arrays.fill(key, (byte)0);
+		}
+	}
+
+
+	@Override
+	protected void engineUpdate(byte aInput)
+	{
+		mMac.update(aInput);
+	}
+
+
+	@Override
+	protected void engineUpdate(byte[] aInput, int aOffset, int aLength)
+	{
+		mMac.update(aInput, aOffset, aLength);
+	}
+
+
+	@Override
+	protected void engineUpdate(ByteBuffer aInput)
+	{
+		mMac.update(aInput);
+	}
+
+
+	@Override
+	protected byte[] engineDoFinal()
+	{
+		return mMac.digest();
+	}
+
+
+	@Override
+	protected void engineReset()
+	{
+		if (mPrototype != null)
+		{
+			mMac = copy(mPrototype);
+		}
+	}
+
+
+	@Override
+	public Object clone() throws CloneNotSupportedException
+	{
+		HMACSpi clone = (HMACSpi)super.clone();
+		if (mMac != null)
+		{
+			clone.mMac = mMac.clone();
+		}
+		return clone;
+	}
+
+
+	/**
+	 * Called by the provider when the engine is created, engines without a pool key every instance.
+	 */
+	void setKeySchedulePool(KeySchedulePool aKeySchedules)
+	{
+		mKeySchedules = aKeySchedules;
+	}
+
+
+	private static HMAC copy(HMAC aPrototype)
+	{
+		try
+		{
+			synchronized (aPrototype)
+			{
+				return aPrototype.clone();
+			}
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	public static final class SHA1 extends HMACSpi
+	{
+		public SHA1()
+		{
+			super("HmacSHA1", org.terifan.raccoon.security.messagedigest.SHA1::new, 64);
+		}
+	}
+
+
+	public static final class SHA256 extends HMACSpi
+	{
+		public SHA256()
+		{
+			super("HmacSHA256", org.terifan.raccoon.security.messagedigest.SHA256::new, 64);
+		}
+	}
+
+
+	public static final class SHA384 extends HMACSpi
+	{
+		public SHA384()
+		{
+			super("HmacSHA384", org.terifan.raccoon.security.messagedigest.SHA384::new, 128);
+		}
+	}
+
+
+	public static final class SHA512 extends HMACSpi
+	{
+		public SHA512()
+		{
+			super("HmacSHA512", org.terifan.raccoon.security.messagedigest.SHA512::new, 128);
+		}
+	}
+
+
+	public static final class SHA3_224 extends HMACSpi
+	{
+		public SHA3_224()
+		{
+			super("HmacSHA3-224", () -> new SHA3(224), 144);
+		}
+	}
+
+
+	public static final class SHA3_256 extends HMACSpi
+	{
+		public SHA3_256()
+		{
+			super("HmacSHA3-256", () -> new SHA3(256), 136);
+		}
+	}
+
+
+	public static final class SHA3_384 extends HMACSpi
+	{
+		public SHA3_384()
+		{
+			super("HmacSHA3-384", () -> new SHA3(384), 104);
+		}
+	}
+
+
+	public static final class SHA3_512 extends HMACSpi
+	{
+		public SHA3_512()
+		{
+			super("HmacSHA3-512", () -> new SHA3(512), 72);
+		}
+	}
+
+
+	public static final class Skein512 extends HMACSpi
+	{
+		public Skein512()
+		{
+			super("HmacSkein-512", org.terifan.raccoon.security.messagedigest.Skein512::new, 64);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package org.terifan.raccoon.security.provider;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactorySpi;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.PBKDF2;
+import org.terifan.raccoon.security.messagedigest.SHA256;
+import org.terifan.raccoon.security.messagedigest.SHA512;
+
+
+/**
+ * Password based key derivation engines. Passwords are encoded as UTF-8 and derived keys are returned as RAW SecretKeySpec instances.
+ */
+public abstract class KeyFactorySpi extends SecretKeyFactorySpi
+{
+	private final String mAlgorithm;
+
+
+	protected KeyFactorySpi(String aAlgorithm)
+	{
+		mAlgorithm = aAlgorithm;
+	}
+
+
+	protected abstract byte[] derive(KeySpec aKeySpec) throws InvalidKeySpecException;
+
+
+	@Override
+	protected SecretKey engineGenerateSecret(KeySpec aKeySpec) throws InvalidKeySpecException
+	{
+		byte[] key = derive(aKeySpec);
+		try
+		{
+			return new SecretKeySpec(key, mAlgorithm);
+		}
+		finally
+		{
+			Arrays.fill(key, (byte)0);
+		}
+	}
+
+
+	@Override
+	protected KeySpec engineGetKeySpec(SecretKey aKey, Class<?> aKeySpec) throws InvalidKeySpecException
+	{
+		if (aKeySpec.isAssignableFrom(SecretKeySpec.class) && "RAW".equalsIgnoreCase(aKey.getFormat()))
+		{
+			byte[] key = aKey.getEncoded();
+			try
+			{
+				return new SecretKeySpec(key, aKey.getAlgorithm());
+			}
+			finally
+			{
+				Arrays.fill(key, (byte)0);
+			}
+		}
+
+		throw new InvalidKeySpecException("Unsupported key specification: " + aKeySpec.getName());
+	}
+
+
+	@Override
+	protected SecretKey engineTranslateKey(SecretKey aKey) throws InvalidKeyException
+	{
+		if (!mAlgorithm.equalsIgnoreCase(aKey.getAlgorithm()) || !"RAW".equalsIgnoreCase(aKey.getFormat()))
+		{
+			throw new InvalidKeyException("Unsupported key: " + aKey.getAlgorithm() + "/" + aKey.getFormat());
+		}
+
+		return aKey;
+	}
+
+
+	/**
+	 * Returns the UTF-8 encoding of the password.
+	 */
+	static byte[] encode(char[] aPassword)
+	{
+		ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(aPassword));
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		Arrays.fill(buffer.array(), (byte)0);
+		return bytes;
+	}
+
+
+	private static PBEKeySpec checkPBEKeySpec(KeySpec aKeySpec) throws InvalidKeySpecException
+	{
+		if (!(aKeySpec instanceof PBEKeySpec spec))
+		{
+			throw new InvalidKeySpecException("Unsupported key specification: " + (aKeySpec == null ? null : aKeySpec.getClass().getName()));
+		}
+		if (spec.getSalt() == null || spec.getKeyLength() <= 0 || (spec.getKeyLength() & 7) != 0)
+		{
+			throw new InvalidKeySpecException("Salt and a key length in whole bytes are required.");
+		}
+		return spec;
+	}
+
+
+	/**
+	 * SCrypt accepting a SCryptKeySpec or a PBEKeySpec. The iteration count of a PBEKeySpec is used as cost parameter (N) with a block size
+	 * (r) of 8 and a parallelization (p) of 1.
+	 */
+	public static final class SCrypt extends KeyFactorySpi
+	{
+		public SCrypt()
+		{
+			super("SCrypt");
+		}
+
+
+		@Override
+		protected byte[] derive(KeySpec aKeySpec) throws InvalidKeySpecException
+		{
+			if (aKeySpec instanceof SCryptKeySpec spec)
+			{
+				char[] password = spec.getPassword();
+				try
+				{
+					return generate(password, spec.getSalt(), spec.getCost(), spec.getBlockSize(), spec.getParallelization(), spec.getKeyLength());
+				}
+				finally
+				{
+					Arrays.fill(password, '\0');
+				}
+			}
+
+			PBEKeySpec spec = checkPBEKeySpec(aKeySpec);
+			int cost = spec.getIterationCount();
+
+			if (cost < 2 || (cost & (cost - 1)) != 0)
+			{
+				throw new InvalidKeySpecException("Cost must be a power of two greater than one: " + cost);
+			}
+
+			char[] password = spec.getPassword();
+			try
+			{
+				return generate(password, spec.getSalt(), cost, 8, 1, spec.getKeyLength());
+			}
+			finally
+			{
+				Arrays.fill(password, '\0');
+			}
+		}
+
+
+		private static byte[] generate(char[] aPassword, byte[] aSalt, int aCost, int aBlockSize, int aParallelization, int aKeyLength)
+		{
+			byte[] password = encode(aPassword);
+			try
+			{
+				return org.terifan.raccoon.security.messagedigest.SCrypt.generate(new HMAC(new SHA256(), password), aSalt, aCost, aBlockSize, aParallelization, 1, aKeyLength / 8);
+			}
+			finally
+			{
+				Arrays.fill(password, (byte)0);
+			}
+		}
+	}
+
+
+	public static final class PBKDF2WithHmacSHA256 extends PBKDF2Base
+	{
+		public PBKDF2WithHmacSHA256()
+		{
+			super("PBKDF2WithHmacSHA256", SHA256::new, 64);
+		}
+	}
+
+
+	public static final class PBKDF2WithHmacSHA512 extends PBKDF2Base
+	{
+		public PBKDF2WithHmacSHA512()
+		{
+			super("PBKDF2WithHmacSHA512", SHA512::new, 128);
+		}
+	}
+
+
+	private static abstract class PBKDF2Base extends KeyFactorySpi
+	{
+		private final Supplier<MessageDigest> mFactory;
+		private final int mBlockLength;
+
+
+		PBKDF2Base(String aAlgorithm, Supplier<MessageDigest> aFactory, int aBlockLength)
+		{
+			super(aAlgorithm);
+			mFactory = aFactory;
+			mBlockLength = aBlockLength;
+		}
+
+
+		@Override
+		protected byte[] derive(KeySpec aKeySpec) throws InvalidKeySpecException
+		{
+			PBEKeySpec spec = checkPBEKeySpec(aKeySpec);
+
+			if (spec.getIterationCount() < 1)
+			{
+				throw new InvalidKeySpecException("Iteration count must be positive: " + spec.getIterationCount());
+			}
+
+			char[] chars = spec.getPassword();
+			try
+			{
+				byte[] password = encode(chars);
+				try
+				{
+					return PBKDF2.generateKeyBytes(new HMAC(mFactory.get(), password, mBlockLength), spec.getSalt(), spec.getIterationCount(), spec.getKeyLength() / 8);
+				}
+				finally
+				{
+					Arrays.fill(password, (byte)0);
+				}
+			}
+			finally
+			{
+				Arrays.fill(chars, '\0');
+			}
+		}
+	}
+}
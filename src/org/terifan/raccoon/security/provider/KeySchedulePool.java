@@ -0,0 +1,123 @@
+package org.terifan.raccoon.security.provider;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.SHA256;
+
+
+/**
+ * A bounded least recently used pool of keyed engine instances owned by one provider. Initializing a block cipher or an HMAC is
+ * expensive compared to processing a small message, engines initialized with a key used before take a keyed instance from the pool.
+ * <p>
+ * The pool retains key material: key schedules and HMAC key pads stay on the heap until they are evicted and collected, or erased by
+ * clear. Entries are identified by the algorithm and an HMAC-SHA256 of the key under a random key chosen when the pool is created, so a
+ * key can't be confirmed from the identifiers alone.
+ * <p>
+ * Block ciphers are stateless after initialization and are shared with the engines. Other instances are copied before they leave the
+ * pool, the pooled instance is never used by an engine.
+ */
+final class KeySchedulePool
+{
+	private final static int CAPACITY = 256;
+
+	private final LinkedHashMap<String, Object> mPool;
+	private final HMAC mIdentifier;
+
+
+	KeySchedulePool()
+	{
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+
+		mIdentifier = new HMAC(new SHA256(), key);
+		Arrays.fill(key, (byte)0);
+
+		mPool = new LinkedHashMap<>(CAPACITY, 0.75f, true)
+		{
+			private final static long serialVersionUID = 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Object> aEldest)
+			{
+				return size() > CAPACITY;
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a keyed instance, creating and pooling it if the key hasn't been used recently.
+	 *
+	 * @param aFactory creates a keyed instance
+	 * @param aCopy copies the pooled instance before it's returned, the identity function shares it
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T get(String aAlgorithm, byte[] aKey, Function<byte[], T> aFactory, UnaryOperator<T> aCopy)
+	{
+		String id;
+
+		synchronized (this)
+		{
+			id = aAlgorithm + ":" + HexFormat.of().formatHex(mIdentifier.digest(aKey));
+
+			Object instance = mPool.get(id);
+			if (instance != null)
+			{
+				return aCopy.apply((T)instance);
+			}
+		}
+
+		T instance = aFactory.apply(aKey);
+
+		synchronized (this)
+		{
+			Object pooled = mPool.putIfAbsent(id, instance);
+
+			if (pooled == null)
+			{
+				return aCopy.apply(instance);
+			}
+
+			// another thread pooled the same key first
+			erase(instance);
+
+			return aCopy.apply((T)pooled);
+		}
+	}
+
+
+	/**
+	 * Removes all instances from the pool and erases their key material. Shared block ciphers are erased as well, engines using them must
+	 * be initialized again.
+	 */
+	synchronized void clear()
+	{
+		for (Object instance : mPool.values())
+		{
+			erase(instance);
+		}
+
+		mPool.clear();
+	}
+
+
+	private static void erase(Object aInstance)
+	{
+		if (aInstance instanceof BlockCipher cipher)
+		{
+			cipher.engineReset();
+		}
+		else if (aInstance instanceof HMAC mac)
+		{
+			mac.reset();
+		}
+	}
+}
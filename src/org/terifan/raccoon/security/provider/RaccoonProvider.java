@@ -0,0 +1,120 @@
+package org.terifan.raccoon.security.provider;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.Map;
+
+
+/**
+ * A JCA provider exposing the block ciphers, cipher modes, message digests, HMACs and key derivation functions of this library.
+ *
+ * <pre>
+ * Provider provider = new RaccoonProvider();
+ * Cipher cipher = Cipher.getInstance("Twofish/XTS/NoPadding", provider);
+ * cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cipherAndTweakKey, "Twofish"), new DataUnitParameterSpec(blockIV, 0, 4096));
+ * </pre>
+ *
+ * Ciphers:
+ * <ul>
+ * <li>AES, Twofish, Serpent and Kuznechik in the modes XTS (default), CBC, PCBC, CTR and ELEPHANT without padding. The key holds the
+ * cipher key followed by the tweak key of the same length. Parameters are given with DataUnitParameterSpec or an IvParameterSpec.</li>
+ * </ul>
+ * Message digests: SHA-1, SHA-256, SHA-384, SHA-512, SHA3-224, SHA3-256, SHA3-384, SHA3-512 and Skein-512.
+ * <p>
+ * Macs: HMAC with each of the message digests, e.g. HmacSHA256, HmacSHA3-256 and HmacSkein-512.
+ * <p>
+ * Secret key factories: SCrypt, PBKDF2WithHmacSHA256 and PBKDF2WithHmacSHA512.
+ * <p>
+ * Cipher and Mac engines share a pool of keyed instances owned by the provider, so initializing with a recently used key is cheap. The
+ * pool retains key schedules and HMAC key pads of up to 256 keys until clearKeySchedules is called.
+ */
+public final class RaccoonProvider extends Provider
+{
+	private final static long serialVersionUID = 1L;
+
+	public final static String NAME = "Raccoon";
+
+	private final static String[] CIPHERS = {"AES", "Twofish", "Serpent", "Kuznechik"};
+	private final static String[][] DIGESTS =
+	{
+		{"SHA-1", "SHA1"},
+		{"SHA-256", "SHA256"},
+		{"SHA-384", "SHA384"},
+		{"SHA-512", "SHA512"},
+		{"SHA3-224", "SHA3_224"},
+		{"SHA3-256", "SHA3_256"},
+		{"SHA3-384", "SHA3_384"},
+		{"SHA3-512", "SHA3_512"},
+		{"Skein-512", "Skein512"}
+	};
+
+	private final transient KeySchedulePool mKeySchedules;
+
+
+	public RaccoonProvider()
+	{
+		super(NAME, "1.0", "Raccoon provider (" + String.join(", ", CIPHERS) + " in XTS, CBC, PCBC, CTR and Elephant modes; SHA-2, SHA-3 and Skein digests and HMACs; SCrypt and PBKDF2)");
+
+		mKeySchedules = new KeySchedulePool();
+
+		String prefix = getClass().getPackageName() + ".";
+
+		for (String cipher : CIPHERS)
+		{
+			putService(new KeyedService("Cipher", cipher, prefix + "UnitCipherSpi$" + cipher, Map.of("SupportedModes", "XTS|CBC|PCBC|CTR|ELEPHANT", "SupportedPaddings", "NOPADDING")));
+		}
+
+		for (String[] digest : DIGESTS)
+		{
+			put("MessageDigest." + digest[0], prefix + "DigestSpi$" + digest[1]);
+			putService(new KeyedService("Mac", "Hmac" + digest[0].replace("SHA-", "SHA"), prefix + "HMACSpi$" + digest[1], null));
+		}
+
+		put("SecretKeyFactory.SCrypt", prefix + "KeyFactorySpi$SCrypt");
+		put("SecretKeyFactory.PBKDF2WithHmacSHA256", prefix + "KeyFactorySpi$PBKDF2WithHmacSHA256");
+		put("SecretKeyFactory.PBKDF2WithHmacSHA512", prefix + "KeyFactorySpi$PBKDF2WithHmacSHA512");
+	}
+
+
+	/**
+	 * Removes all keyed instances from the pool of this provider and erases their key material. Cipher engines share the pooled key
+	 * schedules and must be initialized again afterwards, Mac engines hold their own copy.
+	 */
+	public void clearKeySchedules()
+	{
+		if (mKeySchedules != null)
+		{
+			mKeySchedules.clear();
+		}
+	}
+
+
+	/**
+	 * Hands the key schedule pool of the provider to the engines it creates.
+	 */
+	private final class KeyedService extends Service
+	{
+		KeyedService(String aType, String aAlgorithm, String aClassName, Map<String, String> aAttributes)
+		{
+			super(RaccoonProvider.this, aType, aAlgorithm, aClassName, null, aAttributes);
+		}
+
+
+		@Override
+		public Object newInstance(Object aConstructorParameter) throws NoSuchAlgorithmException
+		{
+			Object engine = super.newInstance(aConstructorParameter);
+
+			if (engine instanceof UnitCipherSpi cipher)
+			{
+				cipher.setKeySchedulePool(mKeySchedules);
+			}
+			else if (engine instanceof HMACSpi mac)
+			{
+				mac.setKeySchedulePool(mKeySchedules);
+			}
+
+			return engine;
+		}
+	}
+}
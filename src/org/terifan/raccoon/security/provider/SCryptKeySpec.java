@@ -0,0 +1,92 @@
+package org.terifan.raccoon.security.provider;
+
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+
+
+/**
+ * Password and cost parameters of the SCrypt key derivation function.
+ */
+public final class SCryptKeySpec implements KeySpec
+{
+	private final char[] mPassword;
+	private final byte[] mSalt;
+	private final int mCost;
+	private final int mBlockSize;
+	private final int mParallelization;
+	private final int mKeyLength;
+
+
+	/**
+	 * @param aCost the CPU/memory cost (N), a power of two
+	 * @param aBlockSize the block size (r)
+	 * @param aParallelization the parallelization (p)
+	 * @param aKeyLength length of the derived key in bits
+	 */
+	public SCryptKeySpec(char[] aPassword, byte[] aSalt, int aCost, int aBlockSize, int aParallelization, int aKeyLength)
+	{
+		if (aCost < 2 || (aCost & (aCost - 1)) != 0)
+		{
+			throw new IllegalArgumentException("Cost must be a power of two greater than one: " + aCost);
+		}
+		if (aBlockSize < 1 || aParallelization < 1 || aKeyLength < 8 || (aKeyLength & 7) != 0)
+		{
+			throw new IllegalArgumentException("Illegal parameters: block size " + aBlockSize + ", parallelization " + aParallelization + ", key length " + aKeyLength);
+		}
+
+		mPassword = aPassword.clone();
+		mSalt = aSalt.clone();
+		mCost = aCost;
+		mBlockSize = aBlockSize;
+		mParallelization = aParallelization;
+		mKeyLength = aKeyLength;
+	}
+
+
+	public char[] getPassword()
+	{
+		return mPassword.clone();
+	}
+
+
+	public byte[] getSalt()
+	{
+		return mSalt.clone();
+	}
+
+
+	public int getCost()
+	{
+		return mCost;
+	}
+
+
+	public int getBlockSize()
+	{
+		return mBlockSize;
+	}
+
+
+	public int getParallelization()
+	{
+		return mParallelization;
+	}
+
+
+	/**
+	 * Returns the length of the derived key in bits.
+	 */
+	public int getKeyLength()
+	{
+		return mKeyLength;
+	}
+
+
+	/**
+	 * Erases the password.
+	 */
+	public void clearPassword()
+	{
+		Arrays.fill(mPassword, '\0');
+	}
+}
@@ -0,0 +1,446 @@
+package org.terifan.raccoon.security.provider;
+
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.CBCCipherMode;
+import org.terifan.raccoon.security.cryptography.ciphermode.CTRCipherMode;
+import org.terifan.raccoon.security.cryptography.ciphermode.CipherMode;
+import org.terifan.raccoon.security.cryptography.ciphermode.ElephantCipherMode;
+import org.terifan.raccoon.security.cryptography.ciphermode.PCBCCipherMode;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+
+
+/**
+ * Cipher engine encrypting whole data units with a block cipher and a cipher mode. Input is processed as soon as a whole data unit is
+ * available, the total length must be a multiple of the unit size. ByteBuffers are copied straight to the output buffer and processed
+ * there, direct buffers are processed in place without temporary arrays when the mode supports it.
+ * <p>
+ * Keyed block ciphers are shared through the key schedule pool of the provider so initializing with a recently used key doesn't repeat
+ * the key schedule.
+ */
+public abstract class UnitCipherSpi extends CipherSpi
+{
+	private final static int DEFAULT_UNIT_SIZE = 4096;
+	private final static int BLOCK_SIZE = 16;
+
+	private final String mAlgorithm;
+	private final Supplier<BlockCipher> mFactory;
+	private KeySchedulePool mKeySchedules;
+	private CipherMode mCipherMode;
+	private UnitCipher mCipher;
+	private boolean mEncrypt;
+	private byte[] mBlockIV;
+	private long mStartDataUnitNo;
+	private long mDataUnitNo;
+	private int mUnitSize;
+	private byte[] mBuffer;
+	private int mBuffered;
+
+
+	protected UnitCipherSpi(String aAlgorithm, Supplier<BlockCipher> aFactory)
+	{
+		mAlgorithm = aAlgorithm;
+		mFactory = aFactory;
+		mCipherMode = new XTSCipherMode();
+	}
+
+
+	@Override
+	protected void engineSetMode(String aMode) throws NoSuchAlgorithmException
+	{
+		mCipherMode = switch (aMode.toUpperCase(Locale.ROOT))
+		{
+			case "XTS" -> new XTSCipherMode();
+			case "CBC" -> new CBCCipherMode();
+			case "PCBC" -> new PCBCCipherMode();
+			case "CTR" -> new CTRCipherMode();
+			case "ELEPHANT" -> new ElephantCipherMode();
+			default -> throw new NoSuchAlgorithmException("Unsupported mode: " + aMode);
+		};
+	}
+
+
+	@Override
+	protected void engineSetPadding(String aPadding) throws NoSuchPaddingException
+	{
+		if (!"NOPADDING".equalsIgnoreCase(aPadding))
+		{
+			throw new NoSuchPaddingException("Unsupported padding: " + aPadding);
+		}
+	}
+
+
+	@Override
+	protected int engineGetBlockSize()
+	{
+		return BLOCK_SIZE;
+	}
+
+
+	@Override
+	protected int engineGetOutputSize(int aInputLength)
+	{
+		return mBuffered + aInputLength;
+	}
+
+
+	@Override
+	protected byte[] engineGetIV()
+	{
+		return mBlockIV == null ? null : mBlockIV.clone();
+	}
+
+
+	@Override
+	protected AlgorithmParameters engineGetParameters()
+	{
+		return null;
+	}
+
+
+	@Override
+	protected void engineInit(int aOpmode, Key aKey, SecureRandom aRandom) throws InvalidKeyException
+	{
+		if (aOpmode == Cipher.DECRYPT_MODE || aOpmode == Cipher.UNWRAP_MODE)
+		{
+			throw new InvalidKeyException("Parameters are required for decryption.");
+		}
+
+		byte[] blockIV = new byte[16];
+		(aRandom == null ? new SecureRandom() : aRandom).nextBytes(blockIV);
+
+		init(aOpmode, aKey, blockIV, 0, DEFAULT_UNIT_SIZE);
+	}
+
+
+	@Override
+	protected void engineInit(int aOpmode, Key aKey, AlgorithmParameterSpec aParams, SecureRandom aRandom) throws InvalidKeyException, InvalidAlgorithmParameterException
+	{
+		if (aParams == null)
+		{
+			engineInit(aOpmode, aKey, aRandom);
+		}
+		else if (aParams instanceof DataUnitParameterSpec spec)
+		{
+			init(aOpmode, aKey, spec.getBlockIV(), spec.getStartDataUnitNo(), spec.getUnitSize());
+		}
+		else if (aParams instanceof IvParameterSpec spec && spec.getIV().length == 16)
+		{
+			init(aOpmode, aKey, spec.getIV(), 0, DEFAULT_UNIT_SIZE);
+		}
+		else
+		{
+			throw new InvalidAlgorithmParameterException("Expected DataUnitParameterSpec or a 16 byte IvParameterSpec.");
+		}
+	}
+
+
+	@Override
+	protected void engineInit(int aOpmode, Key aKey, AlgorithmParameters aParams, SecureRandom aRandom) throws InvalidKeyException, InvalidAlgorithmParameterException
+	{
+		if (aParams != null)
+		{
+			throw new InvalidAlgorithmParameterException("AlgorithmParameters are not supported, use DataUnitParameterSpec.");
+		}
+
+		engineInit(aOpmode, aKey, aRandom);
+	}
+
+
+	@Override
+	protected byte[] engineUpdate(byte[] aInput, int aInputOffset, int aInputLength)
+	{
+		byte[] output = new byte[(mBuffered + aInputLength) / mUnitSize * mUnitSize];
+		process(ByteBuffer.wrap(aInput, aInputOffset, aInputLength), ByteBuffer.wrap(output));
+		return output;
+	}
+
+
+	@Override
+	protected int engineUpdate(byte[] aInput, int aInputOffset, int aInputLength, byte[] aOutput, int aOutputOffset) throws ShortBufferException
+	{
+		if (aInput == aOutput && mBuffered > 0)
+		{
+			// buffered data shifts the output relative to the input
+			aInput = Arrays.copyOfRange(aInput, aInputOffset, aInputOffset + aInputLength);
+			aInputOffset = 0;
+		}
+
+		return engineUpdate(ByteBuffer.wrap(aInput, aInputOffset, aInputLength), ByteBuffer.wrap(aOutput, aOutputOffset, aOutput.length - aOutputOffset));
+	}
+
+
+	@Override
+	protected int engineUpdate(ByteBuffer aInput, ByteBuffer aOutput) throws ShortBufferException
+	{
+		int length = (mBuffered + aInput.remaining()) / mUnitSize * mUnitSize;
+
+		if (aOutput.remaining() < length)
+		{
+			throw new ShortBufferException("Output buffer too short: " + aOutput.remaining() + ", need " + length);
+		}
+
+		return process(aInput, aOutput);
+	}
+
+
+	@Override
+	protected byte[] engineDoFinal(byte[] aInput, int aInputOffset, int aInputLength) throws IllegalBlockSizeException, BadPaddingException
+	{
+		checkFinalLength(aInputLength);
+
+		byte[] output = engineUpdate(aInput, aInputOffset, aInputLength);
+		reset();
+		return output;
+	}
+
+
+	@Override
+	protected int engineDoFinal(byte[] aInput, int aInputOffset, int aInputLength, byte[] aOutput, int aOutputOffset) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException
+	{
+		checkFinalLength(aInputLength);
+
+		int length = engineUpdate(aInput, aInputOffset, aInputLength, aOutput, aOutputOffset);
+		reset();
+		return length;
+	}
+
+
+	@Override
+	protected int engineDoFinal(ByteBuffer aInput, ByteBuffer aOutput) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException
+	{
+		checkFinalLength(aInput.remaining());
+
+		int length = engineUpdate(aInput, aOutput);
+		reset();
+		return length;
+	}
+
+
+	private void init(int aOpmode, Key aKey, byte[] aBlockIV, long aStartDataUnitNo, int aUnitSize) throws InvalidKeyException
+	{
+		byte[] key = aKey.getEncoded();
+
+		if (key == null || !"RAW".equalsIgnoreCase(aKey.getFormat()))
+		{
+			throw new InvalidKeyException("Key must be in RAW format.");
+		}
+		if ((key.length & 1) != 0)
+		{
+			throw new InvalidKeyException("Key must hold a cipher key and a tweak key of the same length: " + key.length);
+		}
+
+		byte[] cipherKey = Arrays.copyOfRange(key, 0, key.length / 2);
+		byte[] tweakKey = Arrays.copyOfRange(key, key.length / 2, key.length);
+
+		try
+		{
+			BlockCipher cipher = keySchedule(cipherKey);
+			BlockCipher tweakCipher = keySchedule(tweakKey);
+
+			int[] blockIV = new int[4];
+			for (int i = 0; i < 4; i++)
+			{
+				blockIV[i] = ((aBlockIV[4 * i] & 255) << 24) + ((aBlockIV[4 * i + 1] & 255) << 16) + ((aBlockIV[4 * i + 2] & 255) << 8) + (aBlockIV[4 * i + 3] & 255);
+			}
+
+			mCipher = new UnitCipher(mCipherMode, cipher, tweakCipher, blockIV, aUnitSize);
+		}
+		catch (RuntimeException e)
+		{
+			throw new InvalidKeyException("Illegal key for " + mAlgorithm + ": " + e.getMessage(), e);
+		}
+		finally
+		{
+			Arrays.fill(key, (byte)0);
+			Arrays.fill(cipherKey, (byte)0);
+			Arrays.fill(tweakKey, (byte)0);
+		}
+
+		if (mBuffer != null)
+		{
+			Arrays.fill(mBuffer, (byte)0);
+		}
+
+		mEncrypt = aOpmode == Cipher.ENCRYPT_MODE || aOpmode == Cipher.WRAP_MODE;
+		mBlockIV = aBlockIV.clone();
+		mStartDataUnitNo = aStartDataUnitNo;
+		mDataUnitNo = aStartDataUnitNo;
+		mUnitSize = aUnitSize;
+		mBuffer = new byte[aUnitSize];
+		mBuffered = 0;
+	}
+
+
+	/**
+	 * Called by the provider when the engine is created, engines without a pool key every instance.
+	 */
+	void setKeySchedulePool(KeySchedulePool aKeySchedules)
+	{
+		mKeySchedules = aKeySchedules;
+	}
+
+
+	private BlockCipher keySchedule(byte[] aKey)
+	{
+		return mKeySchedules == null ? createCipher(aKey) : mKeySchedules.get(mAlgorithm, aKey, this::createCipher, UnaryOperator.identity());
+	}
+
+
+	private BlockCipher createCipher(byte[] aKey)
+	{
+		BlockCipher cipher = mFactory.get();
+		cipher.engineInit(new SecretKey(aKey));
+		return cipher;
+	}
+
+
+	/**
+	 * Processes all whole data units available and buffers the remaining input.
+	 */
+	private int process(ByteBuffer aInput, ByteBuffer aOutput)
+	{
+		if (mCipher == null)
+		{
+			throw new IllegalStateException("Cipher not initialized.");
+		}
+
+		int total = 0;
+
+		if (mBuffered > 0)
+		{
+			int length = Math.min(mUnitSize - mBuffered, aInput.remaining());
+			aInput.get(mBuffer, mBuffered, length);
+			mBuffered += length;
+
+			if (mBuffered < mUnitSize)
+			{
+				return 0;
+			}
+
+			transform(mBuffer, mUnitSize);
+			aOutput.put(mBuffer);
+			Arrays.fill(mBuffer, (byte)0);
+			mBuffered = 0;
+			total = mUnitSize;
+		}
+
+		int length = aInput.remaining() / mUnitSize * mUnitSize;
+
+		if (length > 0)
+		{
+			int offset = aOutput.position();
+			aOutput.put(aInput.slice(aInput.position(), length));
+			aInput.position(aInput.position() + length);
+			transform(aOutput, offset, length);
+			total += length;
+		}
+
+		mBuffered = aInput.remaining();
+		aInput.get(mBuffer, 0, mBuffered);
+
+		return total;
+	}
+
+
+	private void transform(byte[] aBuffer, int aLength)
+	{
+		if (mEncrypt)
+		{
+			mCipher.encrypt(aBuffer, 0, aLength, mDataUnitNo);
+		}
+		else
+		{
+			mCipher.decrypt(aBuffer, 0, aLength, mDataUnitNo);
+		}
+
+		mDataUnitNo += aLength / mUnitSize;
+	}
+
+
+	private void transform(ByteBuffer aBuffer, int aOffset, int aLength)
+	{
+		if (mEncrypt)
+		{
+			mCipher.encrypt(aBuffer, aOffset, aLength, mDataUnitNo);
+		}
+		else
+		{
+			mCipher.decrypt(aBuffer, aOffset, aLength, mDataUnitNo);
+		}
+
+		mDataUnitNo += aLength / mUnitSize;
+	}
+
+
+	private void checkFinalLength(int aInputLength) throws IllegalBlockSizeException
+	{
+		if (mCipher != null && ((mBuffered + aInputLength) % mUnitSize) != 0)
+		{
+			throw new IllegalBlockSizeException("Input length must be a multiple of the unit size " + mUnitSize + ": " + (mBuffered + aInputLength));
+		}
+	}
+
+
+	private void reset()
+	{
+		mDataUnitNo = mStartDataUnitNo;
+		mBuffered = 0;
+	}
+
+
+	public static final class AES extends UnitCipherSpi
+	{
+		public AES()
+		{
+			super("AES", org.terifan.raccoon.security.cryptography.AES::new);
+		}
+	}
+
+
+	public static final class Twofish extends UnitCipherSpi
+	{
+		public Twofish()
+		{
+			super("Twofish", org.terifan.raccoon.security.cryptography.Twofish::new);
+		}
+	}
+
+
+	public static final class Serpent extends UnitCipherSpi
+	{
+		public Serpent()
+		{
+			super("Serpent", org.terifan.raccoon.security.cryptography.Serpent::new);
+		}
+	}
+
+
+	public static final class Kuznechik extends UnitCipherSpi
+	{
+		public Kuznechik()
+		{
+			super("Kuznechik", org.terifan.raccoon.security.cryptography.Kuznechik::new);
+		}
+	}
+}
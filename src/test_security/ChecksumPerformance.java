@@ -7,6 +7,8 @@ import org.terifan.raccoon.security.messagedigest.MurmurHash3;
 import org.terifan.raccoon.security.messagedigest.SHA3;
 import org.terifan.raccoon.security.messagedigest.SHA512;
 import org.terifan.raccoon.security.messagedigest.Skein512;
+import org.terifan.raccoon.security.messagedigest.XXH3;
+import org.terifan.raccoon.security.messagedigest.XXH64;
 
 
 public class ChecksumPerformance
@@ -58,7 +60,15 @@ public class ChecksumPerformance
 				MessageDigest.getInstance("MD5").digest(data, 0, data.length);
 				t[8] += System.currentTimeMillis();
 
-				System.out.printf("%7d %7d %7d %7d %7d %7d %7d %7d %7d %n", t[0], t[1], t[2], t[3], t[4], t[5], t[6], t[7], t[8]);
+				t[9] -= System.currentTimeMillis();
+				XXH64.hash64(data, 0, data.length, 0xcafebabe);
+				t[9] += System.currentTimeMillis();
+
+				t[10] -= System.currentTimeMillis();
+				XXH3.hash128(data, 0, data.length, 0xcafebabe);
+				t[10] += System.currentTimeMillis();
+
+				System.out.printf("%7d %7d %7d %7d %7d %7d %7d %7d %7d %7d %7d %n", t[0], t[1], t[2], t[3], t[4], t[5], t[6], t[7], t[8], t[9], t[10]);
 			}
 		}
 		catch (Throwable e)
@@ -0,0 +1,75 @@
+package org.terifan.raccoon.security.cryptography;
+
+import java.util.HexFormat;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class KeyWrapNGTest
+{
+	@Test
+	public void testRFC3394Vector()
+	{
+		KeyWrap kw = new KeyWrap(new AES(new SecretKey(HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F"))));
+
+		byte[] wrapped = kw.wrap(new SecretKey(HexFormat.of().parseHex("00112233445566778899AABBCCDDEEFF")));
+
+		assertEquals(HexFormat.of().formatHex(wrapped), "1fa68b0a8112b447aef34bd8fb5a7b829d3e862371d2cfe5");
+		assertEquals(HexFormat.of().formatHex(kw.unwrap(wrapped).bytes()), "00112233445566778899aabbccddeeff");
+	}
+
+
+	@Test
+	public void testRFC5649Vectors()
+	{
+		KeyWrap kw = new KeyWrap(new AES(new SecretKey(HexFormat.of().parseHex("5840df6e29b02af1ab493b705bf16ea1ae8338f4dcc176a8"))));
+
+		byte[] wrapped1 = kw.wrapWithPadding(new SecretKey(HexFormat.of().parseHex("c37b7e6492584340bed12207808941155068f738")));
+		byte[] wrapped2 = kw.wrapWithPadding(new SecretKey(HexFormat.of().parseHex("466f7250617369")));
+
+		assertEquals(HexFormat.of().formatHex(wrapped1), "138bdeaa9b8fa7fc61f97742e72248ee5ae6ae5360d1ae6a5f54f373fa543b6a");
+		assertEquals(HexFormat.of().formatHex(wrapped2), "afbeb0f07dfbf5419200f2ccb50bb24f");
+
+		SecretKey[] keys = kw.unwrapWithPadding(new byte[][]{wrapped1, wrapped2});
+
+		assertEquals(HexFormat.of().formatHex(keys[0].bytes()), "c37b7e6492584340bed12207808941155068f738");
+		assertEquals(HexFormat.of().formatHex(keys[1].bytes()), "466f7250617369");
+	}
+
+
+	@Test
+	public void testBatchUnwrap()
+	{
+		Random rnd = new Random(1);
+		KeyWrap kw = new KeyWrap(new Twofish(new SecretKey(new byte[32])));
+
+		byte[][] keys = new byte[1000][];
+		byte[][] wrapped = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = new byte[i % 3 == 0 ? 16 : 32];
+			rnd.nextBytes(keys[i]);
+			wrapped[i] = kw.wrap(new SecretKey(keys[i]));
+		}
+
+		SecretKey[] unwrapped = kw.unwrap(wrapped);
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			assertEquals(unwrapped[i].bytes(), keys[i]);
+		}
+	}
+
+
+	@Test(expectedExceptions = InvalidKeyException.class)
+	public void testTamperedKey()
+	{
+		KeyWrap kw = new KeyWrap(new AES(new SecretKey(new byte[16])));
+
+		byte[] wrapped = kw.wrap(new SecretKey(new byte[32]));
+		wrapped[20] ^= 1;
+
+		kw.unwrap(wrapped);
+	}
+}
@@ -0,0 +1,132 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+import java.util.HexFormat;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.Twofish;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class GCMSIVNGTest
+{
+	@Test
+	public void testPolyval()
+	{
+		POLYVAL polyval = new POLYVAL(HexFormat.of().parseHex("25629347589242761d31f826ba4b757b"));
+		polyval.update(HexFormat.of().parseHex("4f4f95668c83dfb6401762bb2d01a262d1a24ddd2721d006bbe45f20d3c9f362"), 0, 32);
+
+		assertEquals(HexFormat.of().formatHex(polyval.digest()), "f7a3b47b846119fae5b7866cf5e5b77e");
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testVectors(String aKey, String aNonce, String aPlaintext, String aExpected)
+	{
+		GCMSIV siv = new GCMSIV(AES::new, new SecretKey(HexFormat.of().parseHex(aKey)));
+
+		byte[] nonce = HexFormat.of().parseHex(aNonce);
+		byte[] plaintext = HexFormat.of().parseHex(aPlaintext);
+
+		byte[] encrypted = siv.encrypt(nonce, null, plaintext);
+		byte[] decrypted = siv.decrypt(nonce, null, encrypted);
+
+		assertEquals(HexFormat.of().formatHex(encrypted), aExpected);
+		assertEquals(decrypted, plaintext);
+	}
+
+
+	@Test
+	public void testLargeBuffer()
+	{
+		Random rnd = new Random(1);
+		byte[] key = new byte[32];
+		byte[] nonce = new byte[12];
+		byte[] aad = new byte[1000];
+		byte[] plaintext = new byte[1024 * 1024 + 7];
+		rnd.nextBytes(key);
+		rnd.nextBytes(nonce);
+		rnd.nextBytes(aad);
+		rnd.nextBytes(plaintext);
+
+		GCMSIV siv = new GCMSIV(Twofish::new, new SecretKey(key));
+
+		byte[] encrypted = siv.encrypt(nonce, aad, plaintext);
+
+		assertEquals(siv.encrypt(nonce, aad, plaintext), encrypted);
+		assertEquals(siv.decrypt(nonce, aad, encrypted), plaintext);
+	}
+
+
+	@Test
+	public void testParallelMatchesSerial()
+	{
+		Random rnd = new Random(1);
+		byte[] key = new byte[32];
+		byte[] nonce = new byte[12];
+		byte[] aad = new byte[1000];
+		byte[] plaintext = new byte[1024 * 1024 + 1000 + 7];
+		rnd.nextBytes(key);
+		rnd.nextBytes(nonce);
+		rnd.nextBytes(aad);
+		rnd.nextBytes(plaintext);
+
+		GCMSIV serial = new GCMSIV(AES::new, new SecretKey(key), Integer.MAX_VALUE, Integer.MAX_VALUE);
+		GCMSIV parallel = new GCMSIV(AES::new, new SecretKey(key), 1, 1);
+
+		byte[] encrypted = serial.encrypt(nonce, aad, plaintext);
+
+		assertEquals(parallel.encrypt(nonce, aad, plaintext), encrypted);
+		assertEquals(parallel.decrypt(nonce, aad, encrypted), plaintext);
+	}
+
+
+	@Test
+	public void testPolyvalParallelMatchesSerial()
+	{
+		Random rnd = new Random(1);
+		byte[] key = new byte[16];
+		byte[] data = new byte[16 * 4096 * 5 + 16 * 37 + 9];
+		rnd.nextBytes(key);
+		rnd.nextBytes(data);
+
+		POLYVAL serial = new POLYVAL(key, Integer.MAX_VALUE);
+		serial.update(data, 3, data.length - 3);
+
+		POLYVAL parallel = new POLYVAL(key, 1);
+		parallel.update(data, 3, data.length - 3);
+
+		assertEquals(parallel.digest(), serial.digest());
+	}
+
+
+	@Test(expectedExceptions = InvalidTagException.class)
+	public void testTampered()
+	{
+		GCMSIV siv = new GCMSIV(AES::new, new SecretKey(new byte[16]));
+
+		byte[] nonce = new byte[12];
+		byte[] encrypted = siv.encrypt(nonce, "header".getBytes(), "message".getBytes());
+		encrypted[3] ^= 1;
+
+		siv.decrypt(nonce, "header".getBytes(), encrypted);
+	}
+
+
+	@DataProvider
+	private Object[][] vectors()
+	{
+		return new Object[][]
+		{
+			{
+				"01000000000000000000000000000000", "030000000000000000000000", "", "dc20e2d83f25705bb49e439eca56de25"
+			},
+			{
+				"01000000000000000000000000000000", "030000000000000000000000", "0100000000000000", "b5d839330ac7b786578782fff6013b815b287c22493a364c"
+			}
+		};
+	}
+}
@@ -0,0 +1,62 @@
+package org.terifan.raccoon.security.cryptography.aead;
+
+import java.util.HexFormat;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.Kuznechik;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class MGMNGTest
+{
+	@Test
+	public void testKuznechikVector()
+	{
+		MGM mgm = new MGM(new Kuznechik(new SecretKey(HexFormat.of().parseHex("8899AABBCCDDEEFF0011223344556677FEDCBA98765432100123456789ABCDEF"))));
+
+		byte[] nonce = HexFormat.of().parseHex("1122334455667700FFEEDDCCBBAA9988");
+		byte[] aad = HexFormat.of().parseHex("0202020202020202010101010101010104040404040404040303030303030303EA0505050505050505");
+		byte[] plaintext = HexFormat.of().parseHex("1122334455667700FFEEDDCCBBAA998800112233445566778899AABBCCEEFF0A112233445566778899AABBCCEEFF0A002233445566778899AABBCCEEFF0A0011AABBCC");
+
+		byte[] encrypted = mgm.encrypt(nonce, aad, plaintext);
+
+		assertEquals(HexFormat.of().formatHex(encrypted), "a9757b8147956e9055b8a33de89f42fc8075d2212bf9fd5bd3f7069aadc16b39497ab15915a6ba85936b5d0ea9f6851cc60c14d4d3f883d0ab94420695c76deb2c7552cf5d656f40c34f5c46e8bb0e29fcdb4c");
+		assertEquals(mgm.decrypt(nonce, aad, encrypted), plaintext);
+	}
+
+
+	@Test
+	public void testRoundTrip()
+	{
+		Random rnd = new Random(1);
+		byte[] key = new byte[32];
+		byte[] nonce = new byte[16];
+		byte[] plaintext = new byte[100_003];
+		rnd.nextBytes(key);
+		rnd.nextBytes(nonce);
+		rnd.nextBytes(plaintext);
+		nonce[0] &= 0x7f;
+
+		MGM mgm = new MGM(new AES(new SecretKey(key)), 12);
+
+		byte[] encrypted = mgm.encrypt(nonce, null, plaintext);
+
+		assertEquals(encrypted.length, plaintext.length + 12);
+		assertEquals(mgm.decrypt(nonce, null, encrypted), plaintext);
+	}
+
+
+	@Test(expectedExceptions = InvalidTagException.class)
+	public void testTampered()
+	{
+		MGM mgm = new MGM(new Kuznechik(new SecretKey(new byte[32])));
+
+		byte[] nonce = new byte[16];
+		byte[] encrypted = mgm.encrypt(nonce, "header".getBytes(), "message".getBytes());
+
+		mgm.decrypt(nonce, "headeR".getBytes(), encrypted);
+	}
+}
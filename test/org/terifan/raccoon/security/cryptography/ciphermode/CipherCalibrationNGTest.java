@@ -0,0 +1,110 @@
+package org.terifan.raccoon.security.cryptography.ciphermode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.Twofish;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class CipherCalibrationNGTest
+{
+	@Test
+	public void testCalibrate() throws Exception
+	{
+		Path cache = Files.createTempFile("calibration", ".properties");
+		Files.delete(cache);
+
+		try
+		{
+			CipherCalibration calibration = new CipherCalibration(4096).setDuration(Duration.ofMillis(1), Duration.ofMillis(2));
+
+			CipherCalibration.Measurement best = calibration.calibrate(cache, CipherCalibration.minimumKeyBits(256));
+
+			assertEquals(calibration.getMeasurements().size(), 30);
+			assertEquals(best.keyBits(), 256);
+			assertTrue(Files.exists(cache));
+
+			for (int i = 1; i < calibration.getMeasurements().size(); i++)
+			{
+				assertTrue(calibration.getMeasurements().get(i - 1).megabytesPerSecond() >= calibration.getMeasurements().get(i).megabytesPerSecond());
+			}
+
+			CipherCalibration cached = new CipherCalibration(4096).setDuration(Duration.ofHours(1), Duration.ofHours(1));
+			CipherCalibration.Measurement twofish = cached.calibrate(cache, CipherCalibration.ciphers("Twofish").and(CipherCalibration.modes("XTS")));
+
+			assertEquals(cached.getMeasurements(), calibration.getMeasurements());
+			assertEquals(twofish.cipher(), "Twofish");
+
+			Random rnd = new Random(1);
+			byte[] key = new byte[twofish.keyBits() / 8];
+			rnd.nextBytes(key);
+			UnitCipher unitCipher = cached.createUnitCipher(twofish, new SecretKey(key), new SecretKey(key.clone()), rnd.ints(4).toArray());
+
+			byte[] plain = new byte[8192];
+			rnd.nextBytes(plain);
+			byte[] buffer = plain.clone();
+			unitCipher.encrypt(buffer, 0, buffer.length, 0);
+			assertNotEquals(buffer, plain);
+			unitCipher.decrypt(buffer, 0, buffer.length, 0);
+			assertEquals(buffer, plain);
+		}
+		finally
+		{
+			Files.deleteIfExists(cache);
+		}
+	}
+
+
+	@Test
+	public void testCacheInvalidatedByRegistration() throws Exception
+	{
+		Path cache = Files.createTempFile("calibration", ".properties");
+		Files.delete(cache);
+
+		try
+		{
+			CipherCalibration calibration = new CipherCalibration(512).setDuration(Duration.ZERO, Duration.ZERO).removeCipher("Twofish").removeCipher("Serpent").removeCipher("Kuznechik");
+			calibration.calibrate(cache, CipherCalibration.minimumKeyBits(128));
+
+			assertEquals(calibration.getMeasurements().size(), 9);
+
+			calibration.addCipher("Twofish", Twofish::new, 32);
+			CipherCalibration.Measurement twofish = calibration.calibrate(cache, CipherCalibration.ciphers("Twofish"));
+
+			assertEquals(calibration.getMeasurements().size(), 12);
+			assertEquals(twofish.cipher(), "Twofish");
+
+			calibration.addMode("XTS2", XTSCipherMode::new);
+			calibration.calibrate(cache, CipherCalibration.modes("XTS2"));
+
+			assertEquals(calibration.getMeasurements().size(), 16);
+
+			// another implementation under an existing name, e.g. an intrinsic AES
+			List<CipherCalibration.Measurement> measurements = calibration.getMeasurements();
+			calibration.calibrate(cache, CipherCalibration.modes("XTS2"));
+			assertEquals(calibration.getMeasurements(), measurements);
+
+			calibration.addCipher("AES", Twofish::new, 16, 24, 32);
+			calibration.calibrate(cache, CipherCalibration.modes("XTS2"));
+			assertNotEquals(calibration.getMeasurements(), measurements);
+		}
+		finally
+		{
+			Files.deleteIfExists(cache);
+		}
+	}
+
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testNoMatch()
+	{
+		CipherCalibration calibration = new CipherCalibration(512).setDuration(Duration.ZERO, Duration.ZERO).removeCipher("Twofish").removeCipher("Serpent").removeCipher("Kuznechik");
+		calibration.measure();
+		calibration.select(CipherCalibration.ciphers("Twofish"));
+	}
+}
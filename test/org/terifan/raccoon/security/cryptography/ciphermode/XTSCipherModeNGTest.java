@@ -1,9 +1,19 @@
 package org.terifan.raccoon.security.cryptography.ciphermode;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
 import org.terifan.raccoon.security.cryptography.AES;
 import org.terifan.raccoon.security.cryptography.Kuznechik;
+import org.terifan.raccoon.security.cryptography.SecretKey;
 import org.terifan.raccoon.security.cryptography.Serpent;
 import org.terifan.raccoon.security.cryptography.Twofish;
+import org.terifan.raccoon.security.messagedigest.Checksum128;
+import org.terifan.raccoon.security.messagedigest.Fletcher4;
+import org.terifan.raccoon.security.messagedigest.MurmurHash3;
+import org.terifan.raccoon.security.messagedigest.SHA3;
+import org.terifan.raccoon.security.messagedigest.XXH3;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 
@@ -24,4 +34,97 @@ public class XTSCipherModeNGTest extends CipherModeHelper
 		testBlockEncryption(new XTSCipherMode(), new Serpent(), new Serpent(), 24);
 		testBlockEncryption(new XTSCipherMode(), new Serpent(), new Serpent(), 32);
 	}
+
+
+	@Test
+	public void testDirectByteBuffer()
+	{
+		Random rnd = new Random(1);
+		AES cipher = new AES(new SecretKey(new byte[32]));
+		AES tweakCipher = new AES(new SecretKey(new byte[16]));
+		int[] blockIV = rnd.ints(4).toArray();
+
+		byte[] plain = new byte[512 * 10];
+		rnd.nextBytes(plain);
+
+		byte[] expected = plain.clone();
+		new XTSCipherMode().encrypt(expected, 0, expected.length, cipher, 77, 512, blockIV, tweakCipher);
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(plain.length + 32);
+		buffer.put(32, plain);
+		new XTSCipherMode().encrypt(buffer, 32, plain.length, cipher, 77, 512, blockIV, tweakCipher);
+
+		byte[] encrypted = new byte[plain.length];
+		buffer.get(32, encrypted);
+		assertEquals(encrypted, expected);
+
+		new XTSCipherMode().decrypt(buffer, 32, plain.length, cipher, 77, 512, blockIV, tweakCipher);
+
+		byte[] decrypted = new byte[plain.length];
+		buffer.get(32, decrypted);
+		assertEquals(decrypted, plain);
+	}
+
+
+	@Test(dataProvider = "checksums")
+	public void testFusedChecksum(String aName, Checksum128 aChecksum, boolean aChecksumPlaintext, CipherMode aCipherMode)
+	{
+		Random rnd = new Random(1);
+		AES cipher = new AES(new SecretKey(new byte[32]));
+		AES tweakCipher = new AES(new SecretKey(new byte[16]));
+		int[] blockIV = rnd.ints(4).toArray();
+		long seed = rnd.nextLong();
+
+		byte[] plain = new byte[4096 * 3];
+		rnd.nextBytes(plain);
+
+		byte[] encrypted = plain.clone();
+		aCipherMode.encrypt(encrypted, 0, encrypted.length, cipher, 9, 4096, blockIV, tweakCipher);
+
+		byte[] source = aChecksumPlaintext ? plain : encrypted;
+		int[] expected = new int[12];
+		for (int i = 0; i < 3; i++)
+		{
+			int[] checksum = switch (aName)
+			{
+				case "fletcher4" -> Fletcher4.hash128(source, 4096 * i, 4096, seed);
+				case "murmur3" -> MurmurHash3.hash128(source, 4096 * i, 4096, seed);
+				case "xxh3" -> XXH3.hash128(source, 4096 * i, 4096, seed);
+				default -> SHA3.hash128_256(source, 4096 * i, 4096, seed);
+			};
+			System.arraycopy(checksum, 0, expected, 4 * i, 4);
+		}
+
+		byte[] buffer = plain.clone();
+		int[] checksums = new int[12];
+		aCipherMode.encrypt(buffer, 0, buffer.length, cipher, 9, 4096, blockIV, tweakCipher, aChecksum, seed, aChecksumPlaintext, checksums);
+
+		assertEquals(buffer, encrypted);
+		assertEquals(checksums, expected);
+
+		checksums = new int[12];
+		aCipherMode.decrypt(buffer, 0, buffer.length, cipher, 9, 4096, blockIV, tweakCipher, aChecksum, seed, aChecksumPlaintext, checksums);
+
+		assertEquals(buffer, plain);
+		assertEquals(checksums, expected);
+	}
+
+
+	@DataProvider
+	private Object[][] checksums()
+	{
+		return new Object[][]
+		{
+			{"fletcher4", Checksum128.fletcher4(), false, new XTSCipherMode()},
+			{"fletcher4", Checksum128.fletcher4(), true, new XTSCipherMode()},
+			{"murmur3", Checksum128.murmurHash3(), false, new XTSCipherMode()},
+			{"murmur3", Checksum128.murmurHash3(), true, new XTSCipherMode()},
+			{"sha3", Checksum128.sha3(), false, new XTSCipherMode()},
+			{"sha3", Checksum128.sha3(), true, new XTSCipherMode()},
+			{"xxh3", Checksum128.xxh3(), false, new XTSCipherMode()},
+			{"xxh3", Checksum128.xxh3(), true, new XTSCipherMode()},
+			{"murmur3", Checksum128.murmurHash3(), false, new CBCCipherMode()},
+			{"murmur3", Checksum128.murmurHash3(), true, new CBCCipherMode()}
+		};
+	}
 }
@@ -0,0 +1,270 @@
+package org.terifan.raccoon.security.cryptography.dedup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.SHA256;
+import org.terifan.raccoon.security.messagedigest.SHA3;
+import org.terifan.raccoon.security.messagedigest.Skein512;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class DedupStoreNGTest
+{
+	@Test
+	public void testConvergentCipher()
+	{
+		ConvergentCipher cc = new ConvergentCipher(new SecretKey(new byte[32]), AES::new);
+
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		ConvergentCipher.Chunk a = cc.encrypt(data, 0, data.length);
+		ConvergentCipher.Chunk b = cc.encrypt(data.clone(), 0, data.length);
+
+		assertEquals(a.ciphertext(), b.ciphertext());
+		assertEquals(a.id(), b.id());
+		assertEquals(cc.decrypt(a.key(), a.ciphertext()), data);
+
+		ConvergentCipher other = new ConvergentCipher(new SecretKey(new byte[31]), AES::new);
+		assertNotEquals(other.encrypt(data, 0, data.length).id(), a.id());
+	}
+
+
+	@Test
+	public void testContentHashes()
+	{
+		SecretKey key = new SecretKey(new byte[32]);
+		ConvergentCipher sha = new ConvergentCipher(key, AES::new);
+		ConvergentCipher skein = new ConvergentCipher(key, AES::new, aKey -> new HMAC(new Skein512(), aKey), Skein512::new);
+		ConvergentCipher sha3 = new ConvergentCipher(key, AES::new, aKey -> new HMAC(new SHA3(256), aKey, 136), () -> new SHA3(256));
+
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		ConvergentCipher.Chunk a = sha.encrypt(data, 0, data.length);
+		ConvergentCipher.Chunk b = skein.encrypt(data, 0, data.length);
+		ConvergentCipher.Chunk c = sha3.encrypt(data, 0, data.length);
+
+		assertEquals(b.key().length, 32);
+		assertEquals(b.id().length, 32);
+		assertNotEquals(b.key(), a.key());
+		assertNotEquals(c.key(), a.key());
+		assertNotEquals(c.id(), b.id());
+		assertEquals(skein.id(b.ciphertext()), b.id());
+		assertEquals(skein.decrypt(b.key(), b.ciphertext()), data);
+		assertEquals(sha3.decrypt(c.key(), c.ciphertext()), data);
+	}
+
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testShortIdHash()
+	{
+		new ConvergentCipher(new SecretKey(new byte[32]), AES::new, aKey -> new HMAC(new Skein512(), aKey), () -> new SHA3(224));
+	}
+
+
+	@Test(expectedExceptions = InvalidTagException.class)
+	public void testTamperedChunk()
+	{
+		ConvergentCipher cc = new ConvergentCipher(new SecretKey(new byte[32]), AES::new);
+
+		ConvergentCipher.Chunk chunk = cc.encrypt(new byte[100], 0, 100);
+		chunk.ciphertext()[50] ^= 1;
+
+		cc.decrypt(chunk.key(), chunk.ciphertext());
+	}
+
+
+	@Test
+	public void testIndex()
+	{
+		DedupIndex index = new DedupIndex(16);
+		Random rnd = new Random(1);
+		byte[][] ids = new byte[100_000][32];
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			rnd.nextBytes(ids[i]);
+			assertEquals(index.putIfAbsent(ids[i], i), -1);
+		}
+
+		assertEquals(index.size(), ids.length);
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			assertEquals(index.get(ids[i]), i);
+			assertEquals(index.putIfAbsent(ids[i], 0), i);
+		}
+
+		assertEquals(index.get(new byte[32]), -1);
+	}
+
+
+	@Test
+	public void testDeduplication() throws IOException
+	{
+		Path path = Files.createTempFile("dedup", ".bin");
+		try
+		{
+			ConvergentCipher cc = new ConvergentCipher(new SecretKey(new byte[32]), AES::new);
+			Random rnd = new Random(1);
+
+			byte[] image = new byte[1_000_000];
+			rnd.nextBytes(image);
+			byte[] modified = image.clone();
+			modified[500_000] ^= 1;
+
+			List<DedupStore.ChunkReference> first;
+			List<DedupStore.ChunkReference> second;
+
+			try (DedupStore store = new DedupStore(path, cc, 10_000))
+			{
+				first = store.write(new ByteArrayInputStream(image));
+				second = store.write(new ByteArrayInputStream(modified));
+
+				assertEquals(first.size(), 100);
+				assertEquals(store.getChunksWritten(), 200);
+				assertEquals(store.getChunksStored(), 101);
+				assertEquals(read(store, second), modified);
+			}
+
+			try (DedupStore store = new DedupStore(path, cc, 10_000))
+			{
+				assertEquals(read(store, first), image);
+
+				store.write(new ByteArrayInputStream(image));
+				assertEquals(store.getChunksStored(), 0);
+				assertTrue(store.contains(first.get(99).id()));
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	@Test
+	public void testIncompleteRecordRemoved() throws IOException
+	{
+		Path path = Files.createTempFile("dedup", ".bin");
+		try
+		{
+			ConvergentCipher cc = new ConvergentCipher(new SecretKey(new byte[32]), AES::new);
+			Random rnd = new Random(1);
+
+			byte[] image = new byte[100_000];
+			rnd.nextBytes(image);
+			byte[] other = new byte[5_000];
+			rnd.nextBytes(other);
+
+			List<DedupStore.ChunkReference> first;
+			long size;
+
+			try (DedupStore store = new DedupStore(path, cc, 10_000))
+			{
+				first = store.write(new ByteArrayInputStream(image));
+				size = store.size();
+			}
+
+			byte[] complete = Files.readAllBytes(path);
+
+			// a header cut short, a record cut short, a negative and a huge length, and a zero filled tail
+			byte[][] tails =
+			{
+				Arrays.copyOf(complete, 20),
+				Arrays.copyOf(complete, 5_000),
+				ByteBuffer.allocate(100).putInt(-1).array(),
+				ByteBuffer.allocate(100).putInt(Integer.MAX_VALUE).array(),
+				new byte[100]
+			};
+
+			for (byte[] tail : tails)
+			{
+				Files.write(path, tail, StandardOpenOption.APPEND);
+
+				try (DedupStore store = new DedupStore(path, cc, 10_000))
+				{
+					assertEquals(store.size(), size);
+					assertEquals(Files.size(path), size);
+					assertEquals(read(store, first), image);
+
+					List<DedupStore.ChunkReference> second = store.write(new ByteArrayInputStream(other));
+					assertEquals(read(store, second), other);
+				}
+
+				try (DedupStore store = new DedupStore(path, cc, 10_000))
+				{
+					assertEquals(read(store, first), image);
+					size = store.size();
+				}
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	@Test
+	public void testRebuildReadsHeadersOnly() throws IOException
+	{
+		Path path = Files.createTempFile("dedup", ".bin");
+		try
+		{
+			AtomicInteger idHashes = new AtomicInteger();
+			ConvergentCipher cc = new ConvergentCipher(new SecretKey(new byte[32]), AES::new, aKey -> new HMAC(new SHA256(), aKey), () ->
+			{
+				idHashes.incrementAndGet();
+				return new SHA256();
+			});
+
+			byte[] image = new byte[100_000];
+			new Random(1).nextBytes(image);
+
+			List<DedupStore.ChunkReference> references;
+			try (DedupStore store = new DedupStore(path, cc, 10_000))
+			{
+				references = store.write(new ByteArrayInputStream(image));
+			}
+
+			int hashes = idHashes.get();
+
+			try (DedupStore store = new DedupStore(path, cc, 10_000))
+			{
+				assertEquals(idHashes.get(), hashes);
+				assertTrue(store.contains(references.get(9).id()));
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	private static byte[] read(DedupStore aStore, List<DedupStore.ChunkReference> aReferences) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		for (DedupStore.ChunkReference reference : aReferences)
+		{
+			baos.write(aStore.read(reference));
+		}
+		return baos.toByteArray();
+	}
+}
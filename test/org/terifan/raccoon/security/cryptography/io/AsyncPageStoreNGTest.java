@@ -0,0 +1,186 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.EOFException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class AsyncPageStoreNGTest
+{
+	@Test
+	public void testConcurrentRequests() throws Exception
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(new byte[32])), new AES(new SecretKey(new byte[16])), rnd.ints(4).toArray(), 4096);
+		Path path = Files.createTempFile("pagestore", ".bin");
+
+		try
+		{
+			byte[] expected = new byte[4096 * 1000];
+			rnd.nextBytes(expected);
+
+			try (AsyncPageStore store = new AsyncPageStore(path, cipher))
+			{
+				ArrayList<CompletableFuture<Void>> writes = new ArrayList<>();
+				for (int i = 0; i < 1000; i++)
+				{
+					byte[] page = new byte[4096];
+					System.arraycopy(expected, 4096 * i, page, 0, 4096);
+					writes.add(store.write(i, page));
+				}
+				CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+
+				ArrayList<CompletableFuture<byte[]>> reads = new ArrayList<>();
+				for (int i = 0; i < 1000; i++)
+				{
+					reads.add(store.read(i, 1 + (i % 3 == 0 && i < 998 ? 2 : 0)));
+				}
+				for (int i = 0; i < 1000; i++)
+				{
+					byte[] page = reads.get(i).join();
+					byte[] expectedPage = new byte[page.length];
+					System.arraycopy(expected, 4096 * i, expectedPage, 0, page.length);
+					assertEquals(page, expectedPage);
+				}
+
+				assertTrue(store.getOperationCount() <= store.getRequestCount());
+
+				try
+				{
+					store.read(1000, 1).join();
+					fail();
+				}
+				catch (CompletionException e)
+				{
+					assertTrue(e.getCause() instanceof EOFException);
+				}
+			}
+
+			byte[] encrypted = expected.clone();
+			cipher.encrypt(encrypted, 0, encrypted.length, 0);
+
+			assertEquals(Files.readAllBytes(path), encrypted);
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	@Test
+	public void testSubmitWhileClosing() throws Exception
+	{
+		UnitCipher cipher = new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(new byte[32])), new AES(new SecretKey(new byte[16])), new int[4], 512);
+		Path path = Files.createTempFile("pagestore", ".bin");
+
+		try
+		{
+			for (int round = 0; round < 20; round++)
+			{
+				AsyncPageStore store = new AsyncPageStore(path, cipher);
+				ConcurrentLinkedQueue<CompletableFuture<Void>> futures = new ConcurrentLinkedQueue<>();
+				ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+				CountDownLatch started = new CountDownLatch(4);
+				ArrayList<Thread> threads = new ArrayList<>();
+
+				for (int t = 0; t < 4; t++)
+				{
+					int first = 100 * t;
+					threads.add(Thread.ofPlatform().start(() ->
+					{
+						started.countDown();
+						try
+						{
+							for (int i = 0; i < 100; i++)
+							{
+								futures.add(store.write(first + i, new byte[512]));
+							}
+						}
+						catch (Throwable e)
+						{
+							errors.add(e);
+						}
+					}));
+				}
+
+				started.await();
+				store.close();
+
+				for (Thread thread : threads)
+				{
+					thread.join();
+				}
+
+				assertTrue(errors.isEmpty(), errors.toString());
+
+				for (CompletableFuture<Void> future : futures)
+				{
+					try
+					{
+						future.get(10, TimeUnit.SECONDS);
+					}
+					catch (ExecutionException e)
+					{
+						assertTrue(e.getCause() instanceof ClosedChannelException, e.toString());
+					}
+				}
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	@Test(timeOut = 60_000)
+	public void testCryptoExecutorShutDown() throws Exception
+	{
+		UnitCipher cipher = new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(new byte[32])), new AES(new SecretKey(new byte[16])), new int[4], 512);
+		Path path = Files.createTempFile("pagestore", ".bin");
+		ExecutorService cryptoExecutor = Executors.newSingleThreadExecutor();
+
+		try
+		{
+			AsyncPageStore store = new AsyncPageStore(path, cipher, cryptoExecutor);
+			store.write(0, new byte[512 * 4]).join();
+
+			cryptoExecutor.shutdown();
+
+			for (int round = 0; round < 2; round++)
+			{
+				ExecutionException write = expectThrows(ExecutionException.class, () -> store.write(0, new byte[512]).get(10, TimeUnit.SECONDS));
+				assertTrue(write.getCause() instanceof RejectedExecutionException, write.toString());
+
+				ExecutionException read = expectThrows(ExecutionException.class, () -> store.read(0, 4).get(10, TimeUnit.SECONDS));
+				assertTrue(read.getCause() instanceof RejectedExecutionException, read.toString());
+			}
+
+			store.close();
+		}
+		finally
+		{
+			cryptoExecutor.shutdown();
+			Files.delete(path);
+		}
+	}
+}
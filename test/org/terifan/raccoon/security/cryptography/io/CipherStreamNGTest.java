@@ -0,0 +1,127 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class CipherStreamNGTest
+{
+	@Test(dataProvider = "roundTrip")
+	public void testRoundTrip(int aLength, int aBufferSize, boolean aDoubleBuffered) throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		byte[] plain = new byte[aLength];
+		rnd.nextBytes(plain);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (CipherOutputStream out = new CipherOutputStream(baos, cipher, 7, aBufferSize, aDoubleBuffered))
+		{
+			for (int offset = 0; offset < plain.length;)
+			{
+				int length = Math.min(rnd.nextInt(20_000), plain.length - offset);
+				out.write(plain, offset, length);
+				offset += length;
+			}
+		}
+
+		byte[] encrypted = baos.toByteArray();
+		int paddedLength = (plain.length + 511) / 512 * 512;
+		byte[] expected = Arrays.copyOf(plain, paddedLength + 512);
+		for (int i = plain.length, j = 0; i < paddedLength; i++)
+		{
+			expected[i] = (byte)j++;
+		}
+		expected[paddedLength + 2] = (byte)((paddedLength - plain.length) >> 8);
+		expected[paddedLength + 3] = (byte)(paddedLength - plain.length);
+		cipher.encrypt(expected, 0, expected.length, 7);
+
+		assertEquals(encrypted, expected);
+
+		try (CipherInputStream in = new CipherInputStream(new ByteArrayInputStream(encrypted), cipher, 7, aBufferSize * 3, aDoubleBuffered))
+		{
+			assertEquals(in.readAllBytes(), plain);
+		}
+	}
+
+
+	@Test(expectedExceptions = IOException.class)
+	public void testMissingTrailer() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		byte[] plain = new byte[5000];
+		rnd.nextBytes(plain);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (CipherOutputStream out = new CipherOutputStream(baos, cipher, 0))
+		{
+			out.write(plain);
+		}
+
+		byte[] truncated = Arrays.copyOf(baos.toByteArray(), baos.size() - 512);
+
+		try (CipherInputStream in = new CipherInputStream(new ByteArrayInputStream(truncated), cipher, 0))
+		{
+			in.readAllBytes();
+		}
+	}
+
+
+	@Test
+	public void testChannels() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		byte[] plain = new byte[512 * 100];
+		rnd.nextBytes(plain);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (CipherOutputStream out = new CipherOutputStream(Channels.newChannel(baos), cipher, 0))
+		{
+			out.write(ByteBuffer.wrap(plain));
+		}
+
+		ByteBuffer decrypted = ByteBuffer.allocateDirect(plain.length);
+		try (CipherInputStream in = new CipherInputStream(Channels.newChannel(new ByteArrayInputStream(baos.toByteArray())), cipher, 0))
+		{
+			while (in.read(decrypted) > 0)
+			{
+			}
+		}
+
+		byte[] output = new byte[plain.length];
+		decrypted.flip().get(output);
+
+		assertEquals(output, plain);
+	}
+
+
+	@DataProvider
+	private Object[][] roundTrip()
+	{
+		return new Object[][]
+		{
+			{1_000_000, 10_000, false},
+			{1_000_000, 10_000, true},
+			{512 * 100, 10_240, false},
+			{512 * 100, 10_240, true},
+			{511, 512, false},
+			{513, 512, true},
+			{0, 10_000, false},
+			{0, 512, true}
+		};
+	}
+}
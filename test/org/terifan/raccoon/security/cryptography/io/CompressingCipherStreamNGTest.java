@@ -0,0 +1,226 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class CompressingCipherStreamNGTest
+{
+	@Test(dataProvider = "compressible")
+	public void testRoundTrip(boolean aCompressible) throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		byte[] plain = new byte[1_000_000];
+		if (aCompressible)
+		{
+			for (int i = 0; i < plain.length; i++)
+			{
+				plain[i] = (byte)('a' + rnd.nextInt(4));
+			}
+		}
+		else
+		{
+			rnd.nextBytes(plain);
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (CompressingCipherOutputStream out = new CompressingCipherOutputStream(baos, cipher, 7, new DeflateCodec(), 64 * 1024))
+		{
+			for (int offset = 0; offset < plain.length;)
+			{
+				int length = Math.min(rnd.nextInt(20_000), plain.length - offset);
+				out.write(plain, offset, length);
+				offset += length;
+			}
+		}
+
+		byte[] encrypted = baos.toByteArray();
+
+		assertEquals(encrypted.length % 512, 0);
+		if (aCompressible)
+		{
+			assertTrue(encrypted.length < plain.length / 2);
+		}
+
+		try (DecompressingCipherInputStream in = new DecompressingCipherInputStream(new ByteArrayInputStream(encrypted), cipher, 7, new DeflateCodec(), 64 * 1024))
+		{
+			assertEquals(in.readAllBytes(), plain);
+		}
+	}
+
+
+	@Test
+	public void testEmptyAndSingleBytes() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new CompressingCipherOutputStream(baos, cipher, 0, new DeflateCodec()).close();
+
+		assertEquals(baos.size(), 0);
+
+		baos = new ByteArrayOutputStream();
+		try (CompressingCipherOutputStream out = new CompressingCipherOutputStream(baos, cipher, 0, new DeflateCodec(), 100))
+		{
+			for (int i = 0; i < 1000; i++)
+			{
+				out.write(i);
+			}
+		}
+
+		try (DecompressingCipherInputStream in = new DecompressingCipherInputStream(new ByteArrayInputStream(baos.toByteArray()), cipher, 0, new DeflateCodec()))
+		{
+			for (int i = 0; i < 1000; i++)
+			{
+				assertEquals(in.read(), i & 0xff);
+			}
+			assertEquals(in.read(), -1);
+		}
+	}
+
+
+	@Test(expectedExceptions = IOException.class)
+	public void testWrongStartUnit() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (CompressingCipherOutputStream out = new CompressingCipherOutputStream(baos, cipher, 0, new DeflateCodec()))
+		{
+			out.write(new byte[10_000]);
+		}
+
+		try (DecompressingCipherInputStream in = new DecompressingCipherInputStream(new ByteArrayInputStream(baos.toByteArray()), cipher, 1, new DeflateCodec()))
+		{
+			in.readAllBytes();
+		}
+	}
+
+
+	@Test(expectedExceptions = IOException.class)
+	public void testRawFrameLengthMismatch() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		// a raw frame claiming more plaintext than is stored
+		byte[] frame = new byte[512];
+		frame[2] = 0x03;
+		frame[3] = (byte)0xe8;
+		frame[7] = 100;
+		cipher.encrypt(frame, 0, frame.length, 0);
+
+		try (DecompressingCipherInputStream in = new DecompressingCipherInputStream(new ByteArrayInputStream(frame), cipher, 0, new DeflateCodec()))
+		{
+			in.readAllBytes();
+		}
+	}
+
+
+	@Test
+	public void testCodecsClosed() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+		ClosingCodec outputCodec = new ClosingCodec();
+		ClosingCodec inputCodec = new ClosingCodec();
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (CompressingCipherOutputStream out = new CompressingCipherOutputStream(baos, cipher, 0, outputCodec))
+		{
+			out.write(new byte[10_000]);
+		}
+
+		assertTrue(outputCodec.mClosed);
+
+		try (DecompressingCipherInputStream in = new DecompressingCipherInputStream(new ByteArrayInputStream(baos.toByteArray()), cipher, 0, inputCodec))
+		{
+			assertEquals(in.read(), 0);
+		}
+
+		assertTrue(inputCodec.mClosed);
+	}
+
+
+	@Test(timeOut = 60_000)
+	public void testStageFailureWakesWriter() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+
+		CompressingCipherOutputStream out = new CompressingCipherOutputStream(new ByteArrayOutputStream(), cipher, 0, new FailingCodec());
+
+		// the writer fills the chunk queue and blocks until the failed compress stage releases it
+		expectThrows(IllegalStateException.class, () ->
+		{
+			for (;;)
+			{
+				out.write(new byte[65536]);
+			}
+		});
+		expectThrows(IllegalStateException.class, () -> out.close());
+	}
+
+
+	@DataProvider
+	private Object[][] compressible()
+	{
+		return new Object[][]{{false}, {true}};
+	}
+
+
+	private static final class ClosingCodec implements CompressionCodec
+	{
+		final DeflateCodec mCodec = new DeflateCodec();
+		volatile boolean mClosed;
+
+
+		@Override
+		public byte[] compress(byte[] aBuffer, int aOffset, int aLength)
+		{
+			return mCodec.compress(aBuffer, aOffset, aLength);
+		}
+
+
+		@Override
+		public void decompress(byte[] aBuffer, int aOffset, int aLength, byte[] aOutput, int aOutputOffset, int aOutputLength) throws IOException
+		{
+			mCodec.decompress(aBuffer, aOffset, aLength, aOutput, aOutputOffset, aOutputLength);
+		}
+
+
+		@Override
+		public void close()
+		{
+			mCodec.close();
+			mClosed = true;
+		}
+	}
+
+
+	private static final class FailingCodec implements CompressionCodec
+	{
+		@Override
+		public byte[] compress(byte[] aBuffer, int aOffset, int aLength)
+		{
+			throw new IllegalStateException("Compression failed.");
+		}
+
+
+		@Override
+		public void decompress(byte[] aBuffer, int aOffset, int aLength, byte[] aOutput, int aOutputOffset, int aOutputLength)
+		{
+			throw new IllegalStateException("Decompression failed.");
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.InvalidTagException;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class ContainerNGTest
+{
+	@Test(dataProvider = "lengths")
+	public void testRoundTrip(int aLength) throws IOException
+	{
+		Random rnd = new Random(aLength);
+		SecretKey key = new SecretKey(new byte[32]);
+
+		byte[] plain = new byte[aLength];
+		rnd.nextBytes(plain);
+
+		byte[] container = write(key, plain);
+
+		try (ContainerReader reader = open(container, key))
+		{
+			assertEquals(reader.size(), aLength);
+
+			ByteBuffer buffer = ByteBuffer.allocate(aLength);
+			assertEquals(reader.read(0, buffer), aLength == 0 ? 0 : aLength);
+			assertEquals(buffer.array(), plain);
+
+			for (int i = 0; i < 50 && aLength > 0; i++)
+			{
+				int position = rnd.nextInt(aLength);
+				ByteBuffer range = ByteBuffer.allocate(rnd.nextInt(20000));
+				int length = reader.read(position, range);
+				assertEquals(length, Math.min(range.capacity(), aLength - position));
+				assertEquals(Arrays.copyOf(range.array(), length), Arrays.copyOfRange(plain, position, position + length));
+			}
+		}
+	}
+
+
+	@Test(expectedExceptions = InvalidTagException.class)
+	public void testTamperedChunk() throws IOException
+	{
+		SecretKey key = new SecretKey(new byte[32]);
+		byte[] container = write(key, new byte[100_000]);
+
+		container[ContainerFormat.HEADER_LENGTH + 5000] ^= 1;
+
+		try (ContainerReader reader = open(container, key))
+		{
+			reader.readChunk(0);
+		}
+	}
+
+
+	@Test(expectedExceptions = InvalidTagException.class)
+	public void testTruncatedContainer() throws IOException
+	{
+		SecretKey key = new SecretKey(new byte[32]);
+		byte[] container = write(key, new byte[100_000]);
+
+		open(Arrays.copyOf(container, ContainerFormat.HEADER_LENGTH + 65536 + ContainerFormat.TRAILER_LENGTH), key);
+	}
+
+
+	@Test(expectedExceptions = InvalidTagException.class)
+	public void testWrongKey() throws IOException
+	{
+		byte[] container = write(new SecretKey(new byte[32]), new byte[100]);
+
+		open(container, new SecretKey(new byte[16]));
+	}
+
+
+	@DataProvider
+	private Object[][] lengths()
+	{
+		return new Object[][]{{0}, {1}, {65536}, {65536 * 3}, {1_000_003}};
+	}
+
+
+	private static byte[] write(SecretKey aKey, byte[] aPlaintext) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ContainerOutputStream out = new ContainerOutputStream(baos, aKey, new XTSCipherMode(), AES::new))
+		{
+			for (int offset = 0; offset < aPlaintext.length; offset += 7777)
+			{
+				out.write(aPlaintext, offset, Math.min(7777, aPlaintext.length - offset));
+			}
+		}
+		return baos.toByteArray();
+	}
+
+
+	private static ContainerReader open(byte[] aContainer, SecretKey aKey) throws IOException
+	{
+		Path path = Files.createTempFile("container", ".bin");
+		Files.write(path, aContainer);
+		SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+		try
+		{
+			return new ContainerReader(channel, aKey, new XTSCipherMode(), AES::new);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class EncryptedBlockFileNGTest
+{
+	@Test
+	public void testRandomAccess() throws IOException
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(new byte[32])), new AES(new SecretKey(new byte[16])), rnd.ints(4).toArray(), 4096);
+		Path path = Files.createTempFile("blockfile", ".bin");
+
+		try
+		{
+			byte[] expected = new byte[4096 * 100];
+
+			try (EncryptedBlockFile file = new EncryptedBlockFile(path, cipher, 100))
+			{
+				file.write(0, ByteBuffer.wrap(expected));
+
+				for (int i = 0; i < 200; i++)
+				{
+					int position = rnd.nextInt(expected.length);
+					byte[] data = new byte[Math.min(rnd.nextInt(20000), expected.length - position)];
+					rnd.nextBytes(data);
+					System.arraycopy(data, 0, expected, position, data.length);
+
+					file.write(position, ByteBuffer.wrap(data));
+				}
+
+				for (int i = 0; i < 200; i++)
+				{
+					int position = rnd.nextInt(expected.length);
+					ByteBuffer buffer = (i & 1) == 0 ? ByteBuffer.allocate(rnd.nextInt(20000)) : ByteBuffer.allocateDirect(rnd.nextInt(20000));
+
+					int length = file.read(position, buffer);
+
+					assertEquals(length, Math.min(buffer.capacity(), expected.length - position));
+					byte[] actual = new byte[length];
+					buffer.flip().get(actual);
+					byte[] expectedRange = new byte[length];
+					System.arraycopy(expected, position, expectedRange, 0, length);
+					assertEquals(actual, expectedRange);
+				}
+
+				assertEquals(file.read(file.size(), ByteBuffer.allocate(1)), -1);
+			}
+
+			byte[] encrypted = expected.clone();
+			cipher.encrypt(encrypted, 0, encrypted.length, 0);
+
+			assertEquals(Files.readAllBytes(path), encrypted);
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+}
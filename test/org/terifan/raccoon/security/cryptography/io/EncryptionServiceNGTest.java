@@ -0,0 +1,121 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class EncryptionServiceNGTest
+{
+	@Test
+	public void testConcurrentRequests() throws Exception
+	{
+		Random rnd = new Random(1);
+		UnitCipher[] ciphers = {UnitCipherHelper.createCipher(rnd, 32), UnitCipherHelper.createCipher(rnd, 32)};
+
+		byte[][] payloads = new byte[4000][];
+		for (int i = 0; i < payloads.length; i++)
+		{
+			payloads[i] = new byte[32 * (1 + rnd.nextInt(8))];
+			rnd.nextBytes(payloads[i]);
+		}
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+
+		try (EncryptionService service = new EncryptionService(workers, 32, Duration.ofMillis(1)))
+		{
+			ArrayList<CompletableFuture<byte[]>> results = new ArrayList<>();
+			for (int i = 0; i < payloads.length; i++)
+			{
+				int index = i;
+				results.add(CompletableFuture.supplyAsync(() -> service.encrypt(ciphers[index & 1], 1000L * index, payloads[index]), clients).thenCompose(f -> f));
+			}
+
+			for (int i = 0; i < payloads.length; i++)
+			{
+				byte[] expected = payloads[i].clone();
+				ciphers[i & 1].encrypt(expected, 0, expected.length, 1000L * i);
+
+				byte[] ciphertext = results.get(i).get();
+				assertEquals(ciphertext, expected);
+				assertEquals(service.decrypt(ciphers[i & 1], 1000L * i, ciphertext).get(), payloads[i]);
+			}
+
+			assertEquals(service.getRequestCount(), 2 * payloads.length);
+			assertTrue(service.getBatchCount() < service.getRequestCount());
+		}
+		finally
+		{
+			clients.shutdown();
+			workers.shutdown();
+		}
+	}
+
+
+	@Test
+	public void testConsecutiveUnitsMerged() throws Exception
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 32);
+
+		byte[] plain = new byte[32 * 16];
+		rnd.nextBytes(plain);
+
+		byte[] expected = plain.clone();
+		cipher.encrypt(expected, 0, expected.length, 5);
+
+		ExecutorService workers = Executors.newSingleThreadExecutor();
+
+		try (EncryptionService service = new EncryptionService(workers, 16, Duration.ofSeconds(10)))
+		{
+			ArrayList<CompletableFuture<byte[]>> results = new ArrayList<>();
+			for (int i = 15; i >= 0; i--)
+			{
+				byte[] unit = new byte[32];
+				System.arraycopy(plain, 32 * i, unit, 0, 32);
+				results.add(0, service.encrypt(cipher, 5 + i, unit));
+			}
+
+			for (int i = 0; i < 16; i++)
+			{
+				byte[] unit = new byte[32];
+				System.arraycopy(expected, 32 * i, unit, 0, 32);
+				assertEquals(results.get(i).get(), unit);
+			}
+
+			assertEquals(service.getBatchCount(), 1);
+			assertEquals(service.getCallCount(), 1);
+		}
+		finally
+		{
+			workers.shutdown();
+		}
+	}
+
+
+	@Test
+	public void testCloseCompletesPending() throws Exception
+	{
+		UnitCipher cipher = UnitCipherHelper.createCipher(new Random(1), 32);
+		ExecutorService workers = Executors.newSingleThreadExecutor();
+		CompletableFuture<byte[]> result;
+
+		try (EncryptionService service = new EncryptionService(workers, 100, Duration.ofHours(1)))
+		{
+			result = service.encrypt(cipher, 0, new byte[32]);
+		}
+		finally
+		{
+			workers.shutdown();
+		}
+
+		assertEquals(result.get().length, 32);
+	}
+}
@@ -0,0 +1,193 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class PageCacheNGTest
+{
+	@Test
+	public void testConcurrentReadWrite() throws Exception
+	{
+		UnitCipher cipher = new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(new byte[32])), new AES(new SecretKey(new byte[16])), new int[4], 512);
+		Path path = Files.createTempFile("pagecache", ".bin");
+
+		try
+		{
+			int threads = 8;
+			int regionSize = 512 * 64;
+			byte[] expected = new byte[threads * regionSize];
+
+			try (EncryptedBlockFile file = new EncryptedBlockFile(path, cipher, expected.length / 512))
+			{
+				file.write(0, ByteBuffer.wrap(expected));
+
+				PageCache cache = new PageCache(file, 100, true);
+				ExecutorService executor = Executors.newFixedThreadPool(threads);
+				ArrayList<Future<?>> futures = new ArrayList<>();
+
+				for (int t = 0; t < threads; t++)
+				{
+					int region = t;
+					futures.add(executor.submit(() ->
+					{
+						Random rnd = new Random(region);
+						for (int i = 0; i < 2000; i++)
+						{
+							int position = region * regionSize + rnd.nextInt(regionSize - 2000);
+							byte[] data = new byte[rnd.nextInt(2000)];
+
+							if (rnd.nextInt(3) == 0)
+							{
+								rnd.nextBytes(data);
+								System.arraycopy(data, 0, expected, position, data.length);
+								cache.write(position, data, 0, data.length);
+							}
+							else
+							{
+								cache.read(position, data, 0, data.length);
+								for (int j = 0; j < data.length; j++)
+								{
+									assertEquals(data[j], expected[position + j]);
+								}
+							}
+						}
+						return null;
+					}));
+				}
+
+				for (Future<?> future : futures)
+				{
+					future.get();
+				}
+				executor.shutdown();
+
+				cache.close();
+
+				assertTrue(cache.getHitCount() > 0);
+				assertTrue(cache.getEvictionCount() > 0);
+				assertTrue(cache.getHitRate() > 0 && cache.getHitRate() < 1);
+
+				byte[] actual = new byte[expected.length];
+				file.read(0, ByteBuffer.wrap(actual));
+				assertEquals(actual, expected);
+			}
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	@Test
+	public void testHotPagesStayCached() throws IOException
+	{
+		UnitCipher cipher = new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(new byte[16])), new AES(new SecretKey(new byte[16])), new int[4], 4096);
+		Path path = Files.createTempFile("pagecache", ".bin");
+
+		try (EncryptedBlockFile file = new EncryptedBlockFile(path, cipher, 16); PageCache cache = new PageCache(file, 16, false))
+		{
+			byte[] buffer = new byte[100];
+			for (int i = 0; i < 1000; i++)
+			{
+				cache.read(4096L * (i % 16), buffer, 0, buffer.length);
+			}
+
+			assertEquals(cache.getMissCount(), 16);
+			assertEquals(cache.getHitCount(), 984);
+		}
+		finally
+		{
+			Files.delete(path);
+		}
+	}
+
+
+	@Test
+	public void testDirtyPagesEvictedInBatches() throws IOException
+	{
+		MemoryStore store = new MemoryStore(512, 64);
+
+		try (PageCache cache = new PageCache(store, 16, true))
+		{
+			byte[] data = new byte[512 * 16];
+			new Random(1).nextBytes(data);
+
+			cache.write(0, data, 0, data.length);
+
+			assertEquals(store.mWriteCalls, 0);
+
+			byte[] buffer = new byte[512];
+			for (int i = 16; i < 32; i++)
+			{
+				cache.read(512L * i, buffer, 0, buffer.length);
+			}
+
+			assertEquals(store.mWriteCalls, 1);
+			assertEquals(cache.getWriteBackCount(), 16);
+			assertEquals(cache.getEvictionCount(), 16);
+
+			byte[] actual = new byte[data.length];
+			store.readSectors(0, actual, 0, 16);
+			assertEquals(actual, data);
+		}
+	}
+
+
+	private static final class MemoryStore implements SectorStore
+	{
+		final byte[] mData;
+		final int mSectorSize;
+		int mWriteCalls;
+
+
+		MemoryStore(int aSectorSize, int aSectorCount)
+		{
+			mSectorSize = aSectorSize;
+			mData = new byte[aSectorSize * aSectorCount];
+		}
+
+
+		@Override
+		public int getSectorSize()
+		{
+			return mSectorSize;
+		}
+
+
+		@Override
+		public long getSectorCount()
+		{
+			return mData.length / mSectorSize;
+		}
+
+
+		@Override
+		public void readSectors(long aSectorIndex, byte[] aBuffer, int aOffset, int aSectorCount)
+		{
+			System.arraycopy(mData, (int)aSectorIndex * mSectorSize, aBuffer, aOffset, aSectorCount * mSectorSize);
+		}
+
+
+		@Override
+		public synchronized void writeSectors(long aSectorIndex, byte[] aBuffer, int aOffset, int aSectorCount)
+		{
+			System.arraycopy(aBuffer, aOffset, mData, (int)aSectorIndex * mSectorSize, aSectorCount * mSectorSize);
+			mWriteCalls++;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.messagedigest.HMAC;
+import org.terifan.raccoon.security.messagedigest.SHA256;
+import org.terifan.raccoon.security.messagedigest.SHA3;
+import org.terifan.raccoon.security.messagedigest.Skein512;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class StageProcessorNGTest
+{
+	@Test
+	public void testPipeline() throws Exception
+	{
+		Random rnd = new Random(1);
+		UnitCipher cipher = UnitCipherHelper.createCipher(rnd, 512);
+		byte[] macKey = new byte[32];
+		rnd.nextBytes(macKey);
+
+		byte[] plain = new byte[512 * 2000];
+		rnd.nextBytes(plain);
+
+		ExecutorService cryptoPool = Executors.newFixedThreadPool(2);
+		ExecutorService macPool = Executors.newSingleThreadExecutor();
+
+		try
+		{
+			DigestStage sha = new DigestStage(new SHA256());
+			DigestStage sha3 = new DigestStage(new SHA3(256));
+			DigestStage skein = new DigestStage(new Skein512());
+			DigestStage mac = new DigestStage(new HMAC(new SHA256(), macKey));
+			StageProcessor encrypt = new StageProcessor(cryptoPool, 4, new CipherStage(cipher, 5, true), sha, sha3, skein);
+			StageProcessor authenticate = new StageProcessor(macPool, 4, mac);
+			Sink sink = new Sink();
+
+			try (SubmissionPublisher<ByteBuffer> source = new SubmissionPublisher<>(cryptoPool, 4))
+			{
+				source.subscribe(encrypt);
+				encrypt.subscribe(authenticate);
+				authenticate.subscribe(sink);
+
+				for (int offset = 0; offset < plain.length; offset += 512 * 10)
+				{
+					source.submit(ByteBuffer.wrap(Arrays.copyOfRange(plain, offset, offset + 512 * 10)));
+				}
+			}
+
+			byte[] expected = plain.clone();
+			cipher.encrypt(expected, 0, expected.length, 5);
+
+			assertEquals(sink.mResult.get(), expected);
+			assertEquals(sha.getResult().get(), new SHA256().digest(expected));
+			assertEquals(sha3.getResult().get(), new SHA3(256).digest(expected));
+			assertEquals(skein.getResult().get(), new Skein512().digest(expected));
+			assertEquals(mac.getResult().get(), new HMAC(new SHA256(), macKey).digest(expected));
+		}
+		finally
+		{
+			cryptoPool.shutdown();
+			macPool.shutdown();
+		}
+	}
+
+
+	@Test
+	public void testStageFailure() throws Exception
+	{
+		UnitCipher cipher = UnitCipherHelper.createCipher(new Random(1), 512);
+		DigestStage sha = new DigestStage(new SHA256());
+		StageProcessor encrypt = new StageProcessor(Runnable::run, 4, new CipherStage(cipher, 0, true), sha);
+		Sink sink = new Sink();
+
+		try (SubmissionPublisher<ByteBuffer> source = new SubmissionPublisher<>(Runnable::run, 4))
+		{
+			source.subscribe(encrypt);
+			encrypt.subscribe(sink);
+			source.submit(ByteBuffer.allocate(100));
+		}
+
+		expectThrows(ExecutionException.class, () -> sha.getResult().get());
+		expectThrows(ExecutionException.class, () -> sink.mResult.get());
+	}
+
+
+	private static class Sink implements Flow.Subscriber<ByteBuffer>
+	{
+		final ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+		final CompletableFuture<byte[]> mResult = new CompletableFuture<>();
+		Flow.Subscription mSubscription;
+
+
+		@Override
+		public void onSubscribe(Flow.Subscription aSubscription)
+		{
+			mSubscription = aSubscription;
+			mSubscription.request(1);
+		}
+
+
+		@Override
+		public void onNext(ByteBuffer aBuffer)
+		{
+			mOutput.write(aBuffer.array(), aBuffer.position(), aBuffer.remaining());
+			mSubscription.request(1);
+		}
+
+
+		@Override
+		public void onError(Throwable aThrowable)
+		{
+			mResult.completeExceptionally(aThrowable);
+		}
+
+
+		@Override
+		public void onComplete()
+		{
+			mResult.complete(mOutput.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package org.terifan.raccoon.security.cryptography.io;
+
+import java.util.Random;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+
+
+final class UnitCipherHelper
+{
+	private UnitCipherHelper()
+	{
+	}
+
+
+	/**
+	 * Returns an AES-256 XTS cipher with random keys and block IV.
+	 */
+	static UnitCipher createCipher(Random aRandom, int aUnitSize)
+	{
+		byte[] key = new byte[32];
+		byte[] tweak = new byte[32];
+		aRandom.nextBytes(key);
+		aRandom.nextBytes(tweak);
+
+		return new UnitCipher(new XTSCipherMode(), new AES(new SecretKey(key)), new AES(new SecretKey(tweak)), aRandom.ints(4).toArray(), aUnitSize);
+	}
+}
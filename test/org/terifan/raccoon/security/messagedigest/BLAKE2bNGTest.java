@@ -0,0 +1,102 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class BLAKE2bNGTest
+{
+	@Test
+	public void testUnkeyed()
+	{
+		assertEquals(HexFormat.of().formatHex(new BLAKE2b().digest("abc".getBytes(StandardCharsets.US_ASCII))), "ba80a53f981c4d0d6a2797b69f12f6e94c212f14685ac4b74b12bb6fdbffa2d17d87c5392aab792dc252d5de4533cc9518d38aa8dbf1925ab92386edd4009923");
+		assertEquals(HexFormat.of().formatHex(new BLAKE2b(32).digest()), "0e5751c026e543b2e8ab2eb06099daa1d1e5df47778f7787faab45cdf12fe3a8");
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testKeyed(int aLength, String aExpected)
+	{
+		byte[] data = BLAKE3NGTest.input(aLength);
+
+		assertEquals(HexFormat.of().formatHex(new BLAKE2b(64, key()).digest(data)), aExpected);
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testSplitUpdates(int aLength, String aExpected)
+	{
+		byte[] data = BLAKE3NGTest.input(aLength);
+
+		for (int split : new int[]{1, 127, 128, 129, 1000})
+		{
+			BLAKE2b digest = new BLAKE2b(64, key());
+			int offset = 0;
+			for (; offset + split <= data.length; offset += split)
+			{
+				digest.update(data, offset, split);
+			}
+			if (offset < data.length)
+			{
+				digest.update(data[offset++]);
+				digest.update(data, offset, data.length - offset);
+			}
+
+			assertEquals(HexFormat.of().formatHex(digest.digest()), aExpected, "split " + split);
+		}
+
+		BLAKE2b digest = new BLAKE2b(64, key());
+		digest.update(ByteBuffer.allocateDirect(aLength).put(data).flip());
+		assertEquals(HexFormat.of().formatHex(digest.digest()), aExpected);
+	}
+
+
+	@Test
+	public void testClone()
+	{
+		byte[] data = BLAKE3NGTest.input(1000);
+
+		BLAKE2b digest = new BLAKE2b(48, key());
+		digest.update(data, 0, 300);
+		BLAKE2b copy = digest.clone();
+		digest.update(data, 300, 700);
+		copy.update(data, 300, 700);
+
+		assertEquals(copy.digest(), digest.digest());
+	}
+
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testIllegalDigestLength()
+	{
+		new BLAKE2b(65);
+	}
+
+
+	@DataProvider
+	private Object[][] vectors()
+	{
+		return new Object[][]
+		{
+			{0, "10ebb67700b1868efb4417987acf4690ae9d972fb7a590c2f02871799aaa4786b5e996e8f0f4eb981fc214b005f42d2ff4233499391653df7aefcbc13fc51568"},
+			{1023, "9df97c9178698de1ca92458086f29fa7939635f0d8e77b3718a6f8c8195e504d7c90f91f2c56f810f81a9d9adcc804d2e234883d2ee9c9d0cea0afa8b07efafe"},
+			{1025, "d27e5ef3d16c66e3b80342e2f61ffa7be751340badb2e4de6f84674b05ebcf2ddd05c99e57c158911217851a82becb0599223cc994fb5a663d25f4d113894c24"},
+			{31744, "d97e5715e4b9a705f0046b0903185d5f7c9ca3fedd3dda210a23fe9763c87ca6b240bc04403ea94fce986bf4c33da351c719ecf50c613277807c3ff11171f243"}
+		};
+	}
+
+
+	private static byte[] key()
+	{
+		byte[] key = new byte[64];
+		for (int i = 0; i < key.length; i++)
+		{
+			key[i] = (byte)i;
+		}
+		return key;
+	}
+}
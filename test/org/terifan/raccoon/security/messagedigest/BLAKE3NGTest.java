@@ -0,0 +1,128 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class BLAKE3NGTest
+{
+	private final static byte[] KEY = "whats the Elvish word for friend".getBytes(StandardCharsets.US_ASCII);
+	private final static String CONTEXT = "BLAKE3 2019-12-27 16:29:52 test vectors context";
+
+
+	@Test(dataProvider = "vectors")
+	public void testVectors(int aLength, String aHash, String aKeyedHash, String aDeriveKey)
+	{
+		byte[] data = input(aLength);
+
+		assertEquals(HexFormat.of().formatHex(new BLAKE3(64).digest(data)), aHash);
+		assertEquals(HexFormat.of().formatHex(BLAKE3.newKeyedHash(KEY).digest(data)), aKeyedHash);
+		assertEquals(HexFormat.of().formatHex(BLAKE3.newDeriveKey(CONTEXT).digest(data)), aDeriveKey);
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testSplitUpdates(int aLength, String aHash, String aKeyedHash, String aDeriveKey)
+	{
+		byte[] data = input(aLength);
+
+		for (int split : new int[]{1, 63, 64, 1000, 1024, 4096})
+		{
+			BLAKE3 digest = new BLAKE3(64);
+			int offset = 0;
+			for (; offset + split <= data.length; offset += split)
+			{
+				digest.update(data, offset, split);
+			}
+			if (offset < data.length)
+			{
+				digest.update(data[offset++]);
+				digest.update(data, offset, data.length - offset);
+			}
+
+			assertEquals(HexFormat.of().formatHex(digest.digest()), aHash, "split " + split);
+		}
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testByteBuffer(int aLength, String aHash, String aKeyedHash, String aDeriveKey)
+	{
+		byte[] data = input(aLength);
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(aLength).put(data).flip();
+		BLAKE3 digest = new BLAKE3(64);
+		digest.update(direct);
+
+		assertEquals(HexFormat.of().formatHex(digest.digest()), aHash);
+		assertFalse(direct.hasRemaining());
+	}
+
+
+	@Test
+	public void testSqueeze()
+	{
+		byte[] data = input(31744);
+		byte[] expected = new BLAKE3(1000).digest(data);
+
+		BLAKE3 digest = new BLAKE3();
+		digest.update(data);
+		byte[] output = new byte[1000];
+		for (int offset = 0, length = 1; offset < output.length; offset += length, length++)
+		{
+			digest.squeeze(output, offset, Math.min(length, output.length - offset));
+		}
+
+		assertEquals(output, expected);
+		assertEquals(Arrays.copyOf(expected, 32), new BLAKE3().digest(data));
+	}
+
+
+	@Test
+	public void testClone()
+	{
+		byte[] data = input(5000);
+
+		BLAKE3 digest = BLAKE3.newKeyedHash(KEY);
+		digest.update(data, 0, 3000);
+		BLAKE3 copy = digest.clone();
+		digest.update(data, 3000, 2000);
+		copy.update(data, 3000, 2000);
+
+		assertEquals(copy.digest(), digest.digest());
+		assertEquals(digest.digest(data), BLAKE3.newKeyedHash(KEY).digest(data));
+	}
+
+
+	@DataProvider
+	private Object[][] vectors()
+	{
+		return new Object[][]
+		{
+			{0, "af1349b9f5f9a1a6a0404dea36dcc9499bcb25c9adc112b7cc9a93cae41f3262e00f03e7b69af26b7faaf09fcd333050338ddfe085b8cc869ca98b206c08243a", "92b2b75604ed3c761f9d6f62392c8a9227ad0ea3f09573e783f1498a4ed60d26", "2cc39783c223154fea8dfb7c1b1660f2ac2dcbd1c1de8277b0b0dd39b7e50d7d"},
+			{1023, "10108970eeda3eb932baac1428c7a2163b0e924c9a9e25b35bba72b28f70bd11a182d27a591b05592b15607500e1e8dd56bc6c7fc063715b7a1d737df5bad333", "c951ecdf03288d0fcc96ee3413563d8a6d3589547f2c2fb36d9786470f1b9d6e", "74a16c1c3d44368a86e1ca6df64be6a2f64cce8f09220787450722d85725dea5"},
+			{1025, "d00278ae47eb27b34faecf67b4fe263f82d5412916c1ffd97c8cb7fb814b8444f4c4a22b4b399155358a994e52bf255de60035742ec71bd08ac275a1b51cc6bf", "357dc55de0c7e382c900fd6e320acc04146be01db6a8ce7210b7189bd664ea69", "effaa245f065fbf82ac186839a249707c3bddf6d3fdda22d1b95a3c970379bcb"},
+			{31744, "62b6960e1a44bcc1eb1a611a8d6235b6b4b78f32e7abc4fb4c6cdcce94895c47860cc51f2b0c28a7b77304bd55fe73af663c02d3f52ea053ba43431ca5bab7bf", "efa53b389ab67c593dba624d898d0f7353ab99e4ac9d42302ee64cbf9939a419", "39772aef80e0ebe60596361e45b061e8f417429d529171b6764468c22928e28e"},
+			{102400, "bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085e01c59dab908c04c3342b816941a26d69c2605ebee5ec5291cc55e15b76146e6", "1c35d1a5811083fd7119f5d5d1ba027b4d01c0c6c49fb6ff2cf75393ea5db4a7", "4652cff7a3f385a6103b5c260fc1593e13c778dbe608efb092fe7ee69df6e9c6"}
+		};
+	}
+
+
+	/**
+	 * Input of the official test vectors, a repeating sequence of 0 to 250.
+	 */
+	static byte[] input(int aLength)
+	{
+		byte[] data = new byte[aLength];
+		for (int i = 0; i < aLength; i++)
+		{
+			data[i] = (byte)(i % 251);
+		}
+		return data;
+	}
+}
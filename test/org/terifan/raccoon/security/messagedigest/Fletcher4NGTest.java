@@ -0,0 +1,118 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class Fletcher4NGTest
+{
+	@Test
+	public void testHash()
+	{
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		for (int length = 0; length <= 200; length++)
+		{
+			assertEquals(Fletcher4.hash128(data, 7, length, 0xcafebabe12345678L), reference(data, 7, length, 0xcafebabe12345678L), "length " + length);
+		}
+	}
+
+
+	@Test
+	public void testNoReadBeyondEnd()
+	{
+		byte[] data = {1, 2, 3, 4, 5, 6};
+
+		assertEquals(Fletcher4.hash128(data, 0, 6, 0), reference(data, 0, 6, 0));
+		assertEquals(Fletcher4.hash128(data, 0, 6, 0), Fletcher4.hash128(Arrays.copyOf(data, 8), 0, 8, 0));
+	}
+
+
+	@Test
+	public void testCombine()
+	{
+		byte[] data = new byte[100000];
+		new Random(2).nextBytes(data);
+
+		int[] expected = Fletcher4.hash128(data, 0, data.length, 17);
+
+		for (int split : new int[]{0, 4, 16, 4096, 65536, 99996})
+		{
+			int[] first = Fletcher4.hash128(data, 0, split, 17);
+			int[] second = Fletcher4.hash128(data, split, data.length - split, 0);
+
+			assertEquals(Fletcher4.combine(first, second, data.length - split), expected, "split " + split);
+		}
+	}
+
+
+	@Test
+	public void testCombineLongRun()
+	{
+		int[] zeros = new int[4];
+		int[] ones = Fletcher4.hash128(new byte[]{0, 0, 0, 1}, 0, 4, 0);
+
+		// appending 3 billion zero words to the single word 1 gives the sums 1, n + 1, C(n + 2, 2) and C(n + 3, 3) modulo 2^32
+		long n = 3_000_000_000L;
+		int[] state = Fletcher4.combine(ones, zeros, 4 * n);
+
+		BigInteger c = BigInteger.valueOf(n + 2).multiply(BigInteger.valueOf(n + 1)).shiftRight(1);
+		BigInteger d = c.multiply(BigInteger.valueOf(n + 3)).divide(BigInteger.valueOf(3));
+
+		assertEquals(state, new int[]{1, (int)(n + 1), c.intValue(), d.intValue()});
+	}
+
+
+	@Test
+	public void testIncremental()
+	{
+		byte[] data = new byte[5000];
+		new Random(3).nextBytes(data);
+
+		for (int split : new int[]{1, 3, 17, 64, 1001})
+		{
+			Fletcher4 checksum = new Fletcher4(5);
+			for (int offset = 0; offset < data.length; offset += split)
+			{
+				checksum.update(data, offset, Math.min(split, data.length - offset));
+				assertEquals(checksum.finish(), Fletcher4.hash128(data, 0, Math.min(offset + split, data.length), 5));
+			}
+		}
+
+		Fletcher4 checksum = new Fletcher4(5);
+		checksum.update(data[0]);
+		checksum.update(ByteBuffer.allocateDirect(4998).put(data, 1, 4998).flip());
+		checksum.update(ByteBuffer.wrap(data, 4999, 1));
+		assertEquals(checksum.finish(), Fletcher4.hash128(data, 0, data.length, 5));
+	}
+
+
+	/**
+	 * Serial definition of the checksum with a zero padded tail.
+	 */
+	private static int[] reference(byte[] aData, int aOffset, int aLength, long aSeed)
+	{
+		byte[] padded = Arrays.copyOfRange(aData, aOffset, aOffset + (aLength + 3) / 4 * 4);
+		Arrays.fill(padded, aLength, padded.length, (byte)0);
+
+		int a = (int)(aSeed >>> 32);
+		int b = (int)(aSeed >>> 24);
+		int c = (int)(aSeed >>> 8);
+		int d = (int)(aSeed);
+
+		for (int i = 0; i < padded.length; i += 4)
+		{
+			a += ((padded[i] & 255) << 24) + ((padded[i + 1] & 255) << 16) + ((padded[i + 2] & 255) << 8) + (padded[i + 3] & 255);
+			b += a;
+			c += b;
+			d += c;
+		}
+
+		return new int[]{a, b, c, d};
+	}
+}
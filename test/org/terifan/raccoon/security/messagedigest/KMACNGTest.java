@@ -0,0 +1,104 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.util.HexFormat;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class KMACNGTest
+{
+	@Test
+	public void testNISTSamples()
+	{
+		byte[] key = new byte[32];
+		for (int i = 0; i < 32; i++)
+		{
+			key[i] = (byte)(0x40 + i);
+		}
+		byte[] data = {0, 1, 2, 3};
+
+		assertEquals(HexFormat.of().formatHex(new KMAC(128, key, 32).digest(data)), "e5780b0d3ea6f7d3a429c5706aa43a00fadbd7d49628839e3187243f456ee14e");
+		assertEquals(HexFormat.of().formatHex(new KMAC(128, key, 32, "My Tagged Application").digest(data)), "3b1fba963cd8b0b59e8c1a6d71888b7143651af8ba0a7070c0979e2811324aa5");
+		assertEquals(HexFormat.of().formatHex(new KMAC(256, key, 64, "My Tagged Application").digest(data)), "20c570c31346f703c9ac36c61c03cb64c3970d0cfc787e9b79599d273a68d2f7f69d4cc3de9d104a351689f27cf6f5951f0103f33f4f24871024d9c27773a8dd");
+	}
+
+
+	@Test
+	public void testResetAndClone()
+	{
+		byte[] key = "0123456789abcdef0123456789abcdef".getBytes();
+		byte[] data = new byte[500];
+
+		KMAC kmac = new KMAC(256, key, 32, "test");
+		byte[] expected = kmac.digest(data);
+
+		kmac.update(data, 0, 100);
+		KMAC clone = kmac.clone();
+		kmac.reset();
+
+		assertEquals(kmac.digest(data), expected);
+
+		clone.update(data, 100, 400);
+		assertEquals(clone.digest(), expected);
+	}
+
+
+	@Test
+	public void testXOF()
+	{
+		byte[] key = "0123456789abcdef0123456789abcdef".getBytes();
+
+		KMAC kmac = new KMAC(128, key, 32, "key derivation");
+		kmac.update("context".getBytes());
+		byte[] first = kmac.squeeze(16);
+		byte[] second = kmac.squeeze(16);
+
+		kmac.reset();
+		kmac.update("context".getBytes());
+		byte[] both = kmac.squeeze(32);
+
+		assertEquals(both, concat(first, second));
+
+		// KMACXOF output differs from KMAC output of the same length
+		kmac.reset();
+		assertNotEquals(both, kmac.digest("context".getBytes()));
+	}
+
+
+	@Test
+	public void testClear()
+	{
+		byte[] key = "0123456789abcdef0123456789abcdef".getBytes();
+
+		KMAC kmac = new KMAC(256, key, 32, "test");
+		kmac.update((byte)1);
+		KMAC clone = kmac.clone();
+		byte[] expected = clone.clone().digest();
+
+		kmac.clear();
+
+		expectThrows(IllegalStateException.class, () -> kmac.update((byte)1));
+		expectThrows(IllegalStateException.class, () -> kmac.digest());
+		expectThrows(IllegalStateException.class, () -> kmac.squeeze(16));
+		expectThrows(IllegalStateException.class, () -> kmac.reset());
+		expectThrows(IllegalStateException.class, () -> kmac.clone());
+
+		assertEquals(clone.digest(), expected);
+	}
+
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testShortKey()
+	{
+		new KMAC(256, new byte[31], 32);
+	}
+
+
+	private static byte[] concat(byte[] aFirst, byte[] aSecond)
+	{
+		byte[] output = new byte[aFirst.length + aSecond.length];
+		System.arraycopy(aFirst, 0, output, 0, aFirst.length);
+		System.arraycopy(aSecond, 0, output, aFirst.length, aSecond.length);
+		return output;
+	}
+}
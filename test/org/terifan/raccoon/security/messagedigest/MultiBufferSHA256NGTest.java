@@ -0,0 +1,67 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class MultiBufferSHA256NGTest
+{
+	@Test
+	public void testDigest()
+	{
+		byte[][] messages = messages();
+		byte[][] digests = new MultiBufferSHA256().digest(messages);
+
+		for (int i = 0; i < messages.length; i++)
+		{
+			assertEquals(digests[i], new SHA256().digest(messages[i]), "message " + i);
+		}
+	}
+
+
+	@Test
+	public void testHMAC()
+	{
+		byte[][] messages = messages();
+
+		for (int keyLength : new int[]{16, 64, 64 + 1})
+		{
+			byte[] key = new byte[keyLength];
+			new Random(keyLength).nextBytes(key);
+
+			byte[][] macs = new MultiBufferSHA256(key).digest(messages);
+
+			for (int i = 0; i < messages.length; i++)
+			{
+				assertEquals(macs[i], new HMAC(new SHA256(), key).digest(messages[i]), "message " + i);
+			}
+		}
+	}
+
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(new MultiBufferSHA256().digest().length, 0);
+		assertEquals(new MultiBufferSHA256().digest(new byte[0])[0], new SHA256().digest());
+	}
+
+
+	/**
+	 * Messages with lengths at the padding boundaries followed by random lengths.
+	 */
+	private static byte[][] messages()
+	{
+		int[] boundaries = {0, 1, 55, 56, 63, 64, 65, 119, 120, 128};
+
+		Random rnd = new Random(1);
+		byte[][] messages = new byte[37][];
+		for (int i = 0; i < messages.length; i++)
+		{
+			messages[i] = new byte[i < boundaries.length ? boundaries[i] : rnd.nextInt(1200)];
+			rnd.nextBytes(messages[i]);
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,81 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class MurmurHash3NGTest
+{
+	private final static byte[] FOX = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+
+
+	@Test
+	public void testKnownValues()
+	{
+		assertEquals(MurmurHash3.hash32(FOX, 0), 0x2e4ff723);
+		assertEquals(MurmurHash3.hash64(FOX, 0), 0xe34bbc7bbc071b6cL);
+		assertEquals(MurmurHash3.hash128(FOX, 0, FOX.length, 0), new int[]{0xe34bbc7b, 0xbc071b6c, 0x7a433ca9, 0xc49a9347});
+	}
+
+
+	@Test
+	public void testHashersMatchOneShot()
+	{
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		for (int length = 0; length <= 100; length++)
+		{
+			for (int split : new int[]{1, 3, 7, 16, 17})
+			{
+				MurmurHash3.Hasher32 hasher32 = new MurmurHash3.Hasher32(7);
+				MurmurHash3.Hasher64 hasher64 = new MurmurHash3.Hasher64(7);
+				MurmurHash3.Hasher128 hasher128 = new MurmurHash3.Hasher128(7);
+				MurmurHash3.Hasher256 hasher256 = new MurmurHash3.Hasher256(7);
+
+				for (int offset = 0; offset < length; offset += split)
+				{
+					int n = Math.min(split, length - offset);
+					hasher32.update(data, offset, n);
+					hasher64.update(data, offset, n);
+					hasher128.update(data, offset, n);
+					hasher256.update(data, offset, n);
+				}
+
+				assertEquals(hasher32.finish(), MurmurHash3.hash32(data, 0, length, 7));
+				assertEquals(hasher64.finish(), MurmurHash3.hash64(data, 0, length, 7));
+				assertEquals(hasher128.finish(), MurmurHash3.hash128(data, 0, length, 7));
+				assertEquals(hasher256.finish(), MurmurHash3.hash256(data, 0, length, 7));
+			}
+		}
+	}
+
+
+	@Test
+	public void testByteBuffer()
+	{
+		byte[] data = new byte[1000];
+		new Random(2).nextBytes(data);
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+
+		MurmurHash3.Hasher32 hasher32 = new MurmurHash3.Hasher32(0);
+		MurmurHash3.Hasher128 hasher128 = new MurmurHash3.Hasher128(0);
+		hasher32.update(data[0]);
+		hasher128.update(data[0]);
+		hasher32.update(direct.slice(1, 500));
+		hasher128.update(direct.slice(1, 500));
+		hasher32.update(ByteBuffer.wrap(data, 501, 499));
+		hasher128.update(ByteBuffer.wrap(data, 501, 499));
+
+		assertEquals(hasher32.finish(), MurmurHash3.hash32(data, 0));
+		assertEquals(hasher128.finish(), MurmurHash3.hash128(data, 0, data.length, 0));
+
+		hasher128.reset();
+		hasher128.update(FOX, 0, FOX.length);
+		assertEquals(hasher128.finish(), MurmurHash3.hash128(FOX, 0, FOX.length, 0));
+	}
+}
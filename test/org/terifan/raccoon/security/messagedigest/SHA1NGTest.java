@@ -0,0 +1,37 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class SHA1NGTest
+{
+	@Test
+	public void testSplitUpdates() throws NoSuchAlgorithmException
+	{
+		byte[] data = new byte[5000];
+		new Random(1).nextBytes(data);
+
+		MessageDigest expected = MessageDigest.getInstance("SHA-1");
+
+		for (int split : new int[]{0, 1, 3, 4, 5, 63, 64, 65, 1000})
+		{
+			for (int length : new int[]{0, 55, 56, 64, 65, 128, 4990})
+			{
+				SHA1 digest = new SHA1();
+				int head = Math.min(split, length);
+
+				digest.update(data, 3, head);
+				digest.update(data[3 + head]);
+				digest.update(data, 4 + head, length - head);
+
+				expected.update(data, 3, length + 1);
+
+				assertEquals(digest.digest(), expected.digest(), split + " " + length);
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class SHA256NGTest
+{
+	@Test
+	public void testVerifyResult() throws NoSuchAlgorithmException
+	{
+		byte[] data = new byte[1024 * 1024];
+		new Random(1).nextBytes(data);
+
+		byte[] digest1 = MessageDigest.getInstance("SHA-256").digest(data);
+		byte[] digest2 = new SHA256().digest(data);
+
+		assertEquals(digest1, digest2);
+	}
+
+
+	@Test
+	public void testSplitUpdates() throws NoSuchAlgorithmException
+	{
+		byte[] data = new byte[5000];
+		new Random(1).nextBytes(data);
+
+		MessageDigest expected = MessageDigest.getInstance("SHA-256");
+
+		for (int split : new int[]{0, 1, 3, 4, 5, 63, 64, 65, 1000})
+		{
+			for (int length : new int[]{0, 55, 56, 64, 65, 128, 4990})
+			{
+				SHA256 digest = new SHA256();
+				int head = Math.min(split, length);
+
+				digest.update(data, 3, head);
+				digest.update(data[3 + head]);
+				digest.update(data, 4 + head, length - head);
+
+				expected.update(data, 3, length + 1);
+
+				assertEquals(digest.digest(), expected.digest(), split + " " + length);
+			}
+		}
+	}
+
+
+	@Test
+	public void testByteBuffer() throws NoSuchAlgorithmException
+	{
+		byte[] data = new byte[5000];
+		new Random(1).nextBytes(data);
+
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+
+		for (int split : new int[]{0, 1, 64, 100, 4999})
+		{
+			ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+			ByteBuffer heap = ByteBuffer.wrap(data);
+
+			SHA256 digest = new SHA256();
+			digest.update(direct.limit(split));
+			digest.update(direct.limit(data.length));
+
+			assertFalse(direct.hasRemaining());
+			assertEquals(digest.digest(), expected);
+
+			digest.update(heap.limit(split));
+			digest.update(heap.limit(data.length));
+
+			assertFalse(heap.hasRemaining());
+			assertEquals(digest.digest(), expected);
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package org.terifan.raccoon.security.messagedigest;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
 import static org.testng.Assert.*;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -23,6 +26,67 @@ public class SHA3NGTest
 	}
 
 
+	@Test
+	public void testSplitUpdates() throws NoSuchAlgorithmException
+	{
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		for (int bits : new int[]{224, 256, 384, 512})
+		{
+			MessageDigest expected = MessageDigest.getInstance("SHA3-" + bits);
+
+			for (int split : new int[]{0, 1, 7, 8, 71, 72, 73, 135, 136, 137, 500})
+			{
+				for (int length : new int[]{0, 71, 72, 135, 136, 143, 144, 990})
+				{
+					SHA3 digest = new SHA3(bits);
+					int head = Math.min(split, length);
+
+					digest.update(data, 3, head);
+					digest.update(data[3 + head]);
+					SHA3 clone = digest.clone();
+					digest.update(data, 4 + head, length - head);
+					clone.update(ByteBuffer.allocateDirect(length - head).put(data, 4 + head, length - head).flip());
+
+					expected.update(data, 3, length + 1);
+					byte[] hash = expected.digest();
+
+					assertEquals(digest.digest(), hash, bits + " " + split + " " + length);
+					assertEquals(clone.digest(), hash, bits + " " + split + " " + length);
+				}
+			}
+		}
+	}
+
+
+	@Test
+	public void testHash128()
+	{
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		for (int bits : new int[]{256, 512})
+		{
+			SHA3 digest = new SHA3(bits);
+			digest.update(new byte[]{0, 0, 0, 0, (byte)0xca, (byte)0xfe, (byte)0xba, (byte)0xbe});
+			byte[] expected = digest.digest(data);
+
+			int[] hash = bits == 256 ? SHA3.hash128_256(data, 0, data.length, 0xcafebabeL) : SHA3.hash128_512(data, 0, data.length, 0xcafebabeL);
+
+			assertEquals(hash, toInts(expected));
+		}
+	}
+
+
+	private static int[] toInts(byte[] aBytes)
+	{
+		int[] ints = new int[4];
+		ByteBuffer.wrap(aBytes).asIntBuffer().get(ints);
+		return ints;
+	}
+
+
 	@DataProvider(name = "data")
 	private Object[][] data()
 	{
@@ -21,4 +21,34 @@ public class SHA512NGTest
 
 		assertEquals(digest1, digest2);
 	}
+
+
+	@Test
+	public void testSplitUpdates() throws NoSuchAlgorithmException, DigestException
+	{
+		byte[] data = new byte[5000];
+		new Random(1).nextBytes(data);
+
+		for (String algorithm : new String[]{"SHA-384", "SHA-512", "SHA-512/256"})
+		{
+			MessageDigest expected = MessageDigest.getInstance(algorithm);
+
+			for (int split : new int[]{0, 1, 7, 8, 9, 127, 128, 129, 255, 1000})
+			{
+				for (int length : new int[]{0, 111, 112, 128, 129, 256, 4990})
+				{
+					MessageDigest digest = algorithm.equals("SHA-384") ? new SHA384() : algorithm.equals("SHA-512") ? new SHA512() : new SHA512(256);
+					int head = Math.min(split, length);
+
+					digest.update(data, 3, head);
+					digest.update(data[3 + head]);
+					digest.update(data, 4 + head, length - head);
+
+					expected.update(data, 3, length + 1);
+
+					assertEquals(digest.digest(), expected.digest(), algorithm + " " + split + " " + length);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,66 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class SHAKENGTest
+{
+	@Test
+	public void testEmptyInput()
+	{
+		assertEquals(HexFormat.of().formatHex(new SHAKE(128).digest()), "7f9c2ba4e88f827d616045507605853ed73b8093f6efbc88eb1a6eacfa66ef26");
+		assertEquals(HexFormat.of().formatHex(new SHAKE(256).digest()), "46b9dd2b0ba88d13233b3feb743eeb243fcd52ea62b81b82b50c27646ed5762fd75dc4ddd8c0f200cb05019d67b592f6fc821c49479ab48640292eacb3b7c4be");
+	}
+
+
+	@Test
+	public void testStreamingSqueeze()
+	{
+		byte[] data = new byte[1000];
+		new Random(1).nextBytes(data);
+
+		for (int strength : new int[]{128, 256})
+		{
+			SHAKE shake = new SHAKE(strength, 1000);
+			byte[] expected = shake.digest(data);
+
+			shake.update(data);
+			byte[] output = new byte[1000];
+			for (int offset = 0, length = 1; offset < output.length; offset += length, length++)
+			{
+				shake.squeeze(output, offset, Math.min(length, output.length - offset));
+			}
+
+			assertEquals(output, expected);
+			assertEquals(Arrays.copyOf(new SHAKE(strength, 10).digest(data), 10), Arrays.copyOf(expected, 10));
+		}
+	}
+
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testUpdateAfterSqueeze()
+	{
+		SHAKE shake = new SHAKE(128);
+		shake.squeeze(16);
+		shake.update((byte)0);
+	}
+
+
+	@Test
+	public void testCSHAKE()
+	{
+		byte[] data = {0, 1, 2, 3};
+
+		CSHAKE cshake = new CSHAKE(128, 32, "", "Email Signature");
+		cshake.update(new byte[100]);
+		cshake.reset();
+
+		assertEquals(HexFormat.of().formatHex(cshake.digest(data)), "c1c36925b6409a04f1b504fcbca9d82b4017277cb5ed2b2065fc1d3814d5aaf5");
+		assertEquals(HexFormat.of().formatHex(new CSHAKE(256, 64, "", "Email Signature").digest(data)), "d008828e2b80ac9d2218ffee1d070c48b8e4c87bff32c9699d5b6896eee0edd164020e2be0560858d9c00c037e34a96937c561a74c412bb4c746469527281c8c");
+		assertEquals(new CSHAKE(256, 64, "", "").digest(data), new SHAKE(256).digest(data));
+	}
+}
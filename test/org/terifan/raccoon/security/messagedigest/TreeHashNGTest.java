@@ -0,0 +1,103 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+
+public class TreeHashNGTest
+{
+	@Test
+	public void testTreeStructure()
+	{
+		byte[] data = new byte[2500];
+		new Random(1).nextBytes(data);
+
+		// three leaves: root(node(node(l0, l1), l2))
+		byte[] l0 = hash(new byte[]{0}, Arrays.copyOfRange(data, 0, 1000));
+		byte[] l1 = hash(new byte[]{0}, Arrays.copyOfRange(data, 1000, 2000));
+		byte[] l2 = hash(new byte[]{0}, Arrays.copyOfRange(data, 2000, 2500));
+		byte[] node = hash(new byte[]{1}, hash(new byte[]{1}, l0, l1), l2);
+		byte[] expected = hash(new byte[]{2}, node, ByteBuffer.allocate(16).putLong(1000).putLong(2500).array());
+
+		assertEquals(new TreeHash(SHA256::new, 1000).digest(data), expected);
+	}
+
+
+	@Test
+	public void testEmpty()
+	{
+		byte[] expected = hash(new byte[]{2}, hash(new byte[]{0}), ByteBuffer.allocate(16).putLong(64).putLong(0).array());
+
+		assertEquals(new TreeHash(SHA256::new, 64).digest(), expected);
+	}
+
+
+	@Test
+	public void testInputIndependence() throws Exception
+	{
+		byte[] data = new byte[1_000_000];
+		new Random(1).nextBytes(data);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Path file = Files.createTempFile("treehash", ".bin");
+
+		try
+		{
+			Files.write(file, data);
+
+			for (int leafSize : new int[]{1024, 4096, 65536})
+			{
+				TreeHash digest = new TreeHash(SHA512::new, leafSize, pool);
+				byte[] expected = digest.digest(data);
+
+				for (int chunk : new int[]{1, 1000, 4096, 100_000})
+				{
+					for (int offset = 0; offset < data.length; offset += chunk)
+					{
+						if (chunk == 1)
+						{
+							digest.update(data[offset]);
+						}
+						else
+						{
+							digest.update(data, offset, Math.min(chunk, data.length - offset));
+						}
+					}
+					assertEquals(digest.digest(), expected, leafSize + " " + chunk);
+				}
+
+				ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+				digest.update(data, 0, 10);
+				digest.update(direct.position(10));
+				assertEquals(digest.digest(), expected);
+
+				assertEquals(digest.digest(file), expected);
+			}
+
+			assertFalse(Arrays.equals(new TreeHash(SHA512::new, 1024, pool).digest(data), new TreeHash(SHA512::new, 2048, pool).digest(data)));
+		}
+		finally
+		{
+			Files.delete(file);
+			pool.shutdown();
+		}
+	}
+
+
+	private static byte[] hash(byte[]... aParts)
+	{
+		MessageDigest digest = new SHA256();
+		for (byte[] part : aParts)
+		{
+			digest.update(part);
+		}
+		return digest.digest();
+	}
+}
@@ -0,0 +1,130 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class XXH3NGTest
+{
+	@Test(dataProvider = "vectors")
+	public void testHash(int aLength, long aSeed, long aExpected64, String aExpected128)
+	{
+		byte[] data = input(aLength);
+		byte[] shifted = new byte[aLength + 5];
+		System.arraycopy(data, 0, shifted, 5, aLength);
+
+		assertEquals(XXH3.hash64(data, aSeed), aExpected64);
+		assertEquals(XXH3.hash64(shifted, 5, aLength, aSeed), aExpected64);
+		assertEquals(hex(XXH3.hash128(data, 0, aLength, aSeed)), aExpected128);
+		assertEquals(hex(XXH3.hash128(shifted, 5, aLength, aSeed)), aExpected128);
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testHasher(int aLength, long aSeed, long aExpected64, String aExpected128)
+	{
+		byte[] data = input(aLength);
+
+		for (int split : new int[]{1, 15, 64, 255, 256, 257, 5000})
+		{
+			XXH3.Hasher hasher = new XXH3.Hasher(aSeed);
+			for (int offset = 0; offset < aLength; offset += split)
+			{
+				if (split == 1)
+				{
+					hasher.update(data[offset]);
+				}
+				else
+				{
+					hasher.update(data, offset, Math.min(split, aLength - offset));
+				}
+			}
+			assertEquals(hasher.finish64(), aExpected64, "split " + split);
+			assertEquals(hex(hasher.finish128()), aExpected128, "split " + split);
+		}
+
+		assertEquals(XXH3.hash64(ByteBuffer.allocateDirect(aLength).put(data).flip(), aSeed), aExpected64);
+		assertEquals(hex(XXH3.hash128(ByteBuffer.allocateDirect(aLength).put(data).flip(), aSeed)), aExpected128);
+	}
+
+
+	@Test
+	public void testChecksum128()
+	{
+		byte[] data = input(4096);
+
+		Checksum128 checksum = Checksum128.xxh3();
+		int[] output = new int[4];
+
+		for (long seed : new long[]{0, 7, 7})
+		{
+			checksum.reset(seed);
+			for (int offset = 0; offset < data.length; offset += 16)
+			{
+				checksum.updateBlock(data, offset);
+			}
+			checksum.finish(output, 0);
+
+			assertEquals(output, XXH3.hash128(data, 0, data.length, seed));
+		}
+	}
+
+
+	private static String hex(int[] aHash)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int v : aHash)
+		{
+			sb.append(HexFormat.of().toHexDigits(v));
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Input of the reference sanity tests, a repeating sequence of 0 to 250.
+	 */
+	private static byte[] input(int aLength)
+	{
+		byte[] data = new byte[aLength];
+		for (int i = 0; i < aLength; i++)
+		{
+			data[i] = (byte)(i % 251);
+		}
+		return data;
+	}
+
+
+	@DataProvider
+	private Object[][] vectors()
+	{
+		return new Object[][]
+		{
+			{0, 0x0L, 0x2d06800538d394c2L, "99aa06d3014798d86001c324468d497f"},
+			{3, 0x0L, 0x5f4299fc161c9cbbL, "e3b55f57945a17cf5f4299fc161c9cbb"},
+			{8, 0x0L, 0x3a1c2d7c85af88f8L, "e1e4432a62217fe4cfd50c61c8bb98c1"},
+			{16, 0x0L, 0x8355e3a6f61770dbL, "72950631827607e2842812cc870dcae2"},
+			{100, 0x0L, 0x004e4f921a64bd1cL, "da95ef16fd9566f329b20ba5f03ec01e"},
+			{200, 0x0L, 0xf42a8864feaf0703L, "cb0395310643ba0edd97e9af3609d9f5"},
+			{240, 0x0L, 0x375a384d957fe865L, "65b5be86da5540e7c92b68e16f83bbb6"},
+			{241, 0x0L, 0x02e8cd95421c6d02L, "1da1cb61bcb8a2a102e8cd95421c6d02"},
+			{1024, 0x0L, 0xe5d78bafa45b2aa5L, "d0ac1f7b93bf57b9e5d78bafa45b2aa5"},
+			{1025, 0x0L, 0xe95c42288f28186eL, "2882ebca04ec915ce95c42288f28186e"},
+			{131072, 0x0L, 0xcdcacb62ee881022L, "b09abb0016d42f10cdcacb62ee881022"},
+			{0, 0x123456789abcdefL, 0xcc1ca35a1b089c5cL, "a4cb05dbbf09907aaaa287af24a9bb3a"},
+			{3, 0x123456789abcdefL, 0x6db0802353336496L, "59109e2c7580e6e66db0802353336496"},
+			{8, 0x123456789abcdefL, 0xd204fc26419c7d22L, "31b600d25b84b1dd820d57be67d0dd52"},
+			{16, 0x123456789abcdefL, 0x1dca78f4947ed52cL, "b14d0b33aedc79cbfdb57b7f9152aa8d"},
+			{100, 0x123456789abcdefL, 0x40c3f876b151a905L, "b5c06c2464caade9c44b5041d808083d"},
+			{200, 0x123456789abcdefL, 0xd87055ac291495baL, "df74624646b42712dc207e7d2a0641d3"},
+			{240, 0x123456789abcdefL, 0x4b1593ee9603224aL, "c7749934436fbf97b8ff7d7b210bf7d8"},
+			{241, 0x123456789abcdefL, 0xace3afe84c9adf7cL, "1ec5ac1612acb5daace3afe84c9adf7c"},
+			{1024, 0x123456789abcdefL, 0xdb9e8db63b13c98eL, "6eb1074efe8430c2db9e8db63b13c98e"},
+			{1025, 0x123456789abcdefL, 0x7d6ae2cda98e43c8L, "5566e25f7070b1f47d6ae2cda98e43c8"},
+			{131072, 0x123456789abcdefL, 0x387e4d316c9a44d3L, "b2ece0d0fec98c2b387e4d316c9a44d3"}
+		};
+	}
+}
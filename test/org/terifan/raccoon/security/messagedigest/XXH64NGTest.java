@@ -0,0 +1,93 @@
+package org.terifan.raccoon.security.messagedigest;
+
+import java.nio.ByteBuffer;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class XXH64NGTest
+{
+	@Test(dataProvider = "vectors")
+	public void testHash(int aLength, long aSeed, long aExpected)
+	{
+		byte[] data = input(aLength);
+		byte[] shifted = new byte[aLength + 5];
+		System.arraycopy(data, 0, shifted, 5, aLength);
+
+		assertEquals(XXH64.hash64(data, aSeed), aExpected);
+		assertEquals(XXH64.hash64(shifted, 5, aLength, aSeed), aExpected);
+	}
+
+
+	@Test(dataProvider = "vectors")
+	public void testHasher(int aLength, long aSeed, long aExpected)
+	{
+		byte[] data = input(aLength);
+
+		for (int split : new int[]{1, 7, 31, 32, 33, 1000})
+		{
+			XXH64.Hasher hasher = new XXH64.Hasher(aSeed);
+			for (int offset = 0; offset < aLength; offset += split)
+			{
+				hasher.update(data, offset, Math.min(split, aLength - offset));
+			}
+			assertEquals(hasher.finish(), aExpected, "split " + split);
+		}
+
+		XXH64.Hasher hasher = new XXH64.Hasher(aSeed);
+		if (aLength > 0)
+		{
+			hasher.update(data[0]);
+		}
+		hasher.update(ByteBuffer.allocateDirect(aLength).put(data).position(Math.min(1, aLength)));
+		assertEquals(hasher.finish(), aExpected);
+
+		assertEquals(XXH64.hash64(ByteBuffer.allocateDirect(aLength).put(data).flip(), aSeed), aExpected);
+	}
+
+
+	/**
+	 * Input of the reference sanity tests, a repeating sequence of 0 to 250.
+	 */
+	private static byte[] input(int aLength)
+	{
+		byte[] data = new byte[aLength];
+		for (int i = 0; i < aLength; i++)
+		{
+			data[i] = (byte)(i % 251);
+		}
+		return data;
+	}
+
+
+	@DataProvider
+	private Object[][] vectors()
+	{
+		return new Object[][]
+		{
+			{0, 0x0L, 0xef46db3751d8e999L},
+			{3, 0x0L, 0xe5c7bb4533bc65ddL},
+			{8, 0x0L, 0x884a173614b81b8dL},
+			{16, 0x0L, 0x44b6ef2fb84169f7L},
+			{100, 0x0L, 0x6ac1e58032166597L},
+			{200, 0x0L, 0x50dc1079b99e879cL},
+			{240, 0x0L, 0x012947f0da6a27b1L},
+			{241, 0x0L, 0x8d643f23bf2808e1L},
+			{1024, 0x0L, 0x138e26c65048ce29L},
+			{1025, 0x0L, 0xcfd73aedd2d6a39dL},
+			{131072, 0x0L, 0x822c00ad05d633b9L},
+			{0, 0x123456789abcdefL, 0x51e24c0e9077a48cL},
+			{3, 0x123456789abcdefL, 0x786233c2fa006029L},
+			{8, 0x123456789abcdefL, 0x726ecd68a8b5846dL},
+			{16, 0x123456789abcdefL, 0x4c86f5e612d7e905L},
+			{100, 0x123456789abcdefL, 0x40e8f4ec2207f62cL},
+			{200, 0x123456789abcdefL, 0x7c91297a67c5eb57L},
+			{240, 0x123456789abcdefL, 0x0c636373263d2b72L},
+			{241, 0x123456789abcdefL, 0xffa53cd807734af0L},
+			{1024, 0x123456789abcdefL, 0xd66828a4f19f4e5eL},
+			{1025, 0x123456789abcdefL, 0x3e0066de29bd9a7bL},
+			{131072, 0x123456789abcdefL, 0xe18221e0045986f8L}
+		};
+	}
+}
@@ -0,0 +1,275 @@
+package org.terifan.raccoon.security.provider;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.terifan.raccoon.security.cryptography.AES;
+import org.terifan.raccoon.security.cryptography.BlockCipher;
+import org.terifan.raccoon.security.cryptography.SecretKey;
+import org.terifan.raccoon.security.cryptography.ciphermode.UnitCipher;
+import org.terifan.raccoon.security.cryptography.ciphermode.XTSCipherMode;
+import org.terifan.raccoon.security.cryptography.Twofish;
+import static org.testng.Assert.*;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+
+public class RaccoonProviderNGTest
+{
+	private final static RaccoonProvider PROVIDER = new RaccoonProvider();
+
+
+	@Test
+	public void testCipherMatchesUnitCipher() throws Exception
+	{
+		Random rnd = new Random(1);
+		byte[] key = new byte[64];
+		byte[] iv = new byte[16];
+		byte[] plaintext = new byte[8 * 512];
+		rnd.nextBytes(key);
+		rnd.nextBytes(iv);
+		rnd.nextBytes(plaintext);
+
+		Cipher cipher = Cipher.getInstance("Twofish/XTS/NoPadding", PROVIDER);
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "Twofish"), new DataUnitParameterSpec(iv, 7, 512));
+
+		// split updates not aligned to the unit size
+		byte[] ciphertext = new byte[plaintext.length];
+		int length = cipher.update(plaintext, 0, 1000, ciphertext, 0);
+		length += cipher.update(plaintext, 1000, 2000, ciphertext, length);
+		length += cipher.doFinal(plaintext, 3000, plaintext.length - 3000, ciphertext, length);
+
+		assertEquals(length, plaintext.length);
+
+		BlockCipher twofish = new Twofish();
+		twofish.engineInit(new SecretKey(Arrays.copyOfRange(key, 0, 32)));
+		BlockCipher tweak = new Twofish();
+		tweak.engineInit(new SecretKey(Arrays.copyOfRange(key, 32, 64)));
+		int[] blockIV = toInts(iv);
+
+		byte[] expected = plaintext.clone();
+		new UnitCipher(new XTSCipherMode(), twofish, tweak, blockIV, 512).encrypt(expected, 0, expected.length, 7);
+
+		assertEquals(ciphertext, expected);
+
+		cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "Twofish"), new DataUnitParameterSpec(iv, 7, 512));
+
+		assertEquals(cipher.doFinal(ciphertext), plaintext);
+	}
+
+
+	@DataProvider
+	private Object[][] transformations()
+	{
+		return new Object[][]
+		{
+			{"AES/XTS/NoPadding", 32},
+			{"AES/CBC/NoPadding", 64},
+			{"Serpent/CTR/NoPadding", 64},
+			{"Kuznechik/PCBC/NoPadding", 64},
+			{"Twofish/Elephant/NoPadding", 32}
+		};
+	}
+
+
+	@Test(dataProvider = "transformations")
+	public void testDirectByteBufferRoundTrip(String aTransformation, int aKeyLength) throws Exception
+	{
+		Random rnd = new Random(aKeyLength);
+		byte[] key = new byte[aKeyLength];
+		byte[] iv = new byte[16];
+		byte[] plaintext = new byte[16 * 4096];
+		rnd.nextBytes(key);
+		rnd.nextBytes(iv);
+		rnd.nextBytes(plaintext);
+
+		SecretKeySpec keySpec = new SecretKeySpec(key, aTransformation.substring(0, aTransformation.indexOf('/')));
+		DataUnitParameterSpec params = new DataUnitParameterSpec(iv, 0, 4096);
+
+		Cipher cipher = Cipher.getInstance(aTransformation, PROVIDER);
+		cipher.init(Cipher.ENCRYPT_MODE, keySpec, params);
+		byte[] expected = cipher.doFinal(plaintext);
+
+		assertFalse(Arrays.equals(expected, plaintext));
+
+		ByteBuffer input = ByteBuffer.allocateDirect(plaintext.length).put(plaintext).flip();
+		ByteBuffer output = ByteBuffer.allocateDirect(plaintext.length);
+
+		cipher.init(Cipher.ENCRYPT_MODE, keySpec, params);
+		cipher.update(input.limit(10000), output);
+		cipher.doFinal(input.limit(plaintext.length), output);
+
+		byte[] ciphertext = new byte[plaintext.length];
+		output.flip().get(ciphertext);
+
+		assertEquals(ciphertext, expected);
+
+		cipher.init(Cipher.DECRYPT_MODE, keySpec, params);
+
+		assertEquals(cipher.doFinal(ciphertext), plaintext);
+	}
+
+
+	@Test(expectedExceptions = javax.crypto.IllegalBlockSizeException.class)
+	public void testPartialUnit() throws Exception
+	{
+		Cipher cipher = Cipher.getInstance("AES", PROVIDER);
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[32], "AES"), new DataUnitParameterSpec(new byte[16], 0, 512));
+		cipher.doFinal(new byte[1000]);
+	}
+
+
+	@Test
+	public void testMessageDigest() throws Exception
+	{
+		byte[] data = new byte[100000];
+		new Random(1).nextBytes(data);
+
+		for (String algorithm : new String[]{"SHA-1", "SHA-256", "SHA-512", "SHA3-256", "SHA3-512"})
+		{
+			MessageDigest digest = MessageDigest.getInstance(algorithm, PROVIDER);
+			digest.update(data, 0, 1000);
+			MessageDigest clone = (MessageDigest)digest.clone();
+			digest.update(ByteBuffer.allocateDirect(data.length - 1000).put(data, 1000, data.length - 1000).flip());
+			clone.update(data, 1000, data.length - 1000);
+
+			byte[] expected = MessageDigest.getInstance(algorithm).digest(data);
+
+			assertEquals(digest.digest(), expected, algorithm);
+			assertEquals(clone.digest(), expected, algorithm);
+			assertEquals(digest.getProvider().getName(), RaccoonProvider.NAME);
+		}
+	}
+
+
+	@Test
+	public void testMac() throws Exception
+	{
+		byte[] data = new byte[10000];
+		byte[] key = new byte[200];
+		new Random(1).nextBytes(data);
+		new Random(2).nextBytes(key);
+
+		for (String algorithm : new String[]{"HmacSHA1", "HmacSHA256", "HmacSHA384", "HmacSHA512", "HmacSHA3-256", "HmacSHA3-512"})
+		{
+			for (int keyLength : new int[]{16, 200})
+			{
+				SecretKeySpec keySpec = new SecretKeySpec(key, 0, keyLength, algorithm);
+
+				Mac expected = Mac.getInstance(algorithm);
+				expected.init(keySpec);
+
+				Mac mac = Mac.getInstance(algorithm, PROVIDER);
+				mac.init(keySpec);
+
+				assertEquals(mac.doFinal(data), expected.doFinal(data), algorithm);
+
+				// the mac is reusable after doFinal and reset
+				mac.update(data, 0, 100);
+				mac.reset();
+				assertEquals(mac.doFinal(data), expected.doFinal(data), algorithm);
+
+				// a second instance with the same key is served from the pool
+				Mac pooled = Mac.getInstance(algorithm, PROVIDER);
+				pooled.init(keySpec);
+				assertEquals(pooled.doFinal(data), expected.doFinal(data), algorithm);
+			}
+		}
+	}
+
+
+	@Test
+	public void testClearKeySchedules() throws Exception
+	{
+		byte[] data = new byte[1000];
+		byte[] key = new byte[32];
+		new Random(1).nextBytes(data);
+		new Random(2).nextBytes(key);
+		SecretKeySpec keySpec = new SecretKeySpec(key, "HmacSHA256");
+
+		Mac expected = Mac.getInstance("HmacSHA256");
+		expected.init(keySpec);
+		byte[] tag = expected.doFinal(data);
+
+		RaccoonProvider provider = new RaccoonProvider();
+		Mac mac = Mac.getInstance("HmacSHA256", provider);
+		mac.init(keySpec);
+
+		provider.clearKeySchedules();
+
+		// a Mac holds its own copy of the pooled instance
+		assertEquals(mac.doFinal(data), tag);
+
+		Mac rekeyed = Mac.getInstance("HmacSHA256", provider);
+		rekeyed.init(keySpec);
+		assertEquals(rekeyed.doFinal(data), tag);
+
+		// a Cipher shares the pooled key schedule and is initialized again after clearing
+		Cipher cipher = Cipher.getInstance("AES/XTS/NoPadding", provider);
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[64], "AES"), new DataUnitParameterSpec(new byte[16], 0, 512));
+		byte[] ciphertext = cipher.doFinal(new byte[512]);
+
+		provider.clearKeySchedules();
+
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[64], "AES"), new DataUnitParameterSpec(new byte[16], 0, 512));
+		assertEquals(cipher.doFinal(new byte[512]), ciphertext);
+	}
+
+
+	@Test
+	public void testKeySchedulePool()
+	{
+		KeySchedulePool pool = new KeySchedulePool();
+		byte[] key = new byte[16];
+
+		BlockCipher cipher = pool.get("AES", key, aKey -> new AES(new SecretKey(aKey)), aCipher -> aCipher);
+
+		assertSame(pool.get("AES", key.clone(), aKey -> new AES(new SecretKey(aKey)), aCipher -> aCipher), cipher);
+		assertNotSame(pool.get("Twofish", key, aKey -> new Twofish(new SecretKey(aKey)), aCipher -> aCipher), cipher);
+
+		pool.clear();
+
+		assertFalse(cipher.isInitialized());
+		assertNotSame(pool.get("AES", key, aKey -> new AES(new SecretKey(aKey)), aCipher -> aCipher), cipher);
+	}
+
+
+	@Test
+	public void testSCrypt() throws Exception
+	{
+		SecretKeyFactory factory = SecretKeyFactory.getInstance("SCrypt", PROVIDER);
+
+		byte[] key = factory.generateSecret(new SCryptKeySpec("password".toCharArray(), "NaCl".getBytes(), 1024, 8, 16, 512)).getEncoded();
+
+		assertEquals(HexFormat.of().formatHex(key), "fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b3731622eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+	}
+
+
+	@Test
+	public void testPBKDF2() throws Exception
+	{
+		PBEKeySpec spec = new PBEKeySpec("password".toCharArray(), "salt".getBytes(), 1000, 512);
+
+		for (String algorithm : new String[]{"PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA512"})
+		{
+			byte[] expected = SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+
+			assertEquals(SecretKeyFactory.getInstance(algorithm, PROVIDER).generateSecret(spec).getEncoded(), expected, algorithm);
+		}
+	}
+
+
+	private static int[] toInts(byte[] aBytes)
+	{
+		int[] ints = new int[aBytes.length / 4];
+		ByteBuffer.wrap(aBytes).asIntBuffer().get(ints);
+		return ints;
+	}
+}